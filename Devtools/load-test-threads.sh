@@ -0,0 +1,88 @@
+#!/bin/bash
+
+# Compare the application on platform threads and on virtual threads
+# (spring.threads.virtual.enabled) under the same load: throughput, p99
+# latency and virtual-thread pinning.
+#
+# Needs the docker compose stack and hey (https://github.com/rakyll/hey).
+# Usage: Devtools/load-test-threads.sh [duration] [concurrency]
+
+DURATION=${1:-30s}
+CONCURRENCY=${2:-200}
+API_URL="http://localhost:8080"
+COMPOSE_DIR="$(cd "$(dirname "$0")/../docker" && pwd)"
+
+if ! command -v hey > /dev/null; then
+    echo "✗ hey is required: go install github.com/rakyll/hey@latest"
+    exit 1
+fi
+
+echo "========================================"
+echo "  Platform vs virtual threads load test"
+echo "========================================"
+echo "Duration: $DURATION per endpoint, concurrency: $CONCURRENCY"
+echo ""
+
+start_app() {
+    (cd "$COMPOSE_DIR" && VIRTUAL_THREADS=$1 docker compose up -d --no-deps --force-recreate application) > /dev/null
+    for _ in {1..60}; do
+        curl -sf "$API_URL/actuator/health" > /dev/null && return 0
+        sleep 2
+    done
+    echo "✗ Application did not become healthy"
+    exit 1
+}
+
+seed_products() {
+    for i in {1..50}; do
+        curl -s -X POST "$API_URL/api/products" \
+          -H "Content-Type: application/json" \
+          -d "{\"name\":\"Load Product $i\",\"price\":$((i + 1)).99,\"expirationDate\":\"2030-12-31\"}" > /dev/null
+    done
+}
+
+# Prints "<requests/sec> <p99 in ms>" for one endpoint
+run_load() {
+    hey -z "$DURATION" -c "$CONCURRENCY" -H "X-User-Id: load-test" "$1" | awk '
+        /Requests\/sec/ { rps = $2 }
+        /99% in/ { p99 = $3 * 1000 }
+        END { printf "%.0f %.1f\n", rps, p99 }'
+}
+
+pinned_count() {
+    curl -s "$API_URL/actuator/prometheus" | awk '
+        /^jvm_threads_virtual_pinned_seconds_count/ { total += $2 }
+        END { printf "%d\n", total }'
+}
+
+RESULTS=()
+for virtual in false true; do
+    mode=$([ "$virtual" = true ] && echo "virtual" || echo "platform")
+    echo "Starting application on $mode threads..."
+    start_app "$virtual"
+    seed_products
+    product_id=$(curl -s "$API_URL/api/products?limit=1" | sed -n 's/.*"id":"\([^"]*\)".*/\1/p')
+
+    # Warm up the JIT and the connection pools before measuring
+    hey -z 10s -c "$CONCURRENCY" "$API_URL/api/products?limit=20" > /dev/null
+
+    for endpoint in "/api/products?limit=20" "/api/products/$product_id" "/api/products/price-range?min=10&limit=20"; do
+        read -r rps p99 < <(run_load "$API_URL$endpoint")
+        echo "  ✓ $endpoint: $rps req/s, p99 ${p99}ms"
+        RESULTS+=("$mode|$endpoint|$rps|$p99")
+    done
+    RESULTS+=("$mode|pinned events|$(pinned_count)|-")
+done
+
+echo ""
+echo "========================================"
+printf "%-9s %-42s %10s %10s\n" "threads" "endpoint" "req/s" "p99 (ms)"
+for result in "${RESULTS[@]}"; do
+    IFS='|' read -r mode endpoint rps p99 <<< "$result"
+    printf "%-9s %-42s %10s %10s\n" "$mode" "$endpoint" "$rps" "$p99"
+done
+echo "========================================"
+
+echo ""
+echo "Restoring the application on platform threads..."
+start_app false
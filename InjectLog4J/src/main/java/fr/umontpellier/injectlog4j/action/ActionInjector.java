@@ -8,8 +8,10 @@ import org.apache.logging.log4j.Logger;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Runtime action injector that records user actions for profiling.
@@ -17,13 +19,19 @@ import java.util.Map;
  * 
  * Uses the Initialization-on-demand holder idiom for thread-safe lazy
  * initialization.
+ * 
+ * The user context is kept in a pluggable {@link UserContextStorage}
+ * selected with ACTION_CONTEXT_PROPAGATION / action.context.propagation
+ * ("threadlocal" by default, or "scoped" for Java 21 ScopedValue). Use
+ * {@link #wrap(Runnable)} or {@link ContextPropagatingExecutorService} to
+ * carry the context across thread hand-offs.
  */
 public class ActionInjector {
 
     private static final Logger LOGGER = LogManager.getLogger(ActionInjector.class);
 
     private final ActionRecorder recorder;
-    private final ThreadLocal<UserContext> userContext;
+    private final UserContextStorage contextStorage;
     private final Map<String, OperationType> methodOperationMap;
 
     /**
@@ -34,6 +42,15 @@ public class ActionInjector {
         private String userEmail;
         private String userName;
 
+        public UserContext() {
+        }
+
+        public UserContext(String userId, String userEmail, String userName) {
+            this.userId = userId;
+            this.userEmail = userEmail;
+            this.userName = userName;
+        }
+
         public String getUserId() {
             return userId;
         }
@@ -63,8 +80,22 @@ public class ActionInjector {
             userEmail = null;
             userName = null;
         }
+
+        /**
+         * Create a detached copy of this context (safe to hand to another
+         * thread).
+         */
+        public UserContext copy() {
+            return new UserContext(userId, userEmail, userName);
+        }
     }
 
+    /**
+     * Context used when no user is bound, shared to avoid allocating on the
+     * recording hot path.
+     */
+    private static final UserContext EMPTY_CONTEXT = new UserContext();
+
     /**
      * Holder class for lazy initialization (thread-safe).
      */
@@ -83,16 +114,18 @@ public class ActionInjector {
             }
 
             ActionRecorder recorder = ActionRecorderFactory.create(recorderType, recorderConfig);
-            return new ActionInjector(recorder);
+            return new ActionInjector(recorder,
+                    UserContextStorageFactory.create(UserContextStorageFactory.resolveConfiguredMode()));
         }
     }
 
-    private static ActionInjector customInstance;
-    private static final Object lock = new Object();
+    // Read on every injected call: volatile rather than guarded by the lock
+    private static volatile ActionInjector customInstance;
+    private static final ReentrantLock lock = new ReentrantLock();
 
-    private ActionInjector(ActionRecorder recorder) {
+    private ActionInjector(ActionRecorder recorder, UserContextStorage contextStorage) {
         this.recorder = recorder;
-        this.userContext = ThreadLocal.withInitial(UserContext::new);
+        this.contextStorage = contextStorage != null ? contextStorage : new ThreadLocalUserContextStorage();
         this.methodOperationMap = new ConcurrentHashMap<>();
         initializeMethodMappings();
     }
@@ -101,23 +134,29 @@ public class ActionInjector {
      * Get the singleton instance of ActionInjector.
      */
     public static ActionInjector getInstance() {
-        synchronized (lock) {
-            if (customInstance != null) {
-                return customInstance;
-            }
-        }
-        return InstanceHolder.INSTANCE;
+        ActionInjector instance = customInstance;
+        return instance != null ? instance : InstanceHolder.INSTANCE;
     }
 
     /**
      * Initialize with a custom recorder (for testing).
      */
     public static void initialize(ActionRecorder recorder) {
-        synchronized (lock) {
+        initialize(recorder, UserContextStorageFactory.create(UserContextStorageFactory.resolveConfiguredMode()));
+    }
+
+    /**
+     * Initialize with a custom recorder and context storage.
+     */
+    public static void initialize(ActionRecorder recorder, UserContextStorage contextStorage) {
+        lock.lock();
+        try {
             if (customInstance != null) {
                 customInstance.shutdown();
             }
-            customInstance = new ActionInjector(recorder);
+            customInstance = new ActionInjector(recorder, contextStorage);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -125,11 +164,14 @@ public class ActionInjector {
      * Reset to default instance (for testing).
      */
     public static void reset() {
-        synchronized (lock) {
+        lock.lock();
+        try {
             if (customInstance != null) {
                 customInstance.shutdown();
                 customInstance = null;
             }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -164,25 +206,87 @@ public class ActionInjector {
      * Set the current user context for this thread.
      */
     public void setUserContext(String userId, String userEmail, String userName) {
-        UserContext ctx = userContext.get();
-        ctx.setUserId(userId);
-        ctx.setUserEmail(userEmail);
-        ctx.setUserName(userName);
+        contextStorage.set(new UserContext(userId, userEmail, userName));
     }
 
     /**
      * Clear the current user context for this thread.
      */
     public void clearUserContext() {
-        userContext.get().clear();
-        userContext.remove();
+        contextStorage.clear();
     }
 
     /**
      * Get the current user context.
      */
     public UserContext getCurrentUserContext() {
-        return userContext.get();
+        UserContext ctx = contextStorage.current();
+        return ctx != null ? ctx : new UserContext();
+    }
+
+    /**
+     * Run a task with the given user bound as the current context.
+     * The previous context is restored afterwards.
+     */
+    public void runWithUserContext(UserContext context, Runnable task) {
+        try {
+            contextStorage.callWith(context, () -> {
+                task.run();
+                return null;
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Call a task with the given user bound as the current context.
+     * The previous context is restored afterwards.
+     */
+    public <T> T callWithUserContext(UserContext context, Callable<T> task) throws Exception {
+        return contextStorage.callWith(context, task);
+    }
+
+    /**
+     * Wrap a task so that it runs with the user context captured now, on
+     * whichever thread eventually executes it.
+     */
+    public Runnable wrap(Runnable task) {
+        UserContext captured = captureUserContext();
+        return () -> runWithUserContext(captured, task);
+    }
+
+    /**
+     * Wrap a callable so that it runs with the user context captured now, on
+     * whichever thread eventually executes it.
+     */
+    public <T> Callable<T> wrap(Callable<T> task) {
+        UserContext captured = captureUserContext();
+        return () -> contextStorage.callWith(captured, task);
+    }
+
+    /**
+     * Capture a detached copy of the current user context.
+     *
+     * @return the captured context, or null if no user is bound
+     */
+    public UserContext captureUserContext() {
+        UserContext ctx = contextStorage.current();
+        return ctx != null ? ctx.copy() : null;
+    }
+
+    /**
+     * Get the active context propagation mode ("threadlocal" or "scoped").
+     */
+    public String getContextPropagationMode() {
+        return contextStorage.getMode();
+    }
+
+    private UserContext currentContext() {
+        UserContext ctx = contextStorage.current();
+        return ctx != null ? ctx : EMPTY_CONTEXT;
     }
 
     /**
@@ -196,7 +300,7 @@ public class ActionInjector {
         try {
             OperationType opType = determineOperationType(methodName);
             EntityType entityType = determineEntityType(className);
-            UserContext ctx = userContext.get();
+            UserContext ctx = currentContext();
 
             UserAction action = UserAction.lpsBuilder()
                     .withTimestamp(LocalDateTime.now())
@@ -227,7 +331,7 @@ public class ActionInjector {
         try {
             OperationType opType = determineOperationType(methodName);
             EntityType entityType = determineEntityType(className);
-            UserContext ctx = userContext.get();
+            UserContext ctx = currentContext();
 
             String entityId = extractEntityId(args);
             Double productPrice = null;
@@ -272,7 +376,7 @@ public class ActionInjector {
         try {
             OperationType opType = determineOperationType(methodName);
             EntityType entityType = determineEntityType(className);
-            UserContext ctx = userContext.get();
+            UserContext ctx = currentContext();
 
             UserAction action = UserAction.lpsBuilder()
                     .withTimestamp(LocalDateTime.now())
@@ -391,7 +495,7 @@ public class ActionInjector {
      * Shutdown the action injector.
      */
     public void shutdown() {
-        userContext.remove();
+        contextStorage.clear();
         if (recorder != null) {
             recorder.shutdown();
         }
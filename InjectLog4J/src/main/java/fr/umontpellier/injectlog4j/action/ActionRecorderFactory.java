@@ -1,5 +1,6 @@
 package fr.umontpellier.injectlog4j.action;
 
+import fr.umontpellier.injectlog4j.output.KafkaEncoding;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -49,7 +50,12 @@ public class ActionRecorderFactory {
             topic = System.getProperty("action.log.topic", "action-logs");
         }
 
-        return new KafkaActionRecorder(config, topic);
+        String encoding = System.getenv("ACTION_LOG_ENCODING");
+        if (encoding == null || encoding.isEmpty()) {
+            encoding = System.getProperty("action.log.encoding");
+        }
+
+        return new KafkaActionRecorder(config, topic, KafkaEncoding.from(encoding));
     }
 
     /**
@@ -0,0 +1,37 @@
+package fr.umontpellier.injectlog4j.action;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executor wrapper that carries the ActionInjector user context from the
+ * submitting thread to the thread that runs the task.
+ *
+ * Use it for {@code CompletableFuture.*Async(..., executor)}, Spring
+ * {@code @Async} executors or any hand-off where actions must still be
+ * attributed to the requesting user.
+ */
+public class ContextPropagatingExecutor implements Executor {
+
+    private final Executor delegate;
+
+    public ContextPropagatingExecutor(Executor delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate executor cannot be null");
+        }
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(ActionInjector.getInstance().wrap(command));
+    }
+
+    /**
+     * Get the wrapped executor.
+     *
+     * @return the delegate executor
+     */
+    public Executor getDelegate() {
+        return delegate;
+    }
+}
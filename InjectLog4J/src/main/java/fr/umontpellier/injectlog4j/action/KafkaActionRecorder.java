@@ -1,13 +1,15 @@
 package fr.umontpellier.injectlog4j.action;
 
-import org.apache.kafka.clients.producer.KafkaProducer;
-import org.apache.kafka.clients.producer.ProducerConfig;
+import fr.umontpellier.injectlog4j.output.KafkaEncoding;
+import fr.umontpellier.injectlog4j.output.KafkaProducerPool;
+import fr.umontpellier.injectlog4j.output.LogEnvelope;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
-import org.apache.kafka.common.serialization.StringSerializer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.Properties;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -17,7 +19,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Kafka-based implementation of ActionRecorder.
  * Records user actions to a Kafka topic for downstream processing.
  * 
- * Uses an asynchronous queue to avoid blocking the main application thread.
+ * Uses an asynchronous queue to avoid blocking the main application thread,
+ * and the cluster's shared producer (see {@link KafkaProducerPool}).
+ * Actions are written as JSON text or, in binary encoding, as a
+ * {@link LogEnvelope} whose message is that JSON.
  */
 public class KafkaActionRecorder implements ActionRecorder {
 
@@ -26,7 +31,8 @@ public class KafkaActionRecorder implements ActionRecorder {
     private static final int QUEUE_CAPACITY = 10000;
 
     private final String topic;
-    private final KafkaProducer<String, String> producer;
+    private final KafkaEncoding encoding;
+    private final Producer<String, byte[]> producer;
     private final BlockingQueue<UserAction> actionQueue;
     private final Thread workerThread;
     private final AtomicBoolean running;
@@ -43,25 +49,24 @@ public class KafkaActionRecorder implements ActionRecorder {
      * Create a Kafka action recorder with custom topic.
      */
     public KafkaActionRecorder(String bootstrapServers, String topic) {
+        this(bootstrapServers, topic, KafkaEncoding.TEXT);
+    }
+
+    /**
+     * Create a Kafka action recorder with custom topic and encoding.
+     */
+    public KafkaActionRecorder(String bootstrapServers, String topic, KafkaEncoding encoding) {
         this.topic = topic;
+        this.encoding = encoding != null ? encoding : KafkaEncoding.TEXT;
         this.actionQueue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
         this.running = new AtomicBoolean(true);
 
         boolean producerCreated = false;
-        KafkaProducer<String, String> tempProducer = null;
+        Producer<String, byte[]> tempProducer = null;
 
         if (bootstrapServers != null && !bootstrapServers.isEmpty()) {
             try {
-                Properties props = new Properties();
-                props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-                props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-                props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-                props.put(ProducerConfig.ACKS_CONFIG, "1");
-                props.put(ProducerConfig.RETRIES_CONFIG, 3);
-                props.put(ProducerConfig.LINGER_MS_CONFIG, 10);
-                props.put(ProducerConfig.BATCH_SIZE_CONFIG, 16384);
-
-                tempProducer = new KafkaProducer<>(props);
+                tempProducer = KafkaProducerPool.acquireBinary(bootstrapServers);
                 producerCreated = true;
                 LOGGER.info("KafkaActionRecorder initialized with topic: {}", topic);
             } catch (Exception e) {
@@ -112,6 +117,7 @@ public class KafkaActionRecorder implements ActionRecorder {
 
         if (producer != null) {
             try {
+                // Releases the shared producer
                 producer.close();
             } catch (Exception e) {
                 LOGGER.debug("Error closing Kafka producer: {}", e.getMessage());
@@ -145,9 +151,9 @@ public class KafkaActionRecorder implements ActionRecorder {
         try {
             String key = action.getUserEmail() != null ? action.getUserEmail()
                     : action.getUserId() != null ? action.getUserId() : "anonymous";
-            String value = action.toStructuredLog();
+            byte[] value = encode(action);
 
-            ProducerRecord<String, String> record = new ProducerRecord<>(topic, key, value);
+            ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, key, value);
             producer.send(record, (metadata, exception) -> {
                 if (exception != null) {
                     LOGGER.debug("Failed to send action to Kafka: {}", exception.getMessage());
@@ -157,4 +163,20 @@ public class KafkaActionRecorder implements ActionRecorder {
             LOGGER.debug("Error sending action to Kafka: {}", e.getMessage());
         }
     }
+
+    private byte[] encode(UserAction action) {
+        String json = action.toStructuredLog();
+        if (encoding != KafkaEncoding.BINARY) {
+            return json.getBytes(StandardCharsets.UTF_8);
+        }
+        long timestamp = action.getTimestamp() != null
+                ? LogEnvelope.toMicros(action.getTimestamp())
+                : LogEnvelope.toMicros(Instant.now());
+        String rule = action.getClassName() != null && action.getMethodName() != null
+                ? action.getClassName() + "." + action.getMethodName()
+                : null;
+        return LogEnvelope.encode(timestamp,
+                action.isSuccessful() ? LogEnvelope.Level.INFO : LogEnvelope.Level.ERROR,
+                action.getClassName(), rule, null, json);
+    }
 }
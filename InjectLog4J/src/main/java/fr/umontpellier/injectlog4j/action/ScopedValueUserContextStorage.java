@@ -0,0 +1,138 @@
+package fr.umontpellier.injectlog4j.action;
+
+import fr.umontpellier.injectlog4j.action.ActionInjector.UserContext;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Callable;
+
+/**
+ * ScopedValue-based implementation of UserContextStorage.
+ *
+ * The context is bound with {@code ScopedValue.where(...).run(...)} for the
+ * duration of {@link #callWith(UserContext, Callable)}, so it is immutable,
+ * cheap to inherit and never leaks past the scope, which suits virtual
+ * threads. ScopedValue is a preview API in Java 21, so it is looked up through
+ * method handles and the library still compiles without --enable-preview.
+ *
+ * Imperative {@link #set(UserContext)} / {@link #clear()} calls cannot be
+ * expressed with a ScopedValue; they go to a ThreadLocal fallback that is
+ * only consulted when no scoped binding is present.
+ */
+public class ScopedValueUserContextStorage implements UserContextStorage {
+
+    public static final String MODE = "scoped";
+
+    private static final String SCOPED_VALUE_CLASS = "java.lang.ScopedValue";
+
+    /**
+     * Sentinel bound when a scope explicitly carries "no user".
+     */
+    private static final UserContext NONE = new UserContext();
+
+    private final Object scopedValue;
+    private final MethodHandle where;
+    private final MethodHandle isBound;
+    private final MethodHandle get;
+    private final MethodHandle run;
+    private final ThreadLocalUserContextStorage fallback = new ThreadLocalUserContextStorage();
+
+    /**
+     * Create the storage.
+     *
+     * @throws ReflectiveOperationException if ScopedValue is not available on
+     *                                      this runtime
+     */
+    public ScopedValueUserContextStorage() throws ReflectiveOperationException {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        Class<?> scopedValueClass = Class.forName(SCOPED_VALUE_CLASS);
+        Class<?> carrierClass = Class.forName(SCOPED_VALUE_CLASS + "$Carrier");
+
+        MethodHandle newInstance = lookup.findStatic(scopedValueClass, "newInstance",
+                MethodType.methodType(scopedValueClass));
+        this.where = lookup.findStatic(scopedValueClass, "where",
+                MethodType.methodType(carrierClass, scopedValueClass, Object.class));
+        this.isBound = lookup.findVirtual(scopedValueClass, "isBound", MethodType.methodType(boolean.class));
+        this.get = lookup.findVirtual(scopedValueClass, "get", MethodType.methodType(Object.class));
+        this.run = lookup.findVirtual(carrierClass, "run", MethodType.methodType(void.class, Runnable.class));
+
+        try {
+            this.scopedValue = newInstance.invoke();
+        } catch (Throwable t) {
+            throw new ReflectiveOperationException("Unable to create ScopedValue", t);
+        }
+    }
+
+    /**
+     * Check whether ScopedValue can be used on this runtime.
+     *
+     * @return true if java.lang.ScopedValue is present
+     */
+    public static boolean isSupported() {
+        try {
+            Class.forName(SCOPED_VALUE_CLASS);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public UserContext current() {
+        try {
+            if ((boolean) isBound.invoke(scopedValue)) {
+                UserContext bound = (UserContext) get.invoke(scopedValue);
+                return bound == NONE ? null : bound;
+            }
+        } catch (Throwable t) {
+            // Fall through to the ThreadLocal binding
+        }
+        return fallback.current();
+    }
+
+    @Override
+    public void set(UserContext context) {
+        fallback.set(context);
+    }
+
+    @Override
+    public void clear() {
+        fallback.clear();
+    }
+
+    @Override
+    public <T> T callWith(UserContext context, Callable<T> task) throws Exception {
+        Object[] result = new Object[1];
+        Exception[] failure = new Exception[1];
+
+        Runnable body = () -> {
+            try {
+                result[0] = task.call();
+            } catch (Exception e) {
+                failure[0] = e;
+            }
+        };
+
+        try {
+            Object carrier = where.invoke(scopedValue, context != null ? context : NONE);
+            run.invoke(carrier, body);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to bind ScopedValue user context", t);
+        }
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+
+    @Override
+    public String getMode() {
+        return MODE;
+    }
+}
@@ -0,0 +1,54 @@
+package fr.umontpellier.injectlog4j.action;
+
+import fr.umontpellier.injectlog4j.action.ActionInjector.UserContext;
+
+import java.util.concurrent.Callable;
+
+/**
+ * ThreadLocal-based implementation of UserContextStorage.
+ *
+ * This is the historical behaviour of ActionInjector. No initial value is
+ * installed, so threads that never see a user (schedulers, Kafka callbacks)
+ * do not allocate a ThreadLocal map entry.
+ */
+public class ThreadLocalUserContextStorage implements UserContextStorage {
+
+    public static final String MODE = "threadlocal";
+
+    private final ThreadLocal<UserContext> holder = new ThreadLocal<>();
+
+    @Override
+    public UserContext current() {
+        return holder.get();
+    }
+
+    @Override
+    public void set(UserContext context) {
+        if (context == null) {
+            holder.remove();
+        } else {
+            holder.set(context);
+        }
+    }
+
+    @Override
+    public void clear() {
+        holder.remove();
+    }
+
+    @Override
+    public <T> T callWith(UserContext context, Callable<T> task) throws Exception {
+        UserContext previous = holder.get();
+        set(context);
+        try {
+            return task.call();
+        } finally {
+            set(previous);
+        }
+    }
+
+    @Override
+    public String getMode() {
+        return MODE;
+    }
+}
@@ -0,0 +1,53 @@
+package fr.umontpellier.injectlog4j.action;
+
+import fr.umontpellier.injectlog4j.action.ActionInjector.UserContext;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Strategy for storing the user context attached to the current unit of work.
+ *
+ * Implementations decide how the context is bound (ThreadLocal, ScopedValue,
+ * ...) and how it is made visible to code running inside a bounded scope.
+ */
+public interface UserContextStorage {
+
+    /**
+     * Get the context bound to the current unit of work.
+     *
+     * @return the current context, or null if none is bound
+     */
+    UserContext current();
+
+    /**
+     * Bind a context to the current thread until {@link #clear()} is called.
+     * Used by callers that cannot wrap their work in a scope (e.g. servlet
+     * filters written against the imperative API).
+     *
+     * @param context the context to bind
+     */
+    void set(UserContext context);
+
+    /**
+     * Remove any context bound with {@link #set(UserContext)}.
+     */
+    void clear();
+
+    /**
+     * Run a task with the given context bound for its whole duration.
+     * The previous binding is restored when the task completes.
+     *
+     * @param context the context to bind (may be null)
+     * @param task    the task to run
+     * @return the task result
+     * @throws Exception if the task throws
+     */
+    <T> T callWith(UserContext context, Callable<T> task) throws Exception;
+
+    /**
+     * Get the name of this storage mode (for diagnostics).
+     *
+     * @return the mode name
+     */
+    String getMode();
+}
@@ -0,0 +1,65 @@
+package fr.umontpellier.injectlog4j.action;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Factory for creating UserContextStorage instances based on configuration.
+ */
+public class UserContextStorageFactory {
+
+    private static final Logger LOGGER = LogManager.getLogger(UserContextStorageFactory.class);
+
+    private UserContextStorageFactory() {
+        // Utility class
+    }
+
+    /**
+     * Create a UserContextStorage based on the propagation mode.
+     *
+     * @param mode the propagation mode ("scoped", "threadlocal", or null for
+     *             threadlocal)
+     * @return the UserContextStorage instance
+     */
+    public static UserContextStorage create(String mode) {
+        if (mode == null || mode.isEmpty()) {
+            return new ThreadLocalUserContextStorage();
+        }
+
+        return switch (mode.toLowerCase()) {
+            case ScopedValueUserContextStorage.MODE, "scopedvalue", "scoped-value" -> createScopedStorage();
+            case ThreadLocalUserContextStorage.MODE, "thread-local" -> new ThreadLocalUserContextStorage();
+            default -> {
+                LOGGER.warn("Unknown context propagation mode: {}, using threadlocal", mode);
+                yield new ThreadLocalUserContextStorage();
+            }
+        };
+    }
+
+    /**
+     * Resolve the propagation mode from the environment or system properties.
+     *
+     * @return the configured mode, or null if none is configured
+     */
+    public static String resolveConfiguredMode() {
+        String mode = System.getenv("ACTION_CONTEXT_PROPAGATION");
+        if (mode == null || mode.isEmpty()) {
+            mode = System.getProperty("action.context.propagation");
+        }
+        return mode;
+    }
+
+    private static UserContextStorage createScopedStorage() {
+        if (!ScopedValueUserContextStorage.isSupported()) {
+            LOGGER.warn("ScopedValue is not available on this runtime, falling back to threadlocal");
+            return new ThreadLocalUserContextStorage();
+        }
+        try {
+            return new ScopedValueUserContextStorage();
+        } catch (ReflectiveOperationException e) {
+            LOGGER.warn("Failed to initialize ScopedValue context storage, falling back to threadlocal: {}",
+                    e.getMessage());
+            return new ThreadLocalUserContextStorage();
+        }
+    }
+}
@@ -33,6 +33,11 @@ import java.util.List;
  *         format: "{{time}} [{{level}}] {{message}}"
  *       - path: logs/all.log
  *         format: "{{time}} [{{category}}] {{message}}"
+ *   audit:
+ *     output: kafka
+ *     topic: audit-logs
+ *     partitionKey: user  # Record key: target (default), user, round-robin, none or level
+ *     encoding: binary    # Record value: text (default) or binary (LogEnvelope)
  * </pre>
  */
 public class LoggerConfig {
@@ -42,6 +47,8 @@ public class LoggerConfig {
     private String log4jLogger; // Log4J2 logger name from project's configuration
     private String topic; // For Kafka output
     private String bootstrapServers; // For Kafka output
+    private String partitionKey; // For Kafka output: target, user, round-robin, none or level
+    private String encoding; // For Kafka output: text or binary
     private String category; // Logger category: system, business
     private List<FileConfig> files; // Multiple file outputs
 
@@ -210,6 +217,32 @@ public class LoggerConfig {
         this.bootstrapServers = bootstrapServers;
     }
 
+    /**
+     * Get how Kafka records are keyed (see KafkaKeyStrategy).
+     *
+     * @return the key strategy name, or null for the default (target)
+     */
+    public String getPartitionKey() {
+        return partitionKey;
+    }
+
+    public void setPartitionKey(String partitionKey) {
+        this.partitionKey = partitionKey;
+    }
+
+    /**
+     * Get how Kafka record values are written (see KafkaEncoding).
+     *
+     * @return the encoding name, or null for the default (text)
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
     @Override
     public String toString() {
         return "LoggerConfig{" +
@@ -220,6 +253,8 @@ public class LoggerConfig {
                 ", files=" + files +
                 ", topic='" + topic + '\'' +
                 ", bootstrapServers='" + bootstrapServers + '\'' +
+                ", partitionKey='" + partitionKey + '\'' +
+                ", encoding='" + encoding + '\'' +
                 '}';
     }
 }
@@ -286,6 +286,12 @@ public class LoggingRulesLoader {
         if (loggerData.containsKey("bootstrapServers")) {
             loggerConfig.setBootstrapServers((String) loggerData.get("bootstrapServers"));
         }
+        if (loggerData.containsKey("partitionKey")) {
+            loggerConfig.setPartitionKey((String) loggerData.get("partitionKey"));
+        }
+        if (loggerData.containsKey("encoding")) {
+            loggerConfig.setEncoding((String) loggerData.get("encoding"));
+        }
         if (loggerData.containsKey("log4jLogger")) {
             loggerConfig.setLog4jLogger((String) loggerData.get("log4jLogger"));
         }
@@ -46,7 +46,7 @@ public class MessageFormatter {
             return context.getOrDefault(KEY_MESSAGE, "").toString();
         }
 
-        StringBuffer result = new StringBuffer();
+        StringBuilder result = new StringBuilder();
         Matcher matcher = PLACEHOLDER_PATTERN.matcher(format);
 
         while (matcher.find()) {
@@ -66,7 +66,7 @@ public class MessageFormatter {
         if (message == null) {
             return "";
         }
-        StringBuffer result = new StringBuffer();
+        StringBuilder result = new StringBuilder();
         Matcher matcher = PLACEHOLDER_PATTERN.matcher(message);
 
         while (matcher.find()) {
@@ -64,9 +64,14 @@ public class CompositeOutput implements LogOutput {
 
     @Override
     public void log(String level, String message) {
+        log(level, message, null);
+    }
+
+    @Override
+    public void log(String level, String message, String target) {
         for (LogOutput output : outputs) {
             try {
-                output.log(level, message);
+                output.log(level, message, target);
             } catch (Exception e) {
                 // Log to stderr but don't fail the other outputs
                 System.err.println("Failed to write to output: " + e.getMessage());
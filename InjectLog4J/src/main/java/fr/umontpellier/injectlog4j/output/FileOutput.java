@@ -3,12 +3,11 @@ package fr.umontpellier.injectlog4j.output;
 import fr.umontpellier.injectlog4j.config.LoggerConfig;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -17,7 +16,8 @@ import java.util.concurrent.locks.ReentrantLock;
  * <p>
  * Supports:
  * - Append mode (default) or overwrite mode
- * - Thread-safe writing
+ * - Thread-safe writing, under a ReentrantLock so that virtual threads
+ *   waiting for the file unmount instead of pinning their carrier
  * - Automatic directory creation
  * </p>
  */
@@ -26,8 +26,8 @@ public class FileOutput implements LogOutput {
     private final String filePath;
     private final boolean append;
     private final ReentrantLock lock = new ReentrantLock();
-    private PrintWriter writer;
-    private boolean initialized = false;
+    private BufferedWriter writer;
+    private volatile boolean initialized = false;
 
     public FileOutput(String filePath) {
         this(filePath, true);
@@ -61,7 +61,8 @@ public class FileOutput implements LogOutput {
                 Files.createDirectories(parent);
             }
 
-            writer = new PrintWriter(new BufferedWriter(new FileWriter(filePath, append)), true);
+            writer = Files.newBufferedWriter(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
             initialized = true;
         } catch (IOException e) {
             System.err.println("Failed to initialize file output for " + filePath + ": " + e.getMessage());
@@ -76,13 +77,16 @@ public class FileOutput implements LogOutput {
             initialize();
         }
 
-        if (writer == null) {
-            return;
-        }
-
         lock.lock();
         try {
-            writer.println(message);
+            if (writer == null) {
+                return;
+            }
+            writer.write(message);
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Failed to write to " + filePath + ": " + e.getMessage());
         } finally {
             lock.unlock();
         }
@@ -97,6 +101,8 @@ public class FileOutput implements LogOutput {
                 writer = null;
                 initialized = false;
             }
+        } catch (IOException e) {
+            System.err.println("Failed to close " + filePath + ": " + e.getMessage());
         } finally {
             lock.unlock();
         }
@@ -0,0 +1,47 @@
+package fr.umontpellier.injectlog4j.output;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Locale;
+
+/**
+ * How Kafka record values are written. Set with the {@code encoding}
+ * property of a kafka logger.
+ */
+public enum KafkaEncoding {
+
+    /**
+     * The formatted message as UTF-8 text, the default: for consumers
+     * reading plain lines.
+     */
+    TEXT,
+
+    /**
+     * A {@link LogEnvelope}: timestamp, level, logger, rule, thread and
+     * message as separate fields, decoded without parsing.
+     */
+    BINARY;
+
+    private static final Logger LOGGER = LogManager.getLogger(KafkaEncoding.class);
+
+    /**
+     * Get the encoding for an {@code encoding} value, case-insensitive
+     * ("envelope" is accepted for binary). Null or blank gives {@link #TEXT}.
+     */
+    public static KafkaEncoding from(String name) {
+        if (name == null || name.isBlank()) {
+            return TEXT;
+        }
+        String normalized = name.trim().toUpperCase(Locale.ROOT);
+        if (normalized.equals("ENVELOPE")) {
+            return BINARY;
+        }
+        try {
+            return valueOf(normalized);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Unknown Kafka encoding '{}', writing text", name);
+            return TEXT;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package fr.umontpellier.injectlog4j.output;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Locale;
+
+/**
+ * How {@link KafkaOutput} keys its records, which decides their partition
+ * and so what ordering consumers see. Set with the {@code partitionKey}
+ * property of a kafka logger.
+ *
+ * <p>
+ * Kafka only orders records within a partition, and a consumer group reads
+ * each partition from a single consumer: a key shared by most records (such
+ * as the log level) puts them all on one partition and one consumer thread.
+ * </p>
+ */
+public enum KafkaKeyStrategy {
+
+    /**
+     * Key by rule target (class.method or annotation id), the default: the
+     * records of one method stay in order, methods spread over partitions.
+     */
+    TARGET,
+
+    /**
+     * Key by the user id of the current ActionInjector context: one user's
+     * records stay in order. Records without a user are not keyed.
+     */
+    USER,
+
+    /**
+     * Send to each partition in turn: even load, no ordering between
+     * records. The partition count is read once, when the first record is
+     * sent.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * No key: Kafka's sticky partitioner fills a batch for one partition,
+     * then moves on. Even load over time and the fullest batches, no
+     * ordering between records.
+     */
+    NONE,
+
+    /**
+     * Key by log level, as before: nearly everything lands on the INFO
+     * partition. Only for consumers relying on per-level ordering.
+     */
+    LEVEL;
+
+    private static final Logger LOGGER = LogManager.getLogger(KafkaKeyStrategy.class);
+
+    /**
+     * Get the strategy for a {@code partitionKey} value, case-insensitive;
+     * "round-robin", "sticky" and "null" are accepted too. Null or blank
+     * gives {@link #TARGET}.
+     */
+    public static KafkaKeyStrategy from(String name) {
+        if (name == null || name.isBlank()) {
+            return TARGET;
+        }
+        String normalized = name.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+        if (normalized.equals("STICKY") || normalized.equals("NULL")) {
+            return NONE;
+        }
+        try {
+            return valueOf(normalized);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Unknown Kafka partitionKey '{}', keying by target", name);
+            return TARGET;
+        }
+    }
+}
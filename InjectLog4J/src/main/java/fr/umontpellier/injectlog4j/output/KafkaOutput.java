@@ -1,35 +1,50 @@
 package fr.umontpellier.injectlog4j.output;
 
-import org.apache.kafka.clients.producer.KafkaProducer;
-import org.apache.kafka.clients.producer.ProducerConfig;
+import fr.umontpellier.injectlog4j.action.ActionInjector;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
-import org.apache.kafka.common.serialization.StringSerializer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.Properties;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Log output that sends messages to Kafka.
+ * Log output that sends messages to Kafka, through the cluster's shared
+ * producer (see {@link KafkaProducerPool}). Records are keyed according to
+ * a {@link KafkaKeyStrategy} and written according to a {@link KafkaEncoding}.
  */
 public class KafkaOutput implements LogOutput {
 
     private static final Logger LOGGER = LogManager.getLogger(KafkaOutput.class);
 
-    private final KafkaProducer<String, String> producer;
+    private final Producer<String, byte[]> producer;
     private final String topic;
+    private final KafkaKeyStrategy keyStrategy;
+    private final KafkaEncoding encoding;
+    private final String loggerName;
+    private final AtomicInteger nextPartition = new AtomicInteger();
+    private volatile int partitionCount;
 
-    public KafkaOutput(String bootstrapServers, String topic) {
+    /**
+     * @param loggerName the logger written into binary records
+     */
+    public KafkaOutput(String bootstrapServers, String topic, KafkaKeyStrategy keyStrategy,
+            KafkaEncoding encoding, String loggerName) {
+        this.producer = KafkaProducerPool.acquireBinary(bootstrapServers);
         this.topic = topic;
+        this.keyStrategy = keyStrategy != null ? keyStrategy : KafkaKeyStrategy.TARGET;
+        this.encoding = encoding != null ? encoding : KafkaEncoding.TEXT;
+        this.loggerName = loggerName;
+    }
 
-        Properties props = new Properties();
-        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-        props.put(ProducerConfig.ACKS_CONFIG, "1");
-        props.put(ProducerConfig.RETRIES_CONFIG, 3);
+    public KafkaOutput(String bootstrapServers, String topic, KafkaKeyStrategy keyStrategy) {
+        this(bootstrapServers, topic, keyStrategy, KafkaEncoding.TEXT, null);
+    }
 
-        this.producer = new KafkaProducer<>(props);
+    public KafkaOutput(String bootstrapServers, String topic) {
+        this(bootstrapServers, topic, KafkaKeyStrategy.TARGET);
     }
 
     public KafkaOutput(String bootstrapServers) {
@@ -38,10 +53,22 @@ public class KafkaOutput implements LogOutput {
 
     @Override
     public void log(String level, String message) {
-        String key = level;
-        String logMessage = message;
+        log(level, message, null);
+    }
 
-        ProducerRecord<String, String> producerRecord = new ProducerRecord<>(topic, key, logMessage);
+    @Override
+    public void log(String level, String message, String target) {
+        byte[] value = encoding == KafkaEncoding.BINARY
+                ? LogEnvelope.encode(LogEnvelope.toMicros(Instant.now()), LogEnvelope.Level.of(level), loggerName,
+                        target, Thread.currentThread().getName(), message)
+                : message.getBytes(StandardCharsets.UTF_8);
+        ProducerRecord<String, byte[]> producerRecord = switch (keyStrategy) {
+            case TARGET -> new ProducerRecord<>(topic, target, value);
+            case USER -> new ProducerRecord<>(topic, currentUserId(), value);
+            case ROUND_ROBIN -> new ProducerRecord<>(topic, nextPartition(), null, value);
+            case NONE -> new ProducerRecord<>(topic, value);
+            case LEVEL -> new ProducerRecord<>(topic, level, value);
+        };
         producer.send(producerRecord, (metadata, exception) -> {
             if (exception != null) {
                 LOGGER.error("Failed to send log to Kafka: {}", exception.getMessage());
@@ -49,9 +76,43 @@ public class KafkaOutput implements LogOutput {
         });
     }
 
+    public KafkaKeyStrategy getKeyStrategy() {
+        return keyStrategy;
+    }
+
+    public KafkaEncoding getEncoding() {
+        return encoding;
+    }
+
+    private static String currentUserId() {
+        return ActionInjector.getInstance().getCurrentUserContext().getUserId();
+    }
+
+    /**
+     * Get the next partition in turn, or null to let Kafka choose when the
+     * topic's partitions cannot be read.
+     */
+    private Integer nextPartition() {
+        int partitions = partitionCount;
+        if (partitions == 0) {
+            try {
+                partitions = producer.partitionsFor(topic).size();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Could not read partitions of {}: {}", topic, e.getMessage());
+                return null;
+            }
+            if (partitions == 0) {
+                return null;
+            }
+            partitionCount = partitions;
+        }
+        return Math.floorMod(nextPartition.getAndIncrement(), partitions);
+    }
+
     @Override
     public void close() {
         if (producer != null) {
+            // Send this output's records, then release the shared producer
             producer.flush();
             producer.close();
         }
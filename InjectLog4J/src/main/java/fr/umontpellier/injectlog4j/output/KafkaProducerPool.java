@@ -0,0 +1,340 @@
+package fr.umontpellier.injectlog4j.output;
+
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.Uuid;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Kafka producers shared by every Kafka client of the JVM: {@link KafkaOutput},
+ * the KafkaActionRecorder and, through its producer factory, the
+ * application itself.
+ *
+ * A KafkaProducer is thread-safe and batches the records of all topics
+ * together, so one per cluster is enough; each extra producer only adds
+ * buffers, an I/O thread and metadata requests. The pool keeps one producer
+ * per bootstrap servers string and counts its users: closing an acquired
+ * producer releases it, and the last release closes the real one. Text and
+ * binary users (see {@link #acquireBinary(String)}) share the same producer:
+ * its {@link ValueSerializer} writes both.
+ *
+ * <p>
+ * Producer settings, lowest precedence first:
+ * - the defaults below (acks=all with idempotence, lz4 compression, 64 KB
+ *   batches lingering 10 ms, 32 MB of buffer memory)
+ * - system properties named {@code kafka.producer.<Kafka setting>}, e.g.
+ *   {@code -Dkafka.producer.compression.type=zstd}
+ * - settings passed to {@link #configure(Map)}
+ * They apply to producers created afterwards.
+ * </p>
+ */
+public final class KafkaProducerPool {
+
+    private static final Logger LOGGER = LogManager.getLogger(KafkaProducerPool.class);
+
+    public static final String PROPERTY_PREFIX = "kafka.producer.";
+
+    private static final Map<String, Object> DEFAULTS = Map.of(
+            ProducerConfig.ACKS_CONFIG, "all",
+            ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true,
+            ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4",
+            ProducerConfig.BATCH_SIZE_CONFIG, 65536,
+            ProducerConfig.LINGER_MS_CONFIG, 10,
+            ProducerConfig.BUFFER_MEMORY_CONFIG, 33554432L);
+
+    private static final Map<String, SharedProducer> producers = new HashMap<>();
+    private static final ReentrantLock lock = new ReentrantLock();
+    private static volatile Map<String, Object> settings = Map.of();
+    private static volatile SendListener sendListener;
+    private static volatile Function<Map<String, Object>, Producer<String, Object>> producerSupplier =
+            KafkaProducer::new;
+
+    /**
+     * Notified of every completed send, on the producer's I/O thread: keep it
+     * short.
+     */
+    @FunctionalInterface
+    public interface SendListener {
+
+        /**
+         * @param topic        the record's topic
+         * @param size         serialized key and value size in bytes, or -1
+         *                     if the send failed
+         * @param latencyNanos time from send() to the broker's acknowledgement
+         * @param exception    why the send failed, or null
+         */
+        void onCompletion(String topic, int size, long latencyNanos, Exception exception);
+    }
+
+    private KafkaProducerPool() {
+    }
+
+    /**
+     * Override producer settings (Kafka setting names) for producers created
+     * from now on.
+     */
+    public static void configure(Map<String, ?> overrides) {
+        lock.lock();
+        try {
+            settings = Map.copyOf(overrides);
+            if (!producers.isEmpty()) {
+                LOGGER.warn("Kafka producer settings changed while {} producer(s) are open; "
+                        + "they keep their settings until released", producers.size());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Set the listener notified of completed sends, or null for none.
+     */
+    public static void setSendListener(SendListener listener) {
+        sendListener = listener;
+    }
+
+    /**
+     * Replace the way producers are created (for testing).
+     */
+    public static void setProducerSupplier(Function<Map<String, Object>, Producer<String, Object>> supplier) {
+        producerSupplier = supplier != null ? supplier : KafkaProducer::new;
+    }
+
+    /**
+     * Get the shared producer for a cluster, creating it on first use. Close
+     * the returned producer to release it.
+     */
+    public static Producer<String, String> acquire(String bootstrapServers) {
+        return new PooledProducer<>(retain(bootstrapServers));
+    }
+
+    /**
+     * Get the shared producer for a cluster, for binary values. Close the
+     * returned producer to release it.
+     */
+    public static Producer<String, byte[]> acquireBinary(String bootstrapServers) {
+        return new PooledProducer<>(retain(bootstrapServers));
+    }
+
+    private static SharedProducer retain(String bootstrapServers) {
+        lock.lock();
+        try {
+            SharedProducer shared = producers.get(bootstrapServers);
+            if (shared == null) {
+                shared = new SharedProducer(bootstrapServers, producerSupplier.apply(producerConfig(bootstrapServers)));
+                producers.put(bootstrapServers, shared);
+                LOGGER.info("Created shared Kafka producer for {}", bootstrapServers);
+            }
+            shared.references++;
+            return shared;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of open shared producers.
+     */
+    public static int size() {
+        lock.lock();
+        try {
+            return producers.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Build the configuration of a new producer.
+     */
+    static Map<String, Object> producerConfig(String bootstrapServers) {
+        Map<String, Object> config = new HashMap<>(DEFAULTS);
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(PROPERTY_PREFIX)) {
+                config.put(name.substring(PROPERTY_PREFIX.length()), System.getProperty(name));
+            }
+        }
+        config.putAll(settings);
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ValueSerializer.class.getName());
+        return config;
+    }
+
+    private static void release(SharedProducer shared, Duration timeout) {
+        lock.lock();
+        try {
+            if (--shared.references > 0) {
+                return;
+            }
+            producers.remove(shared.bootstrapServers, shared);
+        } finally {
+            lock.unlock();
+        }
+        shared.producer.close(timeout);
+    }
+
+    /**
+     * Value serializer of the shared producers: strings as UTF-8, byte arrays
+     * as they are.
+     */
+    public static final class ValueSerializer implements Serializer<Object> {
+
+        @Override
+        public byte[] serialize(String topic, Object data) {
+            if (data == null) {
+                return null;
+            }
+            if (data instanceof byte[] bytes) {
+                return bytes;
+            }
+            return data.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class SharedProducer {
+
+        private final String bootstrapServers;
+        private final Producer<String, Object> producer;
+        private int references;
+
+        SharedProducer(String bootstrapServers, Producer<String, Object> producer) {
+            this.bootstrapServers = bootstrapServers;
+            this.producer = producer;
+        }
+    }
+
+    /**
+     * One user's handle on a shared producer: sends are timed for the
+     * {@link SendListener}, close releases the producer.
+     */
+    private static final class PooledProducer<V> implements Producer<String, V> {
+
+        private static final Duration DEFAULT_CLOSE_TIMEOUT = Duration.ofSeconds(30);
+
+        private final SharedProducer shared;
+        private final Producer<String, Object> delegate;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        PooledProducer(SharedProducer shared) {
+            this.shared = shared;
+            this.delegate = shared.producer;
+        }
+
+        @Override
+        public Future<RecordMetadata> send(ProducerRecord<String, V> record) {
+            return send(record, null);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Future<RecordMetadata> send(ProducerRecord<String, V> record, Callback callback) {
+            // Records are immutable and the serializer takes any value
+            ProducerRecord<String, Object> anyRecord = (ProducerRecord<String, Object>) (ProducerRecord<String, ?>) record;
+            SendListener listener = sendListener;
+            if (listener == null) {
+                return delegate.send(anyRecord, callback);
+            }
+            long start = System.nanoTime();
+            return delegate.send(anyRecord, (metadata, exception) -> {
+                int size = exception == null && metadata != null
+                        ? Math.max(0, metadata.serializedKeySize()) + Math.max(0, metadata.serializedValueSize())
+                        : -1;
+                listener.onCompletion(record.topic(), size, System.nanoTime() - start, exception);
+                if (callback != null) {
+                    callback.onCompletion(metadata, exception);
+                }
+            });
+        }
+
+        @Override
+        public void flush() {
+            delegate.flush();
+        }
+
+        @Override
+        public List<PartitionInfo> partitionsFor(String topic) {
+            return delegate.partitionsFor(topic);
+        }
+
+        @Override
+        public Map<MetricName, ? extends Metric> metrics() {
+            return delegate.metrics();
+        }
+
+        @Override
+        public Uuid clientInstanceId(Duration timeout) {
+            return delegate.clientInstanceId(timeout);
+        }
+
+        @Override
+        public void close() {
+            close(DEFAULT_CLOSE_TIMEOUT);
+        }
+
+        @Override
+        public void close(Duration timeout) {
+            if (released.compareAndSet(false, true)) {
+                release(shared, timeout);
+            }
+        }
+
+        // The shared producers are not transactional
+
+        @Override
+        public void initTransactions() {
+            throw new UnsupportedOperationException("Shared Kafka producers are not transactional");
+        }
+
+        @Override
+        public void beginTransaction() {
+            throw new UnsupportedOperationException("Shared Kafka producers are not transactional");
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void sendOffsetsToTransaction(Map<TopicPartition, OffsetAndMetadata> offsets,
+                String consumerGroupId) {
+            throw new UnsupportedOperationException("Shared Kafka producers are not transactional");
+        }
+
+        @Override
+        public void sendOffsetsToTransaction(Map<TopicPartition, OffsetAndMetadata> offsets,
+                ConsumerGroupMetadata groupMetadata) {
+            throw new UnsupportedOperationException("Shared Kafka producers are not transactional");
+        }
+
+        @Override
+        public void commitTransaction() {
+            throw new UnsupportedOperationException("Shared Kafka producers are not transactional");
+        }
+
+        @Override
+        public void abortTransaction() {
+            throw new UnsupportedOperationException("Shared Kafka producers are not transactional");
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package fr.umontpellier.injectlog4j.output;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact binary encoding of a log event, for consumers that would otherwise
+ * parse formatted text lines back apart.
+ *
+ * <p>
+ * Layout, version 1:
+ * </p>
+ *
+ * <pre>
+ * byte    magic (0xC1, a byte that never occurs in UTF-8 text)
+ * byte    version
+ * varlong timestamp, microseconds since the epoch
+ * byte    level code (see {@link Level})
+ * string  logger
+ * string  rule id (rule target, empty if none)
+ * string  thread
+ * string  message
+ * </pre>
+ *
+ * A string is its UTF-8 length as an unsigned varint followed by its UTF-8
+ * bytes. Later versions only append fields: a decoder reads the fields it
+ * knows and ignores the rest, so records of any version can be decoded.
+ *
+ * <p>
+ * Logger and rule ids come from a small, fixed set of names: their UTF-8
+ * bytes are encoded once and reused (up to {@value #MAX_INTERNED} names).
+ * They travel inline rather than as numeric ids, as a Kafka consumer cannot
+ * rely on having read a dictionary record first.
+ * </p>
+ */
+public final class LogEnvelope {
+
+    public static final byte MAGIC = (byte) 0xC1;
+    public static final byte VERSION = 1;
+
+    static final int MAX_INTERNED = 4096;
+
+    private static final Map<String, byte[]> INTERNED = new ConcurrentHashMap<>();
+
+    /**
+     * Log levels with their wire codes. Codes are part of the format: never
+     * renumber them.
+     */
+    public enum Level {
+        TRACE(1), DEBUG(2), INFO(3), WARN(4), ERROR(5), FATAL(6), UNKNOWN(0);
+
+        private final int code;
+
+        Level(int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        /**
+         * Get the level of a log level name, case-insensitive, or UNKNOWN.
+         */
+        public static Level of(String name) {
+            if (name == null) {
+                return UNKNOWN;
+            }
+            return switch (name.trim().toUpperCase(Locale.ROOT)) {
+                case "TRACE" -> TRACE;
+                case "DEBUG" -> DEBUG;
+                case "INFO" -> INFO;
+                case "WARN", "WARNING" -> WARN;
+                case "ERROR" -> ERROR;
+                case "FATAL" -> FATAL;
+                default -> UNKNOWN;
+            };
+        }
+
+        /**
+         * Get the level of a wire code, or UNKNOWN.
+         */
+        public static Level fromCode(int code) {
+            for (Level level : values()) {
+                if (level.code == code) {
+                    return level;
+                }
+            }
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * A decoded log event.
+     */
+    public record Event(long timestampMicros, Level level, String logger, String rule, String thread,
+            String message) {
+
+        public Instant timestamp() {
+            return Instant.ofEpochSecond(Math.floorDiv(timestampMicros, 1_000_000L),
+                    Math.floorMod(timestampMicros, 1_000_000L) * 1_000L);
+        }
+    }
+
+    private LogEnvelope() {
+    }
+
+    /**
+     * Get the envelope timestamp of an instant.
+     */
+    public static long toMicros(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L), instant.getNano() / 1_000L);
+    }
+
+    /**
+     * Get the envelope timestamp of a local date-time in the system zone.
+     */
+    public static long toMicros(LocalDateTime dateTime) {
+        return toMicros(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * Encode an event.
+     */
+    public static byte[] encode(long timestampMicros, Level level, String logger, String rule, String thread,
+            String message) {
+        byte[] messageBytes = utf8(message);
+        Output out = new Output(32 + messageBytes.length);
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.writeVarLong(timestampMicros);
+        out.write((level != null ? level : Level.UNKNOWN).code);
+        out.writeField(interned(logger));
+        out.writeField(interned(rule));
+        out.writeField(utf8(thread));
+        out.writeField(messageBytes);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encode an event.
+     */
+    public static byte[] encode(Event event) {
+        return encode(event.timestampMicros(), event.level(), event.logger(), event.rule(), event.thread(),
+                event.message());
+    }
+
+    /**
+     * Check whether a record value is an envelope rather than a text line.
+     */
+    public static boolean isEnvelope(byte[] value) {
+        return value != null && value.length >= 2 && value[0] == MAGIC;
+    }
+
+    /**
+     * Decode an envelope.
+     *
+     * @throws IllegalArgumentException if the value is not a well-formed
+     *                                  envelope
+     */
+    public static Event decode(byte[] value) {
+        if (!isEnvelope(value)) {
+            throw new IllegalArgumentException("Not a log envelope");
+        }
+        Input in = new Input(value, 2);
+        long timestampMicros = in.readVarLong();
+        Level level = Level.fromCode(in.readByte());
+        String logger = in.readString();
+        String rule = in.readString();
+        String thread = in.readString();
+        String message = in.readString();
+        return new Event(timestampMicros, level, logger, rule, thread, message);
+    }
+
+    private static byte[] interned(String name) {
+        if (name == null || name.isEmpty()) {
+            return new byte[0];
+        }
+        byte[] bytes = INTERNED.get(name);
+        if (bytes == null) {
+            bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (INTERNED.size() < MAX_INTERNED) {
+                INTERNED.putIfAbsent(name, bytes);
+            }
+        }
+        return bytes;
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+
+        Output(int size) {
+            super(size);
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeField(byte[] bytes) {
+            writeVarLong(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static final class Input {
+
+        private final byte[] buffer;
+        private int position;
+
+        Input(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        int readByte() {
+            if (position >= buffer.length) {
+                throw new IllegalArgumentException("Truncated log envelope");
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in log envelope");
+        }
+
+        String readString() {
+            long length = readVarLong();
+            if (length < 0 || length > buffer.length - position) {
+                throw new IllegalArgumentException("Truncated log envelope");
+            }
+            String value = new String(buffer, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package fr.umontpellier.injectlog4j.output;
+
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginConfiguration;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.layout.AbstractLayout;
+import org.apache.logging.log4j.core.time.Instant;
+
+/**
+ * Log4J2 layout writing each event as a {@link LogEnvelope}, e.g. for a
+ * Kafka appender whose consumer would otherwise parse text lines:
+ *
+ * <pre>
+ * &lt;Kafka name="Kafka" topic="application-logs"&gt;
+ *     &lt;LogEnvelopeLayout /&gt;
+ * &lt;/Kafka&gt;
+ * </pre>
+ *
+ * The rule id is the event's marker, set by {@link TerminalOutput} to the
+ * rule target.
+ */
+@Plugin(name = "LogEnvelopeLayout", category = Node.CATEGORY, elementType = Layout.ELEMENT_TYPE, printObject = true)
+public final class LogEnvelopeLayout extends AbstractLayout<byte[]> {
+
+    private LogEnvelopeLayout(Configuration configuration) {
+        super(configuration, null, null);
+    }
+
+    @PluginFactory
+    public static LogEnvelopeLayout createLayout(@PluginConfiguration Configuration configuration) {
+        return new LogEnvelopeLayout(configuration);
+    }
+
+    @Override
+    public byte[] toByteArray(LogEvent event) {
+        Instant instant = event.getInstant();
+        long timestampMicros = instant.getEpochSecond() * 1_000_000L + instant.getNanoOfSecond() / 1_000L;
+        String message = event.getMessage() != null ? event.getMessage().getFormattedMessage() : "";
+        if (event.getThrown() != null) {
+            message = message + " " + event.getThrown();
+        }
+        return LogEnvelope.encode(timestampMicros, LogEnvelope.Level.of(event.getLevel().name()),
+                event.getLoggerName(), event.getMarker() != null ? event.getMarker().getName() : null,
+                event.getThreadName(), message);
+    }
+
+    @Override
+    public byte[] toSerializable(LogEvent event) {
+        return toByteArray(event);
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/octet-stream";
+    }
+}
@@ -13,6 +13,18 @@ public interface LogOutput {
      */
     void log(String level, String message);
 
+    /**
+     * Write a log message raised by a rule. Outputs that route messages (such
+     * as Kafka's record key) use the target; the others ignore it.
+     *
+     * @param level   the log level (INFO, WARN, ERROR, DEBUG, TRACE)
+     * @param message the formatted message
+     * @param target  the rule's target (class.method or annotation id), or null
+     */
+    default void log(String level, String message, String target) {
+        log(level, message);
+    }
+
     /**
      * Close this output and release resources.
      */
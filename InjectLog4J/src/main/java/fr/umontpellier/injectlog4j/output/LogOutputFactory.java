@@ -76,7 +76,9 @@ public class LogOutputFactory {
             String topic = config != null && config.getTopic() != null
                     ? config.getTopic()
                     : DEFAULT_KAFKA_TOPIC;
-            return new KafkaOutput(servers, topic);
+            return new KafkaOutput(servers, topic,
+                    KafkaKeyStrategy.from(config != null ? config.getPartitionKey() : null),
+                    KafkaEncoding.from(config != null ? config.getEncoding() : null), loggerName);
         });
     }
 
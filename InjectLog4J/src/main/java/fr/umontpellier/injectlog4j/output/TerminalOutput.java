@@ -3,6 +3,7 @@ package fr.umontpellier.injectlog4j.output;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.MarkerManager;
 
 /**
  * Log output that writes to the terminal/console using Log4J2.
@@ -64,6 +65,20 @@ public class TerminalOutput implements LogOutput {
         logger.log(log4jLevel, message);
     }
 
+    /**
+     * Log with the rule target as marker, which {@link LogEnvelopeLayout}
+     * writes as the rule id.
+     */
+    @Override
+    public void log(String level, String message, String target) {
+        if (target == null) {
+            log(level, message);
+            return;
+        }
+        Level log4jLevel = Level.toLevel(level, Level.INFO);
+        logger.log(log4jLevel, MarkerManager.getMarker(target), message);
+    }
+
     @Override
     public void close() {
         // Nothing to close for terminal output
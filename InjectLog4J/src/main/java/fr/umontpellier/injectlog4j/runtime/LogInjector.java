@@ -14,12 +14,14 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Runtime log injector that processes log events based on the configuration.
  * This class is used by the injected code at runtime.
  * Uses the Initialization-on-demand holder idiom for thread-safe lazy
- * initialization.
+ * initialization. Nothing on the logging path holds a monitor, so virtual
+ * threads never pin their carrier while logging.
  */
 public class LogInjector {
 
@@ -47,8 +49,9 @@ public class LogInjector {
         }
     }
 
-    private static LogInjector customInstance;
-    private static final Object lock = new Object();
+    // Read on every injected call: volatile rather than guarded by the lock
+    private static volatile LogInjector customInstance;
+    private static final ReentrantLock lock = new ReentrantLock();
 
     private LogInjector(LoggingRulesConfig config) {
         this.config = config;
@@ -59,23 +62,22 @@ public class LogInjector {
      * Get the singleton instance of the LogInjector.
      */
     public static LogInjector getInstance() {
-        synchronized (lock) {
-            if (customInstance != null) {
-                return customInstance;
-            }
-        }
-        return InstanceHolder.INSTANCE;
+        LogInjector instance = customInstance;
+        return instance != null ? instance : InstanceHolder.INSTANCE;
     }
 
     /**
      * Initialize with a custom configuration (for testing).
      */
     public static void initialize(LoggingRulesConfig config) {
-        synchronized (lock) {
+        lock.lock();
+        try {
             if (customInstance != null) {
                 customInstance.shutdown();
             }
             customInstance = new LogInjector(config);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -83,11 +85,14 @@ public class LogInjector {
      * Reset to default instance (for testing).
      */
     public static void reset() {
-        synchronized (lock) {
+        lock.lock();
+        try {
             if (customInstance != null) {
                 customInstance.shutdown();
                 customInstance = null;
             }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -120,7 +125,7 @@ public class LogInjector {
         Map<String, Object> context = createContext(className, methodName, args);
         context.put(MESSAGE_KEY, rule.getMessage());
 
-        log(rule, context);
+        log(target, rule, context);
     }
 
     /**
@@ -142,7 +147,7 @@ public class LogInjector {
         context.put(MESSAGE_KEY, rule.getMessage());
         context.put("value", returnValue);
 
-        log(rule, context);
+        log(target, rule, context);
     }
 
     /**
@@ -165,7 +170,7 @@ public class LogInjector {
         context.put("exception", exception);
         context.put("value", exception.getMessage());
 
-        log(rule, context);
+        log(target, rule, context);
     }
 
     private Map<String, Object> createContext(String className, String methodName, Object[] args) {
@@ -176,26 +181,24 @@ public class LogInjector {
         return context;
     }
 
-    private void log(LoggingRule rule, Map<String, Object> context) {
+    private void log(String target, LoggingRule rule, Map<String, Object> context) {
         String loggerName = rule.getLogger();
 
         LogOutput output = outputs.get(loggerName);
-        MessageFormatter formatter = formatters.get(loggerName);
-
         if (output == null) {
-            output = LogOutputFactory.create(loggerName, null);
-            outputs.put(loggerName, output);
+            output = outputs.computeIfAbsent(loggerName, name -> LogOutputFactory.create(name, null));
         }
 
+        MessageFormatter formatter = formatters.get(loggerName);
         if (formatter == null) {
-            LoggerConfig loggerConfig = config.getLogger(loggerName);
-            String format = loggerConfig != null ? loggerConfig.getFormat() : null;
-            formatter = new MessageFormatter(format);
-            formatters.put(loggerName, formatter);
+            formatter = formatters.computeIfAbsent(loggerName, name -> {
+                LoggerConfig loggerConfig = config.getLogger(name);
+                return new MessageFormatter(loggerConfig != null ? loggerConfig.getFormat() : null);
+            });
         }
 
         String formattedMessage = formatter.format(context);
-        output.log(rule.getCriticality(), formattedMessage);
+        output.log(rule.getCriticality(), formattedMessage, target);
     }
 
     /**
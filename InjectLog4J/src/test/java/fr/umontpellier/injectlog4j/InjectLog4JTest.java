@@ -1,16 +1,46 @@
 package fr.umontpellier.injectlog4j;
 
+import fr.umontpellier.injectlog4j.action.ActionInjector;
+import fr.umontpellier.injectlog4j.action.ContextPropagatingExecutorService;
+import fr.umontpellier.injectlog4j.action.InMemoryActionRecorder;
+import fr.umontpellier.injectlog4j.action.UserAction;
+import fr.umontpellier.injectlog4j.action.UserContextStorageFactory;
 import fr.umontpellier.injectlog4j.config.LoggerConfig;
 import fr.umontpellier.injectlog4j.config.LoggingRule;
 import fr.umontpellier.injectlog4j.config.LoggingRulesConfig;
 import fr.umontpellier.injectlog4j.formatter.MessageFormatter;
+import fr.umontpellier.injectlog4j.output.FileOutput;
+import fr.umontpellier.injectlog4j.output.KafkaEncoding;
+import fr.umontpellier.injectlog4j.output.KafkaKeyStrategy;
+import fr.umontpellier.injectlog4j.output.KafkaOutput;
+import fr.umontpellier.injectlog4j.output.KafkaProducerPool;
+import fr.umontpellier.injectlog4j.output.LogEnvelope;
 import fr.umontpellier.injectlog4j.runtime.LogInjector;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RoundRobinPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -130,4 +160,215 @@ class InjectLog4JTest {
         assertDoesNotThrow(() -> LogInjector.getInstance().logReturn("test.target", "TestClass", "testMethod",
                 new Object[] {}, "result"));
     }
+
+    @Test
+    void testUserContextPropagatesToExecutorThreads() throws Exception {
+        for (String mode : List.of("threadlocal", "scoped")) {
+            InMemoryActionRecorder recorder = new InMemoryActionRecorder();
+            ActionInjector.initialize(recorder, UserContextStorageFactory.create(mode));
+            ActionInjector injector = ActionInjector.getInstance();
+
+            ExecutorService executor = new ContextPropagatingExecutorService(
+                    Executors.newVirtualThreadPerTaskExecutor());
+            try {
+                injector.runWithUserContext(new ActionInjector.UserContext("user-1", "u1@example.com", "U1"),
+                        () -> assertDoesNotThrow(() -> executor.submit(
+                                () -> injector.recordEntry("ProductService", "getAllProducts", new Object[] {}))
+                                .get()));
+
+                List<UserAction> actions = recorder.getActionsForUser("user-1");
+                assertEquals(1, actions.size(), "mode " + mode);
+                assertEquals("u1@example.com", actions.get(0).getUserEmail());
+            } finally {
+                executor.shutdown();
+                ActionInjector.reset();
+            }
+        }
+    }
+
+    @Test
+    void testUserContextIsRestoredAfterScope() throws Exception {
+        ActionInjector.initialize(new InMemoryActionRecorder(), UserContextStorageFactory.create("scoped"));
+        try {
+            ActionInjector injector = ActionInjector.getInstance();
+            injector.setUserContext("outer", null, null);
+
+            String inner = injector.callWithUserContext(new ActionInjector.UserContext("inner", null, null),
+                    () -> injector.getCurrentUserContext().getUserId());
+
+            assertEquals("inner", inner);
+            assertEquals("outer", injector.getCurrentUserContext().getUserId());
+
+            injector.clearUserContext();
+            assertNull(injector.getCurrentUserContext().getUserId());
+        } finally {
+            ActionInjector.reset();
+        }
+    }
+
+    @Test
+    void testFileOutputFromVirtualThreads(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("logs/business.log");
+        FileOutput output = new FileOutput(file.toString(), false);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            IntStream.range(0, 1000).forEach(i -> executor.submit(() -> output.log("INFO", "line " + i)));
+        }
+        output.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(1000, lines.size());
+        assertTrue(lines.contains("line 999"));
+    }
+
+    @Test
+    void testKafkaProducerPoolSharesOneProducerPerCluster() {
+        List<MockProducer<String, Object>> created = new ArrayList<>();
+        List<Map<String, Object>> configs = new ArrayList<>();
+        KafkaProducerPool.setProducerSupplier(config -> {
+            configs.add(config);
+            MockProducer<String, Object> producer = new MockProducer<>(true, new StringSerializer(), new KafkaProducerPool.ValueSerializer());
+            created.add(producer);
+            return producer;
+        });
+        KafkaProducerPool.configure(Map.of("linger.ms", 25));
+        try {
+            Producer<String, String> output = KafkaProducerPool.acquire("broker:9092");
+            Producer<String, String> recorder = KafkaProducerPool.acquire("broker:9092");
+            assertEquals(1, created.size());
+            assertEquals(1, KafkaProducerPool.size());
+            assertEquals("lz4", configs.get(0).get("compression.type"));
+            assertEquals(25, configs.get(0).get("linger.ms"));
+            assertEquals("broker:9092", configs.get(0).get("bootstrap.servers"));
+
+            output.close();
+            output.close();
+            assertFalse(created.get(0).closed());
+            recorder.close();
+            assertTrue(created.get(0).closed());
+            assertEquals(0, KafkaProducerPool.size());
+        } finally {
+            KafkaProducerPool.configure(Map.of());
+            KafkaProducerPool.setProducerSupplier(null);
+        }
+    }
+
+    @Test
+    void testKafkaProducerPoolReportsSends() {
+        List<String> topics = new ArrayList<>();
+        KafkaProducerPool.setProducerSupplier(
+                config -> new MockProducer<>(true, new StringSerializer(), new KafkaProducerPool.ValueSerializer()));
+        KafkaProducerPool.setSendListener((topic, size, latencyNanos, exception) -> {
+            assertNull(exception);
+            assertTrue(size >= 0);
+            topics.add(topic);
+        });
+        try (Producer<String, String> producer = KafkaProducerPool.acquire("broker:9092")) {
+            producer.send(new ProducerRecord<>("application-logs", "key", "value"));
+            producer.send(new ProducerRecord<>("action-logs", "value"));
+        } finally {
+            KafkaProducerPool.setSendListener(null);
+            KafkaProducerPool.setProducerSupplier(null);
+        }
+        assertEquals(List.of("application-logs", "action-logs"), topics);
+    }
+
+    @Test
+    void testKafkaOutputKeyStrategies() {
+        Node node = new Node(0, "broker", 9092);
+        Node[] replicas = { node };
+        Cluster cluster = new Cluster("cluster", List.of(node),
+                IntStream.range(0, 3).mapToObj(p -> new PartitionInfo("logs", p, node, replicas, replicas)).toList(),
+                Set.of(), Set.of());
+        MockProducer<String, Object> producer = new MockProducer<>(cluster, true, new RoundRobinPartitioner(),
+                new StringSerializer(), new KafkaProducerPool.ValueSerializer());
+        KafkaProducerPool.setProducerSupplier(config -> producer);
+        ActionInjector.initialize(new InMemoryActionRecorder(), UserContextStorageFactory.create("threadlocal"));
+        // Keeps the shared producer open while the outputs come and go
+        Producer<String, String> shared = KafkaProducerPool.acquire("broker:9092");
+        try {
+            ActionInjector.getInstance().setUserContext("user-1", null, null);
+            for (KafkaKeyStrategy strategy : KafkaKeyStrategy.values()) {
+                KafkaOutput output = new KafkaOutput("broker:9092", "logs", strategy);
+                output.log("INFO", "first", "ProductService.getAllProducts");
+                output.log("INFO", "second", "ProductService.getAllProducts");
+                output.close();
+            }
+
+            List<ProducerRecord<String, Object>> records = producer.history();
+            assertEquals("ProductService.getAllProducts", records.get(0).key());
+            assertEquals("user-1", records.get(2).key());
+            assertNull(records.get(4).key());
+            assertNotEquals(records.get(4).partition(), records.get(5).partition());
+            assertNull(records.get(6).key());
+            assertNull(records.get(6).partition());
+            assertEquals("INFO", records.get(8).key());
+        } finally {
+            shared.close();
+            ActionInjector.reset();
+            KafkaProducerPool.setProducerSupplier(null);
+        }
+    }
+
+    @Test
+    void testKafkaKeyStrategyNames() {
+        assertEquals(KafkaKeyStrategy.TARGET, KafkaKeyStrategy.from(null));
+        assertEquals(KafkaKeyStrategy.ROUND_ROBIN, KafkaKeyStrategy.from("round-robin"));
+        assertEquals(KafkaKeyStrategy.NONE, KafkaKeyStrategy.from("sticky"));
+        assertEquals(KafkaKeyStrategy.USER, KafkaKeyStrategy.from("User"));
+        assertEquals(KafkaKeyStrategy.TARGET, KafkaKeyStrategy.from("unknown"));
+    }
+
+    private static final String ENVELOPE_V1 = "c10180abbbb2efeb9103041766722e756d6f6e7470656c6c6965722e7365727669"
+            + "63651d50726f64756374536572766963652e676574416c6c50726f647563747314687474702d6e696f2d383038302d65"
+            + "7865632d31184665746368696e672070726f647563747320e2809320c3a9";
+
+    @Test
+    void testLogEnvelopeRoundTrip() {
+        long timestamp = LogEnvelope.toMicros(Instant.parse("2026-01-02T03:04:05.123456Z"));
+        byte[] value = LogEnvelope.encode(timestamp, LogEnvelope.Level.of("warn"), "fr.umontpellier.service",
+                "ProductService.getAllProducts", "http-nio-8080-exec-1", "Fetching products – é");
+
+        assertTrue(LogEnvelope.isEnvelope(value));
+        // Same bytes as decoded by the kafka-consumer's LogEnvelopeDecoderTest: keep them in sync
+        assertEquals(ENVELOPE_V1, HexFormat.of().formatHex(value));
+        assertFalse(LogEnvelope.isEnvelope("2026-01-02 03:04:05.123 [main] INFO x - y".getBytes()));
+        // Text lines may start with any UTF-8 lead byte, here 0xC5
+        assertFalse(LogEnvelope.isEnvelope("Ŝ".getBytes(StandardCharsets.UTF_8)));
+        LogEnvelope.Event event = LogEnvelope.decode(value);
+        assertEquals(Instant.parse("2026-01-02T03:04:05.123456Z"), event.timestamp());
+        assertEquals(LogEnvelope.Level.WARN, event.level());
+        assertEquals("fr.umontpellier.service", event.logger());
+        assertEquals("ProductService.getAllProducts", event.rule());
+        assertEquals("http-nio-8080-exec-1", event.thread());
+        assertEquals("Fetching products – é", event.message());
+
+        // Fields appended by later versions are ignored
+        byte[] extended = Arrays.copyOf(value, value.length + 3);
+        extended[1] = 2;
+        assertEquals(event, LogEnvelope.decode(extended));
+        assertThrows(IllegalArgumentException.class,
+                () -> LogEnvelope.decode(Arrays.copyOf(value, value.length - 1)));
+    }
+
+    @Test
+    void testKafkaOutputBinaryEncoding() {
+        MockProducer<String, Object> producer = new MockProducer<>(true, new StringSerializer(),
+                new KafkaProducerPool.ValueSerializer());
+        KafkaProducerPool.setProducerSupplier(config -> producer);
+        try {
+            KafkaOutput output = new KafkaOutput("broker:9092", "logs", KafkaKeyStrategy.TARGET,
+                    KafkaEncoding.BINARY, "business");
+            output.log("INFO", "Product created", "ProductService.createProduct");
+            output.close();
+        } finally {
+            KafkaProducerPool.setProducerSupplier(null);
+        }
+
+        LogEnvelope.Event event = LogEnvelope.decode((byte[]) producer.history().get(0).value());
+        assertEquals(LogEnvelope.Level.INFO, event.level());
+        assertEquals("business", event.logger());
+        assertEquals("ProductService.createProduct", event.rule());
+        assertEquals("Product created", event.message());
+        assertEquals(Thread.currentThread().getName(), event.thread());
+    }
 }
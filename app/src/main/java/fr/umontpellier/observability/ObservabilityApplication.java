@@ -4,8 +4,10 @@ import fr.umontpellier.injectlog4j.InjectLog4J;
 import jakarta.annotation.PreDestroy;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class ObservabilityApplication {
 
 	public static void main(String[] args) {
@@ -2,28 +2,46 @@ package fr.umontpellier.observability.config;
 
 import fr.umontpellier.injectlog4j.action.ActionInjector;
 import fr.umontpellier.injectlog4j.action.ActionRecorder;
+import fr.umontpellier.injectlog4j.action.UserContextStorageFactory;
+import fr.umontpellier.observability.service.ProfileAggregator;
 import fr.umontpellier.observability.service.UserProfileService;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.function.Consumer;
+
 /**
  * Configuration that integrates InjectLog4J's ActionInjector with the app's
  * UserProfileService.
  * 
- * This creates a custom ActionRecorder that directly calls UserProfileService
- * to record actions, avoiding the need for Kafka intermediate storage.
+ * This creates a custom ActionRecorder that feeds actions to the write-behind
+ * ProfileAggregator (or directly to UserProfileService when
+ * profiles.aggregator.enabled=false), avoiding the need for Kafka intermediate
+ * storage.
  */
 @Configuration
 @RequiredArgsConstructor
 public class ActionRecorderConfig {
 
     private final UserProfileService userProfileService;
+    private final ProfileAggregator profileAggregator;
+
+    @Value("${action.context.propagation:threadlocal}")
+    private String contextPropagation;
+
+    @Value("${profiles.aggregator.enabled:true}")
+    private boolean aggregatorEnabled;
 
     @PostConstruct
     public void init() {
-        ActionInjector.initialize(new ProfileServiceActionRecorder(userProfileService));
+        Consumer<fr.umontpellier.observability.model.UserAction> sink = aggregatorEnabled
+                ? profileAggregator::submit
+                : userProfileService::recordAction;
+        ActionInjector.initialize(new ProfileServiceActionRecorder(sink),
+                UserContextStorageFactory.create(contextPropagation));
     }
 
     @PreDestroy
@@ -32,14 +50,14 @@ public class ActionRecorderConfig {
     }
 
     /**
-     * ActionRecorder that directly updates user profiles via UserProfileService.
+     * ActionRecorder that converts actions and hands them to the profile sink.
      */
     private static class ProfileServiceActionRecorder implements ActionRecorder {
 
-        private final UserProfileService userProfileService;
+        private final Consumer<fr.umontpellier.observability.model.UserAction> sink;
 
-        public ProfileServiceActionRecorder(UserProfileService userProfileService) {
-            this.userProfileService = userProfileService;
+        public ProfileServiceActionRecorder(Consumer<fr.umontpellier.observability.model.UserAction> sink) {
+            this.sink = sink;
         }
 
         @Override
@@ -52,8 +70,8 @@ public class ActionRecorderConfig {
                 // Convert InjectLog4J's UserAction to app's UserAction
                 fr.umontpellier.observability.model.UserAction appAction = convertAction(action);
 
-                // Record in UserProfileService
-                userProfileService.recordAction(appAction);
+                // Record in the profile aggregator or UserProfileService
+                sink.accept(appAction);
 
             } catch (Exception e) {
                 // Log but don't fail - action recording is non-critical
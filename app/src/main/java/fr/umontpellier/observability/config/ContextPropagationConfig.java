@@ -0,0 +1,23 @@
+package fr.umontpellier.observability.config;
+
+import fr.umontpellier.injectlog4j.action.ActionInjector;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Configuration that propagates the InjectLog4J user context to Spring-managed
+ * executors.
+ * 
+ * Spring Boot applies the TaskDecorator bean to the auto-configured
+ * applicationTaskExecutor, so {@code @Async} methods and other tasks submitted
+ * through it are still attributed to the user of the originating request.
+ */
+@Configuration
+public class ContextPropagationConfig {
+
+    @Bean
+    public TaskDecorator userContextTaskDecorator() {
+        return runnable -> ActionInjector.getInstance().wrap(runnable);
+    }
+}
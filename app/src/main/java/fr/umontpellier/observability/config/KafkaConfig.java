@@ -1,17 +1,21 @@
 package fr.umontpellier.observability.config;
 
+import fr.umontpellier.injectlog4j.output.KafkaProducerPool;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerProducerListener;
 import org.springframework.kafka.core.ProducerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
@@ -20,18 +24,29 @@ public class KafkaConfig {
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    /**
+     * Producer factory handing out the cluster's shared producer, also used
+     * by InjectLog4J's Kafka outputs and action recorder. Its settings come
+     * from spring.kafka.producer.*.
+     */
     @Bean
-    public ProducerFactory<String, String> producerFactory() {
-        Map<String, Object> configProps = new HashMap<>();
+    public ProducerFactory<String, String> producerFactory(KafkaProperties kafkaProperties,
+            MeterRegistry meterRegistry) {
+        Map<String, Object> configProps = kafkaProperties.buildProducerProperties(null);
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        return new DefaultKafkaProducerFactory<>(configProps);
+        KafkaProducerPool.configure(configProps);
+        KafkaProducerPool.setSendListener(new KafkaSendMetrics(meterRegistry));
+
+        PooledProducerFactory factory = new PooledProducerFactory(configProps, bootstrapServers);
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return factory;
     }
 
     @Bean
-    public KafkaTemplate<String, String> kafkaTemplate() {
-        return new KafkaTemplate<>(producerFactory());
+    public KafkaTemplate<String, String> kafkaTemplate(ProducerFactory<String, String> producerFactory) {
+        return new KafkaTemplate<>(producerFactory);
     }
 
     @Bean
@@ -73,4 +88,23 @@ public class KafkaConfig {
                 .replicas(1)
                 .build();
     }
+
+    /**
+     * Producer factory whose producer is acquired from the KafkaProducerPool
+     * instead of being created; closing it releases the shared producer.
+     */
+    static class PooledProducerFactory extends DefaultKafkaProducerFactory<String, String> {
+
+        private final String bootstrapServers;
+
+        PooledProducerFactory(Map<String, Object> configs, String bootstrapServers) {
+            super(configs);
+            this.bootstrapServers = bootstrapServers;
+        }
+
+        @Override
+        protected Producer<String, String> createRawProducer(Map<String, Object> rawConfigs) {
+            return KafkaProducerPool.acquire(bootstrapServers);
+        }
+    }
 }
@@ -0,0 +1,63 @@
+package fr.umontpellier.observability.config;
+
+import fr.umontpellier.injectlog4j.output.KafkaProducerPool;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-topic metrics of the sends made through the shared Kafka producer,
+ * whoever makes them (KafkaTemplate, InjectLog4J outputs, action recorder):
+ * - kafka.producer.send: time from send() to acknowledgement, by topic and
+ *   outcome, with a histogram for percentiles
+ * - kafka.producer.record.size: serialized record size, by topic
+ *
+ * Batch sizes are Kafka's own producer metrics (kafka.producer.batch.size.*),
+ * bound by the producer factory.
+ */
+class KafkaSendMetrics implements KafkaProducerPool.SendListener {
+
+    private final MeterRegistry meterRegistry;
+    // Meters by topic, looked up once: sends complete on the producer I/O thread
+    private final Map<String, TopicMeters> topics = new ConcurrentHashMap<>();
+
+    KafkaSendMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void onCompletion(String topic, int size, long latencyNanos, Exception exception) {
+        TopicMeters meters = topics.computeIfAbsent(topic, this::register);
+        if (exception != null) {
+            meters.failed.record(latencyNanos, TimeUnit.NANOSECONDS);
+            return;
+        }
+        meters.sent.record(latencyNanos, TimeUnit.NANOSECONDS);
+        meters.recordSize.record(size);
+    }
+
+    private TopicMeters register(String topic) {
+        return new TopicMeters(sendTimer(topic, "success"), sendTimer(topic, "failure"),
+                DistributionSummary.builder("kafka.producer.record.size")
+                        .description("Serialized size of the records sent")
+                        .baseUnit("bytes")
+                        .tag("topic", topic)
+                        .register(meterRegistry));
+    }
+
+    private Timer sendTimer(String topic, String outcome) {
+        return Timer.builder("kafka.producer.send")
+                .description("Time from send to acknowledgement by the broker")
+                .tag("topic", topic)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private record TopicMeters(Timer sent, Timer failed, DistributionSummary recordSize) {
+    }
+}
@@ -1,6 +1,7 @@
 package fr.umontpellier.observability.config;
 
 import fr.umontpellier.injectlog4j.action.ActionInjector;
+import fr.umontpellier.injectlog4j.action.ActionInjector.UserContext;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -16,8 +17,11 @@ import java.io.IOException;
  * Servlet filter that extracts user context from HTTP headers
  * and sets it in the ActionInjector for profiling purposes.
  * 
- * The user context is stored in a ThreadLocal and is available
- * during the entire request processing.
+ * The user context is bound for the whole request through
+ * ActionInjector's context storage (ThreadLocal or ScopedValue, see
+ * action.context.propagation) and restored when the request completes.
+ * Work handed off to executors decorated by ContextPropagationConfig keeps
+ * the same user attribution.
  * 
  * Expected headers:
  * - X-User-Id: The user's unique identifier
@@ -41,16 +45,19 @@ public class UserContextFilter implements Filter {
             String userEmail = httpRequest.getHeader(USER_EMAIL_HEADER);
             String userName = httpRequest.getHeader(USER_NAME_HEADER);
 
-            // Set user context in ActionInjector
-            if (userId != null || userEmail != null) {
-                ActionInjector.getInstance().setUserContext(userId, userEmail, userName);
-            }
+            UserContext context = userId != null || userEmail != null
+                    ? new UserContext(userId, userEmail, userName)
+                    : null;
 
             try {
-                chain.doFilter(request, response);
-            } finally {
-                // Clear user context after request processing
-                ActionInjector.getInstance().clearUserContext();
+                ActionInjector.getInstance().callWithUserContext(context, () -> {
+                    chain.doFilter(request, response);
+                    return null;
+                });
+            } catch (IOException | ServletException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ServletException(e);
             }
         } else {
             chain.doFilter(request, response);
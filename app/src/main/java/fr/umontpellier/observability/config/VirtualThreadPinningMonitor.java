@@ -0,0 +1,119 @@
+package fr.umontpellier.observability.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pinning diagnostics for the virtual-thread mode
+ * (spring.threads.virtual.enabled=true).
+ *
+ * Streams the JFR jdk.VirtualThreadPinned event, emitted when a virtual
+ * thread blocks for longer than {@code threads.pinning.threshold} without
+ * being able to unmount from its carrier (inside a synchronized block or a
+ * native frame). Each event is timed in jvm.threads.virtual.pinned, tagged
+ * with the first application frame of its stack, and logged through
+ * {@link #recordPinned}.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor {
+
+    static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String APPLICATION_PACKAGE = "fr.umontpellier.";
+
+    private final MeterRegistry meterRegistry;
+    private final Duration threshold;
+    private RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry,
+            @Value("${threads.pinning.threshold:20ms}") Duration threshold) {
+        this.meterRegistry = meterRegistry;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Start streaming pinning events once the application is up.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        try {
+            RecordingStream recording = new RecordingStream();
+            recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+            recording.onEvent(PINNED_EVENT, this::onPinned);
+            recording.startAsync();
+            stream = recording;
+        } catch (RuntimeException e) {
+            // Exception logging handled by InjectLog4J via logging.rules.yaml
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        recordPinned(pinnedFrame(event.getStackTrace()), event.getDuration());
+    }
+
+    /**
+     * Count one pinning event.
+     *
+     * @param frame the code that pinned the thread, as class.method:line
+     */
+    void recordPinned(String frame, Duration duration) {
+        Timer.builder("jvm.threads.virtual.pinned")
+                .description("Virtual threads blocked while pinned to their carrier")
+                .tag("frame", frame)
+                .register(meterRegistry)
+                .record(duration);
+    }
+
+    private static String pinnedFrame(RecordedStackTrace stackTrace) {
+        List<String> frames = new ArrayList<>();
+        if (stackTrace != null) {
+            for (RecordedFrame frame : stackTrace.getFrames()) {
+                if (frame.isJavaFrame()) {
+                    frames.add(frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                            + ":" + frame.getLineNumber());
+                }
+            }
+        }
+        return firstApplicationFrame(frames);
+    }
+
+    /**
+     * The innermost frame of the application, or of anything but the JDK if
+     * the application does not appear (e.g. a pinning driver call).
+     */
+    static String firstApplicationFrame(List<String> frames) {
+        String firstLibraryFrame = null;
+        for (String frame : frames) {
+            if (frame.startsWith(APPLICATION_PACKAGE)) {
+                return frame;
+            }
+            if (firstLibraryFrame == null && !frame.startsWith("java.") && !frame.startsWith("jdk.")
+                    && !frame.startsWith("sun.")) {
+                firstLibraryFrame = frame;
+            }
+        }
+        return firstLibraryFrame != null ? firstLibraryFrame : "unknown";
+    }
+}
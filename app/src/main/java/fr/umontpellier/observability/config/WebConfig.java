@@ -1,5 +1,6 @@
 package fr.umontpellier.observability.config;
 
+import fr.umontpellier.observability.controller.PageResponses;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.lang.NonNull;
@@ -39,11 +40,12 @@ public class WebConfig implements WebMvcConfigurer {
                 "http://127.0.0.1:4200"));
         // Allow all headers including OpenTelemetry trace context headers
         config.setAllowedHeaders(Arrays.asList("*"));
-        // Expose trace context headers for the frontend to read
+        // Expose trace context and pagination headers for the frontend to read
         config.setExposedHeaders(Arrays.asList(
                 "traceparent",
                 "tracestate",
-                "baggage"));
+                "baggage",
+                PageResponses.NEXT_CURSOR_HEADER));
         config.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
         config.setMaxAge(3600L);
 
@@ -0,0 +1,31 @@
+package fr.umontpellier.observability.controller;
+
+import fr.umontpellier.observability.model.CursorPage;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+
+/**
+ * Maps keyset pages to HTTP responses.
+ *
+ * The body stays a plain JSON array so existing clients keep working; the
+ * cursor of the next page travels in the {@value #NEXT_CURSOR_HEADER} header
+ * and is absent on the last page.
+ */
+public final class PageResponses {
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private PageResponses() {
+        // Utility class
+    }
+
+    public static <T> ResponseEntity<List<T>> ok(CursorPage<T> page) {
+        if (page.nextCursor() == null) {
+            return ResponseEntity.ok(page.items());
+        }
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, page.nextCursor())
+                .body(page.items());
+    }
+}
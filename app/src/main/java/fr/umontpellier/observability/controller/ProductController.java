@@ -1,14 +1,22 @@
 package fr.umontpellier.observability.controller;
 
 import fr.umontpellier.observability.model.Product;
+import fr.umontpellier.observability.service.ProductBulkService;
 import fr.umontpellier.observability.service.ProductService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/products")
@@ -16,11 +24,65 @@ import java.util.List;
 public class ProductController {
 
     private final ProductService productService;
+    private final ProductBulkService productBulkService;
 
     @GetMapping
-    public ResponseEntity<List<Product>> getAllProducts() {
-        List<Product> products = productService.getAllProducts();
-        return ResponseEntity.ok(products);
+    public ResponseEntity<List<Product>> getAllProducts(
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return PageResponses.ok(productService.getAllProducts(after, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Products between two prices, cheapest first, e.g.
+     * {@code /api/products/price-range?min=100} for products above 100.
+     */
+    @GetMapping("/price-range")
+    public ResponseEntity<List<Product>> getProductsByPriceRange(
+            @RequestParam(required = false) String min,
+            @RequestParam(required = false) String max,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return PageResponses.ok(productService.getProductsByPriceRange(
+                    min == null ? null : new BigDecimal(min),
+                    max == null ? null : new BigDecimal(max),
+                    after, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Products expiring between two ISO dates (yyyy-MM-dd), soonest first.
+     */
+    @GetMapping("/expiring")
+    public ResponseEntity<List<Product>> getProductsExpiringBetween(
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return PageResponses.ok(productService.getProductsExpiringBetween(
+                    from == null ? null : LocalDate.parse(from),
+                    to == null ? null : LocalDate.parse(to),
+                    after, limit));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Number of products and total and average price, over the whole
+     * catalogue, for views that would otherwise walk every page.
+     */
+    @GetMapping("/summary")
+    public ResponseEntity<Map<String, Object>> getProductSummary() {
+        return ResponseEntity.ok(productService.getProductSummary());
     }
 
     @GetMapping("/{id}")
@@ -35,6 +97,24 @@ public class ProductController {
         return new ResponseEntity<>(createdProduct, HttpStatus.CREATED);
     }
 
+    /**
+     * Create, update and delete products in bulk. The body is a JSON array
+     * or NDJSON stream of operations, e.g.
+     * {@code {"op":"update","id":"...","product":{...}}}; one result per
+     * operation is streamed back as NDJSON, in request order.
+     *
+     * @param ordered stop at the first operation that fails (default) or
+     *                apply every valid operation
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<StreamingResponseBody> bulkWrite(InputStream body,
+            @RequestParam(defaultValue = "true") boolean ordered) {
+        StreamingResponseBody results = out -> productBulkService.bulkWrite(body, out, ordered);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(results);
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteProduct(@PathVariable String id) {
         productService.deleteProduct(id);
@@ -1,14 +1,31 @@
 package fr.umontpellier.observability.controller;
 
+import fr.umontpellier.observability.model.IngestionProgress;
+import fr.umontpellier.observability.model.LeaderboardEntry;
+import fr.umontpellier.observability.model.LeaderboardMetric;
 import fr.umontpellier.observability.model.UserProfile;
+import fr.umontpellier.observability.model.UserProfile.ProfileAction;
 import fr.umontpellier.observability.model.UserProfile.ProfileType;
+import fr.umontpellier.observability.service.LogFileImportService;
+import fr.umontpellier.observability.service.LogIngestionService;
+import fr.umontpellier.observability.service.ProfileExportService;
+import fr.umontpellier.observability.service.ProfileExportService.ExportFormat;
 import fr.umontpellier.observability.service.UserProfileService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -16,10 +33,12 @@ import java.util.Map;
  * REST Controller for user profile management and analytics.
  * 
  * Provides endpoints to:
- * - Retrieve user profiles by various criteria
+ * - Retrieve user profiles by various criteria, as keyset-paginated
+ *   summaries (see {@link PageResponses})
  * - Get profile statistics and analytics
  * - Export profiles in JSON format
- * - Process logs to update profiles
+ * - Process logs to update profiles, including streamed bulk ingestion and
+ *   background import of log files
  */
 @RestController
 @RequestMapping("/api/profiles")
@@ -27,14 +46,22 @@ import java.util.Map;
 public class ProfileController {
 
     private final UserProfileService userProfileService;
+    private final ProfileExportService profileExportService;
+    private final LogIngestionService logIngestionService;
+    private final LogFileImportService logFileImportService;
 
     /**
-     * Get all user profiles.
+     * Get user profile summaries, one keyset page at a time.
      */
     @GetMapping
-    public ResponseEntity<List<UserProfile>> getAllProfiles() {
-        List<UserProfile> profiles = userProfileService.getAllProfiles();
-        return ResponseEntity.ok(profiles);
+    public ResponseEntity<List<UserProfile>> getAllProfiles(
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return PageResponses.ok(userProfileService.getAllProfiles(after, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
@@ -47,6 +74,22 @@ public class ProfileController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Get a user's action history, newest first.
+     *
+     * @param from  ISO date-time lower bound, optional
+     * @param to    ISO date-time upper bound, optional
+     * @param limit number of actions, 100 by default
+     */
+    @GetMapping("/user/{userId}/actions")
+    public ResponseEntity<List<ProfileAction>> getActionHistory(
+            @PathVariable String userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(userProfileService.getActionHistory(userId, from, to, limit));
+    }
+
     /**
      * Get a user profile by email.
      */
@@ -61,11 +104,13 @@ public class ProfileController {
      * Get profiles by type.
      */
     @GetMapping("/type/{type}")
-    public ResponseEntity<List<UserProfile>> getProfilesByType(@PathVariable String type) {
+    public ResponseEntity<List<UserProfile>> getProfilesByType(
+            @PathVariable String type,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
         try {
             ProfileType profileType = ProfileType.valueOf(type.toUpperCase());
-            List<UserProfile> profiles = userProfileService.getProfilesByType(profileType);
-            return ResponseEntity.ok(profiles);
+            return PageResponses.ok(userProfileService.getProfilesByType(profileType, after, limit));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().build();
         }
@@ -75,27 +120,59 @@ public class ProfileController {
      * Get read-heavy users (mostly perform read operations).
      */
     @GetMapping("/read-heavy")
-    public ResponseEntity<List<UserProfile>> getReadHeavyUsers() {
-        List<UserProfile> profiles = userProfileService.getReadHeavyUsers();
-        return ResponseEntity.ok(profiles);
+    public ResponseEntity<List<UserProfile>> getReadHeavyUsers(
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return PageResponses.ok(userProfileService.getReadHeavyUsers(after, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
      * Get write-heavy users (mostly perform write operations).
      */
     @GetMapping("/write-heavy")
-    public ResponseEntity<List<UserProfile>> getWriteHeavyUsers() {
-        List<UserProfile> profiles = userProfileService.getWriteHeavyUsers();
-        return ResponseEntity.ok(profiles);
+    public ResponseEntity<List<UserProfile>> getWriteHeavyUsers(
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return PageResponses.ok(userProfileService.getWriteHeavyUsers(after, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
      * Get expensive product seekers (frequently search for expensive products).
      */
     @GetMapping("/expensive-seekers")
-    public ResponseEntity<List<UserProfile>> getExpensiveSeekers() {
-        List<UserProfile> profiles = userProfileService.getExpensiveProductSeekers();
-        return ResponseEntity.ok(profiles);
+    public ResponseEntity<List<UserProfile>> getExpensiveSeekers(
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return PageResponses.ok(userProfileService.getExpensiveProductSeekers(after, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Get the leaderboard of a counter.
+     *
+     * @param metric reads, writes or expensive-searches
+     * @param limit  number of users, 10 by default
+     */
+    @GetMapping("/leaderboard/{metric}")
+    public ResponseEntity<List<LeaderboardEntry>> getLeaderboard(
+            @PathVariable String metric,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(userProfileService.getLeaderboard(LeaderboardMetric.from(metric), limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
@@ -108,15 +185,43 @@ public class ProfileController {
     }
 
     /**
-     * Export all profiles as JSON file.
+     * Rebuild profile statistics from the database.
+     */
+    @PostMapping("/statistics/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildStatistics() {
+        int profiles = userProfileService.rebuildProfileStatistics();
+        return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "profilesLoaded", profiles));
+    }
+
+    /**
+     * Export all profiles as a streamed JSON or NDJSON file.
+     *
+     * @param format json (default, with statistics) or ndjson
+     * @param fields comma-separated fields to export, or "all"
+     * @param gzip   whether to gzip the file
      */
     @GetMapping("/export")
-    public ResponseEntity<String> exportProfiles() {
-        String json = userProfileService.exportProfilesAsJson();
+    public ResponseEntity<StreamingResponseBody> exportProfiles(
+            @RequestParam(defaultValue = "json") String format,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        ExportFormat exportFormat;
+        List<String> exportFields;
+        try {
+            exportFormat = ExportFormat.from(format);
+            exportFields = profileExportService.resolveFields(fields);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        StreamingResponseBody body = out -> profileExportService.export(out, exportFormat, exportFields, gzip);
+        String filename = "user_profiles." + exportFormat.getExtension() + (gzip ? ".gz" : "");
         return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=user_profiles.json")
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(json);
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip") : exportFormat.getMediaType())
+                .body(body);
     }
 
     /**
@@ -124,10 +229,7 @@ public class ProfileController {
      */
     @PostMapping("/process-logs")
     public ResponseEntity<Map<String, Object>> processLogs(@RequestBody String logContent) {
-        int processed = userProfileService.processLogs(logContent);
-        return ResponseEntity.ok(Map.of(
-                "status", "success",
-                "processedActions", processed));
+        return processedLogs(logIngestionService.processLogs(logContent), new LinkedHashMap<>());
     }
 
     /**
@@ -135,11 +237,82 @@ public class ProfileController {
      */
     @PostMapping("/process-log-lines")
     public ResponseEntity<Map<String, Object>> processLogLines(@RequestBody List<String> logLines) {
-        int processed = userProfileService.processLogLines(logLines);
-        return ResponseEntity.ok(Map.of(
-                "status", "success",
-                "processedActions", processed,
-                "totalLines", logLines.size()));
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("totalLines", logLines.size());
+        return processedLogs(logIngestionService.processLogLines(logLines), response);
+    }
+
+    /**
+     * Report a finished ingestion: the actions applied on success, or a 500
+     * with the error and the profiles written before the failure.
+     */
+    private static ResponseEntity<Map<String, Object>> processedLogs(IngestionProgress progress,
+            Map<String, Object> response) {
+        if (progress.getStatus() == IngestionProgress.Status.FAILED) {
+            response.put("status", "error");
+            response.put("error", progress.getError());
+            response.put("profilesWritten", progress.getProfilesWritten());
+            return ResponseEntity.internalServerError().body(response);
+        }
+        response.put("status", "success");
+        response.put("processedActions", progress.getActionsParsed());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Ingest a log file streamed as the request body, one entry per line.
+     * Lines are parsed and written while the upload is read, so the file
+     * is never held in memory.
+     */
+    @PostMapping(value = "/ingest", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<IngestionProgress> ingestLogs(InputStream body) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        IngestionProgress progress = logIngestionService.ingest(reader.lines().iterator(), "upload");
+        if (progress.getStatus() == IngestionProgress.Status.FAILED) {
+            return ResponseEntity.internalServerError().body(progress);
+        }
+        return ResponseEntity.ok(progress);
+    }
+
+    /**
+     * Start importing a log file from the import directory in the background.
+     * Follow the import through {@code GET /ingest/{id}}.
+     *
+     * @param file path relative to the import directory, e.g. business.log
+     */
+    @PostMapping("/import")
+    public ResponseEntity<IngestionProgress> importLogFile(@RequestParam String file) {
+        try {
+            return ResponseEntity.accepted().body(logFileImportService.startImport(file));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * List the log files that can be imported.
+     */
+    @GetMapping("/import")
+    public ResponseEntity<List<String>> getImportableFiles() {
+        return ResponseEntity.ok(logFileImportService.listImportableFiles());
+    }
+
+    /**
+     * Get the progress of running and recent log ingestions, newest first.
+     */
+    @GetMapping("/ingest")
+    public ResponseEntity<List<IngestionProgress>> getIngestions() {
+        return ResponseEntity.ok(logIngestionService.getIngestions());
+    }
+
+    /**
+     * Get the progress of one log ingestion.
+     */
+    @GetMapping("/ingest/{id}")
+    public ResponseEntity<IngestionProgress> getIngestion(@PathVariable String id) {
+        return logIngestionService.getIngestion(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
     /**
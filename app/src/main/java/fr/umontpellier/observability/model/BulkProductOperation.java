@@ -0,0 +1,31 @@
+package fr.umontpellier.observability.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+/**
+ * One operation of a bulk product request.
+ *
+ * @param op      what to do with the product
+ * @param id      the product to update or delete; optional on create
+ *                (the product's own id, or a generated one, is used)
+ * @param product the new product, for create and update
+ */
+public record BulkProductOperation(Type op, String id, Product product) {
+
+    /**
+     * Bulk operation types.
+     */
+    public enum Type {
+        CREATE,
+        UPDATE,
+        DELETE;
+
+        /**
+         * Parse an operation name, case-insensitively.
+         */
+        @JsonCreator
+        public static Type from(String name) {
+            return name == null ? null : valueOf(name.trim().toUpperCase());
+        }
+    }
+}
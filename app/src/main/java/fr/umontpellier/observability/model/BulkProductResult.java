@@ -0,0 +1,34 @@
+package fr.umontpellier.observability.model;
+
+/**
+ * Outcome of one operation of a bulk product request.
+ *
+ * @param index position of the operation in the request, from 0
+ * @param op    the operation, or null if it could not be read
+ * @param id    the product concerned, if known
+ * @param status what happened
+ * @param error why the operation was not applied, or null
+ */
+public record BulkProductResult(int index, BulkProductOperation.Type op, String id, Status status, String error) {
+
+    /**
+     * Bulk operation outcomes.
+     */
+    public enum Status {
+        CREATED,
+        UPDATED,
+        DELETED,
+        // Rejected before writing
+        INVALID,
+        NOT_FOUND,
+        CONFLICT,
+        // Rejected by MongoDB
+        FAILED,
+        // Not attempted: an earlier operation of an ordered request failed
+        SKIPPED;
+
+        public boolean isApplied() {
+            return this == CREATED || this == UPDATED || this == DELETED;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package fr.umontpellier.observability.model;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset-paginated listing.
+ *
+ * Pages are ordered by document id; {@code nextCursor} is the id of the last
+ * item and must be passed back as the "after" cursor to fetch the next page.
+ * It is null on the last page.
+ *
+ * @param items      the items of this page
+ * @param nextCursor cursor of the next page, or null if there is none
+ */
+public record CursorPage<T>(List<T> items, String nextCursor) {
+
+    /**
+     * Page size used when the client does not request one.
+     */
+    public static final int DEFAULT_LIMIT = 100;
+
+    /**
+     * Largest page size a client may request.
+     */
+    public static final int MAX_LIMIT = 500;
+
+    /**
+     * Clamp a requested page size to [1, MAX_LIMIT].
+     */
+    public static int limit(Integer requested) {
+        if (requested == null) {
+            return DEFAULT_LIMIT;
+        }
+        return Math.max(1, Math.min(requested, MAX_LIMIT));
+    }
+
+    /**
+     * Build a page from a query that fetched {@code limit + 1} items, the
+     * extra item only telling whether a next page exists.
+     */
+    public static <T> CursorPage<T> of(List<T> fetched, int limit, Function<T, String> cursorOf) {
+        if (fetched.size() <= limit) {
+            return new CursorPage<>(fetched, null);
+        }
+        List<T> items = fetched.subList(0, limit);
+        return new CursorPage<>(items, cursorOf.apply(items.get(limit - 1)));
+    }
+}
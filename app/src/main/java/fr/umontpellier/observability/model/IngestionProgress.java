@@ -0,0 +1,149 @@
+package fr.umontpellier.observability.model;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live progress of one log ingestion. Counters are updated by the pipeline
+ * as chunks are parsed and written, and can be read at any time from other
+ * threads.
+ */
+public class IngestionProgress {
+
+    /**
+     * Ingestion states.
+     */
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final String source;
+    private final LocalDateTime createdAt = LocalDateTime.now();
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile Status status = Status.QUEUED;
+    private volatile String error;
+
+    private volatile long totalBytes;
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong linesRead = new AtomicLong();
+    private final AtomicLong actionsParsed = new AtomicLong();
+    private final AtomicLong profilesWritten = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+
+    public IngestionProgress(String source) {
+        this.source = source;
+    }
+
+    public void start() {
+        startedAt = LocalDateTime.now();
+        status = Status.RUNNING;
+    }
+
+    /**
+     * Set the size of the input when it is known in advance, e.g. a file.
+     */
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    public void addChunkParsed(long lines, long bytes, long actions) {
+        linesRead.addAndGet(lines);
+        bytesRead.addAndGet(bytes);
+        actionsParsed.addAndGet(actions);
+    }
+
+    public void addBatchWritten(long profiles) {
+        profilesWritten.addAndGet(profiles);
+        batchesWritten.incrementAndGet();
+    }
+
+    public void complete() {
+        finishedAt = LocalDateTime.now();
+        status = Status.COMPLETED;
+    }
+
+    public void fail(Throwable cause) {
+        finishedAt = LocalDateTime.now();
+        error = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+        status = Status.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * Share of the input parsed so far, in percent, or null when the size of
+     * the input is unknown.
+     */
+    public Double getPercentComplete() {
+        if (totalBytes <= 0) {
+            return status == Status.COMPLETED ? 100.0 : null;
+        }
+        return Math.min(100.0, bytesRead.get() * 100.0 / totalBytes);
+    }
+
+    public long getLinesRead() {
+        return linesRead.get();
+    }
+
+    public long getActionsParsed() {
+        return actionsParsed.get();
+    }
+
+    public long getProfilesWritten() {
+        return profilesWritten.get();
+    }
+
+    public long getBatchesWritten() {
+        return batchesWritten.get();
+    }
+
+    /**
+     * Average throughput since the start, in lines per second.
+     */
+    public double getLinesPerSecond() {
+        if (startedAt == null) {
+            return 0;
+        }
+        LocalDateTime end = finishedAt != null ? finishedAt : LocalDateTime.now();
+        long millis = Math.max(1, Duration.between(startedAt, end).toMillis());
+        return linesRead.get() * 1000.0 / millis;
+    }
+}
@@ -0,0 +1,23 @@
+package fr.umontpellier.observability.model;
+
+/**
+ * One row of a profile leaderboard.
+ *
+ * @param rank        1-based position in the leaderboard
+ * @param userId      user ID, null for profiles only known by email
+ * @param userEmail   user email
+ * @param userName    user display name
+ * @param profileType current classification of the profile
+ * @param score       value of the ranked counter
+ */
+public record LeaderboardEntry(int rank, String userId, String userEmail, String userName,
+        UserProfile.ProfileType profileType, long score) {
+
+    /**
+     * Build an entry from a profile read from MongoDB.
+     */
+    public static LeaderboardEntry of(int rank, UserProfile profile, LeaderboardMetric metric) {
+        return new LeaderboardEntry(rank, profile.getUserId(), profile.getUserEmail(), profile.getUserName(),
+                profile.getProfileType(), metric.scoreOf(profile));
+    }
+}
@@ -0,0 +1,44 @@
+package fr.umontpellier.observability.model;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * Profile counters users can be ranked by.
+ */
+public enum LeaderboardMetric {
+    READS("readOperations", UserProfile::getReadOperations),
+    WRITES("writeOperations", UserProfile::getWriteOperations),
+    EXPENSIVE_SEARCHES("expensiveProductSearches", UserProfile::getExpensiveProductSearches);
+
+    private final String field;
+    private final ToIntFunction<UserProfile> counter;
+
+    LeaderboardMetric(String field, ToIntFunction<UserProfile> counter) {
+        this.field = field;
+        this.counter = counter;
+    }
+
+    /**
+     * Name of the UserProfile field holding the counter.
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * Read the counter from a profile.
+     */
+    public long scoreOf(UserProfile profile) {
+        return counter.applyAsInt(profile);
+    }
+
+    /**
+     * Parse a metric from a path segment such as "reads" or
+     * "expensive-searches", case-insensitively.
+     *
+     * @throws IllegalArgumentException if the metric is unknown
+     */
+    public static LeaderboardMetric from(String name) {
+        return valueOf(name.trim().replace('-', '_').toUpperCase());
+    }
+}
@@ -7,12 +7,21 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 
 @Document(collection = "products")
+@CompoundIndexes({
+        // Keyset pagination of the price-range and expiration-window queries
+        @CompoundIndex(name = "price_id", def = "{'price': 1, '_id': 1}"),
+        @CompoundIndex(name = "expirationDate_id", def = "{'expirationDate': 1, '_id': 1}")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -26,6 +35,8 @@ public class Product {
 
     @NotNull(message = "Price is required")
     @Positive(message = "Price must be positive")
+    // Decimal128 rather than the default string, so prices compare as numbers
+    @Field(targetType = FieldType.DECIMAL128)
     private BigDecimal price;
 
     @NotNull(message = "Expiration date is required")
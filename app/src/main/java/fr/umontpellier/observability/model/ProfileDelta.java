@@ -0,0 +1,198 @@
+package fr.umontpellier.observability.model;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Pending, not yet persisted changes to a single user profile.
+ *
+ * Actions for the same user are coalesced into one delta (summed counters,
+ * running price statistics, action history) so that a burst of N
+ * actions costs one profile write instead of N read-modify-write cycles.
+ */
+@Getter
+@ToString(of = {"userId", "userEmail", "actionCount"})
+public class ProfileDelta {
+
+    private final String userId;
+    private final String userEmail;
+    private String userName;
+
+    private int readOperations;
+    private int writeOperations;
+    private int expensiveProductSearches;
+
+    // Price statistics for the coalesced actions
+    private int productPriceViews;
+    private double productPriceSum;
+    private double maxProductPriceViewed;
+
+    /**
+     * Number of actions past which a delta is full: callers write it, or
+     * start a new delta for the user, rather than add to it. Actions are
+     * never dropped.
+     */
+    public static final int MAX_PENDING_ACTIONS = 1000;
+
+    // Actions to append to the history, oldest first
+    private final Deque<UserProfile.ProfileAction> actions = new ArrayDeque<>();
+
+    private int actionCount;
+    private LocalDateTime lastActivityAt;
+
+    // The profile's updatedAt set by the write of this delta, null until
+    // MongoDB acknowledged it
+    private LocalDateTime writtenAt;
+
+    // Why MongoDB refused the delta, null unless it did
+    private String rejection;
+
+    public ProfileDelta(String userId, String userEmail, String userName) {
+        this.userId = userId;
+        this.userEmail = userEmail;
+        this.userName = userName;
+    }
+
+    /**
+     * Build the key used to coalesce actions of the same user.
+     * Profiles are looked up by user ID first, then by email.
+     */
+    public static String keyOf(String userId, String userEmail) {
+        if (userId != null) {
+            return "id:" + userId;
+        }
+        return userEmail != null ? "email:" + userEmail : null;
+    }
+
+    /**
+     * Create a delta holding a single action.
+     */
+    public static ProfileDelta of(UserAction action, double expensiveThreshold) {
+        ProfileDelta delta = new ProfileDelta(action.getUserId(), action.getUserEmail(), action.getUserName());
+        delta.add(action, expensiveThreshold);
+        return delta;
+    }
+
+    public String getKey() {
+        return keyOf(userId, userEmail);
+    }
+
+    /**
+     * Fold an action into this delta.
+     */
+    public void add(UserAction action, double expensiveThreshold) {
+        if (action.getActionType() == UserAction.ActionType.READ) {
+            readOperations++;
+        } else if (action.getActionType() == UserAction.ActionType.WRITE) {
+            writeOperations++;
+        }
+
+        if (action.getEntityType() == UserAction.EntityType.PRODUCT && action.getProductPrice() != null) {
+            double price = action.getProductPrice();
+            if (price > expensiveThreshold) {
+                expensiveProductSearches++;
+            }
+            recordPrice(1, price, price);
+        }
+
+        if (userName == null) {
+            userName = action.getUserName();
+        }
+
+        UserProfile.ProfileAction profileAction = UserProfile.ProfileAction.from(action);
+        appendAction(profileAction);
+        actionCount++;
+        touch(profileAction.getTimestamp());
+    }
+
+    /**
+     * Merge another delta for the same user into this one.
+     */
+    public void merge(ProfileDelta other) {
+        readOperations += other.readOperations;
+        writeOperations += other.writeOperations;
+        expensiveProductSearches += other.expensiveProductSearches;
+        if (other.productPriceViews > 0) {
+            recordPrice(other.productPriceViews, other.productPriceSum, other.maxProductPriceViewed);
+        }
+        if (userName == null) {
+            userName = other.userName;
+        }
+        for (UserProfile.ProfileAction action : other.actions) {
+            appendAction(action);
+        }
+        actionCount += other.actionCount;
+        touch(other.lastActivityAt);
+    }
+
+    /**
+     * Check whether the delta holds {@link #MAX_PENDING_ACTIONS} actions.
+     */
+    public boolean isFull() {
+        return actions.size() >= MAX_PENDING_ACTIONS;
+    }
+
+    /**
+     * Check whether another delta can be merged into this one without
+     * making it hold more than {@link #MAX_PENDING_ACTIONS} actions.
+     */
+    public boolean canMerge(ProfileDelta other) {
+        return actions.size() + other.actions.size() <= MAX_PENDING_ACTIONS;
+    }
+
+    /**
+     * Record when the delta was written to the profile.
+     */
+    public void markWritten(LocalDateTime writtenAt) {
+        this.writtenAt = writtenAt;
+    }
+
+    /**
+     * Record that MongoDB refused the delta: writing it again would fail the
+     * same way.
+     */
+    public void markRejected(String rejection) {
+        this.rejection = rejection;
+    }
+
+    public boolean isWritten() {
+        return writtenAt != null;
+    }
+
+    public boolean isRejected() {
+        return rejection != null;
+    }
+
+    /**
+     * Get the last {@link UserProfile#MAX_RECENT_ACTIONS} actions, oldest
+     * first, for the profile's ring buffer.
+     */
+    public List<UserProfile.ProfileAction> getRecentActions() {
+        List<UserProfile.ProfileAction> all = new ArrayList<>(actions);
+        return all.subList(Math.max(0, all.size() - UserProfile.MAX_RECENT_ACTIONS), all.size());
+    }
+
+    private void recordPrice(int views, double sum, double max) {
+        productPriceViews += views;
+        productPriceSum += sum;
+        if (max > maxProductPriceViewed) {
+            maxProductPriceViewed = max;
+        }
+    }
+
+    private void appendAction(UserProfile.ProfileAction action) {
+        actions.addLast(action);
+    }
+
+    private void touch(LocalDateTime timestamp) {
+        if (timestamp != null && (lastActivityAt == null || timestamp.isAfter(lastActivityAt))) {
+            lastActivityAt = timestamp;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package fr.umontpellier.observability.model;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Changes to one user profile within a publishing window, as announced on
+ * the user-profiles topic.
+ *
+ * Only the counters are kept (no action history), so a window costs a few
+ * fields per active user however many actions they make.
+ */
+@Getter
+public class ProfileUpdate {
+
+    private final String userId;
+    private final String userEmail;
+
+    private int readOperations;
+    private int writeOperations;
+    private int expensiveProductSearches;
+    private int productPriceViews;
+    private double productPriceSum;
+    private double maxProductPriceViewed;
+    private int actionCount;
+    private LocalDateTime lastActivityAt;
+
+    public ProfileUpdate(String userId, String userEmail) {
+        this.userId = userId;
+        this.userEmail = userEmail;
+    }
+
+    /**
+     * The Kafka record key: the user id, or the email for users known by
+     * email only, so that one user's updates stay on one partition.
+     */
+    public String getKey() {
+        return userId != null ? userId : userEmail;
+    }
+
+    /**
+     * Add the counters of a profile delta.
+     */
+    public void add(ProfileDelta delta) {
+        readOperations += delta.getReadOperations();
+        writeOperations += delta.getWriteOperations();
+        expensiveProductSearches += delta.getExpensiveProductSearches();
+        productPriceViews += delta.getProductPriceViews();
+        productPriceSum += delta.getProductPriceSum();
+        maxProductPriceViewed = Math.max(maxProductPriceViewed, delta.getMaxProductPriceViewed());
+        actionCount += delta.getActionCount();
+        LocalDateTime timestamp = delta.getLastActivityAt();
+        if (timestamp != null && (lastActivityAt == null || timestamp.isAfter(lastActivityAt))) {
+            lastActivityAt = timestamp;
+        }
+    }
+}
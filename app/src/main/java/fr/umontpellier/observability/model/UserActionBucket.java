@@ -0,0 +1,51 @@
+package fr.umontpellier.observability.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * A bucket of a user's action history: up to N actions of one user within
+ * one hour. A busy hour spills over into several buckets.
+ *
+ * Buckets expire through a TTL index on {@code bucketStart}, created by
+ * ActionHistoryService with the configured retention.
+ */
+@Document(collection = "user_action_buckets")
+@CompoundIndex(name = "userKey_bucketStart", def = "{'userKey': 1, 'bucketStart': -1}")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserActionBucket {
+
+    @Id
+    private String id;
+
+    // ProfileDelta.keyOf(userId, userEmail)
+    private String userKey;
+    private String userId;
+    private String userEmail;
+
+    // Start of the hour the actions belong to
+    private LocalDateTime bucketStart;
+
+    private int count;
+    private LocalDateTime firstActionAt;
+    private LocalDateTime lastActionAt;
+
+    private List<UserProfile.ProfileAction> actions;
+
+    /**
+     * Get the start of the bucket a timestamp falls in.
+     */
+    public static LocalDateTime bucketStartOf(LocalDateTime timestamp) {
+        return timestamp.truncatedTo(ChronoUnit.HOURS);
+    }
+}
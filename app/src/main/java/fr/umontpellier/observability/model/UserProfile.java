@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -20,11 +22,35 @@ import java.util.List;
  * - BALANCED: Users with mixed activity patterns
  */
 @Document(collection = "user_profiles")
+@CompoundIndexes({
+        @CompoundIndex(name = "profileType_id", def = "{'profileType': 1, '_id': 1}"),
+        // Leaderboards: sorted index scans that stop after N entries
+        @CompoundIndex(name = "readOperations_id", def = "{'readOperations': -1, '_id': 1}"),
+        @CompoundIndex(name = "writeOperations_id", def = "{'writeOperations': -1, '_id': 1}"),
+        @CompoundIndex(name = "expensiveProductSearches_id", def = "{'expensiveProductSearches': -1, '_id': 1}")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class UserProfile {
 
+    /**
+     * Size of the ring buffer of recent actions kept in the profile. The full
+     * history lives in the user_action_buckets collection.
+     */
+    public static final int MAX_RECENT_ACTIONS = 10;
+
+    /**
+     * Default price above which a product is considered expensive.
+     */
+    public static final double DEFAULT_EXPENSIVE_THRESHOLD = 100.0;
+
+    // Classification ratios, shared with the server-side classification in
+    // UserProfileRepositoryCustomImpl
+    public static final double EXPENSIVE_SEEKER_RATIO = 0.3;
+    public static final double READ_HEAVY_RATIO = 0.7;
+    public static final double WRITE_HEAVY_RATIO = 0.3;
+
     @Id
     private String id;
 
@@ -47,12 +73,14 @@ public class UserProfile {
     // Profile classification
     private ProfileType profileType;
 
-    // Detailed action history
+    // Last few actions; the full history is in UserActionBucket documents
     private List<ProfileAction> recentActions;
 
     // Statistics
     private double averageProductPriceViewed;
     private double maxProductPriceViewed;
+    private int productPriceViews;
+    private double productPriceSum;
 
     // Timestamps
     private LocalDateTime createdAt;
@@ -94,6 +122,21 @@ public class UserProfile {
         private LocalDateTime timestamp;
         private String details;
 
+        /**
+         * Create a history entry from a parsed user action.
+         */
+        public static ProfileAction from(UserAction action) {
+            return builder()
+                    .actionType(action.getActionType() != null ? action.getActionType().name() : "UNKNOWN")
+                    .operationType(action.getOperationType() != null ? action.getOperationType().name() : "UNKNOWN")
+                    .targetEntity(action.getEntityType() != null ? action.getEntityType().name() : "UNKNOWN")
+                    .targetId(action.getEntityId())
+                    .productPrice(action.getProductPrice())
+                    .timestamp(action.getTimestamp() != null ? action.getTimestamp() : LocalDateTime.now())
+                    .details(action.getDetails())
+                    .build();
+        }
+
         public static ProfileActionBuilder builder() {
             return new ProfileActionBuilder();
         }
@@ -171,11 +214,13 @@ public class UserProfile {
         private int readOperations = 0;
         private int writeOperations = 0;
         private int expensiveProductSearches = 0;
-        private double expensiveThreshold = 100.0;
+        private double expensiveThreshold = DEFAULT_EXPENSIVE_THRESHOLD;
         private ProfileType profileType;
         private List<ProfileAction> recentActions = new ArrayList<>();
         private double averageProductPriceViewed = 0.0;
         private double maxProductPriceViewed = 0.0;
+        private int productPriceViews = 0;
+        private double productPriceSum = 0.0;
         private LocalDateTime createdAt;
         private LocalDateTime updatedAt;
         private LocalDateTime lastActivityAt;
@@ -240,6 +285,16 @@ public class UserProfile {
             return this;
         }
 
+        public UserProfileBuilder productPriceViews(int productPriceViews) {
+            this.productPriceViews = productPriceViews;
+            return this;
+        }
+
+        public UserProfileBuilder productPriceSum(double productPriceSum) {
+            this.productPriceSum = productPriceSum;
+            return this;
+        }
+
         public UserProfileBuilder createdAt(LocalDateTime createdAt) {
             this.createdAt = createdAt;
             return this;
@@ -269,6 +324,8 @@ public class UserProfile {
             profile.setRecentActions(recentActions != null ? recentActions : new ArrayList<>());
             profile.setAverageProductPriceViewed(averageProductPriceViewed);
             profile.setMaxProductPriceViewed(maxProductPriceViewed);
+            profile.setProductPriceViews(productPriceViews);
+            profile.setProductPriceSum(productPriceSum);
             profile.setCreatedAt(createdAt);
             profile.setUpdatedAt(updatedAt);
             profile.setLastActivityAt(lastActivityAt);
@@ -313,17 +370,16 @@ public class UserProfile {
     }
 
     /**
-     * Add an action to the recent actions list (keeping last 100 actions).
+     * Add an action to the recent actions ring buffer (keeping the last
+     * {@link #MAX_RECENT_ACTIONS} actions).
      */
     public void addAction(ProfileAction action) {
         if (this.recentActions == null) {
             this.recentActions = new ArrayList<>();
         }
         this.recentActions.add(action);
-        // Keep only last 100 actions
-        if (this.recentActions.size() > 100) {
-            this.recentActions = new ArrayList<>(
-                    this.recentActions.subList(this.recentActions.size() - 100, this.recentActions.size()));
+        if (this.recentActions.size() > MAX_RECENT_ACTIONS) {
+            this.recentActions.remove(0);
         }
     }
 
@@ -331,28 +387,31 @@ public class UserProfile {
      * Calculate and update the profile type based on current statistics.
      */
     public void calculateProfileType() {
-        int totalOperations = this.readOperations + this.writeOperations;
+        this.profileType = classify(this.readOperations, this.writeOperations, this.expensiveProductSearches);
+    }
+
+    /**
+     * Classify a profile from its operation counters.
+     */
+    public static ProfileType classify(int readOperations, int writeOperations, int expensiveProductSearches) {
+        int totalOperations = readOperations + writeOperations;
 
         if (totalOperations == 0) {
-            this.profileType = ProfileType.BALANCED;
-            return;
+            return ProfileType.BALANCED;
         }
 
-        double readRatio = (double) this.readOperations / totalOperations;
-        double expensiveRatio = totalOperations > 0
-                ? (double) this.expensiveProductSearches / totalOperations
-                : 0;
+        double readRatio = (double) readOperations / totalOperations;
+        double expensiveRatio = (double) expensiveProductSearches / totalOperations;
 
         // Classify based on behavior patterns
-        if (expensiveRatio > 0.3) {
-            this.profileType = ProfileType.EXPENSIVE_SEEKER;
-        } else if (readRatio > 0.7) {
-            this.profileType = ProfileType.READ_HEAVY;
-        } else if (readRatio < 0.3) {
-            this.profileType = ProfileType.WRITE_HEAVY;
-        } else {
-            this.profileType = ProfileType.BALANCED;
+        if (expensiveRatio > EXPENSIVE_SEEKER_RATIO) {
+            return ProfileType.EXPENSIVE_SEEKER;
+        } else if (readRatio > READ_HEAVY_RATIO) {
+            return ProfileType.READ_HEAVY;
+        } else if (readRatio < WRITE_HEAVY_RATIO) {
+            return ProfileType.WRITE_HEAVY;
         }
+        return ProfileType.BALANCED;
     }
 
     /**
@@ -0,0 +1,32 @@
+package fr.umontpellier.observability.repository;
+
+import org.bson.BsonType;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+/**
+ * Keyset conditions on _id for documents whose String id is stored either as
+ * an ObjectId (generated, or any 24 hex digit id) or as a plain string
+ * (other client supplied ids).
+ *
+ * MongoDB sorts strings before ObjectIds and only compares values of the
+ * same type, so the ids after a string id are the greater strings and every
+ * ObjectId, and the ids after an ObjectId are the greater ObjectIds.
+ */
+final class IdCriteria {
+
+    private IdCriteria() {
+    }
+
+    /**
+     * Match the ids strictly after the given one in _id order.
+     */
+    static Criteria idAfter(String id) {
+        if (ObjectId.isValid(id)) {
+            return Criteria.where("id").gt(new ObjectId(id));
+        }
+        return new Criteria().orOperator(
+                Criteria.where("id").gt(id),
+                Criteria.where("id").type(BsonType.OBJECT_ID.getValue()));
+    }
+}
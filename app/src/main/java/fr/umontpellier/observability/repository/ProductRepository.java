@@ -8,7 +8,7 @@ import java.time.LocalDate;
 import java.util.List;
 
 @Repository
-public interface ProductRepository extends MongoRepository<Product, String> {
+public interface ProductRepository extends MongoRepository<Product, String>, ProductRepositoryCustom {
     List<Product> findByExpirationDateBefore(LocalDate date);
 
     List<Product> findByExpirationDateAfter(LocalDate date);
@@ -0,0 +1,65 @@
+package fr.umontpellier.observability.repository;
+
+import fr.umontpellier.observability.model.Product;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Custom Product queries that Spring Data cannot derive.
+ *
+ * Range queries are keyset-paginated on (value, _id): a page starts after
+ * the value and id of the last product of the previous page, so deep pages
+ * cost as little as the first one. Ids are compared as stored, ObjectId or
+ * string.
+ */
+public interface ProductRepositoryCustom {
+
+    /**
+     * Find products in id order.
+     *
+     * @param afterId id of the last product of the previous page, or null for the first page
+     * @param limit   maximum number of products returned
+     */
+    List<Product> findPage(String afterId, int limit);
+
+    /**
+     * Find products by price, cheapest first.
+     *
+     * @param min        inclusive lower bound, or null
+     * @param max        inclusive upper bound, or null
+     * @param afterPrice price of the last product of the previous page, or null for the first page
+     * @param afterId    id of the last product of the previous page, or null for the first page
+     * @param limit      maximum number of products returned
+     */
+    List<Product> findByPriceRange(BigDecimal min, BigDecimal max, BigDecimal afterPrice, String afterId, int limit);
+
+    /**
+     * Find products by expiration date, soonest first.
+     *
+     * @param from      inclusive lower bound, or null
+     * @param to        inclusive upper bound, or null
+     * @param afterDate expiration date of the last product of the previous page, or null for the first page
+     * @param afterId   id of the last product of the previous page, or null for the first page
+     * @param limit     maximum number of products returned
+     */
+    List<Product> findByExpirationWindow(LocalDate from, LocalDate to, LocalDate afterDate, String afterId, int limit);
+
+    /**
+     * Count the products and total and average their prices, with one
+     * aggregation.
+     *
+     * @return totalProducts, totalValue and averagePrice, zero without products
+     */
+    Map<String, Object> summarize();
+
+    /**
+     * Convert prices stored as strings (the mapping default before prices
+     * were stored as Decimal128) so that range queries see every product.
+     *
+     * @return the number of products converted
+     */
+    long convertStringPrices();
+}
@@ -0,0 +1,124 @@
+package fr.umontpellier.observability.repository;
+
+import fr.umontpellier.observability.model.Product;
+import lombok.RequiredArgsConstructor;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MongoTemplate based implementation of {@link ProductRepositoryCustom}.
+ *
+ * Both range queries walk a {value: 1, _id: 1} compound index: the bounds
+ * and the keyset condition select one contiguous index range, which MongoDB
+ * reads in order and stops after {@code limit} entries.
+ */
+@RequiredArgsConstructor
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public List<Product> findPage(String afterId, int limit) {
+        return mongoTemplate.find(pageQuery(afterId, limit), Product.class);
+    }
+
+    @Override
+    public List<Product> findByPriceRange(BigDecimal min, BigDecimal max, BigDecimal afterPrice, String afterId,
+            int limit) {
+        return mongoTemplate.find(
+                rangeQuery("price", decimal(min), decimal(max), decimal(afterPrice), afterId, limit), Product.class);
+    }
+
+    @Override
+    public List<Product> findByExpirationWindow(LocalDate from, LocalDate to, LocalDate afterDate, String afterId,
+            int limit) {
+        return mongoTemplate.find(rangeQuery("expirationDate", from, to, afterDate, afterId, limit), Product.class);
+    }
+
+    @Override
+    public Map<String, Object> summarize() {
+        Aggregation aggregation = Aggregation.newAggregation(Aggregation.group()
+                .count().as("totalProducts")
+                .sum("price").as("totalValue")
+                .avg("price").as("averagePrice"));
+        return summaryOf(mongoTemplate.aggregate(aggregation, Product.class, Document.class).getUniqueMappedResult());
+    }
+
+    @Override
+    public long convertStringPrices() {
+        Query query = Query.query(Criteria.where("price").type(BsonType.STRING.getValue()));
+        Document set = new Document("$set", new Document("price", new Document("$toDecimal", "$price")));
+        AggregationOperation stage = context -> set;
+        return mongoTemplate.updateMulti(query, AggregationUpdate.from(List.of(stage)), Product.class)
+                .getModifiedCount();
+    }
+
+    /**
+     * Keyset query over _id, starting strictly after afterId.
+     */
+    static Query pageQuery(String afterId, int limit) {
+        Query query = afterId != null ? Query.query(IdCriteria.idAfter(afterId)) : new Query();
+        return query.with(Sort.by("id")).limit(limit);
+    }
+
+    /**
+     * Keyset query over (field, _id) between optional inclusive bounds,
+     * starting strictly after (afterValue, afterId).
+     */
+    static Query rangeQuery(String field, Object min, Object max, Object afterValue, String afterId, int limit) {
+        List<Criteria> criteria = new ArrayList<>();
+        // Without a lower bound, still leave out products missing the field
+        criteria.add(min != null ? Criteria.where(field).gte(min) : Criteria.where(field).ne(null));
+        if (max != null) {
+            criteria.add(Criteria.where(field).lte(max));
+        }
+        if (afterValue != null && afterId != null) {
+            criteria.add(new Criteria().orOperator(
+                    Criteria.where(field).gt(afterValue),
+                    new Criteria().andOperator(Criteria.where(field).is(afterValue), IdCriteria.idAfter(afterId))));
+        }
+        return Query.query(new Criteria().andOperator(criteria)).with(Sort.by(field, "id")).limit(limit);
+    }
+
+    /**
+     * Read the totals of {@link #summarize}, null when there is no product.
+     */
+    static Map<String, Object> summaryOf(Document totals) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("totalProducts", totals == null ? 0L : ((Number) totals.get("totalProducts")).longValue());
+        summary.put("totalValue", totals == null ? BigDecimal.ZERO : bigDecimal(totals.get("totalValue")));
+        summary.put("averagePrice", totals == null ? BigDecimal.ZERO
+                : bigDecimal(totals.get("averagePrice")).setScale(2, RoundingMode.HALF_UP));
+        return summary;
+    }
+
+    private static BigDecimal bigDecimal(Object value) {
+        if (value instanceof Decimal128 decimal) {
+            return decimal.bigDecimalValue();
+        }
+        return value == null ? BigDecimal.ZERO : new BigDecimal(value.toString());
+    }
+
+    /**
+     * Prices are stored as Decimal128; compare them as such.
+     */
+    private static Decimal128 decimal(BigDecimal value) {
+        return value == null ? null : new Decimal128(value);
+    }
+}
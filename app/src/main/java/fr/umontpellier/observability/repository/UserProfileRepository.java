@@ -2,9 +2,9 @@ package fr.umontpellier.observability.repository;
 
 import fr.umontpellier.observability.model.UserProfile;
 import org.springframework.data.mongodb.repository.MongoRepository;
-import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,7 +13,7 @@ import java.util.Optional;
  * Provides methods to query and persist user behavioral profiles.
  */
 @Repository
-public interface UserProfileRepository extends MongoRepository<UserProfile, String> {
+public interface UserProfileRepository extends MongoRepository<UserProfile, String>, UserProfileRepositoryCustom {
 
     /**
      * Find a profile by user ID.
@@ -25,6 +25,16 @@ public interface UserProfileRepository extends MongoRepository<UserProfile, Stri
      */
     Optional<UserProfile> findByUserEmail(String userEmail);
 
+    /**
+     * Find the profiles of several users by user ID.
+     */
+    List<UserProfile> findByUserIdIn(Collection<String> userIds);
+
+    /**
+     * Find the profiles of several users by email.
+     */
+    List<UserProfile> findByUserEmailIn(Collection<String> userEmails);
+
     /**
      * Find all profiles with a specific profile type.
      */
@@ -45,24 +55,6 @@ public interface UserProfileRepository extends MongoRepository<UserProfile, Stri
      */
     List<UserProfile> findByExpensiveProductSearchesGreaterThan(int count);
 
-    /**
-     * Find top N profiles by read operations.
-     */
-    @Query(value = "{}", sort = "{ 'readOperations': -1 }")
-    List<UserProfile> findTopByReadOperations();
-
-    /**
-     * Find top N profiles by write operations.
-     */
-    @Query(value = "{}", sort = "{ 'writeOperations': -1 }")
-    List<UserProfile> findTopByWriteOperations();
-
-    /**
-     * Find top N profiles by expensive product searches.
-     */
-    @Query(value = "{}", sort = "{ 'expensiveProductSearches': -1 }")
-    List<UserProfile> findTopByExpensiveProductSearches();
-
     /**
      * Check if a profile exists for a user.
      */
@@ -0,0 +1,54 @@
+package fr.umontpellier.observability.repository;
+
+import fr.umontpellier.observability.model.LeaderboardMetric;
+import fr.umontpellier.observability.model.ProfileDelta;
+import fr.umontpellier.observability.model.UserProfile;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Custom UserProfile persistence operations that Spring Data cannot derive.
+ *
+ * Profile changes are applied as atomic upserts instead of load-mutate-save,
+ * so concurrent writers (threads or nodes) never lose increments.
+ */
+public interface UserProfileRepositoryCustom {
+
+    /**
+     * Atomically apply one set of profile changes, creating the profile if
+     * it does not exist yet.
+     */
+    void applyDelta(ProfileDelta delta);
+
+    /**
+     * Atomically apply the changes of many profiles with a single bulk write.
+     *
+     * @return the number of profiles updated or created
+     */
+    int applyDeltas(Collection<ProfileDelta> deltas);
+
+    /**
+     * Recompute the derived fields (average price viewed, profile type) of
+     * every profile from its counters, server side.
+     *
+     * @return the number of profiles modified
+     */
+    long recalculateDerivedFields();
+
+    /**
+     * Find profile summaries (without recentActions) ordered by id, starting
+     * after the given id.
+     *
+     * @param profileType only return profiles of this type, or all if null
+     * @param afterId     exclusive lower bound on the id, or null for the first page
+     * @param limit       maximum number of profiles returned
+     */
+    List<UserProfile> findSummaries(UserProfile.ProfileType profileType, String afterId, int limit);
+
+    /**
+     * Find the profiles with the highest value of a counter, best first,
+     * projected to the fields a leaderboard needs.
+     */
+    List<UserProfile> findLeaderboard(LeaderboardMetric metric, int limit);
+}
@@ -0,0 +1,269 @@
+package fr.umontpellier.observability.repository;
+
+import com.mongodb.bulk.BulkWriteError;
+import fr.umontpellier.observability.model.LeaderboardMetric;
+import fr.umontpellier.observability.model.ProfileDelta;
+import fr.umontpellier.observability.model.UserProfile;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * MongoTemplate based implementation of {@link UserProfileRepositoryCustom}.
+ *
+ * Each delta is written as two operations of one ordered bulk write, so a
+ * single round trip:
+ * <ol>
+ * <li>an upsert with $inc on the counters and price sum, $max on the max
+ * price and last activity, and $push with $slice on the small recentActions
+ * ring buffer (the full history goes to ActionHistoryService);</li>
+ * <li>a pipeline update that recomputes averageProductPriceViewed and
+ * profileType from the stored counters.</li>
+ * </ol>
+ * The second step only reads the document's own counters, so it is
+ * idempotent and concurrent writers always converge on the right values.
+ *
+ * An ordered bulk write stops at the first failed operation, so the deltas
+ * after it are written again with a new one. Two concurrent first upserts of
+ * the same user race on the unique index and one fails with a duplicate key
+ * error: that delta is retried once, and the retried upsert matches the
+ * profile inserted by the other writer. A delta refused otherwise, or again,
+ * such as one whose email belongs to another profile, is rejected and
+ * skipped, so that it cannot fail the others. Deltas are marked written once
+ * MongoDB acknowledged them.
+ */
+@RequiredArgsConstructor
+public class UserProfileRepositoryCustomImpl implements UserProfileRepositoryCustom {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void applyDelta(ProfileDelta delta) {
+        applyDeltas(List.of(delta));
+    }
+
+    @Override
+    public int applyDeltas(Collection<ProfileDelta> deltas) {
+        if (deltas == null || deltas.isEmpty()) {
+            return 0;
+        }
+        List<ProfileDelta> pending = new ArrayList<>(deltas.size());
+        for (ProfileDelta delta : deltas) {
+            if (queryFor(delta) != null) {
+                pending.add(delta);
+            }
+        }
+
+        int written = 0;
+        ProfileDelta retried = null;
+        while (!pending.isEmpty()) {
+            // MongoDB stores milliseconds: keep updatedAt and writtenAt equal
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+            try {
+                execute(pending, now);
+                pending.forEach(delta -> delta.markWritten(now));
+                return written + pending.size();
+            } catch (BulkOperationException e) {
+                List<BulkWriteError> errors = e.getErrors();
+                if (errors == null || errors.isEmpty()) {
+                    throw e;
+                }
+                BulkWriteError error = errors.get(0);
+                // Each delta is an upsert followed by the derived fields
+                // update, and every operation before the failed one was applied
+                int failed = error.getIndex() / 2;
+                for (ProfileDelta delta : pending.subList(0, failed)) {
+                    delta.markWritten(now);
+                }
+                written += failed;
+                ProfileDelta delta = pending.get(failed);
+                if (error.getIndex() % 2 != 0) {
+                    // The counters moved; the next write derives the fields again
+                    delta.markWritten(now);
+                    written++;
+                    failed++;
+                } else if (error.getCode() == DUPLICATE_KEY && delta != retried) {
+                    retried = delta;
+                } else {
+                    rejectDelta(delta, error);
+                    failed++;
+                }
+                pending = pending.subList(failed, pending.size());
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Skip a delta MongoDB refused.
+     */
+    void rejectDelta(ProfileDelta delta, BulkWriteError error) {
+        delta.markRejected(error.getMessage());
+    }
+
+    private void execute(List<ProfileDelta> deltas, LocalDateTime now) {
+        // Ordered, so the derived fields are computed after the counters moved
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkMode.ORDERED, UserProfile.class);
+        AggregationUpdate derive = deriveFieldsUpdate();
+        for (ProfileDelta delta : deltas) {
+            Query query = queryFor(delta);
+            bulk.upsert(query, upsertUpdate(delta, now));
+            bulk.updateOne(query, derive);
+        }
+        bulk.execute();
+    }
+
+    @Override
+    public long recalculateDerivedFields() {
+        return mongoTemplate.updateMulti(new Query(), deriveFieldsUpdate(), UserProfile.class)
+                .getModifiedCount();
+    }
+
+    @Override
+    public List<UserProfile> findSummaries(UserProfile.ProfileType profileType, String afterId, int limit) {
+        return mongoTemplate.find(summaryQuery(profileType, afterId, limit), UserProfile.class);
+    }
+
+    /**
+     * Keyset query over (profileType, _id): no skip, the limit and the
+     * projection are applied by MongoDB and the compound index serves both
+     * the filter and the sort.
+     */
+    static Query summaryQuery(UserProfile.ProfileType profileType, String afterId, int limit) {
+        Query query = new Query();
+        if (profileType != null) {
+            query.addCriteria(Criteria.where("profileType").is(profileType));
+        }
+        if (afterId != null) {
+            query.addCriteria(IdCriteria.idAfter(afterId));
+        }
+        query.with(Sort.by("id")).limit(limit);
+        query.fields().exclude("recentActions");
+        return query;
+    }
+
+    @Override
+    public List<UserProfile> findLeaderboard(LeaderboardMetric metric, int limit) {
+        return mongoTemplate.find(leaderboardQuery(metric, limit), UserProfile.class);
+    }
+
+    /**
+     * Top-N query walking the {metric: -1, _id: 1} index: MongoDB reads
+     * exactly {@code limit} entries and never sorts in memory.
+     */
+    static Query leaderboardQuery(LeaderboardMetric metric, int limit) {
+        Query query = new Query()
+                .with(Sort.by(metric.getField()).descending().and(Sort.by("id")))
+                .limit(limit);
+        query.fields().include("userId", "userEmail", "userName", "profileType", metric.getField());
+        return query;
+    }
+
+    /**
+     * Select the profile a delta belongs to: by user ID first, then by email.
+     */
+    static Query queryFor(ProfileDelta delta) {
+        if (delta.getUserId() != null) {
+            return Query.query(Criteria.where("userId").is(delta.getUserId()));
+        }
+        if (delta.getUserEmail() != null) {
+            return Query.query(Criteria.where("userEmail").is(delta.getUserEmail()));
+        }
+        return null;
+    }
+
+    /**
+     * Build the atomic counter update for a delta.
+     */
+    static Update upsertUpdate(ProfileDelta delta, LocalDateTime now) {
+        Update update = new Update()
+                .inc("readOperations", delta.getReadOperations())
+                .inc("writeOperations", delta.getWriteOperations())
+                .inc("expensiveProductSearches", delta.getExpensiveProductSearches())
+                .inc("productPriceViews", delta.getProductPriceViews())
+                .inc("productPriceSum", delta.getProductPriceSum())
+                .max("maxProductPriceViewed", delta.getMaxProductPriceViewed())
+                .max("lastActivityAt", delta.getLastActivityAt() != null ? delta.getLastActivityAt() : now)
+                .set("updatedAt", now)
+                .setOnInsert("expensiveThreshold", UserProfile.DEFAULT_EXPENSIVE_THRESHOLD)
+                .setOnInsert("createdAt", now);
+
+        // The query field is set by the upsert itself; never write nulls into
+        // the sparse unique indexes
+        if (delta.getUserId() != null && delta.getUserEmail() != null) {
+            update.setOnInsert("userEmail", delta.getUserEmail());
+        }
+        if (delta.getUserName() != null) {
+            update.setOnInsert("userName", delta.getUserName());
+        }
+
+        update.push("recentActions")
+                .slice(-UserProfile.MAX_RECENT_ACTIONS)
+                .each(delta.getRecentActions().toArray());
+        return update;
+    }
+
+    /**
+     * Pipeline update recomputing the fields derived from the counters. Mirrors
+     * {@link UserProfile#calculateProfileType()}.
+     */
+    static AggregationUpdate deriveFieldsUpdate() {
+        Document average = new Document("$cond", List.of(
+                new Document("$gt", List.of("$productPriceViews", 0)),
+                new Document("$divide", List.of("$productPriceSum", "$productPriceViews")),
+                new Document("$ifNull", List.of("$averageProductPriceViewed", 0.0))));
+
+        Document total = new Document("$add", List.of(
+                new Document("$ifNull", List.of("$readOperations", 0)),
+                new Document("$ifNull", List.of("$writeOperations", 0))));
+
+        Document profileType = new Document("$let", new Document()
+                .append("vars", new Document("total", total))
+                .append("in", new Document("$switch", new Document()
+                        .append("branches", List.of(
+                                branch(new Document("$eq", List.of("$$total", 0)),
+                                        UserProfile.ProfileType.BALANCED),
+                                branch(new Document("$gt", List.of(ratio("$expensiveProductSearches"),
+                                        UserProfile.EXPENSIVE_SEEKER_RATIO)),
+                                        UserProfile.ProfileType.EXPENSIVE_SEEKER),
+                                branch(new Document("$gt", List.of(ratio("$readOperations"),
+                                        UserProfile.READ_HEAVY_RATIO)),
+                                        UserProfile.ProfileType.READ_HEAVY),
+                                branch(new Document("$lt", List.of(ratio("$readOperations"),
+                                        UserProfile.WRITE_HEAVY_RATIO)),
+                                        UserProfile.ProfileType.WRITE_HEAVY)))
+                        .append("default", UserProfile.ProfileType.BALANCED.name()))));
+
+        Document set = new Document("$set", new Document()
+                .append("averageProductPriceViewed", average)
+                .append("profileType", profileType));
+
+        AggregationOperation stage = context -> set;
+        return AggregationUpdate.from(List.of(stage));
+    }
+
+    private static Document ratio(String field) {
+        return new Document("$divide", List.of(new Document("$ifNull", List.of(field, 0)), "$$total"));
+    }
+
+    private static Document branch(Document condition, UserProfile.ProfileType type) {
+        return new Document("case", condition).append("then", type.name());
+    }
+}
@@ -0,0 +1,228 @@
+package fr.umontpellier.observability.service;
+
+import fr.umontpellier.observability.model.ProfileDelta;
+import fr.umontpellier.observability.model.UserActionBucket;
+import fr.umontpellier.observability.model.UserProfile.ProfileAction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Per-user action history, stored outside the profile in hourly buckets.
+ *
+ * Appending is a constant-size upsert per bucket ($push of the new actions
+ * into a bucket of the hour with room for all of them, so that a bucket
+ * never holds more than {@code profiles.history.bucket-size} actions), so
+ * the profile document no longer grows or gets rewritten with its history.
+ * Buckets expire through a TTL index after
+ * {@code profiles.history.retention}.
+ */
+@Service
+public class ActionHistoryService {
+
+    static final String TTL_INDEX_NAME = "bucketStart_ttl";
+
+    private final MongoTemplate mongoTemplate;
+    private final int bucketSize;
+    private final Duration retention;
+
+    public ActionHistoryService(MongoTemplate mongoTemplate,
+            @Value("${profiles.history.bucket-size:200}") int bucketSize,
+            @Value("${profiles.history.retention:30d}") Duration retention) {
+        this.mongoTemplate = mongoTemplate;
+        this.bucketSize = Math.max(1, bucketSize);
+        this.retention = retention;
+    }
+
+    /**
+     * Create the TTL index expiring old buckets.
+     *
+     * An existing index with another retention is left in place (MongoDB
+     * rejects the change); drop it or use collMod to apply a new retention.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureRetentionIndex() {
+        try {
+            mongoTemplate.indexOps(UserActionBucket.class).ensureIndex(retentionIndex(retention));
+        } catch (Exception e) {
+            // MongoDB unavailable or index conflict: history is kept until the index exists
+        }
+    }
+
+    /**
+     * Append the actions carried by profile deltas with one bulk write.
+     *
+     * @return the number of bucket upserts issued
+     */
+    public int append(Collection<ProfileDelta> deltas) {
+        BulkOperations bulk = null;
+        int upserts = 0;
+        for (ProfileDelta delta : deltas) {
+            String userKey = delta.getKey();
+            if (userKey == null || delta.getActions().isEmpty()) {
+                continue;
+            }
+            for (Map.Entry<LocalDateTime, List<ProfileAction>> hour : groupByHour(delta.getActions()).entrySet()) {
+                List<ProfileAction> actions = hour.getValue();
+                for (int from = 0; from < actions.size(); from += bucketSize) {
+                    List<ProfileAction> chunk = actions.subList(from, Math.min(from + bucketSize, actions.size()));
+                    if (bulk == null) {
+                        bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, UserActionBucket.class);
+                    }
+                    bulk.upsert(bucketQuery(userKey, hour.getKey(), bucketSize - chunk.size()),
+                            bucketUpdate(delta, chunk));
+                    upserts++;
+                }
+            }
+        }
+        if (bulk != null) {
+            bulk.execute();
+        }
+        return upserts;
+    }
+
+    /**
+     * Get a user's actions within a time range, newest first.
+     *
+     * @param from  inclusive lower bound, or null
+     * @param to    inclusive upper bound, or null
+     * @param limit maximum number of actions returned
+     */
+    public List<ProfileAction> findActions(String userId, LocalDateTime from, LocalDateTime to, int limit) {
+        List<ProfileAction> found = new ArrayList<>();
+        LocalDateTime currentHour = null;
+        try (Stream<UserActionBucket> buckets = mongoTemplate.stream(
+                historyQuery(ProfileDelta.keyOf(userId, null), from, to), UserActionBucket.class)) {
+            Iterator<UserActionBucket> cursor = buckets.iterator();
+            while (cursor.hasNext()) {
+                UserActionBucket bucket = cursor.next();
+                // Buckets of one hour may hold actions in any order: finish the hour
+                if (found.size() >= limit && !bucket.getBucketStart().equals(currentHour)) {
+                    break;
+                }
+                currentHour = bucket.getBucketStart();
+                if (bucket.getActions() == null) {
+                    continue;
+                }
+                for (ProfileAction action : bucket.getActions()) {
+                    if (inRange(action.getTimestamp(), from, to)) {
+                        found.add(action);
+                    }
+                }
+            }
+        }
+
+        found.sort(ActionHistoryService::newestFirst);
+        return found.size() > limit ? new ArrayList<>(found.subList(0, limit)) : found;
+    }
+
+    /**
+     * Delete a user's history.
+     */
+    public void deleteHistory(String userId) {
+        mongoTemplate.remove(Query.query(Criteria.where("userKey").is(ProfileDelta.keyOf(userId, null))),
+                UserActionBucket.class);
+    }
+
+    /**
+     * Delete all history.
+     */
+    public void deleteAll() {
+        mongoTemplate.remove(new Query(), UserActionBucket.class);
+    }
+
+    static Index retentionIndex(Duration retention) {
+        return new Index("bucketStart", Direction.ASC).named(TTL_INDEX_NAME).expire(retention);
+    }
+
+    /**
+     * Select a bucket of a user's hour holding at most maxCount actions, so
+     * that it has room for the ones pushed. When no bucket of the hour has
+     * enough room the upsert starts a new one.
+     */
+    static Query bucketQuery(String userKey, LocalDateTime bucketStart, int maxCount) {
+        return Query.query(Criteria.where("userKey").is(userKey)
+                .and("bucketStart").is(bucketStart)
+                .and("count").lte(maxCount));
+    }
+
+    static Update bucketUpdate(ProfileDelta delta, List<ProfileAction> actions) {
+        Update update = new Update()
+                .inc("count", actions.size())
+                .min("firstActionAt", timestampOf(actions.get(0)))
+                .max("lastActionAt", timestampOf(actions.get(actions.size() - 1)));
+        if (delta.getUserId() != null) {
+            update.setOnInsert("userId", delta.getUserId());
+        }
+        if (delta.getUserEmail() != null) {
+            update.setOnInsert("userEmail", delta.getUserEmail());
+        }
+        update.push("actions").each(actions.toArray());
+        return update;
+    }
+
+    /**
+     * Buckets overlapping [from, to] for one user, newest hour first. Served
+     * by the {userKey: 1, bucketStart: -1} index.
+     */
+    static Query historyQuery(String userKey, LocalDateTime from, LocalDateTime to) {
+        Criteria criteria = Criteria.where("userKey").is(userKey);
+        if (from != null || to != null) {
+            Criteria bucketStart = criteria.and("bucketStart");
+            if (from != null) {
+                bucketStart.gte(UserActionBucket.bucketStartOf(from));
+            }
+            if (to != null) {
+                bucketStart.lte(to);
+            }
+        }
+        return Query.query(criteria).with(Sort.by("bucketStart").descending());
+    }
+
+    private static Map<LocalDateTime, List<ProfileAction>> groupByHour(Collection<ProfileAction> actions) {
+        Map<LocalDateTime, List<ProfileAction>> byHour = new TreeMap<>();
+        for (ProfileAction action : actions) {
+            byHour.computeIfAbsent(UserActionBucket.bucketStartOf(timestampOf(action)), hour -> new ArrayList<>())
+                    .add(action);
+        }
+        return byHour;
+    }
+
+    private static LocalDateTime timestampOf(ProfileAction action) {
+        return action.getTimestamp() != null ? action.getTimestamp() : LocalDateTime.now();
+    }
+
+    private static boolean inRange(LocalDateTime timestamp, LocalDateTime from, LocalDateTime to) {
+        if (timestamp == null) {
+            return from == null && to == null;
+        }
+        return (from == null || !timestamp.isBefore(from)) && (to == null || !timestamp.isAfter(to));
+    }
+
+    private static int newestFirst(ProfileAction a, ProfileAction b) {
+        if (a.getTimestamp() == null || b.getTimestamp() == null) {
+            return a.getTimestamp() == null ? (b.getTimestamp() == null ? 0 : 1) : -1;
+        }
+        return b.getTimestamp().compareTo(a.getTimestamp());
+    }
+}
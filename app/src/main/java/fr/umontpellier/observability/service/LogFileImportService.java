@@ -0,0 +1,237 @@
+package fr.umontpellier.observability.service;
+
+import fr.umontpellier.observability.model.IngestionProgress;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Imports log files (e.g. the {@code logs/*.log} files written by the
+ * InjectLog4J FileOutput or Log4j2) into user profiles.
+ *
+ * The file is memory-mapped and cut into newline-aligned chunks of about
+ * {@code profiles.ingestion.import-chunk-bytes}; each chunk is mapped,
+ * decoded and parsed by a {@link LogIngestionService} parser, so neither the
+ * file nor its lines are ever held in memory as a whole. Only files under
+ * {@code profiles.ingestion.import-dir} can be imported.
+ */
+@Service
+public class LogFileImportService {
+
+    private static final int BOUNDARY_SCAN_BYTES = 8192;
+
+    private final LogIngestionService logIngestionService;
+    private final Path importDir;
+    private final int chunkBytes;
+    private final ExecutorService importer = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("log-import").daemon().factory());
+
+    public LogFileImportService(LogIngestionService logIngestionService,
+            @Value("${profiles.ingestion.import-dir:logs}") Path importDir,
+            @Value("${profiles.ingestion.import-chunk-bytes:8388608}") int chunkBytes) {
+        this.logIngestionService = logIngestionService;
+        this.importDir = importDir.toAbsolutePath().normalize();
+        this.chunkBytes = Math.max(1, chunkBytes);
+    }
+
+    /**
+     * Start importing a log file in the background. Imports run one at a
+     * time; follow them through {@link LogIngestionService#getIngestion}.
+     *
+     * @param file path of the file, relative to the import directory
+     * @throws IllegalArgumentException if the file is not a readable regular
+     *                                  file inside the import directory
+     */
+    public IngestionProgress startImport(String file) {
+        Path path = resolve(file);
+        IngestionProgress progress = logIngestionService.register("file:" + importDir.relativize(path));
+        importer.execute(() -> importFile(progress, path));
+        return progress;
+    }
+
+    /**
+     * Get the log files that can be imported, relative to the import
+     * directory.
+     */
+    public List<String> listImportableFiles() {
+        List<String> files = new ArrayList<>();
+        if (!Files.isDirectory(importDir)) {
+            return files;
+        }
+        try (Stream<Path> paths = Files.walk(importDir)) {
+            Iterator<Path> it = paths.iterator();
+            while (it.hasNext()) {
+                Path path = it.next();
+                if (Files.isRegularFile(path)) {
+                    files.add(importDir.relativize(path).toString());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        importer.shutdownNow();
+    }
+
+    /**
+     * Import a file on the calling thread.
+     */
+    void importFile(IngestionProgress progress, Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            progress.setTotalBytes(channel.size());
+            logIngestionService.run(progress, new FileChunks(channel, chunkBytes));
+        } catch (Exception e) {
+            // Exception logging handled by InjectLog4J via logging.rules.yaml
+            progress.fail(e);
+        }
+    }
+
+    /**
+     * Resolve a file against the import directory, rejecting anything that
+     * escapes it, including through symbolic links.
+     */
+    Path resolve(String file) {
+        if (file == null || file.isBlank()) {
+            throw new IllegalArgumentException("No file given");
+        }
+        Path path = importDir.resolve(file).normalize();
+        if (!path.startsWith(importDir)) {
+            throw new IllegalArgumentException("File outside the import directory: " + file);
+        }
+        try {
+            Path real = path.toRealPath();
+            if (!real.startsWith(importDir.toRealPath()) || !Files.isRegularFile(real)) {
+                throw new IllegalArgumentException("Not an importable file: " + file);
+            }
+            return real;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("File not found: " + file);
+        }
+    }
+
+    /**
+     * Cut a chunk of a file into lines, accepting \n and \r\n endings.
+     */
+    static List<String> decodeLines(ByteBuffer buffer) {
+        List<String> lines = new ArrayList<>();
+        byte[] line = new byte[256];
+        int length = 0;
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                lines.add(toLine(line, length));
+                length = 0;
+                continue;
+            }
+            if (length == line.length) {
+                line = Arrays.copyOf(line, length * 2);
+            }
+            line[length++] = b;
+        }
+        if (length > 0) {
+            lines.add(toLine(line, length));
+        }
+        return lines;
+    }
+
+    private static String toLine(byte[] bytes, int length) {
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Find the end of the line containing {@code position}: the offset just
+     * after the next newline, or the end of the file.
+     */
+    static long lineEnd(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(BOUNDARY_SCAN_BYTES);
+        long offset = position;
+        while (offset < size) {
+            window.clear();
+            int read = channel.read(window, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    /**
+     * Cuts a file into newline-aligned chunks, each parsed from its own
+     * read-only mapping. Boundaries are found on the calling thread with
+     * small positional reads.
+     */
+    private class FileChunks implements Iterator<Callable<LogIngestionService.ChunkResult>> {
+
+        private final FileChannel channel;
+        private final int chunkBytes;
+        private final long size;
+        private long position;
+
+        FileChunks(FileChannel channel, int chunkBytes) throws IOException {
+            this.channel = channel;
+            this.chunkBytes = chunkBytes;
+            this.size = channel.size();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < size;
+        }
+
+        @Override
+        public Callable<LogIngestionService.ChunkResult> next() {
+            if (position >= size) {
+                throw new NoSuchElementException();
+            }
+            long start = position;
+            long end;
+            try {
+                end = lineEnd(channel, Math.min(start + chunkBytes, size) - 1, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position = end;
+            return () -> parseRange(start, end);
+        }
+
+        private LogIngestionService.ChunkResult parseRange(long start, long end) throws IOException {
+            MappedByteBuffer mapped = channel.map(MapMode.READ_ONLY, start, end - start);
+            return logIngestionService.parseChunk(decodeLines(mapped), end - start);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package fr.umontpellier.observability.service;
+
+import fr.umontpellier.observability.model.IngestionProgress;
+import fr.umontpellier.observability.model.ProfileDelta;
+import fr.umontpellier.observability.model.UserAction;
+import fr.umontpellier.observability.model.UserProfile;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+
+/**
+ * Staged pipeline ingesting logs into user profiles.
+ *
+ * <ol>
+ * <li>The calling thread cuts the input into chunks: lines read from a
+ * stream, or newline-aligned ranges of a mapped file (see
+ * {@link LogFileImportService}).</li>
+ * <li>Chunks are parsed in parallel on a fork-join pool; each parser
+ * coalesces its chunk's actions into one delta per user, or several for a
+ * user with more than {@link ProfileDelta#MAX_PENDING_ACTIONS} actions.</li>
+ * <li>The calling thread merges chunk deltas, in input order, into a batch
+ * and writes it with one bulk upsert once it holds {@code batch-size}
+ * users, or before a user's delta would hold more than
+ * {@link ProfileDelta#MAX_PENDING_ACTIONS} actions.</li>
+ * </ol>
+ * At most {@code max-in-flight-chunks} chunks are read ahead, so memory is
+ * bounded by the chunk size, the number of chunks in flight and the batch
+ * size, whatever the size of the input.
+ */
+@Service
+public class LogIngestionService {
+
+    private static final int MAX_REMEMBERED_INGESTIONS = 20;
+
+    private final LogParserService logParserService;
+    private final UserProfileService userProfileService;
+    private final int chunkSize;
+    private final int batchSize;
+    private final int maxInFlightChunks;
+    private final ForkJoinPool parsers;
+
+    private final Deque<IngestionProgress> ingestions = new ConcurrentLinkedDeque<>();
+
+    public LogIngestionService(LogParserService logParserService, UserProfileService userProfileService,
+            @Value("${profiles.ingestion.parallelism:0}") int parallelism,
+            @Value("${profiles.ingestion.chunk-size:2000}") int chunkSize,
+            @Value("${profiles.ingestion.batch-size:500}") int batchSize,
+            @Value("${profiles.ingestion.max-in-flight-chunks:0}") int maxInFlightChunks) {
+        this.logParserService = logParserService;
+        this.userProfileService = userProfileService;
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.chunkSize = Math.max(1, chunkSize);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxInFlightChunks = maxInFlightChunks > 0 ? maxInFlightChunks : threads * 2;
+        this.parsers = new ForkJoinPool(threads, LogIngestionService::newParserThread, null, false);
+    }
+
+    /**
+     * Process log content to update user profiles.
+     *
+     * @return the finished ingestion; a failed one tells how far it got
+     */
+    public IngestionProgress processLogs(String logContent) {
+        if (logContent == null || logContent.isBlank()) {
+            return ingest(List.<String>of().iterator(), "request");
+        }
+        return ingest(logContent.lines().iterator(), "request");
+    }
+
+    /**
+     * Process multiple log lines to update user profiles.
+     *
+     * @return the finished ingestion; a failed one tells how far it got
+     */
+    public IngestionProgress processLogLines(List<String> logLines) {
+        return ingest(logLines.iterator(), "request");
+    }
+
+    /**
+     * Run the pipeline over the given lines on the calling thread. The
+     * returned progress is registered and visible through
+     * {@link #getIngestions()} while the ingestion runs.
+     */
+    public IngestionProgress ingest(Iterator<String> lines, String source) {
+        IngestionProgress progress = register(source);
+        run(progress, new LineChunks(lines));
+        return progress;
+    }
+
+    /**
+     * Register a new ingestion, queued until {@link #run} starts it.
+     */
+    IngestionProgress register(String source) {
+        IngestionProgress progress = new IngestionProgress(source);
+        ingestions.addFirst(progress);
+        while (ingestions.size() > MAX_REMEMBERED_INGESTIONS) {
+            ingestions.pollLast();
+        }
+        return progress;
+    }
+
+    /**
+     * Parse the chunks on the fork-join pool and write their deltas in
+     * bounded batches. Chunks are pulled from the iterator only when fewer
+     * than {@code max-in-flight-chunks} are being parsed.
+     */
+    void run(IngestionProgress progress, Iterator<Callable<ChunkResult>> chunks) {
+        progress.start();
+        Deque<Future<ChunkResult>> inFlight = new ArrayDeque<>();
+        Map<String, ProfileDelta> batch = new LinkedHashMap<>();
+        try {
+            while (chunks.hasNext()) {
+                inFlight.addLast(parsers.submit(chunks.next()));
+                if (inFlight.size() >= maxInFlightChunks) {
+                    merge(inFlight.pollFirst().get(), batch, progress);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                merge(inFlight.pollFirst().get(), batch, progress);
+            }
+            write(batch, progress);
+            progress.complete();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(inFlight);
+            progress.fail(e);
+        } catch (ExecutionException e) {
+            cancel(inFlight);
+            progress.fail(e.getCause());
+        } catch (Exception e) {
+            // Exception logging handled by InjectLog4J via logging.rules.yaml
+            cancel(inFlight);
+            progress.fail(e);
+        }
+    }
+
+    /**
+     * Get the running and most recent ingestions, newest first.
+     */
+    public List<IngestionProgress> getIngestions() {
+        return new ArrayList<>(ingestions);
+    }
+
+    /**
+     * Get an ingestion by ID.
+     */
+    public Optional<IngestionProgress> getIngestion(String id) {
+        for (IngestionProgress progress : ingestions) {
+            if (progress.getId().equals(id)) {
+                return Optional.of(progress);
+            }
+        }
+        return Optional.empty();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        parsers.shutdownNow();
+    }
+
+    /**
+     * Parse one chunk and coalesce its actions per user.
+     *
+     * @param bytes size of the chunk in the source, 0 if unknown
+     */
+    ChunkResult parseChunk(List<String> lines, long bytes) {
+        List<ProfileDelta> deltas = new ArrayList<>();
+        // Delta of each user taking new actions
+        Map<String, ProfileDelta> current = new HashMap<>();
+        int actions = 0;
+        for (String line : lines) {
+            Optional<UserAction> parsed = logParserService.parseLogLine(line);
+            if (parsed.isEmpty()) {
+                continue;
+            }
+            UserAction action = parsed.get();
+            String key = ProfileDelta.keyOf(action.getUserId(), action.getUserEmail());
+            if (key == null) {
+                continue;
+            }
+            ProfileDelta delta = current.get(key);
+            if (delta == null || delta.isFull()) {
+                delta = ProfileDelta.of(action, UserProfile.DEFAULT_EXPENSIVE_THRESHOLD);
+                current.put(key, delta);
+                deltas.add(delta);
+            } else {
+                delta.add(action, UserProfile.DEFAULT_EXPENSIVE_THRESHOLD);
+            }
+            actions++;
+        }
+        return new ChunkResult(deltas, lines.size(), bytes, actions);
+    }
+
+    private void merge(ChunkResult chunk, Map<String, ProfileDelta> batch, IngestionProgress progress) {
+        progress.addChunkParsed(chunk.lines(), chunk.bytes(), chunk.actions());
+        for (ProfileDelta delta : chunk.deltas()) {
+            ProfileDelta pending = batch.get(delta.getKey());
+            if (pending != null && !pending.canMerge(delta)) {
+                // Write the user's pending actions first, keeping the history in order
+                write(batch, progress);
+                pending = null;
+            }
+            if (pending == null) {
+                batch.put(delta.getKey(), delta);
+            } else {
+                pending.merge(delta);
+            }
+        }
+        if (batch.size() >= batchSize) {
+            write(batch, progress);
+        }
+    }
+
+    private void write(Map<String, ProfileDelta> batch, IngestionProgress progress) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int written = userProfileService.applyProfileDeltas(new ArrayList<>(batch.values()));
+        progress.addBatchWritten(written);
+        batch.clear();
+    }
+
+    private static void cancel(Deque<Future<ChunkResult>> inFlight) {
+        for (Future<ChunkResult> future : inFlight) {
+            future.cancel(true);
+        }
+        inFlight.clear();
+    }
+
+    private static ForkJoinWorkerThread newParserThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("log-ingest-" + thread.getPoolIndex());
+        return thread;
+    }
+
+    /**
+     * Deltas of one parsed chunk in input order, with the size of the chunk.
+     */
+    record ChunkResult(List<ProfileDelta> deltas, int lines, long bytes, int actions) {
+    }
+
+    /**
+     * Cuts a line iterator into parse tasks of {@code chunk-size} lines. The
+     * lines are read on the calling thread when a task is pulled.
+     */
+    private class LineChunks implements Iterator<Callable<ChunkResult>> {
+
+        private final Iterator<String> lines;
+
+        LineChunks(Iterator<String> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return lines.hasNext();
+        }
+
+        @Override
+        public Callable<ChunkResult> next() {
+            if (!lines.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<String> chunk = new ArrayList<>(chunkSize);
+            while (chunk.size() < chunkSize && lines.hasNext()) {
+                chunk.add(lines.next());
+            }
+            return () -> parseChunk(chunk, 0);
+        }
+    }
+}
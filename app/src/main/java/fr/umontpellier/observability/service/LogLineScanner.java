@@ -0,0 +1,634 @@
+package fr.umontpellier.observability.service;
+
+import fr.umontpellier.observability.model.UserAction;
+import fr.umontpellier.observability.model.UserAction.EntityType;
+import fr.umontpellier.observability.model.UserAction.OperationType;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Optional;
+
+/**
+ * Hand-written scanner for the Log4j2 and InjectLog4J layouts understood by
+ * {@link LogParserService}.
+ *
+ * The layout is sniffed from the leading timestamp (a space after the date
+ * for Log4j2, a 'T' for InjectLog4J) and tokenized left to right over the
+ * {@link CharSequence}. Tokens are kept as offsets: only the values stored in
+ * the {@link UserAction} become strings, and the message is searched in
+ * place for user, entity id and price fields.
+ *
+ * It accepts exactly what the regular expressions of LogParserService accept,
+ * and extracts the same values, for ASCII lines without line terminators
+ * (see {@link #handles}). Other lines go through the regular expressions.
+ */
+final class LogLineScanner {
+
+    private static final int LOG4J_TIMESTAMP_LENGTH = "yyyy-MM-dd HH:mm:ss.SSS".length();
+
+    private static final String[] METHOD_CALL_VERBS = { "fetching", "creating", "updating", "deleting", "adding" };
+
+    private LogLineScanner() {
+    }
+
+    /**
+     * Whether the scanner handles a line: ASCII only, so that character
+     * classes and case-insensitive matching are the ASCII ones, and no line
+     * terminator, which the regular expressions' {@code .} would not match.
+     */
+    static boolean handles(CharSequence line) {
+        for (int i = 0, n = line.length(); i < n; i++) {
+            char c = line.charAt(i);
+            if (c >= 0x80 || c == '\n' || c == '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scan a Log4j2 or InjectLog4J line.
+     */
+    static Optional<UserAction> scan(CharSequence line) {
+        int i = 0;
+        int n = line.length();
+        while (i < n && (isDigit(line.charAt(i)) || line.charAt(i) == '-')) {
+            i++;
+        }
+        if (i == 0 || i == n) {
+            return Optional.empty();
+        }
+        if (line.charAt(i) == ' ') {
+            return scanLog4j(line);
+        }
+        if (line.charAt(i) == 'T') {
+            return scanInjectLog4j(line, i);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * {@code yyyy-MM-dd HH:mm:ss.SSS [thread] LEVEL logger - message}
+     */
+    private static Optional<UserAction> scanLog4j(CharSequence line) {
+        int n = line.length();
+        if (!isLog4jTimestamp(line)) {
+            return Optional.empty();
+        }
+        int i = skipSpaces(line, LOG4J_TIMESTAMP_LENGTH, n);
+        if (i == LOG4J_TIMESTAMP_LENGTH || i == n || line.charAt(i) != '[') {
+            return Optional.empty();
+        }
+        int threadEnd = indexOf(line, ']', i + 1, n);
+        if (threadEnd <= i + 1) {
+            return Optional.empty();
+        }
+
+        int levelStart = skipSpaces(line, threadEnd + 1, n);
+        int levelEnd = skipWord(line, levelStart, n);
+        if (levelStart == threadEnd + 1 || levelEnd == levelStart) {
+            return Optional.empty();
+        }
+        int loggerStart = skipSpaces(line, levelEnd, n);
+        i = loggerStart;
+        while (i < n && (isWord(line.charAt(i)) || line.charAt(i) == '.')) {
+            i++;
+        }
+        int loggerEnd = i;
+        if (loggerStart == levelEnd || loggerEnd == loggerStart) {
+            return Optional.empty();
+        }
+
+        i = skipSpaces(line, loggerEnd, n);
+        if (i == loggerEnd || i == n || line.charAt(i) != '-') {
+            return Optional.empty();
+        }
+        int messageStart = messageStart(line, i + 1, n);
+        if (messageStart < 0) {
+            return Optional.empty();
+        }
+
+        UserAction.LPSBuilder builder = UserAction.lpsBuilder()
+                .withTimestamp(log4jTimestamp(line));
+        String logger = line.subSequence(loggerStart, loggerEnd).toString();
+
+        MethodCall call = findMethodCall(line, messageStart, n);
+        if (call != null) {
+            String action = line.subSequence(call.verbStart, call.verbEnd).toString();
+            String entity = line.subSequence(call.entityStart, call.entityEnd).toString();
+            String byField = call.byStart >= 0 ? line.subSequence(call.byStart, call.byEnd).toString() : null;
+            String details = call.detailsStart >= 0 ? line.subSequence(call.detailsStart, n).toString() : null;
+
+            EntityType entityType = "product".equalsIgnoreCase(entity) ? EntityType.PRODUCT : EntityType.USER;
+            OperationType opType = LogParserService.inferOperationFromAction(action, byField);
+            builder.withAction(opType, logger, action.toLowerCase() + entity);
+            builder.withTarget(entityType, details != null ? details.trim() : null);
+        } else {
+            EntityType entityType = containsIgnoreCase(line, loggerStart, loggerEnd, "product")
+                    ? EntityType.PRODUCT
+                    : EntityType.USER;
+            builder.withAction(inferOperationFromMessage(line, messageStart, n), logger, null);
+            builder.withTarget(entityType, findEntityId(line, messageStart, n));
+        }
+
+        scanUserInfo(line, messageStart, n, builder);
+        scanProductPrice(line, messageStart, n, builder);
+        return Optional.of(builder.build());
+    }
+
+    /**
+     * {@code timestamp [package.Class.method] message}, the timestamp being
+     * digits and dashes, 'T', then digits, colons and dots.
+     */
+    private static Optional<UserAction> scanInjectLog4j(CharSequence line, int t) {
+        int n = line.length();
+        int i = t + 1;
+        while (i < n && (isDigit(line.charAt(i)) || line.charAt(i) == ':' || line.charAt(i) == '.')) {
+            i++;
+        }
+        int timestampEnd = i;
+        if (timestampEnd == t + 1) {
+            return Optional.empty();
+        }
+        i = skipSpaces(line, timestampEnd, n);
+        if (i == timestampEnd || i == n || line.charAt(i) != '[') {
+            return Optional.empty();
+        }
+
+        int nameStart = i + 1;
+        int lastDot = -1;
+        i = nameStart;
+        while (i < n && (isWord(line.charAt(i)) || line.charAt(i) == '.')) {
+            if (line.charAt(i) == '.') {
+                lastDot = i;
+            }
+            i++;
+        }
+        int nameEnd = i;
+        // Class and method both non-empty, the method being the part after the last dot
+        if (nameEnd == n || line.charAt(nameEnd) != ']' || lastDot <= nameStart || lastDot == nameEnd - 1) {
+            return Optional.empty();
+        }
+
+        int messageStart = messageStart(line, nameEnd + 1, n);
+        if (messageStart < 0) {
+            return Optional.empty();
+        }
+
+        String className = line.subSequence(nameStart, lastDot).toString();
+        String methodName = line.subSequence(lastDot + 1, nameEnd).toString();
+        UserAction.LPSBuilder builder = UserAction.lpsBuilder()
+                .withTimestamp(isoTimestamp(line, timestampEnd));
+
+        EntityType entityType = containsIgnoreCase(line, nameStart, lastDot, "product")
+                ? EntityType.PRODUCT
+                : EntityType.USER;
+        builder.withAction(LogParserService.inferOperationFromMethod(methodName), className, methodName);
+        builder.withTarget(entityType, findEntityId(line, messageStart, n));
+
+        scanUserInfo(line, messageStart, n, builder);
+        scanProductPrice(line, messageStart, n, builder);
+        return Optional.of(builder.build());
+    }
+
+    /**
+     * Start of the {@code \s+(.+)$} message following {@code from}, or -1.
+     * A message of whitespace only is its last character, as the greedy
+     * {@code \s+} gives back one character to {@code .+}.
+     */
+    private static int messageStart(CharSequence line, int from, int n) {
+        int i = skipSpaces(line, from, n);
+        if (i == from) {
+            return -1;
+        }
+        if (i < n) {
+            return i;
+        }
+        return i - from >= 2 ? n - 1 : -1;
+    }
+
+    private static boolean isLog4jTimestamp(CharSequence line) {
+        return line.length() > LOG4J_TIMESTAMP_LENGTH
+                && digits(line, 0, 4) && line.charAt(4) == '-'
+                && digits(line, 5, 2) && line.charAt(7) == '-'
+                && digits(line, 8, 2) && line.charAt(10) == ' '
+                && digits(line, 11, 2) && line.charAt(13) == ':'
+                && digits(line, 14, 2) && line.charAt(16) == ':'
+                && digits(line, 17, 2) && line.charAt(19) == '.'
+                && digits(line, 20, 3);
+    }
+
+    /**
+     * Read the timestamp from its digits; out of range values go through
+     * the formatter, which resolves or rejects them.
+     */
+    private static LocalDateTime log4jTimestamp(CharSequence line) {
+        LocalDateTime timestamp = timestampOf(line, 20, 3);
+        return timestamp != null
+                ? timestamp
+                : LogParserService.parseTimestamp(line.subSequence(0, LOG4J_TIMESTAMP_LENGTH).toString());
+    }
+
+    /**
+     * Read an InjectLog4J timestamp, {@code yyyy-MM-ddTHH:mm:ss.SSS} or
+     * {@code yyyy-MM-ddTHH:mm:ss}, from its digits; other forms go through
+     * the formatters.
+     */
+    private static LocalDateTime isoTimestamp(CharSequence line, int end) {
+        LocalDateTime timestamp = null;
+        if (end == LOG4J_TIMESTAMP_LENGTH && line.charAt(19) == '.' && digits(line, 20, 3)) {
+            timestamp = timestampOf(line, 20, 3);
+        } else if (end == 19) {
+            timestamp = timestampOf(line, 19, 0);
+        }
+        return timestamp != null
+                ? timestamp
+                : LogParserService.parseTimestamp(line.subSequence(0, end).toString());
+    }
+
+    /**
+     * The {@code yyyy-MM-dd?HH:mm:ss} timestamp at the start of the line,
+     * with {@code millisDigits} digits of milliseconds at
+     * {@code millisStart}, or null if it is malformed or out of range.
+     */
+    private static LocalDateTime timestampOf(CharSequence line, int millisStart, int millisDigits) {
+        if (!(digits(line, 0, 4) && line.charAt(4) == '-' && digits(line, 5, 2) && line.charAt(7) == '-'
+                && digits(line, 8, 2) && digits(line, 11, 2) && line.charAt(13) == ':'
+                && digits(line, 14, 2) && line.charAt(16) == ':' && digits(line, 17, 2))) {
+            return null;
+        }
+        int year = number(line, 0, 4);
+        int month = number(line, 5, 2);
+        int day = number(line, 8, 2);
+        int hour = number(line, 11, 2);
+        int minute = number(line, 14, 2);
+        int second = number(line, 17, 2);
+        int millis = millisDigits > 0 ? number(line, millisStart, millisDigits) : 0;
+        if (year >= 1 && month >= 1 && month <= 12 && day >= 1 && day <= YearMonth.of(year, month).lengthOfMonth()
+                && hour <= 23 && minute <= 59 && second <= 59) {
+            return LocalDateTime.of(year, month, day, hour, minute, second, millis * 1_000_000);
+        }
+        return null;
+    }
+
+    /**
+     * Offsets of a {@code (Fetching|Creating|Updating|Deleting|Adding)\s+(?:all\s+)?
+     * (user|product)s?(?:\s+by\s+(id|email))?(?::\s*(.+))?} match.
+     */
+    private static final class MethodCall {
+        int verbStart;
+        int verbEnd;
+        int entityStart;
+        int entityEnd;
+        int byStart = -1;
+        int byEnd = -1;
+        int detailsStart = -1;
+    }
+
+    private static MethodCall findMethodCall(CharSequence line, int from, int to) {
+        for (int p = from; p < to; p++) {
+            MethodCall call = methodCallAt(line, p, to);
+            if (call != null) {
+                return call;
+            }
+        }
+        return null;
+    }
+
+    private static MethodCall methodCallAt(CharSequence line, int p, int to) {
+        int verbEnd = -1;
+        for (String verb : METHOD_CALL_VERBS) {
+            if (regionMatches(line, p, to, verb)) {
+                verbEnd = p + verb.length();
+                break;
+            }
+        }
+        if (verbEnd < 0) {
+            return null;
+        }
+        int i = skipSpaces(line, verbEnd, to);
+        if (i == verbEnd) {
+            return null;
+        }
+
+        int entityStart = i;
+        int entityEnd = entityAt(line, i, to);
+        if (entityEnd < 0 && regionMatches(line, i, to, "all")) {
+            int afterAll = skipSpaces(line, i + 3, to);
+            if (afterAll > i + 3) {
+                entityStart = afterAll;
+                entityEnd = entityAt(line, afterAll, to);
+            }
+        }
+        if (entityEnd < 0) {
+            return null;
+        }
+
+        MethodCall call = new MethodCall();
+        call.verbStart = p;
+        call.verbEnd = verbEnd;
+        call.entityStart = entityStart;
+        call.entityEnd = entityEnd;
+
+        i = entityEnd;
+        if (i < to && toLower(line.charAt(i)) == 's') {
+            i++;
+        }
+
+        int by = skipSpaces(line, i, to);
+        if (by > i && regionMatches(line, by, to, "by")) {
+            int field = skipSpaces(line, by + 2, to);
+            if (field > by + 2) {
+                int fieldEnd = regionMatches(line, field, to, "id") ? field + 2
+                        : regionMatches(line, field, to, "email") ? field + 5
+                        : -1;
+                if (fieldEnd > 0) {
+                    call.byStart = field;
+                    call.byEnd = fieldEnd;
+                    i = fieldEnd;
+                }
+            }
+        }
+
+        if (i < to && line.charAt(i) == ':') {
+            int details = skipSpaces(line, i + 1, to);
+            if (details < to) {
+                call.detailsStart = details;
+            } else if (details > i + 1) {
+                call.detailsStart = to - 1;
+            }
+        }
+        return call;
+    }
+
+    private static int entityAt(CharSequence line, int i, int to) {
+        if (regionMatches(line, i, to, "user")) {
+            return i + 4;
+        }
+        if (regionMatches(line, i, to, "product")) {
+            return i + 7;
+        }
+        return -1;
+    }
+
+    private static OperationType inferOperationFromMessage(CharSequence line, int from, int to) {
+        if (containsIgnoreCase(line, from, to, "created") || containsIgnoreCase(line, from, to, "creating")
+                || containsIgnoreCase(line, from, to, "added")) {
+            return OperationType.CREATE;
+        } else if (containsIgnoreCase(line, from, to, "updated") || containsIgnoreCase(line, from, to, "updating")) {
+            return OperationType.UPDATE;
+        } else if (containsIgnoreCase(line, from, to, "deleted") || containsIgnoreCase(line, from, to, "deleting")) {
+            return OperationType.DELETE;
+        } else if (containsIgnoreCase(line, from, to, "by id")) {
+            return OperationType.GET_BY_ID;
+        } else if (containsIgnoreCase(line, from, to, "by email")) {
+            return OperationType.GET_BY_EMAIL;
+        }
+        return OperationType.GET_ALL;
+    }
+
+    /**
+     * First {@code id[=:]\s*([\w-]+)}, 24-character hex id or 36-character
+     * UUID in the message, as LogParserService's entity id pattern.
+     */
+    private static String findEntityId(CharSequence line, int from, int to) {
+        for (int p = from; p < to; p++) {
+            if (regionMatches(line, p, to, "id")) {
+                int valueEnd = valueAfterSeparator(line, p + 2, to, false);
+                if (valueEnd > 0) {
+                    return valueOf(line, p + 2, valueEnd);
+                }
+            }
+            if (isBoundary(line, p, from, to)) {
+                if (hexRunAt(line, p, to, 24, false) && isBoundary(line, p + 24, from, to)) {
+                    return line.subSequence(p, p + 24).toString();
+                }
+                if (hexRunAt(line, p, to, 36, true) && isBoundary(line, p + 36, from, to)) {
+                    return line.subSequence(p, p + 36).toString();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * First {@code userId=...}, {@code userEmail=...} or
+     * {@code user={...}} field of the message.
+     */
+    private static void scanUserInfo(CharSequence line, int from, int to, UserAction.LPSBuilder builder) {
+        for (int p = from; p < to; p++) {
+            if (regionMatches(line, p, to, "userid")) {
+                int valueEnd = valueAfterSeparator(line, p + 6, to, false);
+                if (valueEnd > 0) {
+                    builder.withUser(valueOf(line, p + 6, valueEnd), null, null);
+                    return;
+                }
+            }
+            if (regionMatches(line, p, to, "useremail")) {
+                int valueEnd = valueAfterSeparator(line, p + 9, to, true);
+                if (valueEnd > 0) {
+                    builder.withUser(null, valueOf(line, p + 9, valueEnd), null);
+                    return;
+                }
+            }
+            if (regionMatches(line, p, to, "user") && isSeparator(line, p + 4, to)) {
+                int open = skipSpaces(line, p + 5, to);
+                if (open < to && line.charAt(open) == '{') {
+                    int close = indexOf(line, '}', open + 1, to);
+                    if (close > open + 1) {
+                        builder.withUser(
+                                findField(line, open + 1, close, "id", false),
+                                findField(line, open + 1, close, "email", true),
+                                null);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void scanProductPrice(CharSequence line, int from, int to, UserAction.LPSBuilder builder) {
+        for (int p = from; p < to; p++) {
+            if (!regionMatches(line, p, to, "price") || !isSeparator(line, p + 5, to)) {
+                continue;
+            }
+            int start = skipSpaces(line, p + 6, to);
+            int end = start;
+            while (end < to && (isDigit(line.charAt(end)) || line.charAt(end) == '.')) {
+                end++;
+            }
+            if (end > start) {
+                try {
+                    builder.withProductContext(null, Double.parseDouble(line.subSequence(start, end).toString()));
+                } catch (NumberFormatException e) {
+                    // Ignore invalid price
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Case-sensitive {@code name[=:]\s*(value)} search inside a user object.
+     */
+    private static String findField(CharSequence line, int from, int to, String name, boolean email) {
+        for (int p = from; p + name.length() <= to; p++) {
+            if (regionEquals(line, p, name)) {
+                int valueEnd = valueAfterSeparator(line, p + name.length(), to, email);
+                if (valueEnd > 0) {
+                    return valueOf(line, p + name.length(), valueEnd);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * End of the value of {@code [=:]\s*(value)} starting at {@code i}, or
+     * -1. Values are {@code [\w-]+}, or {@code [\w@.]+} for emails.
+     */
+    private static int valueAfterSeparator(CharSequence line, int i, int to, boolean email) {
+        if (!isSeparator(line, i, to)) {
+            return -1;
+        }
+        int start = skipSpaces(line, i + 1, to);
+        int end = start;
+        while (end < to && isValueChar(line.charAt(end), email)) {
+            end++;
+        }
+        return end > start ? end : -1;
+    }
+
+    /**
+     * The value whose end {@link #valueAfterSeparator} found.
+     */
+    private static String valueOf(CharSequence line, int separator, int end) {
+        return line.subSequence(skipSpaces(line, separator + 1, end), end).toString();
+    }
+
+    private static boolean isValueChar(char c, boolean email) {
+        return isWord(c) || (email ? c == '@' || c == '.' : c == '-');
+    }
+
+    private static boolean isSeparator(CharSequence line, int i, int to) {
+        return i < to && (line.charAt(i) == '=' || line.charAt(i) == ':');
+    }
+
+    private static boolean hexRunAt(CharSequence line, int p, int to, int length, boolean allowDash) {
+        if (p + length > to) {
+            return false;
+        }
+        for (int i = p; i < p + length; i++) {
+            char c = toLower(line.charAt(i));
+            if (!(isDigit(c) || (c >= 'a' && c <= 'f') || (allowDash && c == '-'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@code \b} within [from, to): word and non-word characters on each
+     * side, positions outside the range counting as non-word.
+     */
+    private static boolean isBoundary(CharSequence line, int i, int from, int to) {
+        boolean before = i > from && isWord(line.charAt(i - 1));
+        boolean after = i < to && isWord(line.charAt(i));
+        return before != after;
+    }
+
+    private static boolean containsIgnoreCase(CharSequence line, int from, int to, String lowerCaseNeedle) {
+        for (int p = from; p + lowerCaseNeedle.length() <= to; p++) {
+            if (regionMatches(line, p, to, lowerCaseNeedle)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * ASCII case-insensitive match of a lower-case word at {@code p}.
+     */
+    private static boolean regionMatches(CharSequence line, int p, int to, String lowerCaseWord) {
+        if (p + lowerCaseWord.length() > to) {
+            return false;
+        }
+        for (int k = 0; k < lowerCaseWord.length(); k++) {
+            if (toLower(line.charAt(p + k)) != lowerCaseWord.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionEquals(CharSequence line, int p, String word) {
+        for (int k = 0; k < word.length(); k++) {
+            if (line.charAt(p + k) != word.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence line, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (line.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipSpaces(CharSequence line, int i, int to) {
+        while (i < to && isSpace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipWord(CharSequence line, int i, int to) {
+        while (i < to && isWord(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean digits(CharSequence line, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            if (!isDigit(line.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int number(CharSequence line, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            value = value * 10 + (line.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    /**
+     * {@code \s}
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    /**
+     * {@code \w}
+     */
+    private static boolean isWord(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static char toLower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -1,7 +1,8 @@
 package fr.umontpellier.observability.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.NumberInput;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.umontpellier.observability.model.UserAction;
 import fr.umontpellier.observability.model.UserAction.ActionType;
@@ -10,6 +11,7 @@ import fr.umontpellier.observability.model.UserAction.OperationType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
@@ -26,6 +28,11 @@ import java.util.regex.Pattern;
  * 1. JSON structured logs
  * 2. Standard Log4j2 pattern logs
  * 3. Custom InjectLog4J format
+ *
+ * Log4j2 and InjectLog4J lines are read by {@link LogLineScanner}, a
+ * single-pass scanner; the regular expressions below remain the reference
+ * and handle the lines the scanner does not (non-ASCII, embedded line
+ * terminators).
  * 
  * This service implements the LPS (Log Processing Structure) parsing mechanism
  * as described in the TP3 requirements.
@@ -55,6 +62,14 @@ public class LogParserService {
             "price[=:]\\s*([\\d.]+)",
             Pattern.CASE_INSENSITIVE);
 
+    private static final Pattern ENTITY_ID_PATTERN = Pattern.compile(
+            "id[=:]\\s*([\\w-]+)|\\b([a-f0-9]{24})\\b|\\b([a-f0-9-]{36})\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern USER_JSON_EMAIL_PATTERN = Pattern.compile("email[=:]\\s*([\\w@.]+)");
+
+    private static final Pattern USER_JSON_ID_PATTERN = Pattern.compile("id[=:]\\s*([\\w-]+)");
+
     private static final DateTimeFormatter LOG4J_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
 
     /**
@@ -64,7 +79,16 @@ public class LogParserService {
         if (logLine == null || logLine.isBlank()) {
             return Optional.empty();
         }
+        if (!isJsonLog(logLine) && LogLineScanner.handles(logLine)) {
+            return LogLineScanner.scan(logLine);
+        }
+        return parseLogLineWithPatterns(logLine);
+    }
 
+    /**
+     * Parse a non-blank log line with the regular expressions only.
+     */
+    Optional<UserAction> parseLogLineWithPatterns(String logLine) {
         // Try JSON format first
         Optional<UserAction> jsonResult = parseJsonLog(logLine);
         if (jsonResult.isPresent()) {
@@ -83,76 +107,193 @@ public class LogParserService {
 
     /**
      * Parse JSON structured logs.
+     *
+     * The line is read as a token stream rather than a JsonNode tree: only
+     * the fields below are materialized, anything else is skipped. Values
+     * keep JsonNode's asText/asDouble/asBoolean conversions.
      */
     private Optional<UserAction> parseJsonLog(String logLine) {
-        if (!logLine.trim().startsWith("{")) {
+        if (!isJsonLog(logLine)) {
             return Optional.empty();
         }
 
-        try {
-            JsonNode root = objectMapper.readTree(logLine);
-            UserAction.LPSBuilder builder = UserAction.lpsBuilder();
-
-            // Parse timestamp
-            if (root.has("timestamp")) {
-                builder.withTimestamp(parseTimestamp(root.get("timestamp").asText()));
+        try (JsonParser parser = objectMapper.createParser(logLine)) {
+            JsonLogFields fields = new JsonLogFields();
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    parser.nextToken();
+                    switch (name) {
+                        case "timestamp" -> fields.timestamp = asText(parser);
+                        case "user" -> readUser(parser, fields);
+                        case "action" -> readAction(parser, fields);
+                        case "target" -> readTarget(parser, fields);
+                        case "context" -> readContext(parser, fields);
+                        case "result" -> readResult(parser, fields);
+                        default -> parser.skipChildren();
+                    }
+                }
             }
+            return Optional.of(fields.toAction());
 
-            // Parse user info
-            if (root.has("user")) {
-                JsonNode user = root.get("user");
-                builder.withUser(
-                        user.has("id") ? user.get("id").asText() : null,
-                        user.has("email") ? user.get("email").asText() : null,
-                        user.has("name") ? user.get("name").asText() : null);
+        } catch (IOException e) {
+            // Exception logging handled by InjectLog4J via logging.rules.yaml
+            return Optional.empty();
+        }
+    }
+
+    private static void readUser(JsonParser parser, JsonLogFields fields) throws IOException {
+        fields.user = true;
+        fields.userId = null;
+        fields.userEmail = null;
+        fields.userName = null;
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "id" -> fields.userId = asText(parser);
+                case "email" -> fields.userEmail = asText(parser);
+                case "name" -> fields.userName = asText(parser);
+                default -> parser.skipChildren();
             }
+        }
+    }
 
-            // Parse action info
-            if (root.has("action")) {
-                JsonNode action = root.get("action");
-                OperationType opType = parseOperationType(
-                        action.has("operation") ? action.get("operation").asText() : null);
-                builder.withAction(
-                        opType,
-                        action.has("class") ? action.get("class").asText() : null,
-                        action.has("method") ? action.get("method").asText() : null);
+    private static void readAction(JsonParser parser, JsonLogFields fields) throws IOException {
+        fields.action = true;
+        fields.operation = null;
+        fields.className = null;
+        fields.methodName = null;
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "operation" -> fields.operation = asText(parser);
+                case "class" -> fields.className = asText(parser);
+                case "method" -> fields.methodName = asText(parser);
+                default -> parser.skipChildren();
             }
+        }
+    }
 
-            // Parse target info
-            if (root.has("target")) {
-                JsonNode target = root.get("target");
-                EntityType entityType = parseEntityType(
-                        target.has("entity") ? target.get("entity").asText() : null);
-                builder.withTarget(
-                        entityType,
-                        target.has("id") ? target.get("id").asText() : null);
+    private static void readTarget(JsonParser parser, JsonLogFields fields) throws IOException {
+        fields.target = true;
+        fields.entity = null;
+        fields.entityId = null;
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "entity" -> fields.entity = asText(parser);
+                case "id" -> fields.entityId = asText(parser);
+                default -> parser.skipChildren();
             }
+        }
+    }
 
-            // Parse context (product info)
-            if (root.has("context")) {
-                JsonNode context = root.get("context");
-                builder.withProductContext(
-                        context.has("productName") ? context.get("productName").asText() : null,
-                        context.has("price") ? context.get("price").asDouble() : null);
+    private static void readContext(JsonParser parser, JsonLogFields fields) throws IOException {
+        fields.context = true;
+        fields.productName = null;
+        fields.price = null;
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "productName" -> fields.productName = asText(parser);
+                case "price" -> fields.price = asDouble(parser);
+                default -> parser.skipChildren();
             }
+        }
+    }
 
-            // Parse result
-            if (root.has("result")) {
-                JsonNode result = root.get("result");
-                builder.withResult(
-                        !result.has("successful") || result.get("successful").asBoolean(),
-                        result.has("details") ? result.get("details").asText() : null);
-                if (result.has("error")) {
-                    builder.withError(result.get("error").asText());
-                }
+    private static void readResult(JsonParser parser, JsonLogFields fields) throws IOException {
+        fields.result = true;
+        fields.successful = null;
+        fields.details = null;
+        fields.error = null;
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "successful" -> fields.successful = asBoolean(parser);
+                case "details" -> fields.details = asText(parser);
+                case "error" -> fields.error = asText(parser);
+                default -> parser.skipChildren();
             }
+        }
+    }
 
-            return Optional.of(builder.build());
+    /**
+     * Read the current value as JsonNode.asText would: containers read as
+     * an empty string and are skipped.
+     */
+    private static String asText(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getNumberValue().toString();
+        }
+        if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return Double.toString(parser.getDoubleValue());
+        }
+        if (token.isScalarValue()) {
+            // true, false and null
+            return token.asString();
+        }
+        parser.skipChildren();
+        return "";
+    }
 
-        } catch (JsonProcessingException e) {
-            // Exception logging handled by InjectLog4J via logging.rules.yaml
-            return Optional.empty();
+    /**
+     * Read the current value as JsonNode.asDouble would.
+     */
+    private static double asDouble(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token.isNumeric()) {
+            return parser.getDoubleValue();
         }
+        if (token == JsonToken.VALUE_STRING) {
+            return NumberInput.parseAsDouble(parser.getText(), 0.0);
+        }
+        parser.skipChildren();
+        return token == JsonToken.VALUE_TRUE ? 1.0 : 0.0;
+    }
+
+    /**
+     * Read the current value as JsonNode.asBoolean would.
+     */
+    private static boolean asBoolean(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue() != 0;
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            return "true".equals(parser.getText().trim());
+        }
+        parser.skipChildren();
+        return token == JsonToken.VALUE_TRUE;
     }
 
     /**
@@ -269,7 +410,20 @@ public class LogParserService {
 
     // Helper methods
 
-    private LocalDateTime parseTimestamp(String timestamp) {
+    /**
+     * Whether the line starts with '{', ignoring what String.trim() strips.
+     */
+    private static boolean isJsonLog(String logLine) {
+        for (int i = 0; i < logLine.length(); i++) {
+            char c = logLine.charAt(i);
+            if (c > ' ') {
+                return c == '{';
+            }
+        }
+        return false;
+    }
+
+    static LocalDateTime parseTimestamp(String timestamp) {
         if (timestamp == null) {
             return LocalDateTime.now();
         }
@@ -284,7 +438,7 @@ public class LogParserService {
         }
     }
 
-    private OperationType parseOperationType(String opString) {
+    private static OperationType parseOperationType(String opString) {
         if (opString == null) {
             return OperationType.GET_ALL;
         }
@@ -295,7 +449,7 @@ public class LogParserService {
         }
     }
 
-    private EntityType parseEntityType(String entityString) {
+    private static EntityType parseEntityType(String entityString) {
         if (entityString == null) {
             return EntityType.USER;
         }
@@ -308,7 +462,7 @@ public class LogParserService {
         }
     }
 
-    private OperationType inferOperationFromMethod(String methodName) {
+    static OperationType inferOperationFromMethod(String methodName) {
         if (methodName == null) {
             return OperationType.GET_ALL;
         }
@@ -331,7 +485,7 @@ public class LogParserService {
         return OperationType.GET_ALL;
     }
 
-    private OperationType inferOperationFromAction(String action, String byField) {
+    static OperationType inferOperationFromAction(String action, String byField) {
         if (action == null) {
             return OperationType.GET_ALL;
         }
@@ -379,10 +533,7 @@ public class LogParserService {
             return null;
         }
         // Try to find an ID pattern (UUID or alphanumeric)
-        Pattern idPattern = Pattern.compile(
-                "id[=:]\\s*([\\w-]+)|\\b([a-f0-9]{24})\\b|\\b([a-f0-9-]{36})\\b",
-                Pattern.CASE_INSENSITIVE);
-        Matcher matcher = idPattern.matcher(message);
+        Matcher matcher = ENTITY_ID_PATTERN.matcher(message);
         if (matcher.find()) {
             for (int i = 1; i <= matcher.groupCount(); i++) {
                 if (matcher.group(i) != null) {
@@ -404,8 +555,8 @@ public class LogParserService {
                 builder.withUser(userId, userEmail, null);
             } else if (userJson != null) {
                 // Parse user JSON object
-                Matcher emailInJson = Pattern.compile("email[=:]\\s*([\\w@.]+)").matcher(userJson);
-                Matcher idInJson = Pattern.compile("id[=:]\\s*([\\w-]+)").matcher(userJson);
+                Matcher emailInJson = USER_JSON_EMAIL_PATTERN.matcher(userJson);
+                Matcher idInJson = USER_JSON_ID_PATTERN.matcher(userJson);
                 builder.withUser(
                         idInJson.find() ? idInJson.group(1) : null,
                         emailInJson.find() ? emailInJson.group(1) : null,
@@ -425,4 +576,56 @@ public class LogParserService {
             }
         }
     }
+
+    /**
+     * The fields of a JSON log line, applied to the builder once the whole
+     * line has been read so that their order in the line does not matter.
+     */
+    private static final class JsonLogFields {
+        private String timestamp;
+        private boolean user;
+        private String userId;
+        private String userEmail;
+        private String userName;
+        private boolean action;
+        private String operation;
+        private String className;
+        private String methodName;
+        private boolean target;
+        private String entity;
+        private String entityId;
+        private boolean context;
+        private String productName;
+        private Double price;
+        private boolean result;
+        private Boolean successful;
+        private String details;
+        private String error;
+
+        private UserAction toAction() {
+            UserAction.LPSBuilder builder = UserAction.lpsBuilder();
+            if (timestamp != null) {
+                builder.withTimestamp(parseTimestamp(timestamp));
+            }
+            if (user) {
+                builder.withUser(userId, userEmail, userName);
+            }
+            if (action) {
+                builder.withAction(parseOperationType(operation), className, methodName);
+            }
+            if (target) {
+                builder.withTarget(parseEntityType(entity), entityId);
+            }
+            if (context) {
+                builder.withProductContext(productName, price);
+            }
+            if (result) {
+                builder.withResult(successful == null || successful, details);
+                if (error != null) {
+                    builder.withError(error);
+                }
+            }
+            return builder.build();
+        }
+    }
 }
@@ -0,0 +1,411 @@
+package fr.umontpellier.observability.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import fr.umontpellier.observability.model.BulkProductOperation;
+import fr.umontpellier.observability.model.BulkProductResult;
+import fr.umontpellier.observability.model.Product;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk creation, update and deletion of products.
+ *
+ * Operations are read one by one from a JSON array or NDJSON stream and
+ * handled in batches of {@code products.bulk.batch-size}: each batch is
+ * validated, checked against the existing ids with one query, written with
+ * one MongoDB bulk write and announced with one flush of product events.
+ * One result per operation is written as NDJSON as soon as its batch is
+ * done, so neither the request nor the response is held in memory.
+ *
+ * Ordered requests stop at the first operation that is not applied, the
+ * following ones being reported as skipped; unordered requests apply every
+ * valid operation. Updates of products removed between the check and the
+ * write match nothing: the counts of the bulk write show it, and they are
+ * reported as not found, without an event. As that is only known once the
+ * batch is written, an ordered request then stops after the batch, the
+ * following operations of the batch keeping their own results. Deletes of
+ * products removed meanwhile cannot be told apart from the others and leave
+ * the product deleted all the same, so they are reported as deleted.
+ */
+@Service
+public class ProductBulkService {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final ProductService productService;
+    private final ProductCache productCache;
+    private final int batchSize;
+
+    public ProductBulkService(MongoTemplate mongoTemplate, ObjectMapper objectMapper, Validator validator,
+            ProductService productService, ProductCache productCache,
+            @Value("${products.bulk.batch-size:1000}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.productService = productService;
+        this.productCache = productCache;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Apply the operations read from the input and stream their results to
+     * the output.
+     *
+     * @param ordered stop at the first operation that is not applied
+     * @return the number of operations applied
+     * @throws IOException if the input is not valid JSON; the results of the
+     *                     operations read before stay written
+     */
+    public int bulkWrite(InputStream in, OutputStream out, boolean ordered) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.setRootValueSeparator(null);
+
+        Batch batch = new Batch(ordered);
+        int index = 0;
+        try (MappingIterator<BulkProductOperation> operations =
+                objectMapper.readerFor(BulkProductOperation.class).readValues(in)) {
+            while (operations.hasNextValue()) {
+                try {
+                    batch.add(index, operations.nextValue());
+                } catch (JsonMappingException e) {
+                    // The parser skips the rest of the operation and carries on
+                    batch.reject(index, "Unreadable operation: " + e.getOriginalMessage());
+                }
+                index++;
+                if (batch.size() == batchSize) {
+                    batch.write(generator);
+                }
+            }
+        } finally {
+            batch.write(generator);
+            // Flush rather than close: the response stream is owned by the caller
+            generator.flush();
+        }
+        return batch.applied;
+    }
+
+    /**
+     * Operations read but not written yet, and the state of the request.
+     */
+    private class Batch {
+
+        private final boolean ordered;
+        private final List<Item> items = new ArrayList<>();
+        private boolean stopped;
+        private int applied;
+
+        Batch(boolean ordered) {
+            this.ordered = ordered;
+        }
+
+        int size() {
+            return items.size();
+        }
+
+        void add(int index, BulkProductOperation operation) {
+            items.add(new Item(index, operation));
+        }
+
+        void reject(int index, String error) {
+            Item item = new Item(index, null);
+            item.fail(BulkProductResult.Status.INVALID, error);
+            items.add(item);
+        }
+
+        void write(JsonGenerator generator) throws IOException {
+            if (items.isEmpty()) {
+                return;
+            }
+            List<Item> pending = check();
+            if (!pending.isEmpty()) {
+                execute(pending);
+                publish(pending);
+            }
+            for (Item item : items) {
+                writeResult(generator, item.result());
+            }
+            generator.flush();
+            items.clear();
+        }
+
+        /**
+         * Validate the batch and check it against the existing products, in
+         * request order. Returns the items left to write.
+         */
+        private List<Item> check() {
+            for (Item item : items) {
+                if (item.status == null) {
+                    validate(item);
+                }
+            }
+            Set<String> existing = existingIds(items.stream()
+                    .filter(item -> item.status == null && item.id != null)
+                    .map(item -> item.id)
+                    .collect(Collectors.toSet()));
+
+            List<Item> pending = new ArrayList<>();
+            for (Item item : items) {
+                if (stopped) {
+                    item.skip();
+                    continue;
+                }
+                if (item.status == null) {
+                    // Later operations of the batch see the earlier ones
+                    BulkProductOperation.Type op = item.operation.op();
+                    if (op == BulkProductOperation.Type.CREATE && !existing.add(item.id)) {
+                        item.fail(BulkProductResult.Status.CONFLICT, "Product already exists");
+                    } else if (op != BulkProductOperation.Type.CREATE && !existing.contains(item.id)) {
+                        item.fail(BulkProductResult.Status.NOT_FOUND, "Product not found");
+                    } else if (op == BulkProductOperation.Type.DELETE) {
+                        existing.remove(item.id);
+                    }
+                }
+                if (item.status == null) {
+                    pending.add(item);
+                } else if (ordered) {
+                    stopped = true;
+                }
+            }
+            return pending;
+        }
+
+        /**
+         * Write the pending items with one bulk write; items MongoDB
+         * rejects (or never reached, in an ordered request) are marked so.
+         */
+        private void execute(List<Item> pending) {
+            BulkOperations bulk = mongoTemplate.bulkOps(ordered ? BulkMode.ORDERED : BulkMode.UNORDERED,
+                    Product.class);
+            for (Item item : pending) {
+                switch (item.operation.op()) {
+                    case CREATE -> bulk.insert(item.operation.product());
+                    case UPDATE -> bulk.replaceOne(byId(item.id), item.operation.product());
+                    case DELETE -> bulk.remove(byId(item.id));
+                }
+            }
+            try {
+                reportUnmatched(pending, bulk.execute());
+            } catch (BulkOperationException e) {
+                // Exception logging handled by InjectLog4J via logging.rules.yaml
+                int firstError = pending.size();
+                for (BulkWriteError error : e.getErrors()) {
+                    pending.get(error.getIndex()).fail(error.getCode() == DUPLICATE_KEY
+                            ? BulkProductResult.Status.CONFLICT
+                            : BulkProductResult.Status.FAILED, error.getMessage());
+                    firstError = Math.min(firstError, error.getIndex());
+                }
+                if (ordered) {
+                    for (int i = firstError + 1; i < pending.size(); i++) {
+                        pending.get(i).skip();
+                    }
+                    stopped = true;
+                }
+                reportUnmatched(pending, e.getResult());
+            } catch (RuntimeException e) {
+                // Exception logging handled by InjectLog4J via logging.rules.yaml
+                for (Item item : pending) {
+                    item.fail(BulkProductResult.Status.FAILED, e.getMessage());
+                }
+                stopped = ordered;
+            }
+            for (Item item : pending) {
+                item.succeed();
+            }
+        }
+
+        /**
+         * Mark as not found the updates that matched no product, deleted
+         * since {@link #check}, by looking their ids up again.
+         */
+        private void reportUnmatched(List<Item> pending, BulkWriteResult result) {
+            List<Item> updates = pending.stream()
+                    .filter(item -> item.status == null && item.operation.op() == BulkProductOperation.Type.UPDATE)
+                    .toList();
+            if (result.getMatchedCount() >= updates.size()) {
+                return;
+            }
+            Set<String> found = existingIds(updates.stream().map(item -> item.id).collect(Collectors.toSet()));
+            for (Item item : updates) {
+                if (!found.contains(item.id)) {
+                    item.fail(BulkProductResult.Status.NOT_FOUND, "Product not found");
+                    stopped = ordered;
+                }
+            }
+        }
+
+        /**
+         * Announce the applied items with one flush of product events and
+         * drop them from the product cache.
+         */
+        private void publish(List<Item> pending) {
+            List<String> ids = new ArrayList<>();
+            for (Item item : pending) {
+                if (!item.status.isApplied()) {
+                    continue;
+                }
+                switch (item.operation.op()) {
+                    case CREATE -> productService.publishProductEvent("PRODUCT_ADDED", item.operation.product());
+                    case UPDATE -> productService.publishProductEvent("PRODUCT_UPDATED", item.operation.product());
+                    case DELETE -> productService.publishProductEvent("PRODUCT_DELETED", item.id, null, BigDecimal.ZERO);
+                }
+                ids.add(item.id);
+                applied++;
+            }
+            if (!ids.isEmpty()) {
+                productService.flushProductEvents();
+                productCache.invalidate(ids);
+            }
+        }
+    }
+
+    /**
+     * Check the shape of an operation and its product, settling its id.
+     */
+    private void validate(Item item) {
+        BulkProductOperation operation = item.operation;
+        if (operation.op() == null) {
+            item.fail(BulkProductResult.Status.INVALID, "Missing op");
+            return;
+        }
+        Product product = operation.product();
+        if (operation.op() == BulkProductOperation.Type.DELETE) {
+            if (operation.id() == null || operation.id().isBlank()) {
+                item.fail(BulkProductResult.Status.INVALID, "Missing id");
+            }
+            return;
+        }
+        if (product == null) {
+            item.fail(BulkProductResult.Status.INVALID, "Missing product");
+            return;
+        }
+        if (operation.op() == BulkProductOperation.Type.UPDATE) {
+            if (operation.id() == null || operation.id().isBlank()) {
+                item.fail(BulkProductResult.Status.INVALID, "Missing id");
+                return;
+            }
+            product.setId(operation.id());
+        } else if (product.getId() == null) {
+            product.setId(operation.id() != null ? operation.id() : new ObjectId().toHexString());
+        }
+        item.id = product.getId();
+
+        Set<ConstraintViolation<Product>> violations = validator.validate(product);
+        if (!violations.isEmpty()) {
+            item.fail(BulkProductResult.Status.INVALID, violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+
+    /**
+     * Find which of the given ids exist, with one query returning ids only.
+     */
+    Set<String> existingIds(Set<String> ids) {
+        Set<String> existing = new HashSet<>();
+        if (ids.isEmpty()) {
+            return existing;
+        }
+        Query query = Query.query(Criteria.where("id").in(ids));
+        query.fields().include("_id");
+        for (Document document : mongoTemplate.find(query, Document.class,
+                mongoTemplate.getCollectionName(Product.class))) {
+            Object id = document.get("_id");
+            existing.add(id instanceof ObjectId objectId ? objectId.toHexString() : String.valueOf(id));
+        }
+        return existing;
+    }
+
+    private static Query byId(String id) {
+        return Query.query(Criteria.where("id").is(id));
+    }
+
+    private static void writeResult(JsonGenerator generator, BulkProductResult result) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("index", result.index());
+        if (result.op() != null) {
+            generator.writeStringField("op", result.op().name());
+        }
+        if (result.id() != null) {
+            generator.writeStringField("id", result.id());
+        }
+        generator.writeStringField("status", result.status().name());
+        if (result.error() != null) {
+            generator.writeStringField("error", result.error());
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * One operation and its outcome so far; a null status means still
+     * pending.
+     */
+    private static class Item {
+
+        private final int index;
+        private final BulkProductOperation operation;
+        private String id;
+        private BulkProductResult.Status status;
+        private String error;
+
+        Item(int index, BulkProductOperation operation) {
+            this.index = index;
+            this.operation = operation;
+            this.id = operation == null ? null : operation.id();
+        }
+
+        void fail(BulkProductResult.Status status, String error) {
+            this.status = status;
+            this.error = error;
+        }
+
+        void skip() {
+            if (status == null) {
+                fail(BulkProductResult.Status.SKIPPED, "An earlier operation failed");
+            }
+        }
+
+        void succeed() {
+            if (status == null) {
+                status = switch (operation.op()) {
+                    case CREATE -> BulkProductResult.Status.CREATED;
+                    case UPDATE -> BulkProductResult.Status.UPDATED;
+                    case DELETE -> BulkProductResult.Status.DELETED;
+                };
+            }
+        }
+
+        BulkProductResult result() {
+            return new BulkProductResult(index, operation == null ? null : operation.op(), id, status, error);
+        }
+    }
+}
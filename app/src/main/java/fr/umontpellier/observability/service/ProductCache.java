@@ -0,0 +1,160 @@
+package fr.umontpellier.observability.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.umontpellier.observability.model.CursorPage;
+import fr.umontpellier.observability.model.Product;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of products, by id and by catalogue page (whole
+ * catalogue, price ranges or expiration windows).
+ *
+ * Both caches are bounded and expire entries {@code products.cache.ttl} after
+ * they are loaded. ProductService invalidates them on its own writes; writes
+ * made by other instances arrive through the product-events topic, which
+ * every instance consumes in a consumer group of its own. Hits, misses and
+ * evictions are published to Micrometer as the "products" and
+ * "product-pages" caches.
+ */
+@Service
+public class ProductCache {
+
+    private final ObjectMapper objectMapper;
+    private final Cache<String, Product> products;
+    private final Cache<PageKey, CursorPage<Product>> pages;
+    // Part of every page key: bumping it drops pages still being loaded
+    private final AtomicLong catalogueVersion = new AtomicLong();
+
+    public ProductCache(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+            @Value("${products.cache.max-size:10000}") long maxSize,
+            @Value("${products.cache.max-pages:1000}") long maxPages,
+            @Value("${products.cache.ttl:10m}") Duration ttl) {
+        this.objectMapper = objectMapper;
+        this.products = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.pages = Caffeine.newBuilder()
+                .maximumSize(maxPages)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, products, "products");
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "product-pages");
+    }
+
+    /**
+     * Get a product, loading it on a miss. Missing products are not cached.
+     *
+     * @param loader returns the product with the given id, or null
+     */
+    public Product getProduct(String id, Function<String, Product> loader) {
+        return products.get(id, loader);
+    }
+
+    /**
+     * Get a catalogue page, loading it on a miss.
+     *
+     * @param query identifies the listing and its filters, e.g. a price range
+     */
+    public CursorPage<Product> getPage(String query, String after, int limit, Supplier<CursorPage<Product>> loader) {
+        return pages.get(new PageKey(catalogueVersion.get(), query, after, limit), key -> loader.get());
+    }
+
+    /**
+     * Drop a product and every catalogue page after it was added, updated or
+     * deleted.
+     */
+    public void invalidate(String id) {
+        if (id != null) {
+            // Waits for a load of this id in progress, so it cannot be cached stale
+            products.invalidate(id);
+        }
+        catalogueVersion.incrementAndGet();
+        pages.invalidateAll();
+    }
+
+    /**
+     * Drop several products and every catalogue page, e.g. after a bulk
+     * write.
+     */
+    public void invalidate(Collection<String> ids) {
+        products.invalidateAll(ids);
+        catalogueVersion.incrementAndGet();
+        pages.invalidateAll();
+    }
+
+    /**
+     * Drop everything.
+     */
+    public void invalidateAll() {
+        products.invalidateAll();
+        catalogueVersion.incrementAndGet();
+        pages.invalidateAll();
+    }
+
+    /**
+     * Invalidate the product of a product-events message, including the
+     * events this instance published itself. Every instance reads the topic
+     * from the latest offset in a group of its own.
+     */
+    @KafkaListener(topics = "product-events", groupId = "product-cache-${random.uuid}",
+            properties = "auto.offset.reset=latest",
+            autoStartup = "${products.cache.invalidation.enabled:true}")
+    public void onProductEvent(String message) {
+        try {
+            String id = productIdOf(message);
+            if (id == null) {
+                invalidateAll();
+            } else {
+                invalidate(id);
+            }
+        } catch (IOException e) {
+            // Exception logging handled by InjectLog4J via logging.rules.yaml
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Read the product_id field of a product event, skipping the others;
+     * null if the event has none.
+     */
+    String productIdOf(String message) throws IOException {
+        if (message == null) {
+            throw new IOException("Empty product event");
+        }
+        try (JsonParser parser = objectMapper.createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Not a product event: " + message);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                if ("product_id".equals(name) && parser.currentToken() == JsonToken.VALUE_STRING) {
+                    return parser.getText();
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+    }
+
+    private record PageKey(long version, String query, String after, int limit) {
+    }
+}
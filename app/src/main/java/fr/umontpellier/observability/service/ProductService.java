@@ -3,14 +3,19 @@ package fr.umontpellier.observability.service;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.umontpellier.observability.exception.ProductAlreadyExistsException;
 import fr.umontpellier.observability.exception.ProductNotFoundException;
+import fr.umontpellier.observability.model.CursorPage;
 import fr.umontpellier.observability.model.Product;
 import fr.umontpellier.observability.repository.ProductRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,19 +26,90 @@ import java.util.Map;
 public class ProductService {
 
     private final ProductRepository productRepository;
+    private final ProductCache productCache;
     private final KafkaTemplate<String, String> kafkaTemplate;
     private final ObjectMapper objectMapper;
     private static final String PRODUCT_TOPIC = "product-events";
+    private static final char CURSOR_SEPARATOR = ':';
+
+    /**
+     * Get a page of products in id order.
+     *
+     * @param after cursor returned with the previous page, or null
+     * @param limit requested page size, capped at {@link CursorPage#MAX_LIMIT}
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<Product> getAllProducts(String after, Integer limit) {
+        int pageSize = CursorPage.limit(limit);
+        return productCache.getPage("all", after, pageSize, () -> {
+            // One extra product tells whether there is a next page
+            List<Product> products = productRepository.findPage(after, pageSize + 1);
+            return CursorPage.of(products, pageSize, Product::getId);
+        });
+    }
+
+    /**
+     * Get a page of products between two prices, cheapest first.
+     *
+     * @param min   lowest price (inclusive), or null
+     * @param max   highest price (inclusive), or null
+     * @param after cursor returned with the previous page, or null
+     * @param limit requested page size, capped at {@link CursorPage#MAX_LIMIT}
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<Product> getProductsByPriceRange(BigDecimal min, BigDecimal max, String after, Integer limit) {
+        if (min != null && max != null && min.compareTo(max) > 0) {
+            throw new IllegalArgumentException("Minimum price above maximum price");
+        }
+        String[] cursor = splitCursor(after);
+        BigDecimal afterPrice = cursor == null ? null : new BigDecimal(cursor[0]);
+        int pageSize = CursorPage.limit(limit);
+        return productCache.getPage("price:" + min + ":" + max, after, pageSize, () -> {
+            List<Product> products = productRepository.findByPriceRange(
+                    min, max, afterPrice, cursor == null ? null : cursor[1], pageSize + 1);
+            return CursorPage.of(products, pageSize, p -> cursorOf(p.getPrice().toPlainString(), p.getId()));
+        });
+    }
 
+    /**
+     * Get a page of products expiring between two dates, soonest first.
+     *
+     * @param from  first expiration date (inclusive), or null
+     * @param to    last expiration date (inclusive), or null
+     * @param after cursor returned with the previous page, or null
+     * @param limit requested page size, capped at {@link CursorPage#MAX_LIMIT}
+     */
     @Transactional(readOnly = true)
-    public List<Product> getAllProducts() {
-        return productRepository.findAll();
+    public CursorPage<Product> getProductsExpiringBetween(LocalDate from, LocalDate to, String after, Integer limit) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("Window starts after it ends");
+        }
+        String[] cursor = splitCursor(after);
+        LocalDate afterDate = cursor == null ? null : parseDate(cursor[0]);
+        int pageSize = CursorPage.limit(limit);
+        return productCache.getPage("expiration:" + from + ":" + to, after, pageSize, () -> {
+            List<Product> products = productRepository.findByExpirationWindow(
+                    from, to, afterDate, cursor == null ? null : cursor[1], pageSize + 1);
+            return CursorPage.of(products, pageSize, p -> cursorOf(p.getExpirationDate().toString(), p.getId()));
+        });
+    }
+
+    /**
+     * Get the number of products and the total and average of their prices,
+     * computed by MongoDB over every product.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getProductSummary() {
+        return productRepository.summarize();
     }
 
     @Transactional(readOnly = true)
     public Product getProductById(String id) {
-        return productRepository.findById(id)
-                .orElseThrow(() -> new ProductNotFoundException(id));
+        Product product = productCache.getProduct(id, key -> productRepository.findById(key).orElse(null));
+        if (product == null) {
+            throw new ProductNotFoundException(id);
+        }
+        return product;
     }
 
     public Product addProduct(Product product) {
@@ -43,6 +119,7 @@ public class ProductService {
         }
 
         Product savedProduct = productRepository.save(product);
+        productCache.invalidate(savedProduct.getId());
 
         // Publish event to Kafka with JSON data
         publishProductEvent("PRODUCT_ADDED", savedProduct);
@@ -56,6 +133,7 @@ public class ProductService {
         }
 
         productRepository.deleteById(id);
+        productCache.invalidate(id);
 
         // Publish event to Kafka
         publishProductEvent("PRODUCT_DELETED", id, null, BigDecimal.ZERO);
@@ -70,6 +148,7 @@ public class ProductService {
         product.setExpirationDate(productDetails.getExpirationDate());
 
         Product updatedProduct = productRepository.save(product);
+        productCache.invalidate(id);
 
         // Publish event to Kafka with JSON data
         publishProductEvent("PRODUCT_UPDATED", updatedProduct);
@@ -77,11 +156,64 @@ public class ProductService {
         return updatedProduct;
     }
 
-    private void publishProductEvent(String eventType, Product product) {
+    /**
+     * Convert prices left as strings by earlier versions, so that price-range
+     * queries see every product.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void convertStringPrices() {
+        try {
+            if (productRepository.convertStringPrices() > 0) {
+                productCache.invalidateAll();
+            }
+        } catch (Exception e) {
+            // MongoDB unavailable: products with string prices stay out of price ranges
+        }
+    }
+
+    /**
+     * Range cursors hold the sort value and the id of the last product of a
+     * page.
+     */
+    static String cursorOf(String value, String id) {
+        return value + CURSOR_SEPARATOR + id;
+    }
+
+    /**
+     * Split a range cursor into its value and id, or return null without one.
+     */
+    static String[] splitCursor(String after) {
+        if (after == null) {
+            return null;
+        }
+        int separator = after.indexOf(CURSOR_SEPARATOR);
+        if (separator <= 0 || separator == after.length() - 1) {
+            throw new IllegalArgumentException("Invalid cursor: " + after);
+        }
+        return new String[] { after.substring(0, separator), after.substring(separator + 1) };
+    }
+
+    private static LocalDate parseDate(String date) {
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + date);
+        }
+    }
+
+    void publishProductEvent(String eventType, Product product) {
         publishProductEvent(eventType, product.getId(), product.getName(), product.getPrice());
     }
 
-    private void publishProductEvent(String eventType, String productId, String productName, BigDecimal price) {
+    /**
+     * Wait until the product events published so far are sent, so that a
+     * batch of events goes out together.
+     */
+    void flushProductEvents() {
+        kafkaTemplate.flush();
+    }
+
+    void publishProductEvent(String eventType, String productId, String productName, BigDecimal price) {
         try {
             Map<String, Object> event = new HashMap<>();
             event.put("event_type", eventType);
@@ -0,0 +1,243 @@
+package fr.umontpellier.observability.service;
+
+import fr.umontpellier.observability.model.ProfileDelta;
+import fr.umontpellier.observability.model.UserAction;
+import fr.umontpellier.observability.model.UserProfile;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind aggregator for user profile updates.
+ *
+ * Recorded actions are coalesced per user in lock-striped in-memory maps and
+ * flushed to MongoDB on a fixed interval, one bulk write per batch of dirty
+ * profiles. Request threads only pay for a short striped lock instead of a
+ * synchronous read-modify-write round trip to MongoDB.
+ *
+ * Profiles are therefore eventually consistent: they lag behind the actions
+ * by at most one flush interval. When more than maxPendingUsers users are
+ * dirty, or a user's delta is full, the submitting thread flushes inline to
+ * bound memory.
+ *
+ * While MongoDB is unreachable, the deltas it did not acknowledge are
+ * requeued for the next flush, for at most maxPendingUsers users; the others
+ * are dropped and counted in droppedProfiles.
+ */
+@Service
+public class ProfileAggregator {
+
+    private final UserProfileService userProfileService;
+    private final Stripe[] stripes;
+    private final int batchSize;
+    private final int maxPendingUsers;
+
+    private final AtomicInteger pendingUsers = new AtomicInteger();
+    private final AtomicLong submittedActions = new AtomicLong();
+    private final AtomicLong flushedProfiles = new AtomicLong();
+    private final AtomicLong droppedProfiles = new AtomicLong();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public ProfileAggregator(UserProfileService userProfileService,
+            @Value("${profiles.aggregator.stripes:16}") int stripeCount,
+            @Value("${profiles.aggregator.batch-size:500}") int batchSize,
+            @Value("${profiles.aggregator.max-pending-users:10000}") int maxPendingUsers) {
+        this.userProfileService = userProfileService;
+        this.stripes = new Stripe[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.batchSize = Math.max(1, batchSize);
+        this.maxPendingUsers = Math.max(1, maxPendingUsers);
+    }
+
+    /**
+     * Queue an action for the next flush.
+     */
+    public void submit(UserAction action) {
+        if (action == null) {
+            return;
+        }
+        String key = ProfileDelta.keyOf(action.getUserId(), action.getUserEmail());
+        if (key == null) {
+            return;
+        }
+
+        boolean newUser = false;
+        boolean full = false;
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            ProfileDelta delta = stripe.pending.get(key);
+            if (delta == null) {
+                stripe.pending.put(key, ProfileDelta.of(action, UserProfile.DEFAULT_EXPENSIVE_THRESHOLD));
+                newUser = true;
+            } else {
+                delta.add(action, UserProfile.DEFAULT_EXPENSIVE_THRESHOLD);
+                full = delta.isFull();
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        submittedActions.incrementAndGet();
+        if ((newUser && pendingUsers.incrementAndGet() > maxPendingUsers) || full) {
+            flushNow();
+        }
+    }
+
+    /**
+     * Periodic flush of all dirty profiles.
+     */
+    @Scheduled(fixedDelayString = "${profiles.aggregator.flush-interval-ms:1000}")
+    public void flush() {
+        flushNow();
+    }
+
+    /**
+     * Flush all dirty profiles now. Returns immediately if another flush is
+     * already running.
+     *
+     * @return the number of profiles written
+     */
+    public int flushNow() {
+        if (!flushLock.tryLock()) {
+            return 0;
+        }
+        try {
+            return flushPending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of users with changes waiting for the next flush.
+     */
+    public int getPendingUsers() {
+        return pendingUsers.get();
+    }
+
+    /**
+     * Get aggregator counters.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pendingUsers", pendingUsers.get());
+        stats.put("submittedActions", submittedActions.get());
+        stats.put("flushedProfiles", flushedProfiles.get());
+        stats.put("droppedProfiles", droppedProfiles.get());
+        return stats;
+    }
+
+    /**
+     * Flush the remaining profiles, waiting for a running flush to finish
+     * first so that the actions submitted meanwhile are not left behind.
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushLock.lock();
+        try {
+            flushPending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int flushPending() {
+        List<ProfileDelta> deltas = drain();
+        int written = 0;
+        for (int from = 0; from < deltas.size(); from += batchSize) {
+            List<ProfileDelta> batch = deltas.subList(from, Math.min(from + batchSize, deltas.size()));
+            written += writeBatch(batch);
+        }
+        return written;
+    }
+
+    private int writeBatch(List<ProfileDelta> batch) {
+        try {
+            userProfileService.applyProfileDeltas(batch);
+        } catch (DataAccessResourceFailureException e) {
+            // MongoDB is unreachable: retry what it did not acknowledge on next flush
+            requeue(batch.stream().filter(d -> !d.isWritten() && !d.isRejected()).toList());
+        } catch (Exception e) {
+            // Exception logging handled by InjectLog4J via logging.rules.yaml
+            droppedProfiles.addAndGet(batch.stream().filter(d -> !d.isWritten() && !d.isRejected()).count());
+        }
+        int written = (int) batch.stream().filter(ProfileDelta::isWritten).count();
+        flushedProfiles.addAndGet(written);
+        droppedProfiles.addAndGet(batch.stream().filter(ProfileDelta::isRejected).count());
+        return written;
+    }
+
+    private List<ProfileDelta> drain() {
+        List<ProfileDelta> deltas = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            Map<String, ProfileDelta> drained;
+            stripe.lock.lock();
+            try {
+                if (stripe.pending.isEmpty()) {
+                    continue;
+                }
+                drained = stripe.pending;
+                stripe.pending = new HashMap<>();
+            } finally {
+                stripe.lock.unlock();
+            }
+            pendingUsers.addAndGet(-drained.size());
+            deltas.addAll(drained.values());
+        }
+        return deltas;
+    }
+
+    private void requeue(List<ProfileDelta> failed) {
+        for (ProfileDelta delta : failed) {
+            String key = delta.getKey();
+            boolean requeued = true;
+            Stripe stripe = stripeFor(key);
+            stripe.lock.lock();
+            try {
+                ProfileDelta newer = stripe.pending.get(key);
+                if (newer != null) {
+                    // Older actions go first so the history stays ordered
+                    delta.merge(newer);
+                    stripe.pending.put(key, delta);
+                } else if (pendingUsers.get() < maxPendingUsers) {
+                    stripe.pending.put(key, delta);
+                    pendingUsers.incrementAndGet();
+                } else {
+                    requeued = false;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+            if (!requeued) {
+                droppedProfiles.incrementAndGet();
+            }
+        }
+    }
+
+    private Stripe stripeFor(String key) {
+        int hash = key.hashCode();
+        return stripes[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    /**
+     * One lock-protected partition of the pending deltas.
+     */
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private Map<String, ProfileDelta> pending = new HashMap<>();
+    }
+}
@@ -0,0 +1,236 @@
+package fr.umontpellier.observability.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.umontpellier.observability.model.UserProfile;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming export of user profiles.
+ *
+ * Profiles are read from a MongoDB cursor in batches, projected to the
+ * requested fields server side and written one by one to the output stream,
+ * so memory use is constant regardless of the number of profiles.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProfileExportService {
+
+    /**
+     * Fields exported when none are requested (recentActions excluded).
+     */
+    public static final List<String> DEFAULT_FIELDS = List.of(
+            "userId", "userEmail", "userName", "profileType",
+            "readOperations", "writeOperations", "expensiveProductSearches",
+            "averageProductPriceViewed", "maxProductPriceViewed");
+
+    /**
+     * All fields that may be requested, in output order.
+     */
+    public static final List<String> EXPORTABLE_FIELDS = List.of(
+            "userId", "userEmail", "userName", "profileType",
+            "readOperations", "writeOperations", "expensiveProductSearches", "expensiveThreshold",
+            "averageProductPriceViewed", "maxProductPriceViewed", "productPriceViews",
+            "createdAt", "updatedAt", "lastActivityAt", "recentActions");
+
+    private static final int CURSOR_BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final ProfileStatisticsTracker profileStatisticsTracker;
+
+    /**
+     * Supported export formats.
+     */
+    public enum ExportFormat {
+        JSON("json", MediaType.APPLICATION_JSON),
+        NDJSON("ndjson", MediaType.parseMediaType("application/x-ndjson"));
+
+        private final String extension;
+        private final MediaType mediaType;
+
+        ExportFormat(String extension, MediaType mediaType) {
+            this.extension = extension;
+            this.mediaType = mediaType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+
+        /**
+         * Parse a format name, case-insensitively.
+         *
+         * @throws IllegalArgumentException if the format is unknown
+         */
+        public static ExportFormat from(String name) {
+            if (name == null || name.isBlank()) {
+                return JSON;
+            }
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * Resolve a comma-separated field list.
+     *
+     * @param fields null or blank for the default fields, "all" for every
+     *               exportable field
+     * @throws IllegalArgumentException if a field is not exportable
+     */
+    public List<String> resolveFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return DEFAULT_FIELDS;
+        }
+        if ("all".equalsIgnoreCase(fields.trim())) {
+            return EXPORTABLE_FIELDS;
+        }
+
+        List<String> resolved = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty() || resolved.contains(name)) {
+                continue;
+            }
+            if (!EXPORTABLE_FIELDS.contains(name)) {
+                throw new IllegalArgumentException("Unknown export field: " + name);
+            }
+            resolved.add(name);
+        }
+        if (resolved.isEmpty()) {
+            throw new IllegalArgumentException("No export field requested");
+        }
+        return resolved;
+    }
+
+    /**
+     * Stream all profiles to the output.
+     *
+     * JSON keeps the historical shape {"profiles": [...], "statistics": {...}};
+     * NDJSON writes one profile object per line.
+     *
+     * @return the number of profiles written
+     */
+    public long export(OutputStream out, ExportFormat format, List<String> fields, boolean gzip)
+            throws IOException {
+        GZIPOutputStream gzipOut = gzip ? new GZIPOutputStream(out, 8192) : null;
+        OutputStream target = gzipOut != null ? gzipOut : out;
+
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(target);
+        generator.setRootValueSeparator(null);
+
+        long written = 0;
+        if (format == ExportFormat.JSON) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("profiles");
+        }
+
+        Query query = new Query().cursorBatchSize(CURSOR_BATCH_SIZE);
+        query.fields().include(fields.toArray(new String[0])).exclude("_id");
+
+        try (Stream<Document> profiles = mongoTemplate.stream(query, Document.class,
+                mongoTemplate.getCollectionName(UserProfile.class))) {
+            Iterator<Document> cursor = profiles.iterator();
+            while (cursor.hasNext()) {
+                writeProfile(generator, cursor.next(), fields);
+                if (format == ExportFormat.NDJSON) {
+                    generator.writeRaw('\n');
+                }
+                if (++written % CURSOR_BATCH_SIZE == 0) {
+                    generator.flush();
+                }
+            }
+        }
+
+        if (format == ExportFormat.JSON) {
+            generator.writeEndArray();
+            generator.writeFieldName("statistics");
+            objectMapper.writeValue(generator, profileStatisticsTracker.snapshot());
+            generator.writeEndObject();
+        }
+
+        // Flush rather than close: the response stream is owned by the caller
+        generator.flush();
+        if (gzipOut != null) {
+            gzipOut.finish();
+        }
+        out.flush();
+        return written;
+    }
+
+    private void writeProfile(JsonGenerator generator, Document profile, List<String> fields) throws IOException {
+        generator.writeStartObject();
+        for (String field : fields) {
+            if (profile.containsKey(field)) {
+                generator.writeFieldName(field);
+                writeValue(generator, profile.get(field));
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write a raw BSON value without mapping it to an entity.
+     */
+    private void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String text) {
+            generator.writeString(text);
+        } else if (value instanceof Integer number) {
+            generator.writeNumber(number);
+        } else if (value instanceof Long number) {
+            generator.writeNumber(number);
+        } else if (value instanceof Double number) {
+            generator.writeNumber(number);
+        } else if (value instanceof Decimal128 number) {
+            generator.writeNumber(number.bigDecimalValue());
+        } else if (value instanceof Boolean flag) {
+            generator.writeBoolean(flag);
+        } else if (value instanceof Date date) {
+            generator.writeString(date.toInstant().toString());
+        } else if (value instanceof ObjectId objectId) {
+            generator.writeString(objectId.toHexString());
+        } else if (value instanceof Map<?, ?> map) {
+            generator.writeStartObject();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if ("_class".equals(entry.getKey())) {
+                    continue;
+                }
+                generator.writeFieldName(String.valueOf(entry.getKey()));
+                writeValue(generator, entry.getValue());
+            }
+            generator.writeEndObject();
+        } else if (value instanceof Collection<?> collection) {
+            generator.writeStartArray();
+            for (Object item : collection) {
+                writeValue(generator, item);
+            }
+            generator.writeEndArray();
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+}
@@ -0,0 +1,590 @@
+package fr.umontpellier.observability.service;
+
+import fr.umontpellier.observability.model.LeaderboardEntry;
+import fr.umontpellier.observability.model.LeaderboardMetric;
+import fr.umontpellier.observability.model.ProfileDelta;
+import fr.umontpellier.observability.model.UserProfile;
+import fr.umontpellier.observability.model.UserProfile.ProfileType;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Incrementally maintained profile statistics.
+ *
+ * Every delta written to MongoDB is also folded into compact per-user
+ * counters, running totals, the profile type distribution and one top-K
+ * index per ranking, so {@code /api/profiles/statistics} is served in O(K)
+ * without reading any profile document.
+ *
+ * The state is rebuilt from MongoDB with a projection-only aggregation
+ * pipeline on startup (and on demand). Deltas written while a rebuild is
+ * streaming are buffered and applied after the swap, but only to profiles
+ * the rebuild read before the delta was written (updatedAt older than the
+ * delta's write), so no delta is counted twice or missed.
+ *
+ * Per-user counters take heap in proportion to the number of profiles, so
+ * they are capped by {@code profiles.statistics.max-profiles}. Beyond it the
+ * tracker drops them and computes the statistics in MongoDB instead (a
+ * grouped count and index-backed top-K queries); leaderboards then fall back
+ * to MongoDB as well.
+ *
+ * The same top-K indexes, sized for {@code profiles.leaderboard.size}, serve
+ * the leaderboards once the state has been loaded from MongoDB.
+ */
+@Service
+public class ProfileStatisticsTracker {
+
+    private static final int DEFAULT_MAX_PROFILES = 1_000_000;
+
+    private final MongoTemplate mongoTemplate;
+    private final int topK;
+    private final int leaderboardSize;
+    private final boolean leaderboardInMemory;
+    private final int maxProfiles;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private Map<String, ProfileCounters> profiles = new HashMap<>();
+    private Map<ProfileType, Long> typeDistribution = new EnumMap<>(ProfileType.class);
+    private long totalReads;
+    private long totalWrites;
+    private long totalExpensiveSearches;
+
+    private final TopKIndex topReaders;
+    private final TopKIndex topWriters;
+    private final TopKIndex topExpensiveSeekers;
+
+    // Deltas applied while a rebuild is streaming, applied again after the
+    // swap to the profiles the rebuild read before they were written
+    private List<ProfileDelta> appliedDuringRebuild;
+
+    // Whether the state covers every profile (a rebuild succeeded)
+    private boolean loaded;
+
+    // Whether per-user counters are kept (false beyond maxProfiles)
+    private boolean tracking = true;
+
+    ProfileStatisticsTracker(MongoTemplate mongoTemplate, int topK, int leaderboardSize,
+            boolean leaderboardInMemory) {
+        this(mongoTemplate, topK, leaderboardSize, leaderboardInMemory, DEFAULT_MAX_PROFILES);
+    }
+
+    @Autowired
+    public ProfileStatisticsTracker(MongoTemplate mongoTemplate,
+            @Value("${profiles.statistics.top-k:5}") int topK,
+            @Value("${profiles.leaderboard.size:100}") int leaderboardSize,
+            @Value("${profiles.leaderboard.in-memory:true}") boolean leaderboardInMemory,
+            @Value("${profiles.statistics.max-profiles:1000000}") int maxProfiles) {
+        this.mongoTemplate = mongoTemplate;
+        this.topK = topK;
+        this.leaderboardSize = leaderboardSize;
+        this.leaderboardInMemory = leaderboardInMemory;
+        this.maxProfiles = maxProfiles;
+        // Headroom so a few profile deletions do not force a full refill
+        int capacity = Math.max(topK, leaderboardSize) * 2;
+        this.topReaders = new TopKIndex(capacity);
+        this.topWriters = new TopKIndex(capacity);
+        this.topExpensiveSeekers = new TopKIndex(capacity);
+    }
+
+    /**
+     * Fold one persisted delta into the statistics.
+     */
+    public void apply(ProfileDelta delta) {
+        lock.lock();
+        try {
+            applyLocked(delta);
+            if (appliedDuringRebuild != null) {
+                appliedDuringRebuild.add(delta);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fold a batch of persisted deltas into the statistics.
+     */
+    public void apply(Collection<ProfileDelta> deltas) {
+        lock.lock();
+        try {
+            for (ProfileDelta delta : deltas) {
+                applyLocked(delta);
+            }
+            if (appliedDuringRebuild != null) {
+                appliedDuringRebuild.addAll(deltas);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget a deleted profile.
+     */
+    public void remove(String userId) {
+        String key = ProfileDelta.keyOf(userId, null);
+        lock.lock();
+        try {
+            ProfileCounters counters = profiles.remove(key);
+            if (counters == null) {
+                return;
+            }
+            totalReads -= counters.readOperations;
+            totalWrites -= counters.writeOperations;
+            totalExpensiveSearches -= counters.expensiveProductSearches;
+            typeDistribution.merge(counters.profileType, -1L, Long::sum);
+            topReaders.remove(key);
+            topWriters.remove(key);
+            topExpensiveSeekers.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget all profiles.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            install(new HashMap<>());
+            tracking = true;
+            loaded = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            // MongoDB unavailable: statistics start empty and fill up incrementally
+        }
+    }
+
+    /**
+     * Rebuild the statistics from MongoDB with a projection-only aggregation
+     * pipeline (recent actions are never read).
+     *
+     * @return the number of profiles loaded
+     */
+    public int rebuild() {
+        lock.lock();
+        try {
+            appliedDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+
+        Map<String, ProfileCounters> loaded = new HashMap<>();
+        Map<String, Long> readAt = new HashMap<>();
+        boolean withinCap = true;
+        try {
+            Aggregation pipeline = Aggregation.newAggregation(Aggregation.project(
+                    "userId", "userEmail", "userName", "readOperations", "writeOperations",
+                    "expensiveProductSearches", "productPriceViews", "productPriceSum",
+                    "averageProductPriceViewed", "updatedAt"));
+            try (Stream<Document> stream = mongoTemplate.aggregateStream(pipeline,
+                    mongoTemplate.getCollectionName(UserProfile.class), Document.class)) {
+                Iterator<Document> documents = stream.iterator();
+                while (documents.hasNext()) {
+                    if (loaded.size() >= maxProfiles) {
+                        withinCap = false;
+                        break;
+                    }
+                    load(loaded, readAt, documents.next());
+                }
+            }
+        } catch (RuntimeException e) {
+            lock.lock();
+            try {
+                appliedDuringRebuild = null;
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+
+        lock.lock();
+        try {
+            List<ProfileDelta> buffered = appliedDuringRebuild;
+            appliedDuringRebuild = null;
+            if (!withinCap) {
+                stopTracking();
+                return 0;
+            }
+            install(loaded);
+            tracking = true;
+            for (ProfileDelta delta : buffered) {
+                if (!isIncluded(delta, readAt.get(delta.getKey()))) {
+                    applyLocked(delta);
+                }
+            }
+            this.loaded = tracking;
+            return profiles.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check whether a profile read by a rebuild already contained a delta:
+     * its updatedAt is the delta's write or a later one.
+     */
+    private static boolean isIncluded(ProfileDelta delta, Long updatedAtMillis) {
+        if (updatedAtMillis == null || delta.getWrittenAt() == null) {
+            return false;
+        }
+        long writtenAtMillis = delta.getWrittenAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return updatedAtMillis >= writtenAtMillis;
+    }
+
+    /**
+     * Drop the per-user counters: statistics now come from MongoDB.
+     */
+    private void stopTracking() {
+        install(new HashMap<>());
+        tracking = false;
+        loaded = false;
+    }
+
+    /**
+     * Get the statistics, in the shape historically returned by
+     * {@code UserProfileService.getProfileStatistics()}.
+     */
+    public Map<String, Object> snapshot() {
+        lock.lock();
+        try {
+            if (tracking) {
+                return snapshotLocked();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return snapshotFromMongo();
+    }
+
+    private Map<String, Object> snapshotLocked() {
+        refillIfNeeded(topReaders, topK, c -> c.readOperations);
+        refillIfNeeded(topWriters, topK, c -> c.writeOperations);
+        refillIfNeeded(topExpensiveSeekers, topK, c -> c.expensiveProductSearches);
+
+        int totalProfiles = profiles.size();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalProfiles", totalProfiles);
+
+        Map<ProfileType, Long> distribution = new EnumMap<>(ProfileType.class);
+        typeDistribution.forEach((type, count) -> {
+            if (count > 0) {
+                distribution.put(type, count);
+            }
+        });
+        stats.put("profileTypeDistribution", distribution);
+
+        stats.put("averageReadOperations", average(totalReads, totalProfiles));
+        stats.put("averageWriteOperations", average(totalWrites, totalProfiles));
+        stats.put("averageExpensiveSearches", average(totalExpensiveSearches, totalProfiles));
+
+        stats.put("topReadUsers", summaries(topReaders));
+        stats.put("topWriteUsers", summaries(topWriters));
+        stats.put("topExpensiveSeekers", summaries(topExpensiveSeekers));
+        return stats;
+    }
+
+    /**
+     * Compute the statistics in MongoDB: one grouped count by profile type,
+     * then one top-K query per ranking on its {metric: -1, _id: 1} index.
+     */
+    private Map<String, Object> snapshotFromMongo() {
+        String collection = mongoTemplate.getCollectionName(UserProfile.class);
+        Aggregation pipeline = Aggregation.newAggregation(Aggregation.group("profileType")
+                .count().as("profiles")
+                .sum("readOperations").as("reads")
+                .sum("writeOperations").as("writes")
+                .sum("expensiveProductSearches").as("expensiveSearches"));
+
+        long totalProfiles = 0;
+        long reads = 0;
+        long writes = 0;
+        long expensiveSearches = 0;
+        Map<ProfileType, Long> distribution = new EnumMap<>(ProfileType.class);
+        for (Document group : mongoTemplate.aggregate(pipeline, collection, Document.class)) {
+            long count = longValue(group.get("profiles"));
+            totalProfiles += count;
+            reads += longValue(group.get("reads"));
+            writes += longValue(group.get("writes"));
+            expensiveSearches += longValue(group.get("expensiveSearches"));
+            if (group.get("_id") instanceof String type && count > 0) {
+                distribution.merge(ProfileType.valueOf(type), count, Long::sum);
+            }
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalProfiles", (int) totalProfiles);
+        stats.put("profileTypeDistribution", distribution);
+        stats.put("averageReadOperations", average(reads, totalProfiles));
+        stats.put("averageWriteOperations", average(writes, totalProfiles));
+        stats.put("averageExpensiveSearches", average(expensiveSearches, totalProfiles));
+        stats.put("topReadUsers", topFromMongo(collection, LeaderboardMetric.READS));
+        stats.put("topWriteUsers", topFromMongo(collection, LeaderboardMetric.WRITES));
+        stats.put("topExpensiveSeekers", topFromMongo(collection, LeaderboardMetric.EXPENSIVE_SEARCHES));
+        return stats;
+    }
+
+    private List<Map<String, Object>> topFromMongo(String collection, LeaderboardMetric metric) {
+        Query query = new Query()
+                .with(Sort.by(metric.getField()).descending().and(Sort.by("id")))
+                .limit(topK);
+        query.fields().include("userId", "userEmail", "userName", "readOperations", "writeOperations",
+                "expensiveProductSearches", "productPriceViews", "productPriceSum", "averageProductPriceViewed");
+        List<Map<String, Object>> summaries = new ArrayList<>();
+        for (Document document : mongoTemplate.find(query, Document.class, collection)) {
+            summaries.add(ProfileCounters.from(document).toSummaryMap());
+        }
+        return summaries;
+    }
+
+    /**
+     * Get a leaderboard from the in-memory top-K indexes.
+     *
+     * @return the leaderboard, or empty when it cannot be served from memory
+     *         (disabled, state not loaded from MongoDB yet, or limit above
+     *         {@code profiles.leaderboard.size}); callers then query MongoDB
+     */
+    public Optional<List<LeaderboardEntry>> leaderboard(LeaderboardMetric metric, int limit) {
+        lock.lock();
+        try {
+            if (!leaderboardInMemory || !loaded || limit > leaderboardSize) {
+                return Optional.empty();
+            }
+            TopKIndex index = indexFor(metric);
+            refillIfNeeded(index, limit, c -> scoreOf(c, metric));
+
+            List<LeaderboardEntry> entries = new ArrayList<>();
+            for (String key : index.keys(limit)) {
+                ProfileCounters counters = profiles.get(key);
+                if (counters != null) {
+                    entries.add(new LeaderboardEntry(entries.size() + 1, counters.userId, counters.userEmail,
+                            counters.userName, counters.profileType, scoreOf(counters, metric)));
+                }
+            }
+            return Optional.of(entries);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TopKIndex indexFor(LeaderboardMetric metric) {
+        return switch (metric) {
+            case READS -> topReaders;
+            case WRITES -> topWriters;
+            case EXPENSIVE_SEARCHES -> topExpensiveSeekers;
+        };
+    }
+
+    private static long scoreOf(ProfileCounters counters, LeaderboardMetric metric) {
+        return switch (metric) {
+            case READS -> counters.readOperations;
+            case WRITES -> counters.writeOperations;
+            case EXPENSIVE_SEARCHES -> counters.expensiveProductSearches;
+        };
+    }
+
+    private void applyLocked(ProfileDelta delta) {
+        String key = delta.getKey();
+        if (key == null || !tracking) {
+            return;
+        }
+
+        ProfileCounters counters = profiles.get(key);
+        if (counters == null) {
+            if (profiles.size() >= maxProfiles) {
+                stopTracking();
+                return;
+            }
+            counters = new ProfileCounters(delta.getUserId(), delta.getUserEmail(), delta.getUserName());
+            profiles.put(key, counters);
+            typeDistribution.merge(counters.profileType, 1L, Long::sum);
+        }
+
+        ProfileType previousType = counters.profileType;
+        counters.add(delta);
+        if (counters.profileType != previousType) {
+            typeDistribution.merge(previousType, -1L, Long::sum);
+            typeDistribution.merge(counters.profileType, 1L, Long::sum);
+        }
+
+        totalReads += delta.getReadOperations();
+        totalWrites += delta.getWriteOperations();
+        totalExpensiveSearches += delta.getExpensiveProductSearches();
+
+        if (delta.getReadOperations() > 0) {
+            topReaders.update(key, counters.readOperations);
+        }
+        if (delta.getWriteOperations() > 0) {
+            topWriters.update(key, counters.writeOperations);
+        }
+        if (delta.getExpensiveProductSearches() > 0) {
+            topExpensiveSeekers.update(key, counters.expensiveProductSearches);
+        }
+    }
+
+    private static void load(Map<String, ProfileCounters> loaded, Map<String, Long> readAt, Document document) {
+        ProfileCounters counters = ProfileCounters.from(document);
+        String key = ProfileDelta.keyOf(counters.userId, counters.userEmail);
+        if (key != null) {
+            loaded.put(key, counters);
+            if (document.get("updatedAt") instanceof Date updatedAt) {
+                readAt.put(key, updatedAt.getTime());
+            }
+        }
+    }
+
+    private void install(Map<String, ProfileCounters> loaded) {
+        profiles = loaded;
+        typeDistribution = new EnumMap<>(ProfileType.class);
+        totalReads = 0;
+        totalWrites = 0;
+        totalExpensiveSearches = 0;
+        topReaders.clear();
+        topWriters.clear();
+        topExpensiveSeekers.clear();
+
+        loaded.forEach((key, counters) -> {
+            typeDistribution.merge(counters.profileType, 1L, Long::sum);
+            totalReads += counters.readOperations;
+            totalWrites += counters.writeOperations;
+            totalExpensiveSearches += counters.expensiveProductSearches;
+            topReaders.update(key, counters.readOperations);
+            topWriters.update(key, counters.writeOperations);
+            topExpensiveSeekers.update(key, counters.expensiveProductSearches);
+        });
+    }
+
+    /**
+     * After deletions the index may miss keys that now belong to the top
+     * {@code wanted}; rescan the counters once in that case.
+     */
+    private void refillIfNeeded(TopKIndex index, int wanted, ToLongFunction<ProfileCounters> score) {
+        if (!index.isIncomplete() || index.size() >= wanted || index.size() == profiles.size()) {
+            return;
+        }
+        index.clear();
+        profiles.forEach((key, counters) -> index.update(key, score.applyAsLong(counters)));
+    }
+
+    private List<Map<String, Object>> summaries(TopKIndex index) {
+        List<Map<String, Object>> summaries = new ArrayList<>();
+        for (String key : index.keys(topK)) {
+            ProfileCounters counters = profiles.get(key);
+            if (counters != null) {
+                summaries.add(counters.toSummaryMap());
+            }
+        }
+        return summaries;
+    }
+
+    private static long longValue(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+
+    private static double average(long total, long count) {
+        return count == 0 ? 0.0 : (double) total / count;
+    }
+
+    /**
+     * Compact copy of the counters of one profile.
+     */
+    private static final class ProfileCounters {
+        private final String userId;
+        private final String userEmail;
+        private String userName;
+        private int readOperations;
+        private int writeOperations;
+        private int expensiveProductSearches;
+        private int productPriceViews;
+        private double productPriceSum;
+        private double averageProductPriceViewed;
+        private ProfileType profileType = ProfileType.BALANCED;
+
+        private ProfileCounters(String userId, String userEmail, String userName) {
+            this.userId = userId;
+            this.userEmail = userEmail;
+            this.userName = userName;
+        }
+
+        private static ProfileCounters from(Document document) {
+            ProfileCounters counters = new ProfileCounters(document.getString("userId"),
+                    document.getString("userEmail"), document.getString("userName"));
+            counters.readOperations = intValue(document.get("readOperations"));
+            counters.writeOperations = intValue(document.get("writeOperations"));
+            counters.expensiveProductSearches = intValue(document.get("expensiveProductSearches"));
+            counters.productPriceViews = intValue(document.get("productPriceViews"));
+            counters.productPriceSum = doubleValue(document.get("productPriceSum"));
+            counters.averageProductPriceViewed = doubleValue(document.get("averageProductPriceViewed"));
+            counters.profileType = UserProfile.classify(counters.readOperations, counters.writeOperations,
+                    counters.expensiveProductSearches);
+            return counters;
+        }
+
+        private void add(ProfileDelta delta) {
+            readOperations += delta.getReadOperations();
+            writeOperations += delta.getWriteOperations();
+            expensiveProductSearches += delta.getExpensiveProductSearches();
+            if (delta.getProductPriceViews() > 0) {
+                productPriceViews += delta.getProductPriceViews();
+                productPriceSum += delta.getProductPriceSum();
+                averageProductPriceViewed = productPriceSum / productPriceViews;
+            }
+            if (userName == null) {
+                userName = delta.getUserName();
+            }
+            profileType = UserProfile.classify(readOperations, writeOperations, expensiveProductSearches);
+        }
+
+        private Map<String, Object> toSummaryMap() {
+            Map<String, Object> summary = new HashMap<>();
+            summary.put("userId", userId);
+            summary.put("userEmail", userEmail);
+            summary.put("userName", userName);
+            summary.put("profileType", profileType);
+            summary.put("readOperations", readOperations);
+            summary.put("writeOperations", writeOperations);
+            summary.put("expensiveProductSearches", expensiveProductSearches);
+            summary.put("averageProductPriceViewed", averageProductPriceViewed);
+            return summary;
+        }
+
+        private static int intValue(Object value) {
+            return value instanceof Number number ? number.intValue() : 0;
+        }
+
+        private static double doubleValue(Object value) {
+            return value instanceof Number number ? number.doubleValue() : 0.0;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package fr.umontpellier.observability.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.umontpellier.observability.model.ProfileDelta;
+import fr.umontpellier.observability.model.ProfileUpdate;
+import jakarta.annotation.PreDestroy;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalescing publisher of profile updates to the user-profiles topic.
+ *
+ * Profile deltas are summed per user and published once per
+ * {@code profiles.updates.window-ms}, so a user gets at most one message per
+ * window however many actions they make. Messages are keyed by user id
+ * (email for users known by email only), keeping each user's updates on one
+ * partition and in order, and carry the changed counters as compact JSON,
+ * e.g. {@code {"userId":"u1","reads":3,"writes":1,"actions":4,"lastActivityAt":"..."}};
+ * counters that did not change are left out.
+ */
+@Service
+public class ProfileUpdatePublisher {
+
+    static final String PROFILE_TOPIC = "user-profiles";
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, ProfileUpdate> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private final AtomicLong submittedDeltas = new AtomicLong();
+    private final AtomicLong publishedUpdates = new AtomicLong();
+    private final AtomicLong droppedUpdates = new AtomicLong();
+
+    public ProfileUpdatePublisher(KafkaTemplate<String, String> kafkaTemplate, ObjectMapper objectMapper) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Add a profile delta to its user's update for the current window.
+     */
+    public void submit(ProfileDelta delta) {
+        String key = delta.getKey();
+        if (key == null) {
+            return;
+        }
+        pending.compute(key, (k, update) -> {
+            ProfileUpdate merged = update != null ? update : new ProfileUpdate(delta.getUserId(), delta.getUserEmail());
+            merged.add(delta);
+            return merged;
+        });
+        submittedDeltas.incrementAndGet();
+    }
+
+    /**
+     * Periodic publication of the window's updates.
+     */
+    @Scheduled(fixedDelayString = "${profiles.updates.window-ms:5000}")
+    public void flush() {
+        publishNow();
+    }
+
+    /**
+     * Publish every pending update now. Returns immediately if another
+     * publication is already running.
+     *
+     * @return the number of updates sent
+     */
+    public int publishNow() {
+        if (!publishLock.tryLock()) {
+            return 0;
+        }
+        try {
+            return publishPending();
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of users with an update waiting for the next window.
+     */
+    public int getPendingUsers() {
+        return pending.size();
+    }
+
+    /**
+     * Get publisher counters.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pendingUsers", pending.size());
+        stats.put("submittedDeltas", submittedDeltas.get());
+        stats.put("publishedUpdates", publishedUpdates.get());
+        stats.put("droppedUpdates", droppedUpdates.get());
+        return stats;
+    }
+
+    /**
+     * Publish the last window, waiting for a running publication to finish
+     * first so that the updates submitted meanwhile are not left behind.
+     */
+    @PreDestroy
+    public void shutdown() {
+        publishLock.lock();
+        try {
+            publishPending();
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    private int publishPending() {
+        int sent = 0;
+        for (String key : pending.keySet()) {
+            // Deltas submitted from here on start the next window
+            ProfileUpdate update = pending.remove(key);
+            if (update != null && publish(update)) {
+                sent++;
+            }
+        }
+        publishedUpdates.addAndGet(sent);
+        return sent;
+    }
+
+    boolean publish(ProfileUpdate update) {
+        try {
+            kafkaTemplate.send(PROFILE_TOPIC, update.getKey(), toJson(update));
+            return true;
+        } catch (Exception e) {
+            // Exception logging handled by InjectLog4J via logging.rules.yaml
+            droppedUpdates.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Write the update as compact JSON, leaving out unchanged counters.
+     */
+    String toJson(ProfileUpdate update) throws IOException {
+        StringWriter json = new StringWriter(128);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(json)) {
+            generator.writeStartObject();
+            if (update.getUserId() != null) {
+                generator.writeStringField("userId", update.getUserId());
+            }
+            if (update.getUserEmail() != null) {
+                generator.writeStringField("userEmail", update.getUserEmail());
+            }
+            writeCount(generator, "reads", update.getReadOperations());
+            writeCount(generator, "writes", update.getWriteOperations());
+            writeCount(generator, "expensiveSearches", update.getExpensiveProductSearches());
+            if (update.getProductPriceViews() > 0) {
+                generator.writeNumberField("priceViews", update.getProductPriceViews());
+                generator.writeNumberField("priceSum", update.getProductPriceSum());
+                generator.writeNumberField("maxPrice", update.getMaxProductPriceViewed());
+            }
+            generator.writeNumberField("actions", update.getActionCount());
+            if (update.getLastActivityAt() != null) {
+                generator.writeStringField("lastActivityAt", update.getLastActivityAt().toString());
+            }
+            generator.writeEndObject();
+        }
+        return json.toString();
+    }
+
+    private static void writeCount(JsonGenerator generator, String name, int count) throws IOException {
+        if (count != 0) {
+            generator.writeNumberField(name, count);
+        }
+    }
+}
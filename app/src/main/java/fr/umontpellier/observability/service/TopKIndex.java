@@ -0,0 +1,116 @@
+package fr.umontpellier.observability.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Bounded, incrementally maintained ranking of the K keys with the highest
+ * score.
+ *
+ * Profile counters only grow, so a key outside the top K can only enter it by
+ * increasing its own score, which is observed through {@link #update}. This
+ * keeps the ranking exact at O(log K) per update. Removing a member leaves a
+ * hole that only a full scan can refill; {@link #isIncomplete()} reports it.
+ *
+ * Not thread-safe: callers guard it with their own lock.
+ */
+public class TopKIndex {
+
+    private static final Comparator<Entry> ORDER = Comparator
+            .comparingLong(Entry::score).reversed()
+            .thenComparing(Entry::key);
+
+    private final int capacity;
+    private final TreeSet<Entry> entries = new TreeSet<>(ORDER);
+    private final Map<String, Entry> members = new HashMap<>();
+    private boolean incomplete;
+
+    public TopKIndex(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Record the new score of a key.
+     */
+    public void update(String key, long score) {
+        Entry current = members.get(key);
+        if (current != null) {
+            if (current.score() == score) {
+                return;
+            }
+            entries.remove(current);
+            insert(new Entry(key, score));
+            return;
+        }
+
+        Entry candidate = new Entry(key, score);
+        if (entries.size() < capacity) {
+            insert(candidate);
+        } else if (ORDER.compare(candidate, entries.last()) < 0) {
+            insert(candidate);
+            members.remove(entries.pollLast().key());
+        }
+    }
+
+    /**
+     * Remove a key from the ranking.
+     */
+    public void remove(String key) {
+        Entry current = members.remove(key);
+        if (current != null) {
+            entries.remove(current);
+            incomplete = true;
+        }
+    }
+
+    /**
+     * Get the ranked keys, best first.
+     */
+    public List<String> keys(int limit) {
+        List<String> keys = new ArrayList<>(Math.min(limit, entries.size()));
+        for (Entry entry : entries) {
+            if (keys.size() >= limit) {
+                break;
+            }
+            keys.add(entry.key());
+        }
+        return keys;
+    }
+
+    /**
+     * Whether members were removed since the last {@link #clear()}, so keys
+     * outside the index may now belong to the top K.
+     */
+    public boolean isIncomplete() {
+        return incomplete;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        members.clear();
+        incomplete = false;
+    }
+
+    private void insert(Entry entry) {
+        entries.add(entry);
+        members.put(entry.key(), entry);
+    }
+
+    private record Entry(String key, long score) {
+    }
+}
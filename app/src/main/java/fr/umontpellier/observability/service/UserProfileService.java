@@ -1,26 +1,26 @@
 package fr.umontpellier.observability.service;
 
-import fr.umontpellier.observability.model.User;
+import fr.umontpellier.observability.model.CursorPage;
+import fr.umontpellier.observability.model.LeaderboardEntry;
+import fr.umontpellier.observability.model.LeaderboardMetric;
+import fr.umontpellier.observability.model.ProfileDelta;
 import fr.umontpellier.observability.model.UserAction;
-import fr.umontpellier.observability.model.UserAction.ActionType;
 import fr.umontpellier.observability.model.UserAction.EntityType;
 import fr.umontpellier.observability.model.UserAction.OperationType;
 import fr.umontpellier.observability.model.UserProfile;
 import fr.umontpellier.observability.model.UserProfile.ProfileAction;
 import fr.umontpellier.observability.model.UserProfile.ProfileType;
 import fr.umontpellier.observability.repository.UserProfileRepository;
-import fr.umontpellier.observability.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 /**
  * Service for managing and analyzing user profiles based on their behavioral
@@ -39,63 +39,35 @@ import java.util.stream.Collectors;
 public class UserProfileService {
 
     private final UserProfileRepository userProfileRepository;
-    private final UserRepository userRepository;
-    private final LogParserService logParserService;
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ProfileStatisticsTracker profileStatisticsTracker;
+    private final ActionHistoryService actionHistoryService;
+    private final ProfileUpdatePublisher profileUpdatePublisher;
 
-    private static final String PROFILE_TOPIC = "user-profiles";
-    private static final double DEFAULT_EXPENSIVE_THRESHOLD = 100.0;
+    private static final double DEFAULT_EXPENSIVE_THRESHOLD = UserProfile.DEFAULT_EXPENSIVE_THRESHOLD;
+    private static final int DEFAULT_LEADERBOARD_LIMIT = 10;
 
     /**
-     * Record a user action and update their profile.
+     * Record a user action and update their profile with one atomic upsert.
      */
     public void recordAction(UserAction action) {
         if (action == null) {
             return;
         }
 
-        String userId = action.getUserId();
-        String userEmail = action.getUserEmail();
-
-        if (userId == null && userEmail == null) {
+        if (action.getUserId() == null && action.getUserEmail() == null) {
             return;
         }
 
-        // Get or create profile
-        UserProfile profile = getOrCreateProfile(userId, userEmail, action.getUserName());
-
-        // Update profile based on action type
-        if (action.getActionType() == ActionType.READ) {
-            profile.incrementReadOperations();
-        } else if (action.getActionType() == ActionType.WRITE) {
-            profile.incrementWriteOperations();
-        }
-
-        // Track product price if applicable
-        if (action.getEntityType() == EntityType.PRODUCT && action.getProductPrice() != null) {
-            profile.recordProductPriceViewed(action.getProductPrice());
+        ProfileDelta delta = ProfileDelta.of(action, DEFAULT_EXPENSIVE_THRESHOLD);
+        userProfileRepository.applyDelta(delta);
+        if (!delta.isWritten()) {
+            return;
         }
+        profileStatisticsTracker.apply(delta);
+        appendHistory(List.of(delta));
 
-        // Add action to history
-        ProfileAction profileAction = ProfileAction.builder()
-                .actionType(action.getActionType() != null ? action.getActionType().name() : "UNKNOWN")
-                .operationType(action.getOperationType() != null ? action.getOperationType().name() : "UNKNOWN")
-                .targetEntity(action.getEntityType() != null ? action.getEntityType().name() : "UNKNOWN")
-                .targetId(action.getEntityId())
-                .productPrice(action.getProductPrice())
-                .timestamp(action.getTimestamp() != null ? action.getTimestamp() : LocalDateTime.now())
-                .details(action.getDetails())
-                .build();
-        profile.addAction(profileAction);
-
-        // Recalculate profile type
-        profile.calculateProfileType();
-
-        // Save profile
-        userProfileRepository.save(profile);
-
-        // Publish profile update event
-        publishProfileUpdate(profile);
+        // Publish profile update event (coalesced per user)
+        publishProfileUpdate(delta);
     }
 
     /**
@@ -115,40 +87,27 @@ public class UserProfileService {
     }
 
     /**
-     * Get or create a user profile.
+     * Apply coalesced profile changes with a single bulk write. The statistics,
+     * history and update events follow the deltas MongoDB acknowledged, even
+     * when the write then fails; deltas MongoDB rejected are skipped.
+     *
+     * @return the number of profiles written
      */
-    private UserProfile getOrCreateProfile(String userId, String userEmail, String userName) {
-        Optional<UserProfile> existingProfile;
-
-        if (userId != null) {
-            existingProfile = userProfileRepository.findByUserId(userId);
-        } else {
-            existingProfile = userProfileRepository.findByUserEmail(userEmail);
-        }
-
-        if (existingProfile.isPresent()) {
-            return existingProfile.get();
+    public int applyProfileDeltas(Collection<ProfileDelta> deltas) {
+        if (deltas == null || deltas.isEmpty()) {
+            return 0;
         }
 
-        // Try to get user info from database
-        if (userName == null && userEmail != null) {
-            userRepository.findByEmail(userEmail).ifPresent(user -> {
-                // Update userName if found
-            });
+        try {
+            return userProfileRepository.applyDeltas(deltas);
+        } finally {
+            List<ProfileDelta> written = deltas.stream().filter(ProfileDelta::isWritten).toList();
+            if (!written.isEmpty()) {
+                profileStatisticsTracker.apply(written);
+                appendHistory(written);
+                written.forEach(this::publishProfileUpdate);
+            }
         }
-
-        // Create new profile
-        UserProfile newProfile = UserProfile.builder()
-                .userId(userId)
-                .userEmail(userEmail)
-                .userName(userName)
-                .expensiveThreshold(DEFAULT_EXPENSIVE_THRESHOLD)
-                .profileType(ProfileType.BALANCED)
-                .createdAt(LocalDateTime.now())
-                .updatedAt(LocalDateTime.now())
-                .build();
-
-        return userProfileRepository.save(newProfile);
     }
 
     /**
@@ -159,6 +118,19 @@ public class UserProfileService {
         return userProfileRepository.findByUserId(userId);
     }
 
+    /**
+     * Get a user's action history within a time range, newest first.
+     *
+     * @param from  inclusive lower bound, or null
+     * @param to    inclusive upper bound, or null
+     * @param limit requested size, capped at {@link CursorPage#MAX_LIMIT}
+     */
+    @Transactional(readOnly = true)
+    public List<ProfileAction> getActionHistory(String userId, LocalDateTime from, LocalDateTime to,
+            Integer limit) {
+        return actionHistoryService.findActions(userId, from, to, CursorPage.limit(limit));
+    }
+
     /**
      * Get a user profile by email.
      */
@@ -168,242 +140,133 @@ public class UserProfileService {
     }
 
     /**
-     * Get all profiles.
+     * Get a page of profile summaries (recentActions excluded).
+     *
+     * @param after cursor returned with the previous page, or null
+     * @param limit requested page size, capped at {@link CursorPage#MAX_LIMIT}
      */
     @Transactional(readOnly = true)
-    public List<UserProfile> getAllProfiles() {
-        return userProfileRepository.findAll();
+    public CursorPage<UserProfile> getAllProfiles(String after, Integer limit) {
+        return findProfilePage(null, after, limit);
     }
 
     /**
-     * Get profiles by type.
+     * Get a page of profile summaries of the given type.
      */
     @Transactional(readOnly = true)
-    public List<UserProfile> getProfilesByType(ProfileType type) {
-        return userProfileRepository.findByProfileType(type);
+    public CursorPage<UserProfile> getProfilesByType(ProfileType type, String after, Integer limit) {
+        return findProfilePage(type, after, limit);
     }
 
     /**
      * Get read-heavy users (those who mostly perform read operations).
      */
     @Transactional(readOnly = true)
-    public List<UserProfile> getReadHeavyUsers() {
-        return userProfileRepository.findByProfileType(ProfileType.READ_HEAVY);
+    public CursorPage<UserProfile> getReadHeavyUsers(String after, Integer limit) {
+        return findProfilePage(ProfileType.READ_HEAVY, after, limit);
     }
 
     /**
      * Get write-heavy users (those who mostly perform write operations).
      */
     @Transactional(readOnly = true)
-    public List<UserProfile> getWriteHeavyUsers() {
-        return userProfileRepository.findByProfileType(ProfileType.WRITE_HEAVY);
+    public CursorPage<UserProfile> getWriteHeavyUsers(String after, Integer limit) {
+        return findProfilePage(ProfileType.WRITE_HEAVY, after, limit);
     }
 
     /**
      * Get expensive product seekers.
      */
     @Transactional(readOnly = true)
-    public List<UserProfile> getExpensiveProductSeekers() {
-        return userProfileRepository.findByProfileType(ProfileType.EXPENSIVE_SEEKER);
-    }
-
-    /**
-     * Get profile statistics summary.
-     */
-    @Transactional(readOnly = true)
-    public Map<String, Object> getProfileStatistics() {
-        List<UserProfile> allProfiles = userProfileRepository.findAll();
-
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("totalProfiles", allProfiles.size());
-
-        // Count by profile type
-        Map<ProfileType, Long> typeDistribution = allProfiles.stream()
-                .collect(Collectors.groupingBy(
-                        p -> p.getProfileType() != null ? p.getProfileType() : ProfileType.BALANCED,
-                        Collectors.counting()));
-        stats.put("profileTypeDistribution", typeDistribution);
-
-        // Calculate averages
-        double avgReadOps = allProfiles.stream()
-                .mapToInt(UserProfile::getReadOperations)
-                .average()
-                .orElse(0);
-        double avgWriteOps = allProfiles.stream()
-                .mapToInt(UserProfile::getWriteOperations)
-                .average()
-                .orElse(0);
-        double avgExpensiveSearches = allProfiles.stream()
-                .mapToInt(UserProfile::getExpensiveProductSearches)
-                .average()
-                .orElse(0);
-
-        stats.put("averageReadOperations", avgReadOps);
-        stats.put("averageWriteOperations", avgWriteOps);
-        stats.put("averageExpensiveSearches", avgExpensiveSearches);
-
-        // Top users by category
-        stats.put("topReadUsers", allProfiles.stream()
-                .sorted((a, b) -> Integer.compare(b.getReadOperations(), a.getReadOperations()))
-                .limit(5)
-                .map(this::profileToSummaryMap)
-                .collect(Collectors.toList()));
-
-        stats.put("topWriteUsers", allProfiles.stream()
-                .sorted((a, b) -> Integer.compare(b.getWriteOperations(), a.getWriteOperations()))
-                .limit(5)
-                .map(this::profileToSummaryMap)
-                .collect(Collectors.toList()));
-
-        stats.put("topExpensiveSeekers", allProfiles.stream()
-                .sorted((a, b) -> Integer.compare(b.getExpensiveProductSearches(), a.getExpensiveProductSearches()))
-                .limit(5)
-                .map(this::profileToSummaryMap)
-                .collect(Collectors.toList()));
-
-        return stats;
+    public CursorPage<UserProfile> getExpensiveProductSeekers(String after, Integer limit) {
+        return findProfilePage(ProfileType.EXPENSIVE_SEEKER, after, limit);
     }
 
-    /**
-     * Convert profile to summary map for API response.
-     */
-    private Map<String, Object> profileToSummaryMap(UserProfile profile) {
-        Map<String, Object> summary = new HashMap<>();
-        summary.put("userId", profile.getUserId());
-        summary.put("userEmail", profile.getUserEmail());
-        summary.put("userName", profile.getUserName());
-        summary.put("profileType", profile.getProfileType());
-        summary.put("readOperations", profile.getReadOperations());
-        summary.put("writeOperations", profile.getWriteOperations());
-        summary.put("expensiveProductSearches", profile.getExpensiveProductSearches());
-        summary.put("averageProductPriceViewed", profile.getAverageProductPriceViewed());
-        return summary;
+    private CursorPage<UserProfile> findProfilePage(ProfileType type, String after, Integer limit) {
+        int pageSize = CursorPage.limit(limit);
+        // One extra profile tells whether there is a next page
+        List<UserProfile> profiles = userProfileRepository.findSummaries(type, after, pageSize + 1);
+        return CursorPage.of(profiles, pageSize, UserProfile::getId);
     }
 
     /**
-     * Process log content and update profiles.
+     * Get the users with the highest value of a counter, best first.
+     *
+     * Served from the in-memory top-K indexes when possible, otherwise with a
+     * limit-aware query walking the matching compound index.
+     *
+     * @param limit requested size, capped at {@link CursorPage#MAX_LIMIT}
      */
-    public int processLogs(String logContent) {
-        List<UserAction> actions = logParserService.parseLogContent(logContent);
-        int processed = 0;
-        for (UserAction action : actions) {
-            try {
-                recordAction(action);
-                processed++;
-            } catch (Exception e) {
-                // Exception logging handled by InjectLog4J via logging.rules.yaml
-            }
-        }
-        return processed;
-    }
-
-    /**
-     * Process log lines and update profiles.
-     */
-    public int processLogLines(List<String> logLines) {
-        List<UserAction> actions = logParserService.parseLogLines(logLines);
-        int processed = 0;
-        for (UserAction action : actions) {
-            try {
-                recordAction(action);
-                processed++;
-            } catch (Exception e) {
-                // Exception logging handled by InjectLog4J via logging.rules.yaml
-            }
+    @Transactional(readOnly = true)
+    public List<LeaderboardEntry> getLeaderboard(LeaderboardMetric metric, Integer limit) {
+        int size = Math.max(1, Math.min(limit != null ? limit : DEFAULT_LEADERBOARD_LIMIT, CursorPage.MAX_LIMIT));
+        Optional<List<LeaderboardEntry>> cached = profileStatisticsTracker.leaderboard(metric, size);
+        if (cached.isPresent()) {
+            return cached.get();
         }
-        return processed;
-    }
 
-    /**
-     * Recalculate all profile types based on current data.
-     */
-    public void recalculateAllProfiles() {
-        List<UserProfile> profiles = userProfileRepository.findAll();
+        List<UserProfile> profiles = userProfileRepository.findLeaderboard(metric, size);
+        List<LeaderboardEntry> leaderboard = new ArrayList<>(profiles.size());
         for (UserProfile profile : profiles) {
-            profile.calculateProfileType();
-            profile.setUpdatedAt(LocalDateTime.now());
-            userProfileRepository.save(profile);
+            leaderboard.add(LeaderboardEntry.of(leaderboard.size() + 1, profile, metric));
         }
+        return leaderboard;
     }
 
     /**
-     * Export all profiles as JSON.
+     * Get profile statistics summary.
+     * Served from incrementally maintained aggregates in O(K).
      */
     @Transactional(readOnly = true)
-    public String exportProfilesAsJson() {
-        List<UserProfile> profiles = userProfileRepository.findAll();
-        StringBuilder json = new StringBuilder();
-        json.append("{\n  \"profiles\": [\n");
-
-        for (int i = 0; i < profiles.size(); i++) {
-            UserProfile profile = profiles.get(i);
-            json.append("    ").append(profileToJson(profile));
-            if (i < profiles.size() - 1) {
-                json.append(",");
-            }
-            json.append("\n");
-        }
-
-        json.append("  ],\n");
-        json.append("  \"statistics\": ").append(statsToJson(getProfileStatistics())).append("\n");
-        json.append("}\n");
-
-        return json.toString();
+    public Map<String, Object> getProfileStatistics() {
+        return profileStatisticsTracker.snapshot();
     }
 
     /**
-     * Convert a profile to JSON string.
+     * Rebuild the profile statistics from MongoDB.
+     *
+     * @return the number of profiles loaded
      */
-    private String profileToJson(UserProfile profile) {
-        return String.format(
-                "{\"userId\":\"%s\",\"userEmail\":\"%s\",\"userName\":\"%s\"," +
-                        "\"profileType\":\"%s\",\"readOperations\":%d,\"writeOperations\":%d," +
-                        "\"expensiveProductSearches\":%d,\"averageProductPriceViewed\":%.2f," +
-                        "\"maxProductPriceViewed\":%.2f}",
-                profile.getUserId() != null ? profile.getUserId() : "",
-                profile.getUserEmail() != null ? profile.getUserEmail() : "",
-                profile.getUserName() != null ? profile.getUserName() : "",
-                profile.getProfileType() != null ? profile.getProfileType().name() : "BALANCED",
-                profile.getReadOperations(),
-                profile.getWriteOperations(),
-                profile.getExpensiveProductSearches(),
-                profile.getAverageProductPriceViewed(),
-                profile.getMaxProductPriceViewed());
+    @Transactional(readOnly = true)
+    public int rebuildProfileStatistics() {
+        return profileStatisticsTracker.rebuild();
     }
 
     /**
-     * Convert statistics map to JSON.
+     * Recalculate all profile types based on current data.
      */
-    private String statsToJson(Map<String, Object> stats) {
-        StringBuilder json = new StringBuilder();
-        json.append("{");
-        json.append("\"totalProfiles\":").append(stats.get("totalProfiles")).append(",");
-        json.append("\"averageReadOperations\":").append(stats.get("averageReadOperations")).append(",");
-        json.append("\"averageWriteOperations\":").append(stats.get("averageWriteOperations")).append(",");
-        json.append("\"averageExpensiveSearches\":").append(stats.get("averageExpensiveSearches"));
-        json.append("}");
-        return json.toString();
+    public void recalculateAllProfiles() {
+        userProfileRepository.recalculateDerivedFields();
     }
 
     /**
-     * Publish profile update to Kafka.
+     * Append the actions to the history. The history is secondary to the
+     * profile counters: a failure here must not fail (or replay) the profile
+     * write.
      */
-    private void publishProfileUpdate(UserProfile profile) {
+    private void appendHistory(Collection<ProfileDelta> deltas) {
         try {
-            String message = String.format("Profile updated: %s - Type: %s",
-                    profile.getUserEmail() != null ? profile.getUserEmail() : profile.getUserId(),
-                    profile.getProfileType());
-            kafkaTemplate.send(PROFILE_TOPIC, message);
+            actionHistoryService.append(deltas);
         } catch (Exception e) {
             // Exception logging handled by InjectLog4J via logging.rules.yaml
         }
     }
 
+    /**
+     * Announce the profile change on the user-profiles topic, coalesced with
+     * the user's other changes of the current window.
+     */
+    private void publishProfileUpdate(ProfileDelta delta) {
+        profileUpdatePublisher.submit(delta);
+    }
+
     /**
      * Delete a user profile.
      */
     public void deleteProfile(String userId) {
         userProfileRepository.deleteByUserId(userId);
+        actionHistoryService.deleteHistory(userId);
+        profileStatisticsTracker.remove(userId);
     }
 
     /**
@@ -411,5 +274,7 @@ public class UserProfileService {
      */
     public void deleteAllProfiles() {
         userProfileRepository.deleteAll();
+        actionHistoryService.deleteAll();
+        profileStatisticsTracker.clear();
     }
 }
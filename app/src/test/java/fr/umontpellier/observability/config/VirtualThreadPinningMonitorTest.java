@@ -0,0 +1,74 @@
+package fr.umontpellier.observability.config;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for VirtualThreadPinningMonitor.
+ */
+@DisplayName("VirtualThreadPinningMonitor Tests")
+class VirtualThreadPinningMonitorTest {
+
+    private final Object monitor = new Object();
+
+    @Test
+    @DisplayName("Should attribute pinning to the innermost application frame")
+    void shouldPickApplicationFrame() {
+        assertEquals("fr.umontpellier.observability.service.ProductService.getProductById:42",
+                VirtualThreadPinningMonitor.firstApplicationFrame(List.of(
+                        "java.lang.VirtualThread.parkOnCarrierThread:677",
+                        "com.mongodb.internal.connection.SocketStream.read:180",
+                        "fr.umontpellier.observability.service.ProductService.getProductById:42",
+                        "fr.umontpellier.observability.controller.ProductController.getProductById:80")));
+        assertEquals("com.mongodb.internal.connection.SocketStream.read:180",
+                VirtualThreadPinningMonitor.firstApplicationFrame(List.of(
+                        "java.lang.VirtualThread.parkOnCarrierThread:677",
+                        "com.mongodb.internal.connection.SocketStream.read:180")));
+        assertEquals("unknown", VirtualThreadPinningMonitor.firstApplicationFrame(List.of()));
+    }
+
+    @Test
+    @DisplayName("Should time virtual threads blocking inside a monitor")
+    void shouldRecordPinnedVirtualThreads() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        VirtualThreadPinningMonitor pinningMonitor = new VirtualThreadPinningMonitor(meterRegistry,
+                Duration.ofMillis(10));
+        pinningMonitor.start();
+        try {
+            Thread.ofVirtual().start(() -> {
+                synchronized (monitor) {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }).join();
+
+            // JFR streams events about once a second, and a pinned sleep may
+            // be split over several events; other code may pin too
+            Timer timer = null;
+            for (int i = 0; i < 100 && (timer == null || timer.totalTime(TimeUnit.MILLISECONDS) < 90); i++) {
+                Thread.sleep(100);
+                timer = meterRegistry.find("jvm.threads.virtual.pinned").timers().stream()
+                        .filter(candidate -> candidate.getId().getTag("frame")
+                                .contains(VirtualThreadPinningMonitorTest.class.getName()))
+                        .findFirst()
+                        .orElse(null);
+            }
+
+            assertNotNull(timer);
+            assertTrue(timer.totalTime(TimeUnit.MILLISECONDS) >= 90);
+        } finally {
+            pinningMonitor.stop();
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package fr.umontpellier.observability.integration;
 
+import fr.umontpellier.observability.controller.PageResponses;
 import fr.umontpellier.observability.model.Product;
 import fr.umontpellier.observability.repository.ProductRepository;
+import fr.umontpellier.observability.service.ProductCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,6 +13,7 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.testcontainers.containers.KafkaContainer;
 import org.testcontainers.containers.MongoDBContainer;
 import org.testcontainers.junit.jupiter.Container;
@@ -41,6 +44,9 @@ class ProductIntegrationTest {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private ProductCache productCache;
+
     @DynamicPropertySource
     static void configureProperties(DynamicPropertyRegistry registry) {
         registry.add("spring.kafka.bootstrap-servers", kafka::getBootstrapServers);
@@ -50,6 +56,8 @@ class ProductIntegrationTest {
     @BeforeEach
     void setUp() {
         productRepository.deleteAll();
+        // Products are saved through the repository below, bypassing the cache
+        productCache.invalidateAll();
     }
 
     @Test
@@ -65,6 +73,53 @@ class ProductIntegrationTest {
                 .andExpect(jsonPath("$[0].name", is("Test Product")));
     }
 
+    @Test
+    void shouldGetProductsByPriceRangePageByPage() throws Exception {
+        // Given
+        productRepository.save(new Product(null, "Cheap", new BigDecimal("9.99"), LocalDate.now().plusDays(30)));
+        productRepository.save(new Product(null, "Mid", new BigDecimal("100.00"), LocalDate.now().plusDays(30)));
+        productRepository.save(new Product(null, "Expensive", new BigDecimal("1500.00"), LocalDate.now().plusDays(30)));
+
+        // When & Then: prices compare as numbers, cheapest first
+        String cursor = mockMvc.perform(get("/api/products/price-range").param("min", "50").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("Mid")))
+                .andReturn().getResponse().getHeader(PageResponses.NEXT_CURSOR_HEADER);
+
+        mockMvc.perform(get("/api/products/price-range").param("min", "50").param("after", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("Expensive")));
+    }
+
+    @Test
+    void shouldApplyBulkOperationsAndStreamResults() throws Exception {
+        // Given
+        Product existing = productRepository.save(
+                new Product(null, "Old", new BigDecimal("5.00"), LocalDate.now().plusDays(30)));
+        String body = """
+                {"op":"create","product":{"name":"New","price":12.5,"expirationDate":"2030-01-01"}}
+                {"op":"update","id":"%s","product":{"name":"Renamed","price":6,"expirationDate":"2030-01-01"}}
+                {"op":"delete","id":"missing"}
+                """.formatted(existing.getId());
+
+        // When
+        MvcResult result = mockMvc.perform(post("/api/products/bulk").param("ordered", "false")
+                        .contentType("application/x-ndjson").content(body))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Then
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"status\":\"CREATED\"")))
+                .andExpect(content().string(containsString("\"status\":\"UPDATED\"")))
+                .andExpect(content().string(containsString("\"status\":\"NOT_FOUND\"")));
+        mockMvc.perform(get("/api/products/" + existing.getId()))
+                .andExpect(jsonPath("$.name", is("Renamed")));
+    }
+
     @Test
     void shouldGetProductById() throws Exception {
         // Given
@@ -238,8 +238,8 @@ class UserProfileTest {
         }
 
         @Test
-        @DisplayName("Should limit recent actions to 100")
-        void shouldLimitRecentActionsTo100() {
+        @DisplayName("Should keep only the last recent actions")
+        void shouldLimitRecentActions() {
             // When: add 120 actions
             for (int i = 0; i < 120; i++) {
                 UserProfile.ProfileAction action = UserProfile.ProfileAction.builder()
@@ -251,8 +251,9 @@ class UserProfileTest {
                 profile.addAction(action);
             }
 
-            // Then: should only keep last 100
-            assertEquals(100, profile.getRecentActions().size());
+            // Then: should only keep the ring buffer
+            assertEquals(UserProfile.MAX_RECENT_ACTIONS, profile.getRecentActions().size());
+            assertEquals("119", profile.getRecentActions().get(UserProfile.MAX_RECENT_ACTIONS - 1).getTargetId());
         }
     }
 
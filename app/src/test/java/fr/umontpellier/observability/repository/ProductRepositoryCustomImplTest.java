@@ -0,0 +1,113 @@
+package fr.umontpellier.observability.repository;
+
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the range queries built by ProductRepositoryCustomImpl.
+ */
+@DisplayName("ProductRepositoryCustomImpl Tests")
+class ProductRepositoryCustomImplTest {
+
+    @Test
+    @DisplayName("Should bound the range and continue after the cursor in (value, id) order")
+    void shouldBuildKeysetRangeQuery() {
+        Decimal128 min = new Decimal128(new BigDecimal("100"));
+        Decimal128 max = new Decimal128(new BigDecimal("500"));
+        Decimal128 after = new Decimal128(new BigDecimal("249.99"));
+
+        Query query = ProductRepositoryCustomImpl.rangeQuery("price", min, max, after, "65a1b2c3d4e5f60718293a4b", 11);
+
+        assertEquals(List.of(
+                new Document("price", new Document("$gte", min)),
+                new Document("price", new Document("$lte", max)),
+                new Document("$or", List.of(
+                        new Document("price", new Document("$gt", after)),
+                        new Document("$and", List.of(
+                                new Document("price", after),
+                                new Document("id", new Document("$gt", new ObjectId("65a1b2c3d4e5f60718293a4b")))))))),
+                query.getQueryObject().get("$and"));
+        assertEquals(new Document("price", 1).append("id", 1), query.getSortObject());
+        assertEquals(11, query.getLimit());
+        assertEquals(0, query.getSkip());
+    }
+
+    @Test
+    @DisplayName("Should continue after an ObjectId cursor among the ObjectIds")
+    void shouldPageAfterObjectId() {
+        Query query = ProductRepositoryCustomImpl.pageQuery("65a1b2c3d4e5f60718293a4b", 11);
+
+        assertEquals(new Document("id", new Document("$gt", new ObjectId("65a1b2c3d4e5f60718293a4b"))),
+                query.getQueryObject());
+        assertEquals(new Document("id", 1), query.getSortObject());
+        assertEquals(11, query.getLimit());
+    }
+
+    @Test
+    @DisplayName("Should continue after a string cursor with the greater strings, then every ObjectId")
+    void shouldPageAfterStringId() {
+        Query query = ProductRepositoryCustomImpl.pageQuery("sku-42", 11);
+
+        assertEquals(new Document("$or", List.of(
+                new Document("id", new Document("$gt", "sku-42")),
+                new Document("id", new Document("$type", BsonType.OBJECT_ID.getValue())))),
+                query.getQueryObject());
+        assertEquals(new Document("id", 1), query.getSortObject());
+    }
+
+    @Test
+    @DisplayName("Should start from the first product without a cursor")
+    void shouldPageFromStart() {
+        assertTrue(ProductRepositoryCustomImpl.pageQuery(null, 5).getQueryObject().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should leave out products without the field when there is no lower bound")
+    void shouldBuildOpenRangeQuery() {
+        Query query = ProductRepositoryCustomImpl.rangeQuery("expirationDate", null, LocalDate.of(2026, 1, 31),
+                null, null, 5);
+
+        assertEquals(List.of(
+                new Document("expirationDate", new Document("$ne", null)),
+                new Document("expirationDate", new Document("$lte", LocalDate.of(2026, 1, 31)))),
+                query.getQueryObject().get("$and"));
+        assertEquals(new Document("expirationDate", 1).append("id", 1), query.getSortObject());
+        assertEquals(5, query.getLimit());
+    }
+
+    @Test
+    @DisplayName("Should read the summary totals, rounding the average price")
+    void shouldReadSummary() {
+        Document totals = new Document("totalProducts", 3)
+                .append("totalValue", new Decimal128(new BigDecimal("30.00")))
+                .append("averagePrice", new Decimal128(new BigDecimal("10.0000000000000000000000000000000")));
+
+        Map<String, Object> summary = ProductRepositoryCustomImpl.summaryOf(totals);
+
+        assertEquals(3L, summary.get("totalProducts"));
+        assertEquals(new BigDecimal("30.00"), summary.get("totalValue"));
+        assertEquals(new BigDecimal("10.00"), summary.get("averagePrice"));
+    }
+
+    @Test
+    @DisplayName("Should summarize an empty catalogue as zeros")
+    void shouldSummarizeNoProducts() {
+        Map<String, Object> summary = ProductRepositoryCustomImpl.summaryOf(null);
+
+        assertEquals(0L, summary.get("totalProducts"));
+        assertEquals(BigDecimal.ZERO, summary.get("totalValue"));
+        assertEquals(BigDecimal.ZERO, summary.get("averagePrice"));
+    }
+}
@@ -0,0 +1,296 @@
+package fr.umontpellier.observability.repository;
+
+import com.mongodb.bulk.BulkWriteError;
+import fr.umontpellier.observability.model.LeaderboardMetric;
+import fr.umontpellier.observability.model.ProfileDelta;
+import fr.umontpellier.observability.model.UserAction;
+import fr.umontpellier.observability.model.UserAction.EntityType;
+import fr.umontpellier.observability.model.UserAction.OperationType;
+import fr.umontpellier.observability.model.UserProfile;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the atomic update documents built by
+ * UserProfileRepositoryCustomImpl.
+ */
+@DisplayName("UserProfileRepositoryCustomImpl Tests")
+class UserProfileRepositoryCustomImplTest {
+
+    private ProfileDelta delta(String userId, String email) {
+        UserAction action = UserAction.lpsBuilder()
+                .withUser(userId, email, "Test User")
+                .withAction(OperationType.GET_BY_ID, "ProductService", "getProductById")
+                .withTarget(EntityType.PRODUCT, "p1")
+                .withProductContext("Laptop", 1500.0)
+                .build();
+        return ProfileDelta.of(action, UserProfile.DEFAULT_EXPENSIVE_THRESHOLD);
+    }
+
+    @Nested
+    @DisplayName("Upsert Update Tests")
+    class UpsertUpdateTests {
+
+        @Test
+        @DisplayName("Should increment counters instead of overwriting them")
+        void shouldIncrementCounters() {
+            Document update = UserProfileRepositoryCustomImpl
+                    .upsertUpdate(delta("user-1", "a@example.com"), LocalDateTime.now())
+                    .getUpdateObject();
+
+            Document inc = update.get("$inc", Document.class);
+            assertEquals(1, inc.get("readOperations"));
+            assertEquals(0, inc.get("writeOperations"));
+            assertEquals(1, inc.get("expensiveProductSearches"));
+            assertEquals(1, inc.get("productPriceViews"));
+            assertEquals(1500.0, inc.get("productPriceSum"));
+            assertEquals(1500.0, update.get("$max", Document.class).get("maxProductPriceViewed"));
+        }
+
+        @Test
+        @DisplayName("Should push recent actions into a sliced ring buffer")
+        void shouldPushWithSlice() {
+            Update update = UserProfileRepositoryCustomImpl
+                    .upsertUpdate(delta("user-1", "a@example.com"), LocalDateTime.now());
+
+            Document push = update.getUpdateObject().get("$push", Document.class);
+            Update.Modifiers modifiers = (Update.Modifiers) push.get("recentActions");
+            Update.Modifier slice = modifiers.getModifiers().stream()
+                    .filter(m -> "$slice".equals(m.getKey()))
+                    .findFirst()
+                    .orElseThrow();
+            assertEquals(-UserProfile.MAX_RECENT_ACTIONS, slice.getValue());
+        }
+
+        @Test
+        @DisplayName("Should only set identity fields on insert and never write nulls")
+        void shouldSetIdentityOnInsert() {
+            Document byId = UserProfileRepositoryCustomImpl
+                    .upsertUpdate(delta("user-1", "a@example.com"), LocalDateTime.now())
+                    .getUpdateObject().get("$setOnInsert", Document.class);
+            assertEquals("a@example.com", byId.get("userEmail"));
+            assertEquals("Test User", byId.get("userName"));
+            assertFalse(byId.containsKey("userId"));
+
+            Document byEmail = UserProfileRepositoryCustomImpl
+                    .upsertUpdate(delta(null, "a@example.com"), LocalDateTime.now())
+                    .getUpdateObject().get("$setOnInsert", Document.class);
+            assertFalse(byEmail.containsKey("userId"));
+            assertFalse(byEmail.containsKey("userEmail"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Query Tests")
+    class QueryTests {
+
+        @Test
+        @DisplayName("Should select profiles by user ID first, then by email")
+        void shouldSelectByIdThenEmail() {
+            Query byId = UserProfileRepositoryCustomImpl.queryFor(delta("user-1", "a@example.com"));
+            assertEquals("user-1", byId.getQueryObject().get("userId"));
+
+            Query byEmail = UserProfileRepositoryCustomImpl.queryFor(delta(null, "a@example.com"));
+            assertEquals("a@example.com", byEmail.getQueryObject().get("userEmail"));
+
+            assertNull(UserProfileRepositoryCustomImpl.queryFor(new ProfileDelta(null, null, null)));
+        }
+
+        @Test
+        @DisplayName("Should page summaries by id with the limit and projection pushed down")
+        void shouldBuildKeysetSummaryQuery() {
+            Query query = UserProfileRepositoryCustomImpl.summaryQuery(
+                    UserProfile.ProfileType.READ_HEAVY, "65a1b2c3d4e5f60718293a4b", 11);
+
+            assertEquals(UserProfile.ProfileType.READ_HEAVY, query.getQueryObject().get("profileType"));
+            assertEquals(new Document("$gt", new ObjectId("65a1b2c3d4e5f60718293a4b")), query.getQueryObject().get("id"));
+            assertEquals(new Document("id", 1), query.getSortObject());
+            assertEquals(11, query.getLimit());
+            assertEquals(0, query.getSkip());
+            assertEquals(new Document("recentActions", 0), query.getFieldsObject());
+        }
+
+        @Test
+        @DisplayName("Should rank by the counter with the limit and projection pushed down")
+        void shouldBuildLeaderboardQuery() {
+            Query query = UserProfileRepositoryCustomImpl.leaderboardQuery(LeaderboardMetric.EXPENSIVE_SEARCHES, 10);
+
+            assertEquals(new Document("expensiveProductSearches", -1).append("id", 1), query.getSortObject());
+            assertEquals(10, query.getLimit());
+            assertFalse(query.getFieldsObject().containsKey("recentActions"));
+            assertEquals(1, query.getFieldsObject().get("expensiveProductSearches"));
+        }
+
+        @Test
+        @DisplayName("Should start from the first profile without a cursor")
+        void shouldBuildFirstPageQuery() {
+            Query query = UserProfileRepositoryCustomImpl.summaryQuery(null, null, 5);
+
+            assertTrue(query.getQueryObject().isEmpty());
+            assertEquals(5, query.getLimit());
+        }
+    }
+
+    @Nested
+    @DisplayName("Bulk Write Tests")
+    class BulkWriteTests {
+
+        @Test
+        @DisplayName("Should write the tail again after a duplicate key error on a first upsert")
+        void shouldRetryTailAfterDuplicateKey() {
+            MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+            BulkOperations first = mock(BulkOperations.class);
+            BulkOperations retry = mock(BulkOperations.class);
+            when(mongoTemplate.bulkOps(BulkMode.ORDERED, UserProfile.class)).thenReturn(first, retry);
+            BulkOperationException exception = mock(BulkOperationException.class);
+            // Third operation: the upsert of the second delta
+            when(exception.getErrors()).thenReturn(List.of(
+                    new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 2)));
+            when(first.execute()).thenThrow(exception);
+
+            int applied = new UserProfileRepositoryCustomImpl(mongoTemplate).applyDeltas(List.of(
+                    delta("user-1", "a@example.com"), delta("user-2", "b@example.com"),
+                    delta("user-3", "c@example.com")));
+
+            assertEquals(3, applied);
+            verify(first, times(3)).upsert(any(Query.class), any(Update.class));
+            ArgumentCaptor<Query> retried = ArgumentCaptor.forClass(Query.class);
+            verify(retry, times(2)).upsert(retried.capture(), any(Update.class));
+            assertEquals(List.of("user-2", "user-3"), retried.getAllValues().stream()
+                    .map(query -> query.getQueryObject().get("userId"))
+                    .toList());
+            verify(retry).execute();
+        }
+
+        @Test
+        @DisplayName("Should skip a delta refused again after a duplicate key error and write the others")
+        void shouldSkipPersistentDuplicateKey() {
+            MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+            BulkOperations first = mock(BulkOperations.class);
+            BulkOperations retry = mock(BulkOperations.class);
+            BulkOperations rest = mock(BulkOperations.class);
+            when(mongoTemplate.bulkOps(BulkMode.ORDERED, UserProfile.class)).thenReturn(first, retry, rest);
+            // The second delta's email belongs to another profile: refused on every attempt
+            BulkOperationException firstError = bulkError(11000, 2);
+            when(first.execute()).thenThrow(firstError);
+            BulkOperationException retryError = bulkError(11000, 0);
+            when(retry.execute()).thenThrow(retryError);
+            ProfileDelta one = delta("user-1", "a@example.com");
+            ProfileDelta conflicting = delta("user-2", "taken@example.com");
+            ProfileDelta three = delta("user-3", "c@example.com");
+
+            int applied = new UserProfileRepositoryCustomImpl(mongoTemplate).applyDeltas(
+                    List.of(one, conflicting, three));
+
+            assertEquals(2, applied);
+            assertTrue(one.isWritten());
+            assertFalse(conflicting.isWritten());
+            assertTrue(conflicting.isRejected());
+            assertTrue(three.isWritten());
+            verify(rest, times(1)).upsert(any(Query.class), any(Update.class));
+            verify(rest).execute();
+        }
+
+        @Test
+        @DisplayName("Should skip a delta refused for another reason without retrying it")
+        void shouldSkipRefusedDelta() {
+            MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+            BulkOperations first = mock(BulkOperations.class);
+            BulkOperations rest = mock(BulkOperations.class);
+            when(mongoTemplate.bulkOps(BulkMode.ORDERED, UserProfile.class)).thenReturn(first, rest);
+            BulkOperationException firstError = bulkError(121, 0);
+            when(first.execute()).thenThrow(firstError);
+            ProfileDelta invalid = delta("user-1", "a@example.com");
+            ProfileDelta valid = delta("user-2", "b@example.com");
+
+            int applied = new UserProfileRepositoryCustomImpl(mongoTemplate).applyDeltas(List.of(invalid, valid));
+
+            assertEquals(1, applied);
+            assertTrue(invalid.isRejected());
+            assertTrue(valid.isWritten());
+            verify(mongoTemplate, times(2)).bulkOps(BulkMode.ORDERED, UserProfile.class);
+        }
+
+        @Test
+        @DisplayName("Should count a delta whose derived fields update failed as written")
+        void shouldKeepDeltaWhenDerivedFieldsFail() {
+            MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+            BulkOperations first = mock(BulkOperations.class);
+            BulkOperations rest = mock(BulkOperations.class);
+            when(mongoTemplate.bulkOps(BulkMode.ORDERED, UserProfile.class)).thenReturn(first, rest);
+            // Second operation: the derived fields update of the first delta
+            BulkOperationException firstError = bulkError(2, 1);
+            when(first.execute()).thenThrow(firstError);
+            ProfileDelta one = delta("user-1", "a@example.com");
+            ProfileDelta two = delta("user-2", "b@example.com");
+
+            int applied = new UserProfileRepositoryCustomImpl(mongoTemplate).applyDeltas(List.of(one, two));
+
+            assertEquals(2, applied);
+            assertTrue(one.isWritten());
+            assertFalse(one.isRejected());
+            verify(rest, times(1)).upsert(any(Query.class), any(Update.class));
+        }
+
+        @Test
+        @DisplayName("Should mark the acknowledged deltas before rethrowing a failure without write errors")
+        void shouldRethrowFailureWithoutWriteErrors() {
+            MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+            BulkOperations bulk = mock(BulkOperations.class);
+            when(mongoTemplate.bulkOps(BulkMode.ORDERED, UserProfile.class)).thenReturn(bulk);
+            BulkOperationException exception = mock(BulkOperationException.class);
+            when(exception.getErrors()).thenReturn(List.of());
+            when(bulk.execute()).thenThrow(exception);
+            ProfileDelta delta = delta("user-1", "a@example.com");
+
+            UserProfileRepositoryCustomImpl repository = new UserProfileRepositoryCustomImpl(mongoTemplate);
+            assertThrows(BulkOperationException.class, () -> repository.applyDeltas(List.of(delta)));
+            assertFalse(delta.isWritten());
+            assertFalse(delta.isRejected());
+        }
+
+        private BulkOperationException bulkError(int code, int index) {
+            BulkOperationException exception = mock(BulkOperationException.class);
+            when(exception.getErrors()).thenReturn(List.of(
+                    new BulkWriteError(code, "error " + code, new BsonDocument(), index)));
+            return exception;
+        }
+    }
+
+    @Nested
+    @DisplayName("Derived Fields Tests")
+    class DerivedFieldsTests {
+
+        @Test
+        @DisplayName("Should recompute average price and profile type in one $set stage")
+        void shouldRecomputeDerivedFields() {
+            List<Document> pipeline = UserProfileRepositoryCustomImpl.deriveFieldsUpdate()
+                    .toPipeline(Aggregation.DEFAULT_CONTEXT);
+
+            assertEquals(1, pipeline.size());
+            Document set = pipeline.get(0).get("$set", Document.class);
+            assertTrue(set.containsKey("averageProductPriceViewed"));
+            assertTrue(set.containsKey("profileType"));
+            assertTrue(set.toJson().contains(UserProfile.ProfileType.EXPENSIVE_SEEKER.name()));
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package fr.umontpellier.observability.service;
+
+import fr.umontpellier.observability.model.ProfileDelta;
+import fr.umontpellier.observability.model.UserAction;
+import fr.umontpellier.observability.model.UserAction.EntityType;
+import fr.umontpellier.observability.model.UserAction.OperationType;
+import fr.umontpellier.observability.model.UserActionBucket;
+import fr.umontpellier.observability.model.UserProfile;
+import fr.umontpellier.observability.model.UserProfile.ProfileAction;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ActionHistoryService.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ActionHistoryService Tests")
+@SuppressWarnings("null")
+class ActionHistoryServiceTest {
+
+    private static final LocalDateTime NOON = LocalDateTime.of(2025, 1, 15, 12, 0);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    private ActionHistoryService historyService;
+
+    @BeforeEach
+    void setUp() {
+        historyService = new ActionHistoryService(mongoTemplate, 2, Duration.ofDays(30));
+    }
+
+    private ProfileDelta deltaWithActionsAt(LocalDateTime... timestamps) {
+        ProfileDelta delta = new ProfileDelta("user-1", "user@example.com", "User");
+        for (LocalDateTime timestamp : timestamps) {
+            delta.add(UserAction.lpsBuilder()
+                    .withTimestamp(timestamp)
+                    .withUser("user-1", "user@example.com", "User")
+                    .withAction(OperationType.GET_BY_ID, "ProductService", "getProductById")
+                    .withTarget(EntityType.PRODUCT, timestamp.toString())
+                    .build(), UserProfile.DEFAULT_EXPENSIVE_THRESHOLD);
+        }
+        return delta;
+    }
+
+    private ProfileAction actionAt(LocalDateTime timestamp) {
+        return ProfileAction.builder().actionType("READ").timestamp(timestamp).build();
+    }
+
+    private UserActionBucket bucket(LocalDateTime hour, ProfileAction... actions) {
+        UserActionBucket bucket = new UserActionBucket();
+        bucket.setBucketStart(hour);
+        bucket.setActions(new ArrayList<>(List.of(actions)));
+        return bucket;
+    }
+
+    @Nested
+    @DisplayName("Append Tests")
+    class AppendTests {
+
+        @Test
+        @DisplayName("Should upsert one bucket per hour and bucket-size chunk")
+        void shouldSplitByHourAndBucketSize() {
+            when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(UserActionBucket.class)))
+                    .thenReturn(bulkOperations);
+            ProfileDelta delta = deltaWithActionsAt(
+                    NOON.plusMinutes(1), NOON.plusMinutes(2), NOON.plusMinutes(3), NOON.plusHours(1));
+
+            int upserts = historyService.append(List.of(delta));
+
+            // 12:00 -> chunks of 2 + 1, 13:00 -> 1
+            assertEquals(3, upserts);
+            ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+            verify(bulkOperations, times(3)).upsert(queries.capture(), any(Update.class));
+            verify(bulkOperations).execute();
+            // Each chunk goes to a bucket with room for all of it
+            assertEquals(List.of(new Document("$lte", 0), new Document("$lte", 1), new Document("$lte", 1)),
+                    queries.getAllValues().stream().map(query -> query.getQueryObject().get("count")).toList());
+        }
+
+        @Test
+        @DisplayName("Should use buckets of one action when the bucket size is not positive")
+        void shouldClampBucketSize() {
+            when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(UserActionBucket.class)))
+                    .thenReturn(bulkOperations);
+            historyService = new ActionHistoryService(mongoTemplate, 0, Duration.ofDays(30));
+
+            assertEquals(2, historyService.append(List.of(deltaWithActionsAt(NOON, NOON.plusMinutes(1)))));
+        }
+
+        @Test
+        @DisplayName("Should skip the write when there is nothing to append")
+        void shouldSkipEmptyDeltas() {
+            assertEquals(0, historyService.append(List.of(new ProfileDelta("user-1", null, null))));
+            verifyNoInteractions(mongoTemplate);
+        }
+
+        @Test
+        @DisplayName("Should target a bucket of the user's hour with room for the actions")
+        void shouldBuildBucketUpsert() {
+            Query query = ActionHistoryService.bucketQuery("id:user-1", NOON, 198);
+            Update update = ActionHistoryService.bucketUpdate(
+                    deltaWithActionsAt(NOON), List.of(actionAt(NOON), actionAt(NOON.plusMinutes(5))));
+
+            assertEquals("id:user-1", query.getQueryObject().get("userKey"));
+            assertEquals(NOON, query.getQueryObject().get("bucketStart"));
+            assertEquals(new Document("$lte", 198), query.getQueryObject().get("count"));
+            assertEquals(2, ((Document) update.getUpdateObject().get("$inc")).get("count"));
+            assertEquals("user-1", ((Document) update.getUpdateObject().get("$setOnInsert")).get("userId"));
+            assertTrue(update.getUpdateObject().containsKey("$push"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Query Tests")
+    class QueryTests {
+
+        @Test
+        @DisplayName("Should return actions in range, newest first, up to the limit")
+        void shouldFindActionsInRange() {
+            when(mongoTemplate.stream(any(Query.class), eq(UserActionBucket.class))).thenReturn(Stream.of(
+                    bucket(NOON.plusHours(1), actionAt(NOON.plusHours(1).plusMinutes(10))),
+                    bucket(NOON, actionAt(NOON.plusMinutes(5)), actionAt(NOON.plusMinutes(50))),
+                    bucket(NOON.minusHours(1), actionAt(NOON.minusMinutes(30)))));
+
+            List<ProfileAction> actions = historyService.findActions("user-1", null, null, 2);
+
+            assertEquals(List.of(NOON.plusHours(1).plusMinutes(10), NOON.plusMinutes(50)),
+                    actions.stream().map(ProfileAction::getTimestamp).toList());
+        }
+
+        @Test
+        @DisplayName("Should filter actions outside the requested range")
+        void shouldFilterOutOfRangeActions() {
+            when(mongoTemplate.stream(any(Query.class), eq(UserActionBucket.class))).thenReturn(Stream.of(
+                    bucket(NOON, actionAt(NOON.plusMinutes(5)), actionAt(NOON.plusMinutes(50)))));
+
+            List<ProfileAction> actions = historyService.findActions(
+                    "user-1", NOON.plusMinutes(10), NOON.plusMinutes(55), 10);
+
+            assertEquals(1, actions.size());
+            assertEquals(NOON.plusMinutes(50), actions.get(0).getTimestamp());
+        }
+
+        @Test
+        @DisplayName("Should select overlapping buckets, newest first")
+        void shouldBuildHistoryQuery() {
+            Query query = ActionHistoryService.historyQuery("id:user-1", NOON.plusMinutes(30), NOON.plusHours(2));
+
+            assertEquals(new Document("$gte", NOON).append("$lte", NOON.plusHours(2)),
+                    query.getQueryObject().get("bucketStart"));
+            assertEquals(new Document("bucketStart", -1), query.getSortObject());
+        }
+
+        @Test
+        @DisplayName("Should expire buckets after the retention")
+        void shouldBuildRetentionIndex() {
+            Document options = ActionHistoryService.retentionIndex(Duration.ofDays(7)).getIndexOptions();
+
+            assertEquals(7L * 24 * 3600, options.get("expireAfterSeconds"));
+            assertEquals(ActionHistoryService.TTL_INDEX_NAME, options.get("name"));
+        }
+    }
+
+    @Test
+    @DisplayName("Should group bucket starts by hour")
+    void shouldTruncateToHour() {
+        assertEquals(NOON, UserActionBucket.bucketStartOf(NOON.plusMinutes(59).plusSeconds(59)));
+    }
+}
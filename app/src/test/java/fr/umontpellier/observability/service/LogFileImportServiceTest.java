@@ -0,0 +1,169 @@
+package fr.umontpellier.observability.service;
+
+import fr.umontpellier.observability.model.IngestionProgress;
+import fr.umontpellier.observability.model.ProfileDelta;
+import fr.umontpellier.observability.model.UserAction;
+import fr.umontpellier.observability.model.UserAction.OperationType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for LogFileImportService.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("LogFileImportService Tests")
+@SuppressWarnings("null")
+class LogFileImportServiceTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Mock
+    private LogParserService logParserService;
+
+    @Mock
+    private UserProfileService userProfileService;
+
+    private LogIngestionService ingestionService;
+
+    private LogFileImportService importService;
+
+    private Path importDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        importDir = Files.createDirectory(tempDir.resolve("logs"));
+        ingestionService = new LogIngestionService(logParserService, userProfileService, 2, 100, 500, 2);
+        // 16-byte chunks: most chunk boundaries fall inside a line
+        importService = new LogFileImportService(ingestionService, importDir, 16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        importService.shutdown();
+        ingestionService.shutdown();
+    }
+
+    @Nested
+    @DisplayName("Import Tests")
+    class ImportTests {
+
+        @Test
+        @DisplayName("Should parse every line exactly once across newline-aligned chunks")
+        void shouldImportAllLines() throws IOException {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < 50; i++) {
+                content.append("user-").append(i % 7).append(i % 2 == 0 ? ":read\n" : ":write\r\n");
+            }
+            Path file = Files.writeString(importDir.resolve("app.log"), content);
+            when(logParserService.parseLogLine(anyString()))
+                    .thenAnswer(invocation -> parse(invocation.getArgument(0)));
+            AtomicLong operations = new AtomicLong();
+            when(userProfileService.applyProfileDeltas(anyCollection())).thenAnswer(invocation -> {
+                Collection<ProfileDelta> batch = invocation.getArgument(0);
+                batch.forEach(delta -> operations.addAndGet(delta.getReadOperations() + delta.getWriteOperations()));
+                return batch.size();
+            });
+
+            IngestionProgress progress = ingestionService.register("test");
+            importService.importFile(progress, file);
+
+            assertEquals(IngestionProgress.Status.COMPLETED, progress.getStatus());
+            assertEquals(50, progress.getLinesRead());
+            assertEquals(50, progress.getActionsParsed());
+            assertEquals(50, operations.get());
+            assertEquals(Files.size(file), progress.getBytesRead());
+            assertEquals(100.0, progress.getPercentComplete());
+        }
+
+        @Test
+        @DisplayName("Should queue an import and expose its progress")
+        void shouldStartImportInBackground() throws IOException {
+            Files.writeString(importDir.resolve("empty.log"), "");
+
+            IngestionProgress progress = importService.startImport("empty.log");
+
+            assertEquals("file:empty.log", progress.getSource());
+            assertSame(progress, ingestionService.getIngestion(progress.getId()).orElseThrow());
+        }
+    }
+
+    @Nested
+    @DisplayName("Path Tests")
+    class PathTests {
+
+        @Test
+        @DisplayName("Should reject files outside the import directory")
+        void shouldRejectTraversal() throws IOException {
+            Files.writeString(tempDir.resolve("secret.log"), "secret");
+
+            assertThrows(IllegalArgumentException.class, () -> importService.resolve("../secret.log"));
+            assertThrows(IllegalArgumentException.class,
+                    () -> importService.resolve(tempDir.resolve("secret.log").toString()));
+        }
+
+        @Test
+        @DisplayName("Should reject missing files and directories")
+        void shouldRejectMissingFiles() throws IOException {
+            Files.createDirectory(importDir.resolve("archive"));
+
+            assertThrows(IllegalArgumentException.class, () -> importService.resolve("missing.log"));
+            assertThrows(IllegalArgumentException.class, () -> importService.resolve("archive"));
+            assertThrows(IllegalArgumentException.class, () -> importService.resolve(" "));
+        }
+
+        @Test
+        @DisplayName("Should list importable files relative to the import directory")
+        void shouldListFiles() throws IOException {
+            Files.writeString(importDir.resolve("b.log"), "");
+            Files.writeString(importDir.resolve("a.log"), "");
+
+            assertEquals(List.of("a.log", "b.log"), importService.listImportableFiles());
+        }
+    }
+
+    @Test
+    @DisplayName("Should decode LF and CRLF lines, with or without a final newline")
+    void shouldDecodeLines() {
+        ByteBuffer buffer = ByteBuffer.wrap("first\r\nsecond\n\nthird é".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(List.of("first", "second", "", "third é"), LogFileImportService.decodeLines(buffer));
+    }
+
+    /**
+     * Lines are "userId:read|write".
+     */
+    private static Optional<UserAction> parse(String line) {
+        String[] parts = line.split(":");
+        if (parts.length != 2) {
+            return Optional.empty();
+        }
+        OperationType operation = "write".equals(parts[1]) ? OperationType.CREATE : OperationType.GET_ALL;
+        return Optional.of(UserAction.lpsBuilder()
+                .withUser(parts[0], parts[0] + "@example.com", parts[0])
+                .withAction(operation, "ProductService", "method")
+                .build());
+    }
+}
@@ -0,0 +1,218 @@
+package fr.umontpellier.observability.service;
+
+import fr.umontpellier.observability.model.IngestionProgress;
+import fr.umontpellier.observability.model.ProfileDelta;
+import fr.umontpellier.observability.model.UserAction;
+import fr.umontpellier.observability.model.UserAction.OperationType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for LogIngestionService.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("LogIngestionService Tests")
+@SuppressWarnings("null")
+class LogIngestionServiceTest {
+
+    @Mock
+    private LogParserService logParserService;
+
+    @Mock
+    private UserProfileService userProfileService;
+
+    private LogIngestionService ingestionService;
+
+    /** Copies of the batches written, in order. */
+    private final List<List<ProfileDelta>> batches = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // 2 parse threads, chunks of 3 lines, batches of 2 users, 2 chunks in flight
+        ingestionService = new LogIngestionService(logParserService, userProfileService, 2, 3, 2, 2);
+        // Not every test parses or writes
+        lenient().when(logParserService.parseLogLine(anyString()))
+                .thenAnswer(invocation -> parse(invocation.getArgument(0)));
+        lenient().when(userProfileService.applyProfileDeltas(anyCollection())).thenAnswer(invocation -> {
+            Collection<ProfileDelta> batch = invocation.getArgument(0);
+            batches.add(new ArrayList<>(batch));
+            return batch.size();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        ingestionService.shutdown();
+    }
+
+    /**
+     * Lines are "userId:read|write"; anything else does not parse.
+     */
+    private static Optional<UserAction> parse(String line) {
+        String[] parts = line.split(":");
+        if (parts.length != 2) {
+            return Optional.empty();
+        }
+        OperationType operation = "write".equals(parts[1]) ? OperationType.CREATE : OperationType.GET_ALL;
+        return Optional.of(UserAction.lpsBuilder()
+                .withUser(parts[0], parts[0] + "@example.com", parts[0])
+                .withAction(operation, "ProductService", "method")
+                .build());
+    }
+
+    @Nested
+    @DisplayName("Pipeline Tests")
+    class PipelineTests {
+
+        @Test
+        @DisplayName("Should merge a user's actions across chunks into one delta")
+        void shouldMergeAcrossChunks() {
+            List<String> lines = List.of(
+                    "user-1:read", "user-1:write", "garbage",
+                    "user-1:read", "user-1:read", "user-1:write");
+
+            IngestionProgress progress = ingestionService.ingest(lines.iterator(), "test");
+
+            assertEquals(IngestionProgress.Status.COMPLETED, progress.getStatus());
+            assertEquals(6, progress.getLinesRead());
+            assertEquals(5, progress.getActionsParsed());
+            assertEquals(1, batches.size());
+            ProfileDelta delta = batches.get(0).get(0);
+            assertEquals("user-1", delta.getUserId());
+            assertEquals(3, delta.getReadOperations());
+            assertEquals(2, delta.getWriteOperations());
+        }
+
+        @Test
+        @DisplayName("Should write a bulk upsert each time the batch holds batch-size users")
+        void shouldBoundBatches() {
+            List<String> lines = IntStream.range(0, 10).mapToObj(i -> "user-" + i + ":read").toList();
+
+            IngestionProgress progress = ingestionService.ingest(lines.iterator(), "test");
+
+            assertEquals(10, progress.getActionsParsed());
+            assertEquals(10, progress.getProfilesWritten());
+            assertEquals(progress.getBatchesWritten(), batches.size());
+            assertTrue(batches.stream().allMatch(batch -> batch.size() <= 3),
+                    "a batch holds at most one chunk more than batch-size");
+            // Input order is preserved
+            assertEquals("user-0", batches.get(0).get(0).getUserId());
+            assertEquals("user-9", batches.get(batches.size() - 1).get(batches.get(batches.size() - 1).size() - 1)
+                    .getUserId());
+        }
+
+        @Test
+        @DisplayName("Should keep every action of a user flooding a single chunk, in order")
+        void shouldKeepHistoryBeyondPendingLimit() {
+            LogIngestionService largeChunks = new LogIngestionService(logParserService, userProfileService, 2, 5000,
+                    2, 2);
+            int total = ProfileDelta.MAX_PENDING_ACTIONS * 2 + 500;
+            List<String> lines = IntStream.range(0, total).mapToObj(i -> i % 2 == 0 ? "user-1:read" : "user-1:write")
+                    .toList();
+
+            try {
+                IngestionProgress progress = largeChunks.ingest(lines.iterator(), "test");
+
+                assertEquals(IngestionProgress.Status.COMPLETED, progress.getStatus());
+            } finally {
+                largeChunks.shutdown();
+            }
+            List<ProfileDelta> written = batches.stream().flatMap(List::stream).toList();
+            assertEquals(3, written.size());
+            assertTrue(batches.stream().allMatch(batch -> batch.size() == 1),
+                    "a batch never holds two deltas of one user");
+            assertTrue(written.stream().allMatch(delta -> delta.getActions().size() <= ProfileDelta.MAX_PENDING_ACTIONS));
+            assertEquals(total, written.stream().mapToInt(delta -> delta.getActions().size()).sum());
+            assertEquals(total / 2, written.stream().mapToInt(ProfileDelta::getWriteOperations).sum());
+        }
+
+        @Test
+        @DisplayName("Should not write anything when no line parses")
+        void shouldSkipWriteWithoutActions() {
+            IngestionProgress progress = ingestionService.ingest(List.of("a", "b").iterator(), "test");
+
+            assertEquals(IngestionProgress.Status.COMPLETED, progress.getStatus());
+            assertEquals(0, progress.getBatchesWritten());
+            verify(userProfileService, never()).applyProfileDeltas(anyCollection());
+        }
+
+        @Test
+        @DisplayName("Should mark the ingestion failed when a write fails")
+        void shouldFailOnWriteError() {
+            doThrow(new IllegalStateException("mongo down")).when(userProfileService)
+                    .applyProfileDeltas(anyCollection());
+
+            IngestionProgress progress = ingestionService.ingest(List.of("user-1:read").iterator(), "test");
+
+            assertEquals(IngestionProgress.Status.FAILED, progress.getStatus());
+            assertEquals("mongo down", progress.getError());
+            assertNotNull(progress.getFinishedAt());
+        }
+    }
+
+    @Nested
+    @DisplayName("Process Logs Tests")
+    class ProcessLogsTests {
+
+        @Test
+        @DisplayName("Should process log content and return the applied actions")
+        void shouldProcessLogContent() {
+            IngestionProgress progress = ingestionService.processLogs("user-1:read\nuser-2:write\nnoise\n");
+
+            assertEquals(IngestionProgress.Status.COMPLETED, progress.getStatus());
+            assertEquals(2, progress.getActionsParsed());
+            assertEquals(2, batches.stream().mapToInt(List::size).sum());
+        }
+
+        @Test
+        @DisplayName("Should complete without writing for blank content")
+        void shouldCompleteForBlankContent() {
+            IngestionProgress progress = ingestionService.processLogs("  ");
+
+            assertEquals(IngestionProgress.Status.COMPLETED, progress.getStatus());
+            assertEquals(0, progress.getActionsParsed());
+            verifyNoInteractions(userProfileService);
+        }
+
+        @Test
+        @DisplayName("Should report the failure and the profiles written before it")
+        void shouldReportFailure() {
+            doThrow(new IllegalStateException("mongo down")).when(userProfileService)
+                    .applyProfileDeltas(anyCollection());
+
+            IngestionProgress progress = ingestionService.processLogLines(List.of("user-1:read"));
+
+            assertEquals(IngestionProgress.Status.FAILED, progress.getStatus());
+            assertEquals("mongo down", progress.getError());
+            assertEquals(0, progress.getProfilesWritten());
+        }
+    }
+
+    @Test
+    @DisplayName("Should expose recent ingestions, newest first")
+    void shouldTrackIngestions() {
+        IngestionProgress first = ingestionService.ingest(List.of("user-1:read").iterator(), "first");
+        IngestionProgress second = ingestionService.ingest(List.<String>of().iterator(), "second");
+
+        assertEquals(List.of(second, first), ingestionService.getIngestions());
+        assertSame(first, ingestionService.getIngestion(first.getId()).orElseThrow());
+        assertTrue(ingestionService.getIngestion("unknown").isEmpty());
+    }
+}
@@ -0,0 +1,161 @@
+package fr.umontpellier.observability.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.umontpellier.observability.model.UserAction;
+import fr.umontpellier.observability.model.UserAction.EntityType;
+import fr.umontpellier.observability.model.UserAction.OperationType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LogLineScanner: the scanner must give the same result as
+ * the regular expressions of LogParserService.
+ */
+@DisplayName("LogLineScanner Tests")
+class LogLineScannerTest {
+
+    private LogParserService logParserService;
+
+    private LocalDateTime testStart;
+
+    @BeforeEach
+    void setUp() {
+        logParserService = new LogParserService(new ObjectMapper());
+        testStart = LocalDateTime.now().minusSeconds(1);
+    }
+
+    /**
+     * Clear timestamps defaulted to now, which differ between two parses.
+     */
+    private Optional<UserAction> normalized(Optional<UserAction> action) {
+        action.ifPresent(a -> {
+            if (a.getTimestamp() != null && a.getTimestamp().isAfter(testStart)) {
+                a.setTimestamp(null);
+            }
+        });
+        return action;
+    }
+
+    private void assertSameAsPatterns(String line) {
+        assertTrue(LogLineScanner.handles(line), line);
+        assertEquals(normalized(logParserService.parseLogLineWithPatterns(line)),
+                normalized(LogLineScanner.scan(line)), line);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2025-12-25 10:30:00.123 [main] INFO fr.umontpellier.observability.service.ProductService - Fetching all products",
+            "2025-12-25 10:30:01.456 [http-nio-8080-exec-1] INFO f.u.o.UserService - Creating user: test@example.com",
+            "2025-12-25 10:30:02.789 [main] DEBUG ProductService - Deleting product by id: prod-123  ",
+            "2025-12-25 10:30:02.789 [main] WARN ProductService - Prefetching USERS BY EMAIL:   ",
+            "2025-12-25 10:30:02.789 [main] WARN ProductService - Fetching  all   users by  email:",
+            "2025-12-25 10:30:02.789 [main] WARN ProductService - Updating productsby id: x",
+            "2025-12-25 10:30:02.789 [main] WARN ProductService - Adding alluser",
+            "2025-12-25 10:30:02.789 [main] INFO ProductService - Product updated price=42.5 userId=u-1",
+            "2025-12-25 10:30:02.789 [main] INFO ProductService - price: 1.2.3 then price=4",
+            "2025-12-25 10:30:02.789 [main] INFO ProductService - deleted 507f1f77bcf86cd799439011 ok",
+            "2025-12-25 10:30:02.789 [main] INFO ProductService - by id 507F1F77BCF86CD7994390112 x",
+            "2025-12-25 10:30:02.789 [main] INFO ProductService - got 123e4567-e89b-12d3-a456-426614174000",
+            "2025-12-25 10:30:02.789 [main] INFO ProductService - -123e4567-e89b-12d3-a456-426614174000-",
+            "2025-12-25 10:30:02.789 [main] INFO UserService - all user={id=u-7, email=a.b@c.d} id= ",
+            "2025-12-25 10:30:02.789 [main] INFO UserService - user: {ID=u-7, Email=x} userEmail=e@x.io",
+            "2025-12-25 10:30:02.789 [main] INFO UserService - user={}} userid:  abc",
+            "2025-12-25 10:30:02.789 [main] INFO UserService -    ",
+            "2025-12-25 10:30:02.789 [main] INFO UserService - ",
+            "2025-12-25 10:30:02.789 [main]INFO UserService - x",
+            "2025-12-25 10:30:02.789 [] INFO UserService - x",
+            "2025-12-25 10:30:02.789 [a]b] INFO UserService - x",
+            "2025-12-25 10:30:02.789  [main]\tINFO\tx.y\t-\tmsg",
+            "2025-02-30 10:30:02.789 [main] INFO UserService - invalid date",
+            "2025-13-01 25:61:61.789 [main] INFO UserService - out of range",
+            "0000-01-01 00:00:00.000 [main] INFO UserService - year zero",
+            "2025-12-25 10:30:02.78 [main] INFO UserService - short millis",
+            "2025-12-25T10:30:00.123 [fr.umontpellier.ProductService.getProductById] Fetching product id=p-1",
+            "2025-12-25T10:30:00 [UserService.createUser] userEmail: someone@example.com price=10",
+            "2025-02-29T10:30:00.123 [UserService.createUser] not a leap year",
+            "2025-12-25T10:30:00.1234 [UserService.createUser] more fraction digits",
+            "2025-12-25-10:30:00.123T [UserService.createUser] odd timestamp",
+            "2025-12-25T24:00:00 [UserService.createUser] midnight",
+            "2025-12-25T10 [a..b] msg",
+            "2025-12-25T10 [a.b.] msg",
+            "2025-12-25T10 [.b] msg",
+            "2025-12-25T10 [ab] msg",
+            "2025-12-25T10 [a.b]msg",
+            "2025-12-25T10 [a.b]  ",
+            "2025-12-25T [a.b] msg",
+            "T10 [a.b] msg",
+            "--T10:: [Product.delete] removed",
+            "This is not a valid log line",
+            "12345",
+            "2025-12-25 10:30:00.123"
+    })
+    @DisplayName("Should match the regular expressions on edge cases")
+    void shouldMatchPatternsOnEdgeCases(String line) {
+        assertSameAsPatterns(line);
+    }
+
+    @Test
+    @DisplayName("Should match the regular expressions on random lines")
+    void shouldMatchPatternsOnRandomLines() {
+        String[] prefixes = {
+                "2025-12-25 10:30:00.123 [main] INFO fr.umontpellier.ProductService - ",
+                "2025-06-01 23:59:59.999 [exec-2] ERROR UserService - ",
+                "2025-12-25T10:30:00.123 [fr.umontpellier.ProductService.updateProduct] ",
+                "2025-12-25T10:30 [UserService.findAll] ",
+                "garbage "
+        };
+        String[] fragments = {
+                "Fetching", "creating", "UPDATING", "deleting", "adding", "all", "ALL", "user", "users",
+                "product", "Products", "by", "id", "email", ":", " ", "  ", "\t", "=", "userId=", "userEmail:",
+                "user={", "}", "id=", "email=", "price=", "price:", "12.5", "1.2.3", "u-1", "a@b.c",
+                "507f1f77bcf86cd799439011", "123e4567-e89b-12d3-a456-426614174000", "-", "_", ".", "created",
+                "by id", "by email", "{", "x"
+        };
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder line = new StringBuilder(prefixes[random.nextInt(prefixes.length)]);
+            int parts = random.nextInt(8);
+            for (int p = 0; p < parts; p++) {
+                line.append(fragments[random.nextInt(fragments.length)]);
+            }
+            assertSameAsPatterns(line.toString());
+        }
+    }
+
+    @Test
+    @DisplayName("Should extract the fields of a Log4j2 line")
+    void shouldScanLog4jLine() {
+        UserAction action = LogLineScanner.scan(
+                "2025-12-25 10:30:00.123 [main] INFO ProductService - Fetching product by id: p-1 price=9.5")
+                .orElseThrow();
+
+        assertEquals(LocalDateTime.of(2025, 12, 25, 10, 30, 0, 123_000_000), action.getTimestamp());
+        assertEquals(OperationType.GET_BY_ID, action.getOperationType());
+        assertEquals(EntityType.PRODUCT, action.getEntityType());
+        assertEquals("p-1 price=9.5", action.getEntityId());
+        assertEquals(9.5, action.getProductPrice());
+    }
+
+    @Test
+    @DisplayName("Should leave non-ASCII lines and line terminators to the regular expressions")
+    void shouldNotHandleNonAsciiLines() {
+        for (String line : List.of("2025-12-25T10:30 [UserService.findAll] café", "a\rb", "a\nb")) {
+            assertFalse(LogLineScanner.handles(line), line);
+        }
+        assertEquals(
+                logParserService.parseLogLineWithPatterns("2025-12-25T10:30 [UserService.findAll] userId=é1")
+                        .map(UserAction::getUserId),
+                logParserService.parseLogLine("2025-12-25T10:30 [UserService.findAll] userId=é1")
+                        .map(UserAction::getUserId));
+    }
+}
@@ -0,0 +1,208 @@
+package fr.umontpellier.observability.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.umontpellier.observability.model.UserAction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares LogParserService's scanner with its regular expressions on a
+ * 1M-line corpus mixing application Log4j2 lines, InjectLog4J lines,
+ * framework noise and stack trace lines, and its streaming JSON reader with
+ * the JsonNode tree it replaced on 200k JSON structured lines.
+ *
+ * Run after {@code mvn test-compile} with the test classpath:
+ * {@code java -cp <classpath> org.openjdk.jmh.Main LogParserBenchmark -f 2 -jvmArgs "-Xms2g -Xmx2g"}
+ *
+ * <pre>
+ * Benchmark                    Mode  Cnt      Score      Error  Units
+ * LogParserBenchmark.patterns  avgt   10  11634.449 ± 1324.234  ns/op
+ * LogParserBenchmark.scanner   avgt   10   1713.724 ±  784.222  ns/op
+ * </pre>
+ * <pre>
+ * Benchmark                                         Mode  Cnt     Score      Error  Units
+ * LogParserBenchmark.jsonStream                     avgt   10  5212.154 ±  917.092  ns/op
+ * LogParserBenchmark.jsonStream:gc.alloc.rate.norm  avgt   10  2480.353 ±    0.001   B/op
+ * LogParserBenchmark.jsonTree                       avgt   10  6237.824 ± 2048.378  ns/op
+ * LogParserBenchmark.jsonTree:gc.alloc.rate.norm    avgt   10  6404.240 ±    0.001   B/op
+ * </pre>
+ * (JDK 21.0.1, 1 vCPU Linux VM; ns per line, UserAction construction included;
+ * allocation with {@code -prof gc})
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class LogParserBenchmark {
+
+    static final int LINES = 1_000_000;
+
+    static final int JSON_LINES = 200_000;
+
+    private LogParserService logParserService;
+
+    private ObjectMapper objectMapper;
+
+    private List<String> corpus;
+
+    private List<String> jsonCorpus;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        logParserService = new LogParserService(objectMapper);
+        corpus = corpus(LINES, 42);
+        jsonCorpus = jsonCorpus(JSON_LINES, 42);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void patterns(Blackhole blackhole) {
+        for (String line : corpus) {
+            Optional<UserAction> action = logParserService.parseLogLineWithPatterns(line);
+            blackhole.consume(action);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void scanner(Blackhole blackhole) {
+        for (String line : corpus) {
+            Optional<UserAction> action = logParserService.parseLogLine(line);
+            blackhole.consume(action);
+        }
+    }
+
+    /**
+     * The JsonNode tree reading that parseJsonLog used before streaming.
+     */
+    @Benchmark
+    @OperationsPerInvocation(JSON_LINES)
+    public void jsonTree(Blackhole blackhole) throws IOException {
+        for (String line : jsonCorpus) {
+            JsonNode root = objectMapper.readTree(line);
+            JsonNode user = root.path("user");
+            JsonNode action = root.path("action");
+            JsonNode target = root.path("target");
+            JsonNode context = root.path("context");
+            JsonNode result = root.path("result");
+            blackhole.consume(UserAction.lpsBuilder()
+                    .withTimestamp(LogParserService.parseTimestamp(root.path("timestamp").asText()))
+                    .withUser(user.path("id").asText(), user.path("email").asText(), user.path("name").asText())
+                    .withAction(UserAction.OperationType.valueOf(action.path("operation").asText()),
+                            action.path("class").asText(), action.path("method").asText())
+                    .withTarget(UserAction.EntityType.valueOf(target.path("entity").asText()),
+                            target.path("id").asText())
+                    .withProductContext(context.path("productName").asText(), context.path("price").asDouble())
+                    .withResult(result.path("successful").asBoolean(), result.path("details").asText())
+                    .build());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(JSON_LINES)
+    public void jsonStream(Blackhole blackhole) {
+        for (String line : jsonCorpus) {
+            Optional<UserAction> action = logParserService.parseLogLine(line);
+            blackhole.consume(action);
+        }
+    }
+
+    /**
+     * Generate a deterministic corpus: 45% application Log4j2 lines, 25%
+     * InjectLog4J lines, 20% framework Log4j2 lines and 10% stack traces.
+     */
+    static List<String> corpus(int size, long seed) {
+        Random random = new Random(seed);
+        String[] services = { "ProductService", "UserService", "UserProfileService" };
+        String[] messages = {
+                "Fetching all products",
+                "Fetching product by id: %1$s",
+                "Creating user: user%2$d@example.com",
+                "Updating product by id: %1$s price=%2$d.99",
+                "Deleting product by id: %1$s",
+                "Product search returned %2$d results"
+        };
+        String[] methods = { "getAllProducts", "getProductById", "createUser", "updateProduct", "deleteProduct" };
+        List<String> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int kind = random.nextInt(100);
+            String time = String.format("2025-12-%02d %02d:%02d:%02d.%03d",
+                    1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60),
+                    random.nextInt(1000));
+            String id = Long.toHexString(0x5f0000000000L + random.nextInt(1 << 20)) + "0000000000000";
+            int user = random.nextInt(10_000);
+            if (kind < 45) {
+                String message = String.format(messages[random.nextInt(messages.length)], id, user);
+                lines.add(time + " [http-nio-8080-exec-" + random.nextInt(10) + "] INFO fr.umontpellier.observability.service."
+                        + services[random.nextInt(services.length)] + " - " + message + " userId=u-" + user);
+            } else if (kind < 70) {
+                lines.add(time.replace(' ', 'T') + " [fr.umontpellier.observability.service."
+                        + services[random.nextInt(services.length)] + "." + methods[random.nextInt(methods.length)]
+                        + "] Entering with args [" + id + "] userEmail=user" + user + "@example.com price="
+                        + random.nextInt(500));
+            } else if (kind < 90) {
+                lines.add(time + " [http-nio-8080-exec-" + random.nextInt(10)
+                        + "] DEBUG org.springframework.web.servlet.DispatcherServlet - Completed 200 OK in "
+                        + random.nextInt(300) + "ms");
+            } else {
+                lines.add("\tat fr.umontpellier.observability.service.ProductService.getProductById(ProductService.java:"
+                        + random.nextInt(400) + ")");
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Generate deterministic JSON structured log lines carrying the fields
+     * parseJsonLog reads plus request and trace metadata it skips.
+     */
+    static List<String> jsonCorpus(int size, long seed) {
+        Random random = new Random(seed);
+        String[] operations = { "GET_ALL", "GET_BY_ID", "CREATE", "UPDATE", "DELETE", "SEARCH" };
+        String[] methods = { "getAllProducts", "getProductById", "createProduct", "updateProduct", "deleteProduct" };
+        List<String> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int user = random.nextInt(10_000);
+            String id = Long.toHexString(0x5f0000000000L + random.nextInt(1 << 20)) + "0000000000000";
+            String time = String.format("2025-12-%02d %02d:%02d:%02d.%03d",
+                    1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60),
+                    random.nextInt(1000));
+            lines.add("{\"timestamp\":\"" + time + "\","
+                    + "\"request\":{\"method\":\"GET\",\"path\":\"/api/products/" + id + "\","
+                    + "\"headers\":{\"accept\":\"application/json\",\"user-agent\":\"k6/0.49\"},"
+                    + "\"durationMs\":" + random.nextInt(300) + "},"
+                    + "\"user\":{\"id\":\"u-" + user + "\",\"email\":\"user" + user + "@example.com\","
+                    + "\"name\":\"User " + user + "\",\"roles\":[\"customer\"]},"
+                    + "\"action\":{\"operation\":\"" + operations[random.nextInt(operations.length)] + "\","
+                    + "\"class\":\"ProductService\",\"method\":\"" + methods[random.nextInt(methods.length)] + "\"},"
+                    + "\"target\":{\"entity\":\"PRODUCT\",\"id\":\"" + id + "\"},"
+                    + "\"context\":{\"productName\":\"Product " + random.nextInt(500) + "\","
+                    + "\"price\":" + random.nextInt(500) + ".99},"
+                    + "\"result\":{\"successful\":true,\"details\":\"ok\"},"
+                    + "\"trace\":{\"traceId\":\"" + Long.toHexString(random.nextLong()) + "\","
+                    + "\"spans\":[{\"name\":\"mongo\",\"ms\":" + random.nextInt(50) + "}]}}");
+        }
+        return lines;
+    }
+}
@@ -164,6 +164,62 @@ class LogParserServiceTest {
             // Then
             assertTrue(result.isEmpty());
         }
+
+        @Test
+        @DisplayName("Should skip unknown fields and read sections in any order")
+        void shouldSkipUnknownFields() {
+            // Given
+            String jsonLog = """
+                    {
+                        "result": { "error": "timeout", "extra": [1, {"a": [2]}], "successful": true },
+                        "trace": { "spans": [ { "id": "s-1", "user": { "id": "wrong" } } ] },
+                        "user": { "roles": ["admin"], "id": "user-789", "meta": { "id": "wrong" } },
+                        "context": { "price": "12.5" },
+                        "action": { "operation": "update", "method": null }
+                    }
+                    """;
+
+            // When
+            Optional<UserAction> result = logParserService.parseLogLine(jsonLog);
+
+            // Then
+            assertTrue(result.isPresent());
+            UserAction action = result.get();
+            assertEquals("user-789", action.getUserId());
+            assertEquals(UserAction.OperationType.UPDATE, action.getOperationType());
+            assertEquals("null", action.getMethodName());
+            assertEquals(12.5, action.getProductPrice());
+            assertFalse(action.isSuccessful());
+            assertEquals("timeout", action.getErrorMessage());
+        }
+
+        @Test
+        @DisplayName("Should read sections that are not objects as empty")
+        void shouldReadNonObjectSectionsAsEmpty() {
+            // Given
+            String jsonLog = "{\"user\": \"user-1\", \"target\": [\"PRODUCT\"], \"result\": {\"successful\": 0}}";
+
+            // When
+            Optional<UserAction> result = logParserService.parseLogLine(jsonLog);
+
+            // Then
+            assertTrue(result.isPresent());
+            UserAction action = result.get();
+            assertNull(action.getUserId());
+            assertEquals(UserAction.EntityType.USER, action.getEntityType());
+            assertFalse(action.isSuccessful());
+        }
+
+        @Test
+        @DisplayName("Should return empty for truncated JSON")
+        void shouldReturnEmptyForTruncatedJson() {
+            // When
+            Optional<UserAction> result = logParserService.parseLogLine(
+                    "{\"user\": {\"id\": \"user-1\"}, \"action\": {\"operation\": ");
+
+            // Then
+            assertTrue(result.isEmpty());
+        }
     }
 
     @Nested
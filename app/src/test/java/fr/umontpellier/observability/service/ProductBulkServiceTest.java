@@ -0,0 +1,364 @@
+package fr.umontpellier.observability.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import fr.umontpellier.observability.model.Product;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.invocation.Invocation;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ProductBulkService.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("ProductBulkService Tests")
+@SuppressWarnings("null")
+class ProductBulkServiceTest {
+
+    private static Validator validator;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Mock
+    private ProductService productService;
+
+    @Mock
+    private ProductCache productCache;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private ProductBulkService bulkService;
+
+    @BeforeAll
+    static void setUpValidator() {
+        validator = Validation.buildDefaultValidatorFactory().getValidator();
+    }
+
+    @BeforeEach
+    void setUp() {
+        bulkService = new ProductBulkService(mongoTemplate, objectMapper, validator, productService, productCache, 2);
+        when(mongoTemplate.getCollectionName(Product.class)).thenReturn("products");
+        when(mongoTemplate.bulkOps(any(BulkMode.class), eq(Product.class))).thenReturn(bulkOperations);
+        when(bulkOperations.execute()).thenAnswer(invocation -> matchingEverything());
+        givenExisting();
+    }
+
+    /**
+     * Result of a bulk write whose updates and deletes all matched a product.
+     */
+    private BulkWriteResult matchingEverything() {
+        int replaced = 0;
+        int removed = 0;
+        List<Invocation> invocations = new ArrayList<>(mockingDetails(bulkOperations).getInvocations());
+        // The last invocation is the execute being answered
+        for (Invocation invocation : invocations.subList(0, invocations.size() - 1)) {
+            String method = invocation.getMethod().getName();
+            if (method.equals("execute")) {
+                replaced = 0;
+                removed = 0;
+            } else if (method.equals("replaceOne")) {
+                replaced++;
+            } else if (method.equals("remove")) {
+                removed++;
+            }
+        }
+        return BulkWriteResult.acknowledged(0, replaced, removed, replaced, List.of(), List.of());
+    }
+
+    private static BulkWriteResult matching(int replaced, int removed) {
+        return BulkWriteResult.acknowledged(0, replaced, removed, replaced, List.of(), List.of());
+    }
+
+    private void givenExisting(String... ids) {
+        List<Document> documents = Arrays.stream(ids).map(id -> new Document("_id", id)).toList();
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("products"))).thenReturn(documents);
+    }
+
+    private static String create(String id, String name) {
+        return "{\"op\":\"create\",\"id\":\"" + id + "\",\"product\":{\"name\":\"" + name
+                + "\",\"price\":9.99,\"expirationDate\":\"2030-01-01\"}}";
+    }
+
+    private static String update(String id, String name) {
+        return "{\"op\":\"UPDATE\",\"id\":\"" + id + "\",\"product\":{\"name\":\"" + name
+                + "\",\"price\":19.99,\"expirationDate\":\"2030-01-01\"}}";
+    }
+
+    private static String delete(String id) {
+        return "{\"op\":\"delete\",\"id\":\"" + id + "\"}";
+    }
+
+    private List<JsonNode> bulkWrite(boolean ordered, String... operations) throws IOException {
+        byte[] body = String.join("\n", operations).getBytes(StandardCharsets.UTF_8);
+        return bulkWrite(body, ordered);
+    }
+
+    private List<JsonNode> bulkWrite(byte[] body, boolean ordered) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bulkService.bulkWrite(new ByteArrayInputStream(body), out, ordered);
+        List<JsonNode> results = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            results.add(objectMapper.readTree(line));
+        }
+        return results;
+    }
+
+    private static List<String> statuses(List<JsonNode> results) {
+        return results.stream().map(result -> result.get("status").asText()).toList();
+    }
+
+    @Nested
+    @DisplayName("Operation Tests")
+    class OperationTests {
+
+        @Test
+        @DisplayName("Should create, update and delete products and report each result")
+        void shouldApplyMixedOperations() throws Exception {
+            givenExisting("p-2", "p-3");
+
+            List<JsonNode> results = bulkWrite(true, create("p-1", "Milk"), update("p-2", "Bread"), delete("p-3"));
+
+            assertEquals(List.of("CREATED", "UPDATED", "DELETED"), statuses(results));
+            assertEquals("p-1", results.get(0).get("id").asText());
+            assertEquals("CREATE", results.get(0).get("op").asText());
+            assertEquals(2, results.get(2).get("index").asInt());
+            assertFalse(results.get(0).has("error"));
+            verify(bulkOperations).insert(any(Product.class));
+            verify(bulkOperations).replaceOne(any(Query.class), any(Product.class));
+            verify(bulkOperations).remove(any(Query.class));
+            verify(productService).publishProductEvent(eq("PRODUCT_ADDED"), any(Product.class));
+            verify(productService).publishProductEvent(eq("PRODUCT_UPDATED"), any(Product.class));
+            verify(productService).publishProductEvent("PRODUCT_DELETED", "p-3", null, BigDecimal.ZERO);
+        }
+
+        @Test
+        @DisplayName("Should read operations from a JSON array")
+        void shouldReadJsonArray() throws Exception {
+            String body = "[" + create("p-1", "Milk") + "," + create("p-2", "Bread") + "]";
+
+            List<JsonNode> results = bulkWrite(body.getBytes(StandardCharsets.UTF_8), false);
+
+            assertEquals(List.of("CREATED", "CREATED"), statuses(results));
+        }
+
+        @Test
+        @DisplayName("Should generate an id for products created without one")
+        void shouldGenerateMissingIds() throws Exception {
+            List<JsonNode> results = bulkWrite(true,
+                    "{\"op\":\"create\",\"product\":{\"name\":\"Milk\",\"price\":1,\"expirationDate\":\"2030-01-01\"}}");
+
+            assertEquals("CREATED", results.get(0).get("status").asText());
+            assertEquals(24, results.get(0).get("id").asText().length());
+        }
+
+        @Test
+        @DisplayName("Should reject invalid, unknown and conflicting operations")
+        void shouldRejectOperationsBeforeWriting() throws Exception {
+            givenExisting("p-1");
+
+            List<JsonNode> results = bulkWrite(false,
+                    create("p-1", "Milk"),
+                    update("p-9", "Bread"),
+                    create("p-2", ""),
+                    "{\"op\":\"rename\",\"id\":\"p-1\"}",
+                    delete("p-1"),
+                    create("p-1", "Milk again"));
+
+            assertEquals(List.of("CONFLICT", "NOT_FOUND", "INVALID", "INVALID", "DELETED", "CREATED"),
+                    statuses(results));
+            assertTrue(results.get(2).get("error").asText().contains("name"));
+            assertEquals(5, results.get(5).get("index").asInt());
+        }
+    }
+
+    @Nested
+    @DisplayName("Batch Tests")
+    class BatchTests {
+
+        @Test
+        @DisplayName("Should write and flush events once per batch")
+        void shouldFlushEventsPerBatch() throws Exception {
+            bulkWrite(true, create("p-1", "A"), create("p-2", "B"), create("p-3", "C"));
+
+            InOrder inOrder = inOrder(bulkOperations, productService, productCache);
+            inOrder.verify(bulkOperations).execute();
+            inOrder.verify(productService, times(2)).publishProductEvent(eq("PRODUCT_ADDED"), any(Product.class));
+            inOrder.verify(productService).flushProductEvents();
+            inOrder.verify(productCache).invalidate(List.of("p-1", "p-2"));
+            inOrder.verify(bulkOperations).execute();
+            inOrder.verify(productService).publishProductEvent(eq("PRODUCT_ADDED"), any(Product.class));
+            inOrder.verify(productService).flushProductEvents();
+            inOrder.verify(productCache).invalidate(List.of("p-3"));
+            verify(mongoTemplate, times(2)).find(any(Query.class), eq(Document.class), anyString());
+        }
+
+        @Test
+        @DisplayName("Should skip every operation after a rejected one in ordered mode")
+        void shouldSkipAfterFailureWhenOrdered() throws Exception {
+            List<JsonNode> results = bulkWrite(true,
+                    create("p-1", "A"), update("p-9", "B"), create("p-3", "C"), create("p-4", "D"));
+
+            assertEquals(List.of("CREATED", "NOT_FOUND", "SKIPPED", "SKIPPED"), statuses(results));
+            verify(bulkOperations, times(1)).execute();
+            verify(productService, times(1)).publishProductEvent(eq("PRODUCT_ADDED"), any(Product.class));
+        }
+
+        @Test
+        @DisplayName("Should keep going after a rejected operation in unordered mode")
+        void shouldContinueAfterFailureWhenUnordered() throws Exception {
+            List<JsonNode> results = bulkWrite(false,
+                    create("p-1", "A"), update("p-9", "B"), create("p-3", "C"));
+
+            assertEquals(List.of("CREATED", "NOT_FOUND", "CREATED"), statuses(results));
+            verify(mongoTemplate, times(2)).bulkOps(BulkMode.UNORDERED, Product.class);
+        }
+
+        @Test
+        @DisplayName("Should report operations MongoDB rejects and skip the rest when ordered")
+        void shouldMapBulkWriteErrors() throws Exception {
+            BulkOperationException exception = mock(BulkOperationException.class);
+            when(exception.getErrors()).thenReturn(List.of(
+                    new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 0)));
+            when(exception.getResult()).thenReturn(matching(0, 0));
+            when(bulkOperations.execute()).thenThrow(exception);
+
+            List<JsonNode> results = bulkWrite(true, create("p-1", "A"), create("p-2", "B"), create("p-3", "C"));
+
+            assertEquals(List.of("CONFLICT", "SKIPPED", "SKIPPED"), statuses(results));
+            verify(productService, never()).publishProductEvent(anyString(), any(Product.class));
+            verify(productService, never()).flushProductEvents();
+        }
+
+        @Test
+        @DisplayName("Should apply the operations MongoDB accepts when unordered")
+        void shouldApplyAcceptedOperationsWhenUnordered() throws Exception {
+            BulkOperationException exception = mock(BulkOperationException.class);
+            when(exception.getErrors()).thenReturn(List.of(
+                    new BulkWriteError(121, "Document failed validation", new BsonDocument(), 0)));
+            when(exception.getResult()).thenReturn(matching(0, 0));
+            when(bulkOperations.execute()).thenThrow(exception);
+
+            List<JsonNode> results = bulkWrite(false, create("p-1", "A"), create("p-2", "B"));
+
+            assertEquals(List.of("FAILED", "CREATED"), statuses(results));
+            verify(productCache).invalidate(List.of("p-2"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Concurrent Change Tests")
+    class ConcurrentChangeTests {
+
+        @Test
+        @DisplayName("Should report an update of a product deleted since the check as not found")
+        void shouldReportUnmatchedUpdate() throws Exception {
+            // p-1 and p-2 exist when checked, p-2 is gone when the bulk write runs
+            when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("products")))
+                    .thenReturn(List.of(new Document("_id", "p-1"), new Document("_id", "p-2")))
+                    .thenReturn(List.of(new Document("_id", "p-1")));
+            when(bulkOperations.execute()).thenReturn(matching(1, 0));
+
+            List<JsonNode> results = bulkWrite(false, update("p-1", "A"), update("p-2", "B"));
+
+            assertEquals(List.of("UPDATED", "NOT_FOUND"), statuses(results));
+            verify(productService, times(1)).publishProductEvent(eq("PRODUCT_UPDATED"), any(Product.class));
+            verify(productCache).invalidate(List.of("p-1"));
+        }
+
+        @Test
+        @DisplayName("Should stop an ordered request after the batch of an unmatched update")
+        void shouldStopOrderedRequestAfterUnmatchedUpdate() throws Exception {
+            when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("products")))
+                    .thenReturn(List.of(new Document("_id", "p-1")))
+                    .thenReturn(List.of());
+            when(bulkOperations.execute()).thenReturn(matching(0, 0));
+
+            List<JsonNode> results = bulkWrite(true, update("p-1", "A"), create("p-2", "B"), create("p-3", "C"));
+
+            // p-2 was written with p-1's batch, p-3's batch is never written
+            assertEquals(List.of("NOT_FOUND", "CREATED", "SKIPPED"), statuses(results));
+            verify(productCache).invalidate(List.of("p-2"));
+            verify(bulkOperations, times(1)).execute();
+        }
+
+        @Test
+        @DisplayName("Should report deletes of products deleted since the check as deleted, with events")
+        void shouldReportConcurrentlyDeletedProductsAsDeleted() throws Exception {
+            givenExisting("p-1", "p-2");
+            when(bulkOperations.execute()).thenReturn(matching(0, 1));
+
+            List<JsonNode> results = bulkWrite(true, delete("p-1"), delete("p-2"));
+
+            assertEquals(List.of("DELETED", "DELETED"), statuses(results));
+            verify(productService, times(2)).publishProductEvent(eq("PRODUCT_DELETED"), anyString(), any(), any());
+            verify(productCache).invalidate(List.of("p-1", "p-2"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Input Tests")
+    class InputTests {
+
+        @Test
+        @DisplayName("Should report unreadable operations and read on")
+        void shouldReportUnreadableOperations() throws Exception {
+            List<JsonNode> results = bulkWrite(false,
+                    "{\"op\":\"create\",\"product\":{\"price\":\"cheap\"}}", create("p-2", "B"));
+
+            assertEquals(List.of("INVALID", "CREATED"), statuses(results));
+            assertTrue(results.get(0).get("error").asText().startsWith("Unreadable operation"));
+            assertFalse(results.get(0).has("op"));
+        }
+
+        @Test
+        @DisplayName("Should fail on malformed JSON after writing the results read so far")
+        void shouldFailOnMalformedJson() {
+            byte[] body = (create("p-1", "A") + "\n{\"op\":").getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            assertThrows(IOException.class,
+                    () -> bulkService.bulkWrite(new ByteArrayInputStream(body), out, true));
+            assertTrue(out.toString(StandardCharsets.UTF_8).contains("\"status\":\"CREATED\""));
+        }
+    }
+}
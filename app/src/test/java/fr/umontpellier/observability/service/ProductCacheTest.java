@@ -0,0 +1,173 @@
+package fr.umontpellier.observability.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.umontpellier.observability.model.CursorPage;
+import fr.umontpellier.observability.model.Product;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ProductCache.
+ */
+@DisplayName("ProductCache Tests")
+class ProductCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ProductCache productCache;
+
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        productCache = new ProductCache(new ObjectMapper(), meterRegistry, 100, 10, Duration.ofMinutes(10));
+        loads = new AtomicInteger();
+    }
+
+    private Product load(String id) {
+        loads.incrementAndGet();
+        return "missing".equals(id) ? null
+                : new Product(id, "Product " + id, new BigDecimal("9.99"), LocalDate.of(2030, 1, 1));
+    }
+
+    private CursorPage<Product> loadPage() {
+        loads.incrementAndGet();
+        return new CursorPage<>(List.of(load("p-1")), null);
+    }
+
+    private double counter(String cache, String result) {
+        FunctionCounter counter = meterRegistry.find("cache.gets").tag("cache", cache).tag("result", result)
+                .functionCounter();
+        assertNotNull(counter);
+        return counter.count();
+    }
+
+    @Nested
+    @DisplayName("Read-Through Tests")
+    class ReadThroughTests {
+
+        @Test
+        @DisplayName("Should load a product once and count hits and misses")
+        void shouldLoadProductOnce() {
+            Product first = productCache.getProduct("p-1", ProductCacheTest.this::load);
+            Product second = productCache.getProduct("p-1", ProductCacheTest.this::load);
+
+            assertSame(first, second);
+            assertEquals(1, loads.get());
+            assertEquals(1, counter("products", "hit"));
+            assertEquals(1, counter("products", "miss"));
+        }
+
+        @Test
+        @DisplayName("Should not cache missing products")
+        void shouldNotCacheMissingProducts() {
+            assertNull(productCache.getProduct("missing", ProductCacheTest.this::load));
+            assertNull(productCache.getProduct("missing", ProductCacheTest.this::load));
+
+            assertEquals(2, loads.get());
+        }
+
+        @Test
+        @DisplayName("Should cache pages by query, cursor and limit")
+        void shouldCachePagesByQueryCursorAndLimit() {
+            productCache.getPage("all", null, 10, ProductCacheTest.this::loadPage);
+            productCache.getPage("all", null, 10, ProductCacheTest.this::loadPage);
+            productCache.getPage("all", null, 20, ProductCacheTest.this::loadPage);
+            productCache.getPage("all", "p-1", 10, ProductCacheTest.this::loadPage);
+            productCache.getPage("price:10:20", null, 10, ProductCacheTest.this::loadPage);
+
+            // Four page loads, each loading one product
+            assertEquals(8, loads.get());
+            assertEquals(1, counter("product-pages", "hit"));
+        }
+
+        @Test
+        @DisplayName("Should publish size and eviction metrics for both caches")
+        void shouldPublishMetrics() {
+            for (String cache : List.of("products", "product-pages")) {
+                assertNotNull(meterRegistry.find("cache.size").tag("cache", cache).gauge(), cache);
+                assertNotNull(meterRegistry.find("cache.evictions").tag("cache", cache).functionCounter(), cache);
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Invalidation Tests")
+    class InvalidationTests {
+
+        @Test
+        @DisplayName("Should drop the product and every page on invalidation")
+        void shouldInvalidateProductAndPages() {
+            productCache.getProduct("p-1", ProductCacheTest.this::load);
+            productCache.getProduct("p-2", ProductCacheTest.this::load);
+            productCache.getPage("all", null, 10, ProductCacheTest.this::loadPage);
+            loads.set(0);
+
+            productCache.invalidate("p-1");
+            productCache.getProduct("p-1", ProductCacheTest.this::load);
+            productCache.getProduct("p-2", ProductCacheTest.this::load);
+            productCache.getPage("all", null, 10, ProductCacheTest.this::loadPage);
+
+            // p-1 and the page (with its product) are loaded again, p-2 is not
+            assertEquals(3, loads.get());
+        }
+
+        @Test
+        @DisplayName("Should not keep a page loaded across an invalidation")
+        void shouldDropPageLoadedDuringInvalidation() {
+            CursorPage<Product> stale = productCache.getPage("all", null, 10, () -> {
+                productCache.invalidate("p-1");
+                return new CursorPage<>(List.of(), null);
+            });
+
+            CursorPage<Product> fresh = productCache.getPage("all", null, 10, ProductCacheTest.this::loadPage);
+
+            assertTrue(stale.items().isEmpty());
+            assertEquals(1, fresh.items().size());
+        }
+
+        @Test
+        @DisplayName("Should invalidate the product of a product event")
+        void shouldInvalidateOnProductEvent() {
+            productCache.getProduct("p-1", ProductCacheTest.this::load);
+            productCache.getProduct("p-2", ProductCacheTest.this::load);
+            loads.set(0);
+
+            productCache.onProductEvent("""
+                    {"event_type":"PRODUCT_UPDATED","meta":{"product_id":"p-2"},"product_id":"p-1",\
+                    "product_price":9.99}""");
+            productCache.getProduct("p-1", ProductCacheTest.this::load);
+            productCache.getProduct("p-2", ProductCacheTest.this::load);
+
+            assertEquals(1, loads.get());
+        }
+
+        @Test
+        @DisplayName("Should clear the cache on unreadable events")
+        void shouldInvalidateAllOnUnreadableEvent() {
+            for (String message : new String[] { "Product deleted: p-1", "{\"event_type\":\"PRODUCT_DELETED\"}",
+                    "{\"product_id\":", null }) {
+                productCache.getProduct("p-1", ProductCacheTest.this::load);
+                loads.set(0);
+
+                productCache.onProductEvent(message);
+                productCache.getProduct("p-1", ProductCacheTest.this::load);
+
+                assertEquals(1, loads.get(), String.valueOf(message));
+            }
+        }
+    }
+}
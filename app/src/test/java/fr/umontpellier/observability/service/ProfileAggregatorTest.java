@@ -0,0 +1,296 @@
+package fr.umontpellier.observability.service;
+
+import fr.umontpellier.observability.model.ProfileDelta;
+import fr.umontpellier.observability.model.UserAction;
+import fr.umontpellier.observability.model.UserAction.EntityType;
+import fr.umontpellier.observability.model.UserAction.OperationType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ProfileAggregator.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ProfileAggregator Tests")
+@SuppressWarnings({ "null", "unchecked" })
+class ProfileAggregatorTest {
+
+    @Mock
+    private UserProfileService userProfileService;
+
+    private ProfileAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        aggregator = new ProfileAggregator(userProfileService, 4, 500, 10000);
+    }
+
+    private UserAction action(String userId, OperationType operationType, Double price) {
+        return UserAction.lpsBuilder()
+                .withUser(userId, userId + "@example.com", "User " + userId)
+                .withAction(operationType, "ProductService", operationType.name())
+                .withTarget(EntityType.PRODUCT, "p1")
+                .withProductContext("Product", price)
+                .withResult(true, null)
+                .build();
+    }
+
+    private static int writeAll(InvocationOnMock invocation) {
+        Collection<ProfileDelta> deltas = invocation.getArgument(0);
+        deltas.forEach(delta -> delta.markWritten(LocalDateTime.now()));
+        return deltas.size();
+    }
+
+    private List<ProfileDelta> captureFlushedDeltas() {
+        ArgumentCaptor<Collection<ProfileDelta>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(userProfileService, atLeastOnce()).applyProfileDeltas(captor.capture());
+        List<ProfileDelta> deltas = new ArrayList<>();
+        captor.getAllValues().forEach(deltas::addAll);
+        return deltas;
+    }
+
+    @Nested
+    @DisplayName("Coalescing Tests")
+    class CoalescingTests {
+
+        @Test
+        @DisplayName("Should coalesce actions of the same user into one delta")
+        void shouldCoalesceActionsPerUser() {
+            when(userProfileService.applyProfileDeltas(anyCollection()))
+                    .thenAnswer(ProfileAggregatorTest::writeAll);
+
+            aggregator.submit(action("u1", OperationType.GET_BY_ID, 50.0));
+            aggregator.submit(action("u1", OperationType.GET_BY_ID, 150.0));
+            aggregator.submit(action("u1", OperationType.CREATE, null));
+            aggregator.submit(action("u2", OperationType.GET_ALL, null));
+
+            assertEquals(2, aggregator.getPendingUsers());
+            assertEquals(2, aggregator.flushNow());
+            assertEquals(0, aggregator.getPendingUsers());
+
+            ProfileDelta u1 = captureFlushedDeltas().stream()
+                    .filter(d -> "u1".equals(d.getUserId()))
+                    .findFirst()
+                    .orElseThrow();
+            assertEquals(2, u1.getReadOperations());
+            assertEquals(1, u1.getWriteOperations());
+            assertEquals(1, u1.getExpensiveProductSearches());
+            assertEquals(2, u1.getProductPriceViews());
+            assertEquals(200.0, u1.getProductPriceSum(), 0.001);
+            assertEquals(150.0, u1.getMaxProductPriceViewed(), 0.001);
+            assertEquals(3, u1.getRecentActions().size());
+        }
+
+        @Test
+        @DisplayName("Should flush a user's delta once full instead of dropping history")
+        void shouldFlushFullDelta() {
+            when(userProfileService.applyProfileDeltas(anyCollection()))
+                    .thenAnswer(ProfileAggregatorTest::writeAll);
+
+            for (int i = 0; i < ProfileDelta.MAX_PENDING_ACTIONS + 10; i++) {
+                aggregator.submit(action("u1", OperationType.GET_ALL, null));
+            }
+            aggregator.flushNow();
+
+            List<ProfileDelta> deltas = captureFlushedDeltas();
+            assertEquals(2, deltas.size());
+            assertEquals(ProfileDelta.MAX_PENDING_ACTIONS, deltas.get(0).getActions().size());
+            assertEquals(10, deltas.get(1).getActions().size());
+        }
+
+        @Test
+        @DisplayName("Should not flush when nothing is pending")
+        void shouldSkipEmptyFlush() {
+            assertEquals(0, aggregator.flushNow());
+            verifyNoInteractions(userProfileService);
+        }
+
+        @Test
+        @DisplayName("Should ignore actions without user identity")
+        void shouldIgnoreAnonymousActions() {
+            aggregator.submit(UserAction.lpsBuilder()
+                    .withAction(OperationType.GET_ALL, "ProductService", "getAllProducts")
+                    .build());
+
+            assertEquals(0, aggregator.getPendingUsers());
+        }
+
+        @Test
+        @DisplayName("Should not lose actions submitted concurrently")
+        void shouldHandleConcurrentSubmits() throws InterruptedException {
+            when(userProfileService.applyProfileDeltas(anyCollection()))
+                    .thenAnswer(ProfileAggregatorTest::writeAll);
+
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            for (int i = 0; i < 1000; i++) {
+                String userId = "u" + (i % 10);
+                executor.execute(() -> aggregator.submit(action(userId, OperationType.GET_ALL, null)));
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+            aggregator.flushNow();
+
+            int reads = captureFlushedDeltas().stream().mapToInt(ProfileDelta::getReadOperations).sum();
+            assertEquals(1000, reads);
+        }
+    }
+
+    @Nested
+    @DisplayName("Flush Failure Tests")
+    class FlushFailureTests {
+
+        @Test
+        @DisplayName("Should requeue deltas when MongoDB is unreachable")
+        void shouldRequeueOnResourceFailure() {
+            when(userProfileService.applyProfileDeltas(anyCollection()))
+                    .thenThrow(new DataAccessResourceFailureException("down"))
+                    .thenAnswer(ProfileAggregatorTest::writeAll);
+
+            aggregator.submit(action("u1", OperationType.GET_ALL, null));
+            assertEquals(0, aggregator.flushNow());
+            assertEquals(1, aggregator.getPendingUsers());
+
+            aggregator.submit(action("u1", OperationType.CREATE, null));
+            assertEquals(1, aggregator.flushNow());
+
+            ArgumentCaptor<Collection<ProfileDelta>> captor = ArgumentCaptor.forClass(Collection.class);
+            verify(userProfileService, times(2)).applyProfileDeltas(captor.capture());
+            ProfileDelta retried = captor.getAllValues().get(1).iterator().next();
+            assertEquals(1, retried.getReadOperations());
+            assertEquals(1, retried.getWriteOperations());
+        }
+
+        @Test
+        @DisplayName("Should requeue only the deltas MongoDB did not acknowledge")
+        void shouldRequeueOnlyUnacknowledgedDeltas() {
+            when(userProfileService.applyProfileDeltas(anyCollection()))
+                    .thenAnswer(invocation -> {
+                        Collection<ProfileDelta> deltas = invocation.getArgument(0);
+                        for (ProfileDelta delta : deltas) {
+                            if (delta.getKey().equals("id:u1")) {
+                                delta.markWritten(LocalDateTime.now());
+                            }
+                        }
+                        throw new DataAccessResourceFailureException("down");
+                    });
+
+            aggregator.submit(action("u1", OperationType.GET_ALL, null));
+            aggregator.submit(action("u2", OperationType.GET_ALL, null));
+
+            assertEquals(1, aggregator.flushNow());
+            assertEquals(1, aggregator.getPendingUsers());
+            assertEquals(1L, aggregator.getStatistics().get("flushedProfiles"));
+        }
+
+        @Test
+        @DisplayName("Should drop rejected deltas instead of requeueing them")
+        void shouldDropRejectedDeltas() {
+            when(userProfileService.applyProfileDeltas(anyCollection()))
+                    .thenAnswer(invocation -> {
+                        Collection<ProfileDelta> deltas = invocation.getArgument(0);
+                        deltas.forEach(delta -> delta.markRejected("duplicate key"));
+                        throw new DataAccessResourceFailureException("down");
+                    });
+
+            aggregator.submit(action("u1", OperationType.GET_ALL, null));
+
+            assertEquals(0, aggregator.flushNow());
+            assertEquals(0, aggregator.getPendingUsers());
+            assertEquals(1L, aggregator.getStatistics().get("droppedProfiles"));
+        }
+
+        @Test
+        @DisplayName("Should drop failed deltas beyond the pending limit")
+        void shouldCapRequeuedUsers() {
+            aggregator = new ProfileAggregator(userProfileService, 4, 500, 2);
+            when(userProfileService.applyProfileDeltas(anyCollection()))
+                    .thenThrow(new DataAccessResourceFailureException("down"));
+
+            aggregator.submit(action("u1", OperationType.GET_ALL, null));
+            aggregator.submit(action("u2", OperationType.GET_ALL, null));
+            aggregator.submit(action("u3", OperationType.GET_ALL, null));
+
+            assertEquals(2, aggregator.getPendingUsers());
+            assertEquals(1L, aggregator.getStatistics().get("droppedProfiles"));
+        }
+
+        @Test
+        @DisplayName("Should flush inline once too many users are pending")
+        void shouldFlushWhenPendingLimitExceeded() {
+            aggregator = new ProfileAggregator(userProfileService, 4, 500, 2);
+            when(userProfileService.applyProfileDeltas(anyCollection()))
+                    .thenAnswer(ProfileAggregatorTest::writeAll);
+
+            aggregator.submit(action("u1", OperationType.GET_ALL, null));
+            aggregator.submit(action("u2", OperationType.GET_ALL, null));
+            verifyNoInteractions(userProfileService);
+
+            aggregator.submit(action("u3", OperationType.GET_ALL, null));
+            verify(userProfileService).applyProfileDeltas(anyCollection());
+            assertEquals(0, aggregator.getPendingUsers());
+        }
+    }
+
+    @Nested
+    @DisplayName("Shutdown Tests")
+    class ShutdownTests {
+
+        @Test
+        @DisplayName("Should wait for a running flush and flush what was left")
+        void shouldFlushRemainingProfilesOnShutdown() throws Exception {
+            CountDownLatch writing = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            when(userProfileService.applyProfileDeltas(anyCollection())).thenAnswer(invocation -> {
+                if (writing.getCount() > 0) {
+                    writing.countDown();
+                    release.await();
+                }
+                return writeAll(invocation);
+            });
+            aggregator.submit(action("u1", OperationType.GET_ALL, null));
+
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                Future<Integer> flush = executor.submit(aggregator::flushNow);
+                assertTrue(writing.await(5, TimeUnit.SECONDS));
+                aggregator.submit(action("u2", OperationType.GET_ALL, null));
+
+                Future<?> shutdown = executor.submit(aggregator::shutdown);
+                Thread.sleep(100);
+                assertFalse(shutdown.isDone());
+
+                release.countDown();
+                flush.get(5, TimeUnit.SECONDS);
+                shutdown.get(5, TimeUnit.SECONDS);
+            } finally {
+                executor.shutdownNow();
+            }
+
+            assertEquals(List.of("u1", "u2"), captureFlushedDeltas().stream().map(ProfileDelta::getUserId).toList());
+            assertEquals(0, aggregator.getPendingUsers());
+        }
+    }
+}
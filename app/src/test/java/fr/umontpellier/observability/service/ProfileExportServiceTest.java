@@ -0,0 +1,163 @@
+package fr.umontpellier.observability.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.umontpellier.observability.model.UserProfile;
+import fr.umontpellier.observability.service.ProfileExportService.ExportFormat;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ProfileExportService.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ProfileExportService Tests")
+@SuppressWarnings("null")
+class ProfileExportServiceTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ProfileExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new ProfileExportService(mongoTemplate, objectMapper,
+                new ProfileStatisticsTracker(null, 5, 100, true));
+    }
+
+    private void givenProfiles(Document... profiles) {
+        when(mongoTemplate.getCollectionName(UserProfile.class)).thenReturn("user_profiles");
+        when(mongoTemplate.stream(any(Query.class), eq(Document.class), anyString()))
+                .thenReturn(Stream.of(profiles));
+    }
+
+    private Document profile(String userId, int reads) {
+        return new Document("userId", userId)
+                .append("userEmail", userId + "@example.com")
+                .append("readOperations", reads)
+                .append("averageProductPriceViewed", 12.5)
+                .append("lastActivityAt", new Date(0))
+                .append("recentActions", List.of(new Document("actionType", "READ").append("_class", "x")));
+    }
+
+    @Nested
+    @DisplayName("Format Tests")
+    class FormatTests {
+
+        @Test
+        @DisplayName("Should write one profile per line in NDJSON")
+        void shouldWriteNdjson() throws Exception {
+            givenProfiles(profile("u1", 3), profile("u2", 5));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            long written = exportService.export(out, ExportFormat.NDJSON,
+                    List.of("userId", "readOperations"), false);
+
+            assertEquals(2, written);
+            String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+            assertEquals(2, lines.length);
+            assertEquals("{\"userId\":\"u1\",\"readOperations\":3}", lines[0]);
+            assertEquals("{\"userId\":\"u2\",\"readOperations\":5}", lines[1]);
+        }
+
+        @Test
+        @DisplayName("Should keep the profiles and statistics envelope in JSON")
+        void shouldWriteJsonEnvelope() throws Exception {
+            givenProfiles(profile("u1", 3));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            exportService.export(out, ExportFormat.JSON, exportService.resolveFields("all"), false);
+
+            JsonNode root = objectMapper.readTree(out.toByteArray());
+            JsonNode exported = root.get("profiles").get(0);
+            assertEquals("u1", exported.get("userId").asText());
+            assertEquals(12.5, exported.get("averageProductPriceViewed").asDouble());
+            assertEquals("1970-01-01T00:00:00Z", exported.get("lastActivityAt").asText());
+            assertEquals("READ", exported.get("recentActions").get(0).get("actionType").asText());
+            assertFalse(exported.get("recentActions").get(0).has("_class"));
+            assertTrue(root.get("statistics").has("totalProfiles"));
+        }
+
+        @Test
+        @DisplayName("Should gzip the output on request")
+        void shouldGzip() throws Exception {
+            givenProfiles(profile("u1", 3));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            exportService.export(out, ExportFormat.NDJSON, List.of("userId"), true);
+
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+                assertEquals("{\"userId\":\"u1\"}\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+
+        @Test
+        @DisplayName("Should push the projection and batch size down to MongoDB")
+        void shouldProjectServerSide() throws Exception {
+            givenProfiles();
+
+            exportService.export(new ByteArrayOutputStream(), ExportFormat.NDJSON,
+                    List.of("userId", "readOperations"), false);
+
+            ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+            verify(mongoTemplate).stream(query.capture(), eq(Document.class), eq("user_profiles"));
+            assertEquals(Map.of("userId", 1, "readOperations", 1, "_id", 0), query.getValue().getFieldsObject());
+            assertEquals(500, query.getValue().getMeta().getCursorBatchSize());
+        }
+    }
+
+    @Nested
+    @DisplayName("Field Resolution Tests")
+    class FieldResolutionTests {
+
+        @Test
+        @DisplayName("Should default to summary fields without recent actions")
+        void shouldDefaultToSummaryFields() {
+            List<String> fields = exportService.resolveFields(null);
+
+            assertEquals(ProfileExportService.DEFAULT_FIELDS, fields);
+            assertFalse(fields.contains("recentActions"));
+        }
+
+        @Test
+        @DisplayName("Should reject unknown fields")
+        void shouldRejectUnknownFields() {
+            assertThrows(IllegalArgumentException.class, () -> exportService.resolveFields("userId,password"));
+            assertThrows(IllegalArgumentException.class, () -> ExportFormat.from("xml"));
+        }
+
+        @Test
+        @DisplayName("Should parse a field list")
+        void shouldParseFieldList() {
+            assertEquals(List.of("userEmail", "profileType"),
+                    exportService.resolveFields(" userEmail , profileType,userEmail"));
+        }
+    }
+}
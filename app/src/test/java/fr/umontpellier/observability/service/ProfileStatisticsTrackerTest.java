@@ -0,0 +1,307 @@
+package fr.umontpellier.observability.service;
+
+import fr.umontpellier.observability.model.LeaderboardEntry;
+import fr.umontpellier.observability.model.LeaderboardMetric;
+import fr.umontpellier.observability.model.ProfileDelta;
+import fr.umontpellier.observability.model.UserAction;
+import fr.umontpellier.observability.model.UserAction.EntityType;
+import fr.umontpellier.observability.model.UserAction.OperationType;
+import fr.umontpellier.observability.model.UserProfile;
+import fr.umontpellier.observability.model.UserProfile.ProfileType;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for ProfileStatisticsTracker and TopKIndex.
+ */
+@DisplayName("ProfileStatisticsTracker Tests")
+@SuppressWarnings("unchecked")
+class ProfileStatisticsTrackerTest {
+
+    private ProfileStatisticsTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new ProfileStatisticsTracker(null, 2, 3, true);
+    }
+
+    private ProfileDelta delta(String userId, int reads, int writes, int expensiveViews) {
+        ProfileDelta delta = new ProfileDelta(userId, userId + "@example.com", "User " + userId);
+        for (int i = 0; i < reads; i++) {
+            delta.add(action(userId, OperationType.GET_ALL, i < expensiveViews ? 500.0 : null),
+                    UserProfile.DEFAULT_EXPENSIVE_THRESHOLD);
+        }
+        for (int i = 0; i < writes; i++) {
+            delta.add(action(userId, OperationType.CREATE, null), UserProfile.DEFAULT_EXPENSIVE_THRESHOLD);
+        }
+        return delta;
+    }
+
+    private UserAction action(String userId, OperationType operationType, Double price) {
+        return UserAction.lpsBuilder()
+                .withUser(userId, userId + "@example.com", "User " + userId)
+                .withAction(operationType, "ProductService", operationType.name())
+                .withTarget(EntityType.PRODUCT, "p1")
+                .withProductContext("Product", price)
+                .build();
+    }
+
+    private List<String> userIds(Map<String, Object> stats, String ranking) {
+        return ((List<Map<String, Object>>) stats.get(ranking)).stream()
+                .map(summary -> (String) summary.get("userId"))
+                .toList();
+    }
+
+    @Nested
+    @DisplayName("Incremental Update Tests")
+    class IncrementalUpdateTests {
+
+        @Test
+        @DisplayName("Should maintain totals, averages and type distribution")
+        void shouldMaintainAggregates() {
+            tracker.apply(delta("u1", 9, 1, 0));
+            tracker.apply(List.of(delta("u2", 0, 4, 0), delta("u3", 2, 2, 0)));
+
+            Map<String, Object> stats = tracker.snapshot();
+
+            assertEquals(3, stats.get("totalProfiles"));
+            assertEquals(11.0 / 3, (double) stats.get("averageReadOperations"), 0.001);
+            assertEquals(7.0 / 3, (double) stats.get("averageWriteOperations"), 0.001);
+            assertEquals(Map.of(ProfileType.READ_HEAVY, 1L, ProfileType.WRITE_HEAVY, 1L, ProfileType.BALANCED, 1L),
+                    stats.get("profileTypeDistribution"));
+        }
+
+        @Test
+        @DisplayName("Should move a profile between types as its counters change")
+        void shouldTrackTypeTransitions() {
+            tracker.apply(delta("u1", 0, 3, 0));
+            tracker.apply(delta("u1", 10, 0, 0));
+
+            Map<String, Object> stats = tracker.snapshot();
+
+            assertEquals(1, stats.get("totalProfiles"));
+            assertEquals(Map.of(ProfileType.READ_HEAVY, 1L), stats.get("profileTypeDistribution"));
+        }
+
+        @Test
+        @DisplayName("Should rank top users and keep rankings up to date")
+        void shouldRankTopUsers() {
+            tracker.apply(delta("u1", 5, 0, 0));
+            tracker.apply(delta("u2", 3, 0, 0));
+            tracker.apply(delta("u3", 1, 0, 0));
+            assertEquals(List.of("u1", "u2"), userIds(tracker.snapshot(), "topReadUsers"));
+
+            tracker.apply(delta("u3", 10, 0, 0));
+            assertEquals(List.of("u3", "u1"), userIds(tracker.snapshot(), "topReadUsers"));
+        }
+
+        @Test
+        @DisplayName("Should rank expensive seekers")
+        void shouldRankExpensiveSeekers() {
+            tracker.apply(delta("u1", 4, 0, 4));
+            tracker.apply(delta("u2", 4, 0, 1));
+
+            Map<String, Object> stats = tracker.snapshot();
+
+            assertEquals(List.of("u1", "u2"), userIds(stats, "topExpensiveSeekers"));
+            assertEquals(Map.of(ProfileType.EXPENSIVE_SEEKER, 1L, ProfileType.READ_HEAVY, 1L),
+                    stats.get("profileTypeDistribution"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Removal Tests")
+    class RemovalTests {
+
+        @Test
+        @DisplayName("Should refill rankings after members are deleted")
+        void shouldRefillAfterRemoval() {
+            for (int i = 1; i <= 6; i++) {
+                tracker.apply(delta("u" + i, i, 0, 0));
+            }
+            tracker.remove("u6");
+            tracker.remove("u5");
+            tracker.remove("u4");
+
+            Map<String, Object> stats = tracker.snapshot();
+
+            assertEquals(3, stats.get("totalProfiles"));
+            assertEquals(List.of("u3", "u2"), userIds(stats, "topReadUsers"));
+        }
+
+        @Test
+        @DisplayName("Should reset everything on clear")
+        void shouldClear() {
+            tracker.apply(delta("u1", 1, 1, 0));
+            tracker.clear();
+
+            Map<String, Object> stats = tracker.snapshot();
+
+            assertEquals(0, stats.get("totalProfiles"));
+            assertEquals(0.0, stats.get("averageReadOperations"));
+            assertTrue(((List<?>) stats.get("topReadUsers")).isEmpty());
+        }
+    }
+
+    @Nested
+    @DisplayName("Rebuild Tests")
+    class RebuildTests {
+
+        private final LocalDateTime writtenAt = LocalDateTime.of(2024, 6, 1, 12, 0, 0);
+
+        private Document profile(String userId, int reads, LocalDateTime updatedAt) {
+            return new Document("userId", userId)
+                    .append("userEmail", userId + "@example.com")
+                    .append("readOperations", reads)
+                    .append("writeOperations", 0)
+                    .append("updatedAt", Date.from(updatedAt.atZone(ZoneId.systemDefault()).toInstant()));
+        }
+
+        private ProfileDelta written(ProfileDelta delta) {
+            delta.markWritten(writtenAt);
+            return delta;
+        }
+
+        @Test
+        @DisplayName("Should apply deltas written during a rebuild exactly once")
+        void shouldNotDoubleCountDeltasDuringRebuild() {
+            MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+            tracker = new ProfileStatisticsTracker(mongoTemplate, 2, 3, true);
+            when(mongoTemplate.getCollectionName(UserProfile.class)).thenReturn("user_profiles");
+            // u1 was read after its delta was written, u2 before, u3 not at all
+            Stream<Document> documents = Stream.of(
+                    profile("u1", 5, writtenAt),
+                    profile("u2", 5, writtenAt.minusSeconds(1)))
+                    .peek(document -> {
+                        if ("u1".equals(document.get("userId"))) {
+                            tracker.apply(List.of(written(delta("u1", 2, 0, 0)),
+                                    written(delta("u2", 2, 0, 0)), written(delta("u3", 2, 0, 0))));
+                        }
+                    });
+            when(mongoTemplate.aggregateStream(any(Aggregation.class), eq("user_profiles"), eq(Document.class)))
+                    .thenReturn(documents);
+
+            assertEquals(3, tracker.rebuild());
+
+            List<LeaderboardEntry> readers = tracker.leaderboard(LeaderboardMetric.READS, 3).orElseThrow();
+            assertEquals(List.of("u2", "u1", "u3"), readers.stream().map(LeaderboardEntry::userId).toList());
+            assertEquals(List.of(7L, 5L, 2L), readers.stream().map(LeaderboardEntry::score).toList());
+        }
+
+        @Test
+        @DisplayName("Should compute statistics in MongoDB beyond the profile cap")
+        void shouldFallBackToMongoBeyondCap() {
+            MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+            tracker = new ProfileStatisticsTracker(mongoTemplate, 2, 3, true, 2);
+            tracker.clear();
+            when(mongoTemplate.getCollectionName(UserProfile.class)).thenReturn("user_profiles");
+            when(mongoTemplate.aggregate(any(Aggregation.class), eq("user_profiles"), eq(Document.class)))
+                    .thenReturn(new AggregationResults<>(List.of(
+                            new Document("_id", "READ_HEAVY").append("profiles", 3).append("reads", 30)
+                                    .append("writes", 3).append("expensiveSearches", 0)),
+                            new Document()));
+            when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("user_profiles")))
+                    .thenReturn(List.of(profile("u3", 12, writtenAt)));
+
+            tracker.apply(delta("u1", 1, 0, 0));
+            tracker.apply(delta("u2", 1, 0, 0));
+            assertTrue(tracker.leaderboard(LeaderboardMetric.READS, 2).isPresent());
+            tracker.apply(delta("u3", 1, 0, 0));
+
+            assertTrue(tracker.leaderboard(LeaderboardMetric.READS, 2).isEmpty());
+            Map<String, Object> stats = tracker.snapshot();
+            assertEquals(3, stats.get("totalProfiles"));
+            assertEquals(10.0, (double) stats.get("averageReadOperations"), 0.001);
+            assertEquals(Map.of(ProfileType.READ_HEAVY, 3L), stats.get("profileTypeDistribution"));
+            assertEquals(List.of("u3"), userIds(stats, "topReadUsers"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Leaderboard Tests")
+    class LeaderboardTests {
+
+        @Test
+        @DisplayName("Should not serve leaderboards before the state is loaded")
+        void shouldRequireLoadedState() {
+            tracker.apply(delta("u1", 1, 0, 0));
+
+            assertTrue(tracker.leaderboard(LeaderboardMetric.READS, 2).isEmpty());
+        }
+
+        @Test
+        @DisplayName("Should rank users by the requested counter")
+        void shouldRankByMetric() {
+            tracker.clear();
+            tracker.apply(delta("u1", 5, 1, 0));
+            tracker.apply(delta("u2", 1, 4, 0));
+            tracker.apply(delta("u3", 3, 2, 0));
+
+            List<LeaderboardEntry> writers = tracker.leaderboard(LeaderboardMetric.WRITES, 3).orElseThrow();
+
+            assertEquals(List.of("u2", "u3", "u1"), writers.stream().map(LeaderboardEntry::userId).toList());
+            assertEquals(1, writers.get(0).rank());
+            assertEquals(4, writers.get(0).score());
+        }
+
+        @Test
+        @DisplayName("Should defer leaderboards larger than the configured size")
+        void shouldDeferLargeLeaderboards() {
+            tracker.clear();
+
+            assertTrue(tracker.leaderboard(LeaderboardMetric.READS, 3).isPresent());
+            assertTrue(tracker.leaderboard(LeaderboardMetric.READS, 4).isEmpty());
+        }
+    }
+
+    @Nested
+    @DisplayName("TopKIndex Tests")
+    class TopKIndexTests {
+
+        @Test
+        @DisplayName("Should keep only the K best keys")
+        void shouldKeepBestKeys() {
+            TopKIndex index = new TopKIndex(3);
+            index.update("a", 1);
+            index.update("b", 5);
+            index.update("c", 3);
+            index.update("d", 4);
+            index.update("a", 10);
+
+            assertEquals(List.of("a", "b", "d"), index.keys(10));
+            assertEquals(3, index.size());
+            assertFalse(index.isIncomplete());
+        }
+
+        @Test
+        @DisplayName("Should report holes left by removals")
+        void shouldReportRemovals() {
+            TopKIndex index = new TopKIndex(2);
+            index.update("a", 1);
+            index.remove("a");
+
+            assertTrue(index.isIncomplete());
+            assertTrue(index.keys(2).isEmpty());
+        }
+    }
+}
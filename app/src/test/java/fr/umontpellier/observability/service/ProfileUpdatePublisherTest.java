@@ -0,0 +1,186 @@
+package fr.umontpellier.observability.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.umontpellier.observability.model.ProfileDelta;
+import fr.umontpellier.observability.model.UserAction;
+import fr.umontpellier.observability.model.UserAction.EntityType;
+import fr.umontpellier.observability.model.UserAction.OperationType;
+import fr.umontpellier.observability.model.UserProfile;
+import org.apache.kafka.common.KafkaException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ProfileUpdatePublisher.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ProfileUpdatePublisher Tests")
+@SuppressWarnings("null")
+class ProfileUpdatePublisherTest {
+
+    @Mock
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ProfileUpdatePublisher publisher;
+
+    @BeforeEach
+    void setUp() {
+        publisher = new ProfileUpdatePublisher(kafkaTemplate, objectMapper);
+    }
+
+    private ProfileDelta delta(String userId, String email, OperationType operationType, Double price) {
+        UserAction action = UserAction.lpsBuilder()
+                .withUser(userId, email, "User")
+                .withAction(operationType, "ProductService", operationType.name())
+                .withTarget(EntityType.PRODUCT, "p1")
+                .withProductContext("Product", price)
+                .withResult(true, null)
+                .build();
+        return ProfileDelta.of(action, UserProfile.DEFAULT_EXPENSIVE_THRESHOLD);
+    }
+
+    private JsonNode sent(String key) throws Exception {
+        ArgumentCaptor<String> payload = ArgumentCaptor.forClass(String.class);
+        verify(kafkaTemplate).send(eq("user-profiles"), eq(key), payload.capture());
+        return objectMapper.readTree(payload.getValue());
+    }
+
+    @Nested
+    @DisplayName("Coalescing Tests")
+    class CoalescingTests {
+
+        @Test
+        @DisplayName("Should publish one update per user per window, keyed by user id")
+        void shouldCoalesceUpdatesPerUser() throws Exception {
+            publisher.submit(delta("u1", "u1@example.com", OperationType.GET_BY_ID, 50.0));
+            publisher.submit(delta("u1", "u1@example.com", OperationType.GET_BY_ID, 150.0));
+            publisher.submit(delta("u1", "u1@example.com", OperationType.CREATE, null));
+            publisher.submit(delta("u2", "u2@example.com", OperationType.GET_ALL, null));
+
+            assertEquals(2, publisher.getPendingUsers());
+            assertEquals(2, publisher.publishNow());
+
+            JsonNode u1 = sent("u1");
+            assertEquals(2, u1.get("reads").asInt());
+            assertEquals(1, u1.get("writes").asInt());
+            assertEquals(1, u1.get("expensiveSearches").asInt());
+            assertEquals(2, u1.get("priceViews").asInt());
+            assertEquals(200.0, u1.get("priceSum").asDouble());
+            assertEquals(150.0, u1.get("maxPrice").asDouble());
+            assertEquals(3, u1.get("actions").asInt());
+            assertTrue(u1.has("lastActivityAt"));
+            sent("u2");
+            assertEquals(0, publisher.getPendingUsers());
+        }
+
+        @Test
+        @DisplayName("Should start a new window after publishing")
+        void shouldStartNewWindow() {
+            publisher.submit(delta("u1", null, OperationType.GET_ALL, null));
+            publisher.publishNow();
+            publisher.submit(delta("u1", null, OperationType.GET_ALL, null));
+            publisher.publishNow();
+
+            verify(kafkaTemplate, times(2)).send(eq("user-profiles"), eq("u1"), anyString());
+            assertEquals(0, publisher.publishNow());
+        }
+
+        @Test
+        @DisplayName("Should key users known by email only by their email")
+        void shouldKeyByEmailWithoutUserId() throws Exception {
+            publisher.submit(delta(null, "anon@example.com", OperationType.GET_ALL, null));
+            publisher.publishNow();
+
+            JsonNode update = sent("anon@example.com");
+            assertFalse(update.has("userId"));
+            assertEquals("anon@example.com", update.get("userEmail").asText());
+        }
+    }
+
+    @Nested
+    @DisplayName("Shutdown Tests")
+    class ShutdownTests {
+
+        @Test
+        @DisplayName("Should wait for a running publication and publish what was left")
+        void shouldPublishLastWindowOnShutdown() throws Exception {
+            CountDownLatch sending = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            when(kafkaTemplate.send(eq("user-profiles"), eq("u1"), anyString())).thenAnswer(invocation -> {
+                sending.countDown();
+                release.await();
+                return null;
+            });
+            publisher.submit(delta("u1", null, OperationType.GET_ALL, null));
+
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                Future<Integer> flush = executor.submit(publisher::publishNow);
+                assertTrue(sending.await(5, TimeUnit.SECONDS));
+                publisher.submit(delta("u2", null, OperationType.GET_ALL, null));
+
+                Future<?> shutdown = executor.submit(publisher::shutdown);
+                Thread.sleep(100);
+                assertFalse(shutdown.isDone());
+
+                release.countDown();
+                flush.get(5, TimeUnit.SECONDS);
+                shutdown.get(5, TimeUnit.SECONDS);
+            } finally {
+                executor.shutdownNow();
+            }
+
+            verify(kafkaTemplate).send(eq("user-profiles"), eq("u2"), anyString());
+            assertEquals(0, publisher.getPendingUsers());
+        }
+    }
+
+    @Nested
+    @DisplayName("Payload Tests")
+    class PayloadTests {
+
+        @Test
+        @DisplayName("Should leave unchanged counters out of the payload")
+        void shouldWriteChangedCountersOnly() throws Exception {
+            publisher.submit(delta("u1", null, OperationType.GET_ALL, null));
+            publisher.publishNow();
+
+            List<String> fields = new ArrayList<>();
+            sent("u1").fieldNames().forEachRemaining(fields::add);
+            assertEquals(List.of("userId", "reads", "actions", "lastActivityAt"), fields);
+        }
+
+        @Test
+        @DisplayName("Should count updates that could not be sent as dropped")
+        void shouldCountDroppedUpdates() {
+            when(kafkaTemplate.send(anyString(), anyString(), anyString())).thenThrow(new KafkaException("down"));
+            publisher.submit(delta("u1", null, OperationType.GET_ALL, null));
+
+            assertEquals(0, publisher.publishNow());
+            assertEquals(1L, publisher.getStatistics().get("droppedUpdates"));
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package fr.umontpellier.observability.service;
 
+import fr.umontpellier.observability.model.CursorPage;
+import fr.umontpellier.observability.model.LeaderboardEntry;
+import fr.umontpellier.observability.model.LeaderboardMetric;
+import fr.umontpellier.observability.model.ProfileDelta;
 import fr.umontpellier.observability.model.UserAction;
 import fr.umontpellier.observability.model.UserAction.EntityType;
 import fr.umontpellier.observability.model.UserAction.OperationType;
 import fr.umontpellier.observability.model.UserProfile;
 import fr.umontpellier.observability.model.UserProfile.ProfileType;
 import fr.umontpellier.observability.repository.UserProfileRepository;
-import fr.umontpellier.observability.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -16,17 +19,21 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.kafka.core.KafkaTemplate;
 
 import java.time.LocalDateTime;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -46,19 +53,22 @@ class UserProfileServiceTest {
     private UserProfileRepository userProfileRepository;
 
     @Mock
-    private UserRepository userRepository;
+    private ProfileUpdatePublisher profileUpdatePublisher;
 
     @Mock
-    private LogParserService logParserService;
+    private ActionHistoryService actionHistoryService;
 
-    @Mock
-    private KafkaTemplate<String, String> kafkaTemplate;
+    @Spy
+    private ProfileStatisticsTracker profileStatisticsTracker = new ProfileStatisticsTracker(null, 5, 100, true);
 
     @InjectMocks
     private UserProfileService userProfileService;
 
     @Captor
-    private ArgumentCaptor<UserProfile> profileCaptor;
+    private ArgumentCaptor<ProfileDelta> deltaCaptor;
+
+    @Captor
+    private ArgumentCaptor<Collection<ProfileDelta>> deltasCaptor;
 
     private UserProfile testProfile;
 
@@ -74,6 +84,17 @@ class UserProfileServiceTest {
                 .createdAt(LocalDateTime.now())
                 .updatedAt(LocalDateTime.now())
                 .build();
+
+        // MongoDB acknowledges every write
+        lenient().doAnswer(invocation -> {
+            invocation.<ProfileDelta>getArgument(0).markWritten(LocalDateTime.now());
+            return null;
+        }).when(userProfileRepository).applyDelta(any());
+        lenient().when(userProfileRepository.applyDeltas(anyCollection())).thenAnswer(invocation -> {
+            Collection<ProfileDelta> deltas = invocation.getArgument(0);
+            deltas.forEach(delta -> delta.markWritten(LocalDateTime.now()));
+            return deltas.size();
+        });
     }
 
     @Nested
@@ -90,16 +111,17 @@ class UserProfileServiceTest {
                     .withTarget(EntityType.PRODUCT, null)
                     .build();
 
-            when(userProfileRepository.findByUserId("user-123")).thenReturn(Optional.of(testProfile));
-            when(userProfileRepository.save(any(UserProfile.class))).thenAnswer(i -> i.getArgument(0));
-
             // When
             userProfileService.recordAction(action);
 
             // Then
-            verify(userProfileRepository).save(profileCaptor.capture());
-            UserProfile savedProfile = profileCaptor.getValue();
-            assertEquals(1, savedProfile.getReadOperations());
+            verify(userProfileRepository).applyDelta(deltaCaptor.capture());
+            ProfileDelta delta = deltaCaptor.getValue();
+            assertEquals("user-123", delta.getUserId());
+            assertEquals(1, delta.getReadOperations());
+            assertEquals(0, delta.getWriteOperations());
+            assertEquals(1, delta.getRecentActions().size());
+            verify(userProfileRepository, never()).save(any());
         }
 
         @Test
@@ -112,23 +134,18 @@ class UserProfileServiceTest {
                     .withTarget(EntityType.PRODUCT, "prod-456")
                     .build();
 
-            when(userProfileRepository.findByUserId("user-123")).thenReturn(Optional.of(testProfile));
-            when(userProfileRepository.save(any(UserProfile.class))).thenAnswer(i -> i.getArgument(0));
-
             // When
             userProfileService.recordAction(action);
 
             // Then
-            verify(userProfileRepository).save(profileCaptor.capture());
-            UserProfile savedProfile = profileCaptor.getValue();
-            assertEquals(1, savedProfile.getWriteOperations());
+            verify(userProfileRepository).applyDelta(deltaCaptor.capture());
+            assertEquals(1, deltaCaptor.getValue().getWriteOperations());
         }
 
         @Test
         @DisplayName("Should track expensive product when price exceeds threshold")
         void shouldTrackExpensiveProductWhenPriceExceedsThreshold() {
             // Given
-            testProfile.setExpensiveThreshold(100.0);
             UserAction action = UserAction.lpsBuilder()
                     .withUser("user-123", "test@example.com", "Test User")
                     .withAction(OperationType.GET_BY_ID, "ProductService", "getProductById")
@@ -136,41 +153,37 @@ class UserProfileServiceTest {
                     .withProductContext("Expensive Laptop", 1500.0)
                     .build();
 
-            when(userProfileRepository.findByUserId("user-123")).thenReturn(Optional.of(testProfile));
-            when(userProfileRepository.save(any(UserProfile.class))).thenAnswer(i -> i.getArgument(0));
-
             // When
             userProfileService.recordAction(action);
 
             // Then
-            verify(userProfileRepository).save(profileCaptor.capture());
-            UserProfile savedProfile = profileCaptor.getValue();
-            assertEquals(1, savedProfile.getExpensiveProductSearches());
-            assertEquals(1500.0, savedProfile.getMaxProductPriceViewed());
+            verify(userProfileRepository).applyDelta(deltaCaptor.capture());
+            ProfileDelta delta = deltaCaptor.getValue();
+            assertEquals(1, delta.getExpensiveProductSearches());
+            assertEquals(1500.0, delta.getMaxProductPriceViewed());
+            assertEquals(1, delta.getProductPriceViews());
+            assertEquals(1500.0, delta.getProductPriceSum());
         }
 
         @Test
-        @DisplayName("Should create new profile if user does not have one")
-        void shouldCreateNewProfileIfUserDoesNotHaveOne() {
-            // Given - Use only email (no userId) to ensure findByUserEmail is called
+        @DisplayName("Should upsert profile by email when user ID is missing")
+        void shouldUpsertProfileByEmailWhenUserIdIsMissing() {
+            // Given - Use only email (no userId) so the profile is keyed by email
             UserAction action = UserAction.lpsBuilder()
                     .withUser(null, "new@example.com", "New User")
                     .withAction(OperationType.GET_ALL, "ProductService", "getAllProducts")
                     .withTarget(EntityType.PRODUCT, null)
                     .build();
 
-            when(userProfileRepository.findByUserEmail("new@example.com")).thenReturn(Optional.empty());
-            when(userProfileRepository.save(any(UserProfile.class))).thenAnswer(i -> i.getArgument(0));
-
             // When
             userProfileService.recordAction(action);
 
-            // Then
-            verify(userProfileRepository, atLeastOnce()).save(profileCaptor.capture());
-            List<UserProfile> savedProfiles = profileCaptor.getAllValues();
-            // New profile should be created with the email
-            assertNotNull(savedProfiles.get(0).getUserEmail());
-            assertEquals("new@example.com", savedProfiles.get(0).getUserEmail());
+            // Then - no lookup, the upsert creates the profile if needed
+            verify(userProfileRepository, never()).findByUserEmail(any());
+            verify(userProfileRepository).applyDelta(deltaCaptor.capture());
+            assertNull(deltaCaptor.getValue().getUserId());
+            assertEquals("new@example.com", deltaCaptor.getValue().getUserEmail());
+            assertEquals("New User", deltaCaptor.getValue().getUserName());
         }
 
         @Test
@@ -187,7 +200,7 @@ class UserProfileServiceTest {
             userProfileService.recordAction(action);
 
             // Then
-            verify(userProfileRepository, never()).save(any());
+            verify(userProfileRepository, never()).applyDelta(any());
         }
 
         @Test
@@ -197,7 +210,7 @@ class UserProfileServiceTest {
             userProfileService.recordAction((UserAction) null);
 
             // Then
-            verify(userProfileRepository, never()).save(any());
+            verify(userProfileRepository, never()).applyDelta(any());
         }
     }
 
@@ -262,15 +275,16 @@ class UserProfileServiceTest {
                     .writeOperations(10)
                     .build();
 
-            when(userProfileRepository.findByProfileType(ProfileType.READ_HEAVY))
+            when(userProfileRepository.findSummaries(ProfileType.READ_HEAVY, null, CursorPage.DEFAULT_LIMIT + 1))
                     .thenReturn(List.of(readHeavyProfile));
 
             // When
-            List<UserProfile> result = userProfileService.getReadHeavyUsers();
+            CursorPage<UserProfile> result = userProfileService.getReadHeavyUsers(null, null);
 
             // Then
-            assertEquals(1, result.size());
-            assertEquals(ProfileType.READ_HEAVY, result.get(0).getProfileType());
+            assertEquals(1, result.items().size());
+            assertNull(result.nextCursor());
+            assertEquals(ProfileType.READ_HEAVY, result.items().get(0).getProfileType());
         }
 
         @Test
@@ -284,15 +298,16 @@ class UserProfileServiceTest {
                     .writeOperations(100)
                     .build();
 
-            when(userProfileRepository.findByProfileType(ProfileType.WRITE_HEAVY))
+            when(userProfileRepository.findSummaries(ProfileType.WRITE_HEAVY, null, CursorPage.DEFAULT_LIMIT + 1))
                     .thenReturn(List.of(writeHeavyProfile));
 
             // When
-            List<UserProfile> result = userProfileService.getWriteHeavyUsers();
+            CursorPage<UserProfile> result = userProfileService.getWriteHeavyUsers(null, null);
 
             // Then
-            assertEquals(1, result.size());
-            assertEquals(ProfileType.WRITE_HEAVY, result.get(0).getProfileType());
+            assertEquals(1, result.items().size());
+            assertNull(result.nextCursor());
+            assertEquals(ProfileType.WRITE_HEAVY, result.items().get(0).getProfileType());
         }
 
         @Test
@@ -306,125 +321,255 @@ class UserProfileServiceTest {
                     .averageProductPriceViewed(500.0)
                     .build();
 
-            when(userProfileRepository.findByProfileType(ProfileType.EXPENSIVE_SEEKER))
+            when(userProfileRepository.findSummaries(ProfileType.EXPENSIVE_SEEKER, null, CursorPage.DEFAULT_LIMIT + 1))
                     .thenReturn(List.of(expensiveSeekerProfile));
 
             // When
-            List<UserProfile> result = userProfileService.getExpensiveProductSeekers();
+            CursorPage<UserProfile> result = userProfileService.getExpensiveProductSeekers(null, null);
 
             // Then
-            assertEquals(1, result.size());
-            assertEquals(ProfileType.EXPENSIVE_SEEKER, result.get(0).getProfileType());
+            assertEquals(1, result.items().size());
+            assertNull(result.nextCursor());
+            assertEquals(ProfileType.EXPENSIVE_SEEKER, result.items().get(0).getProfileType());
         }
 
         @Test
         @DisplayName("Should get profiles by any type")
         void shouldGetProfilesByAnyType() {
             // Given
-            when(userProfileRepository.findByProfileType(ProfileType.BALANCED))
+            when(userProfileRepository.findSummaries(ProfileType.BALANCED, null, CursorPage.DEFAULT_LIMIT + 1))
                     .thenReturn(List.of(testProfile));
 
             // When
-            List<UserProfile> result = userProfileService.getProfilesByType(ProfileType.BALANCED);
+            CursorPage<UserProfile> result = userProfileService.getProfilesByType(ProfileType.BALANCED, null, null);
+
+            // Then
+            assertEquals(1, result.items().size());
+        }
+
+        @Test
+        @DisplayName("Should return a next cursor when more profiles remain")
+        void shouldReturnNextCursor() {
+            // Given
+            List<UserProfile> fetched = List.of(
+                    UserProfile.builder().id("65a1b2c3d4e5f60718293a01").build(),
+                    UserProfile.builder().id("65a1b2c3d4e5f60718293a02").build(),
+                    UserProfile.builder().id("65a1b2c3d4e5f60718293a03").build());
+            when(userProfileRepository.findSummaries(null, "65a1b2c3d4e5f60718293a00", 3))
+                    .thenReturn(fetched);
+
+            // When
+            CursorPage<UserProfile> page = userProfileService.getAllProfiles("65a1b2c3d4e5f60718293a00", 2);
+
+            // Then
+            assertEquals(2, page.items().size());
+            assertEquals("65a1b2c3d4e5f60718293a02", page.nextCursor());
+        }
+
+        @Test
+        @DisplayName("Should cap the page size and accept ids that are not ObjectIds as cursors")
+        void shouldEnforcePageLimits() {
+            // Given
+            when(userProfileRepository.findSummaries(null, null, CursorPage.MAX_LIMIT + 1))
+                    .thenReturn(List.of());
+            when(userProfileRepository.findSummaries(null, "user-42", 11)).thenReturn(List.of());
+
+            // When
+            userProfileService.getAllProfiles(null, 1_000_000);
+            userProfileService.getAllProfiles("user-42", 10);
 
             // Then
-            assertEquals(1, result.size());
+            verify(userProfileRepository).findSummaries(null, null, CursorPage.MAX_LIMIT + 1);
+            verify(userProfileRepository).findSummaries(null, "user-42", 11);
         }
     }
 
     @Nested
-    @DisplayName("Profile Statistics Tests")
-    class ProfileStatisticsTests {
+    @DisplayName("Action History Tests")
+    class ActionHistoryTests {
 
         @Test
-        @DisplayName("Should compute profile statistics")
-        void shouldComputeProfileStatistics() {
+        @DisplayName("Should append recorded actions to the history")
+        void shouldAppendToHistory() {
             // Given
-            UserProfile profile1 = UserProfile.builder()
-                    .userId("user-1")
-                    .profileType(ProfileType.READ_HEAVY)
-                    .readOperations(100)
-                    .writeOperations(10)
-                    .expensiveProductSearches(5)
+            UserAction action = UserAction.lpsBuilder()
+                    .withUser("user-123", "test@example.com", "Test User")
+                    .withAction(OperationType.GET_BY_ID, "ProductService", "getProductById")
+                    .withTarget(EntityType.PRODUCT, "p1")
                     .build();
 
-            UserProfile profile2 = UserProfile.builder()
-                    .userId("user-2")
-                    .profileType(ProfileType.WRITE_HEAVY)
-                    .readOperations(20)
-                    .writeOperations(80)
-                    .expensiveProductSearches(15)
+            // When
+            userProfileService.recordAction(action);
+
+            // Then
+            verify(actionHistoryService).append(deltasCaptor.capture());
+            ProfileDelta delta = deltasCaptor.getValue().iterator().next();
+            assertEquals(1, delta.getActions().size());
+            assertEquals("p1", delta.getActions().peekFirst().getTargetId());
+        }
+
+        @Test
+        @DisplayName("Should keep the profile write when the history fails")
+        void shouldIgnoreHistoryFailures() {
+            // Given
+            when(actionHistoryService.append(anyCollection())).thenThrow(new IllegalStateException("down"));
+            UserAction action = UserAction.lpsBuilder()
+                    .withUser("user-123", "test@example.com", "Test User")
+                    .withAction(OperationType.CREATE, "ProductService", "addProduct")
+                    .withTarget(EntityType.PRODUCT, "p1")
                     .build();
 
-            when(userProfileRepository.findAll()).thenReturn(Arrays.asList(profile1, profile2));
+            // When
+            assertDoesNotThrow(() -> userProfileService.recordAction(action));
+
+            // Then
+            verify(userProfileRepository).applyDelta(any(ProfileDelta.class));
+        }
+
+        @Test
+        @DisplayName("Should only follow up the deltas MongoDB acknowledged")
+        void shouldSkipRejectedDeltas() {
+            // Given
+            ProfileDelta written = new ProfileDelta("user-1", "a@example.com", "A");
+            ProfileDelta rejected = new ProfileDelta("user-2", "taken@example.com", "B");
+            when(userProfileRepository.applyDeltas(anyCollection())).thenAnswer(invocation -> {
+                written.markWritten(LocalDateTime.now());
+                rejected.markRejected("E11000 duplicate key");
+                return 1;
+            });
 
             // When
-            Map<String, Object> stats = userProfileService.getProfileStatistics();
+            int count = userProfileService.applyProfileDeltas(List.of(written, rejected));
 
             // Then
-            assertEquals(2, stats.get("totalProfiles"));
-            assertNotNull(stats.get("profileTypeDistribution"));
-            assertNotNull(stats.get("averageReadOperations"));
-            assertNotNull(stats.get("averageWriteOperations"));
-            assertNotNull(stats.get("averageExpensiveSearches"));
-            assertNotNull(stats.get("topReadUsers"));
-            assertNotNull(stats.get("topWriteUsers"));
-            assertNotNull(stats.get("topExpensiveSeekers"));
+            assertEquals(1, count);
+            verify(actionHistoryService).append(deltasCaptor.capture());
+            assertEquals(List.of(written), List.copyOf(deltasCaptor.getValue()));
+            verify(profileUpdatePublisher).submit(written);
+            verify(profileUpdatePublisher, never()).submit(rejected);
         }
 
         @Test
-        @DisplayName("Should return empty statistics when no profiles")
-        void shouldReturnEmptyStatisticsWhenNoProfiles() {
+        @DisplayName("Should follow up the acknowledged deltas when the write then fails")
+        void shouldFollowUpWrittenDeltasOnFailure() {
             // Given
-            when(userProfileRepository.findAll()).thenReturn(List.of());
+            ProfileDelta written = new ProfileDelta("user-1", "a@example.com", "A");
+            ProfileDelta unwritten = new ProfileDelta("user-2", "b@example.com", "B");
+            when(userProfileRepository.applyDeltas(anyCollection())).thenAnswer(invocation -> {
+                written.markWritten(LocalDateTime.now());
+                throw new IllegalStateException("connection reset");
+            });
 
             // When
-            Map<String, Object> stats = userProfileService.getProfileStatistics();
+            assertThrows(IllegalStateException.class,
+                    () -> userProfileService.applyProfileDeltas(List.of(written, unwritten)));
 
             // Then
-            assertEquals(0, stats.get("totalProfiles"));
+            verify(profileUpdatePublisher).submit(written);
+            verify(profileUpdatePublisher, never()).submit(unwritten);
+        }
+
+        @Test
+        @DisplayName("Should delete the history with the profile")
+        void shouldDeleteHistoryWithProfile() {
+            // When
+            userProfileService.deleteProfile("user-123");
+
+            // Then
+            verify(userProfileRepository).deleteByUserId("user-123");
+            verify(actionHistoryService).deleteHistory("user-123");
         }
     }
 
     @Nested
-    @DisplayName("Process Logs Tests")
-    class ProcessLogsTests {
+    @DisplayName("Leaderboard Tests")
+    class LeaderboardTests {
 
         @Test
-        @DisplayName("Should process log content and update profiles")
-        void shouldProcessLogContentAndUpdateProfiles() {
+        @DisplayName("Should fall back to MongoDB when the leaderboard is not in memory")
+        void shouldQueryRepositoryWhenNotInMemory() {
             // Given
-            String logContent = "Some log content";
+            UserProfile reader = UserProfile.builder()
+                    .userId("reader-1")
+                    .profileType(ProfileType.READ_HEAVY)
+                    .readOperations(42)
+                    .build();
+            when(userProfileRepository.findLeaderboard(LeaderboardMetric.READS, 10)).thenReturn(List.of(reader));
+
+            // When
+            List<LeaderboardEntry> leaderboard = userProfileService.getLeaderboard(LeaderboardMetric.READS, null);
+
+            // Then
+            assertEquals(1, leaderboard.size());
+            assertEquals(new LeaderboardEntry(1, "reader-1", null, null, ProfileType.READ_HEAVY, 42),
+                    leaderboard.get(0));
+        }
+
+        @Test
+        @DisplayName("Should serve the leaderboard from memory once loaded")
+        void shouldServeFromMemory() {
+            // Given
+            profileStatisticsTracker.clear();
             UserAction action = UserAction.lpsBuilder()
                     .withUser("user-123", "test@example.com", "Test User")
-                    .withAction(OperationType.GET_ALL, "ProductService", "getAllProducts")
+                    .withAction(OperationType.CREATE, "ProductService", "addProduct")
+                    .withTarget(EntityType.PRODUCT, "p1")
                     .build();
-
-            when(logParserService.parseLogContent(logContent)).thenReturn(List.of(action));
-            when(userProfileRepository.findByUserId("user-123")).thenReturn(Optional.of(testProfile));
-            when(userProfileRepository.save(any(UserProfile.class))).thenAnswer(i -> i.getArgument(0));
+            userProfileService.recordAction(action);
 
             // When
-            int processed = userProfileService.processLogs(logContent);
+            List<LeaderboardEntry> leaderboard = userProfileService.getLeaderboard(LeaderboardMetric.WRITES, 5);
 
             // Then
-            assertEquals(1, processed);
-            verify(userProfileRepository).save(any(UserProfile.class));
+            assertEquals("user-123", leaderboard.get(0).userId());
+            assertEquals(1, leaderboard.get(0).score());
+            verify(userProfileRepository, never()).findLeaderboard(any(), anyInt());
         }
+    }
+
+    @Nested
+    @DisplayName("Profile Statistics Tests")
+    class ProfileStatisticsTests {
 
         @Test
-        @DisplayName("Should return zero when no actions found in logs")
-        void shouldReturnZeroWhenNoActionsFoundInLogs() {
+        @DisplayName("Should compute profile statistics")
+        void shouldComputeProfileStatistics() {
             // Given
-            String logContent = "Invalid log content";
-            when(logParserService.parseLogContent(logContent)).thenReturn(List.of());
+            for (int i = 0; i < 9; i++) {
+                userProfileService.recordAction("user-1", null, "Reader", OperationType.GET_ALL,
+                        EntityType.PRODUCT, null, null, null);
+            }
+            userProfileService.recordAction("user-1", null, "Reader", OperationType.CREATE,
+                    EntityType.PRODUCT, null, null, null);
+            userProfileService.recordAction("user-2", null, "Writer", OperationType.CREATE,
+                    EntityType.PRODUCT, null, null, null);
 
             // When
-            int processed = userProfileService.processLogs(logContent);
+            Map<String, Object> stats = userProfileService.getProfileStatistics();
+
+            // Then - served from the tracker, no profile is read
+            verify(userProfileRepository, never()).findAll();
+            assertEquals(2, stats.get("totalProfiles"));
+            assertEquals(4.5, (double) stats.get("averageReadOperations"), 0.001);
+            assertEquals(Map.of(ProfileType.READ_HEAVY, 1L, ProfileType.WRITE_HEAVY, 1L),
+                    stats.get("profileTypeDistribution"));
+            assertNotNull(stats.get("profileTypeDistribution"));
+            assertNotNull(stats.get("averageReadOperations"));
+            assertNotNull(stats.get("averageWriteOperations"));
+            assertNotNull(stats.get("averageExpensiveSearches"));
+            assertNotNull(stats.get("topReadUsers"));
+            assertNotNull(stats.get("topWriteUsers"));
+            assertNotNull(stats.get("topExpensiveSeekers"));
+        }
+
+        @Test
+        @DisplayName("Should return empty statistics when no profiles")
+        void shouldReturnEmptyStatisticsWhenNoProfiles() {
+            // When
+            Map<String, Object> stats = userProfileService.getProfileStatistics();
 
             // Then
-            assertEquals(0, processed);
-            verify(userProfileRepository, never()).save(any());
+            assertEquals(0, stats.get("totalProfiles"));
         }
     }
 
@@ -435,10 +580,6 @@ class UserProfileServiceTest {
         @Test
         @DisplayName("Should record action directly from service call")
         void shouldRecordActionDirectlyFromServiceCall() {
-            // Given
-            when(userProfileRepository.findByUserId("user-123")).thenReturn(Optional.of(testProfile));
-            when(userProfileRepository.save(any(UserProfile.class))).thenAnswer(i -> i.getArgument(0));
-
             // When
             userProfileService.recordAction(
                     "user-123",
@@ -451,9 +592,11 @@ class UserProfileServiceTest {
                     "Gaming Mouse");
 
             // Then
-            verify(userProfileRepository).save(profileCaptor.capture());
-            UserProfile savedProfile = profileCaptor.getValue();
-            assertEquals(1, savedProfile.getReadOperations());
+            verify(userProfileRepository).applyDelta(deltaCaptor.capture());
+            ProfileDelta delta = deltaCaptor.getValue();
+            assertEquals(1, delta.getReadOperations());
+            assertEquals(1, delta.getExpensiveProductSearches());
+            verify(profileUpdatePublisher).submit(delta);
         }
     }
 }
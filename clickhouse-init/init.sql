@@ -1,36 +1,114 @@
+-- Tables are partitioned by day, so that time-bounded dashboard queries and
+-- TTLs work on whole partitions, and sorted by the columns the dashboards
+-- filter and group on before the timestamp. Keep in sync with the
+-- kafka-consumer's ClickHouseSchema, which also migrates tables created with
+-- the previous (unpartitioned, ORDER BY timestamp) layout.
+
 -- Create observability database
 CREATE DATABASE IF NOT EXISTS observability;
 
 -- Create application_logs table in default database
 CREATE TABLE IF NOT EXISTS default.application_logs (
-    timestamp DateTime DEFAULT now(),
-    level String,
-    logger String,
-    message String,
-    thread String
+    timestamp DateTime64(3) DEFAULT now64(3) CODEC(Delta, ZSTD(1)),
+    level LowCardinality(String),
+    logger LowCardinality(String),
+    message String CODEC(ZSTD(3)),
+    thread LowCardinality(String)
 ) ENGINE = MergeTree()
-ORDER BY timestamp;
+PARTITION BY toYYYYMMDD(timestamp)
+ORDER BY (level, logger, timestamp)
+TTL toDateTime(timestamp) + INTERVAL 30 DAY
+SETTINGS ttl_only_drop_parts = 1;
 
 -- Create user_events table in observability database
 CREATE TABLE IF NOT EXISTS observability.user_events (
-    id UInt64,
-    timestamp DateTime DEFAULT now(),
-    event_type String,
-    user_id String,
-    user_name String,
-    user_email String,
-    details String
+    id UInt64 CODEC(Delta, ZSTD(1)),
+    timestamp DateTime64(3) DEFAULT now64(3) CODEC(Delta, ZSTD(1)),
+    event_type LowCardinality(String),
+    user_id String CODEC(ZSTD(1)),
+    user_name String CODEC(ZSTD(1)),
+    user_email String CODEC(ZSTD(1)),
+    details String CODEC(ZSTD(3)),
+    INDEX idx_user_id user_id TYPE bloom_filter(0.01) GRANULARITY 4
 ) ENGINE = MergeTree()
-ORDER BY timestamp;
+PARTITION BY toYYYYMMDD(timestamp)
+ORDER BY (event_type, timestamp)
+TTL toDateTime(timestamp) + INTERVAL 180 DAY
+SETTINGS ttl_only_drop_parts = 1;
 
 -- Create product_events table in observability database
 CREATE TABLE IF NOT EXISTS observability.product_events (
-    id UInt64,
-    timestamp DateTime DEFAULT now(),
-    event_type String,
-    product_id String,
-    product_name String,
-    product_price Float64,
-    details String
+    id UInt64 CODEC(Delta, ZSTD(1)),
+    timestamp DateTime64(3) DEFAULT now64(3) CODEC(Delta, ZSTD(1)),
+    event_type LowCardinality(String),
+    product_id String CODEC(ZSTD(1)),
+    product_name String CODEC(ZSTD(1)),
+    product_price Float64 CODEC(Gorilla, ZSTD(1)),
+    details String CODEC(ZSTD(3)),
+    INDEX idx_product_id product_id TYPE bloom_filter(0.01) GRANULARITY 4
 ) ENGINE = MergeTree()
-ORDER BY timestamp;
+PARTITION BY toYYYYMMDD(timestamp)
+ORDER BY (event_type, timestamp)
+TTL toDateTime(timestamp) + INTERVAL 180 DAY
+SETTINGS ttl_only_drop_parts = 1;
+
+-- Per-minute rollups read by the dashboard panels, fed by materialized views
+-- on the tables above. The tables are empty here, so the views count every
+-- row; ClickHouseSchema creates views over existing rows with a cutoff and
+-- backfills the rows older than it
+
+CREATE TABLE IF NOT EXISTS default.application_logs_per_minute (
+    minute DateTime CODEC(Delta, ZSTD(1)),
+    level LowCardinality(String),
+    logger LowCardinality(String),
+    logs SimpleAggregateFunction(sum, UInt64)
+) ENGINE = AggregatingMergeTree()
+PARTITION BY toYYYYMM(minute)
+ORDER BY (level, logger, minute)
+TTL minute + INTERVAL 400 DAY;
+
+CREATE MATERIALIZED VIEW IF NOT EXISTS default.application_logs_per_minute_mv
+TO default.application_logs_per_minute AS
+SELECT toStartOfMinute(timestamp) AS minute, level, logger, count() AS logs
+FROM default.application_logs
+GROUP BY minute, level, logger;
+
+CREATE TABLE IF NOT EXISTS observability.user_events_per_minute (
+    minute DateTime CODEC(Delta, ZSTD(1)),
+    event_type LowCardinality(String),
+    events SimpleAggregateFunction(sum, UInt64),
+    users AggregateFunction(uniq, Nullable(String))
+) ENGINE = AggregatingMergeTree()
+PARTITION BY toYYYYMM(minute)
+ORDER BY (event_type, minute)
+TTL minute + INTERVAL 400 DAY;
+
+CREATE MATERIALIZED VIEW IF NOT EXISTS observability.user_events_per_minute_mv
+TO observability.user_events_per_minute AS
+SELECT toStartOfMinute(timestamp) AS minute, event_type, count() AS events,
+    uniqState(nullIf(user_id, '')) AS users
+FROM observability.user_events
+GROUP BY minute, event_type;
+
+CREATE TABLE IF NOT EXISTS observability.product_events_per_minute (
+    minute DateTime CODEC(Delta, ZSTD(1)),
+    event_type LowCardinality(String),
+    events SimpleAggregateFunction(sum, UInt64),
+    products AggregateFunction(uniq, Nullable(String)),
+    price_min SimpleAggregateFunction(min, Nullable(Float64)),
+    price_max SimpleAggregateFunction(max, Nullable(Float64)),
+    price_avg AggregateFunction(avg, Nullable(Float64))
+) ENGINE = AggregatingMergeTree()
+PARTITION BY toYYYYMM(minute)
+ORDER BY (event_type, minute)
+TTL minute + INTERVAL 400 DAY;
+
+CREATE MATERIALIZED VIEW IF NOT EXISTS observability.product_events_per_minute_mv
+TO observability.product_events_per_minute AS
+SELECT toStartOfMinute(timestamp) AS minute, event_type, count() AS events,
+    uniqState(nullIf(product_id, '')) AS products,
+    min(nullIf(product_price, 0)) AS price_min,
+    max(nullIf(product_price, 0)) AS price_max,
+    avgState(nullIf(product_price, 0)) AS price_avg
+FROM observability.product_events
+GROUP BY minute, event_type;
@@ -5,9 +5,9 @@ import { ProductService } from '../../services/product.service';
 import { UserService } from '../../services/user.service';
 import { ProfileService } from '../../services/profile.service';
 import { UserContextService } from '../../services/user-context.service';
-import { Product } from '../../models/product.model';
+import { Product, ProductSummary } from '../../models/product.model';
 import { User } from '../../models/user.model';
-import { UserProfile } from '../../models/profile.model';
+import { ProfileStats, ProfileSummary } from '../../models/profile.model';
 
 @Component({
     selector: 'app-admin-dashboard',
@@ -24,40 +24,40 @@ export class AdminDashboardComponent implements OnInit {
     private readonly profileService = inject(ProfileService);
 
     readonly users = signal<User[]>([]);
+    // Latest page only; the totals come from the server's product summary
     readonly products = signal<Product[]>([]);
-    readonly profiles = signal<UserProfile[]>([]);
+    readonly productSummary = signal<ProductSummary | null>(null);
+    // Computed over all profiles by the server: the listing is paginated
+    readonly profileStats = signal<ProfileStats | null>(null);
 
-    readonly totalRevenue = computed(() =>
-        this.products().reduce((sum, p) => sum + p.price, 0)
-    );
+    readonly totalProfiles = computed(() => this.profileStats()?.totalProfiles ?? 0);
+
+    readonly totalProducts = computed(() => this.productSummary()?.totalProducts ?? 0);
+
+    readonly totalRevenue = computed(() => this.productSummary()?.totalValue ?? 0);
 
     readonly totalReads = computed(() =>
-        this.profiles().reduce((sum, p) => sum + p.readOperations, 0)
+        Math.round((this.profileStats()?.averageReadOperations ?? 0) * this.totalProfiles())
     );
 
     readonly totalWrites = computed(() =>
-        this.profiles().reduce((sum, p) => sum + p.writeOperations, 0)
+        Math.round((this.profileStats()?.averageWriteOperations ?? 0) * this.totalProfiles())
     );
 
     readonly totalExpensiveSearches = computed(() =>
-        this.profiles().reduce((sum, p) => sum + p.expensiveProductSearches, 0)
+        Math.round((this.profileStats()?.averageExpensiveSearches ?? 0) * this.totalProfiles())
     );
 
     readonly profileTypes = computed(() => {
+        const distribution = this.profileStats()?.profileTypeDistribution ?? {};
         const counts = {
-            READ_HEAVY: 0,
-            WRITE_HEAVY: 0,
-            EXPENSIVE_SEEKER: 0,
-            BALANCED: 0
+            READ_HEAVY: distribution.READ_HEAVY ?? 0,
+            WRITE_HEAVY: distribution.WRITE_HEAVY ?? 0,
+            EXPENSIVE_SEEKER: distribution.EXPENSIVE_SEEKER ?? 0,
+            BALANCED: distribution.BALANCED ?? 0
         };
 
-        this.profiles().forEach(p => {
-            if (counts[p.profileType] !== undefined) {
-                counts[p.profileType]++;
-            }
-        });
-
-        const total = this.profiles().length || 1;
+        const total = this.totalProfiles() || 1;
 
         return [
             { name: 'Read Heavy', count: counts.READ_HEAVY, percentage: (counts.READ_HEAVY / total) * 100, icon: '📖', color: '#28a745' },
@@ -67,11 +67,16 @@ export class AdminDashboardComponent implements OnInit {
         ];
     });
 
-    readonly topProfiles = computed(() =>
-        [...this.profiles()]
+    // The most active users are among the top readers and top writers
+    readonly topProfiles = computed(() => {
+        const stats = this.profileStats();
+        const candidates = new Map<string, ProfileSummary>();
+        [...(stats?.topReadUsers ?? []), ...(stats?.topWriteUsers ?? [])]
+            .forEach(p => candidates.set(p.userId ?? p.userEmail ?? '', p));
+        return [...candidates.values()]
             .sort((a, b) => (b.readOperations + b.writeOperations) - (a.readOperations + a.writeOperations))
-            .slice(0, 5)
-    );
+            .slice(0, 5);
+    });
 
     ngOnInit(): void {
         if (!this.userContext.isAdmin()) {
@@ -86,12 +91,16 @@ export class AdminDashboardComponent implements OnInit {
             next: (users) => this.users.set(users)
         });
 
-        this.productService.getAllProducts().subscribe({
-            next: (products) => this.products.set(products)
+        this.productService.getProducts(undefined, 5).subscribe({
+            next: (page) => this.products.set(page.items)
+        });
+
+        this.productService.getProductSummary().subscribe({
+            next: (summary) => this.productSummary.set(summary)
         });
 
-        this.profileService.getAllProfiles().subscribe({
-            next: (profiles) => this.profiles.set(profiles)
+        this.profileService.getProfileStats().subscribe({
+            next: (stats) => this.profileStats.set(stats)
         });
     }
 
@@ -25,14 +25,18 @@ export class HomeComponent implements OnInit {
   }
 
   private loadProducts() {
-    this.productService.getAllProducts().subscribe({
-      next: (products: Product[]) => {
-        this.totalProducts.set(products.length);
+    this.productService.getProductSummary().subscribe({
+      next: (summary) => {
+        this.totalProducts.set(summary.totalProducts);
+        this.avgPrice.set(summary.averagePrice);
+      }
+    });
 
+    // Categories and featured products are sampled from the first page
+    this.productService.getProducts().subscribe({
+      next: (page) => {
+        const products = page.items;
         if (products.length > 0) {
-          const avg = products.reduce((sum: number, p: Product) => sum + p.price, 0) / products.length;
-          this.avgPrice.set(avg);
-
           const cats: string[] = [...new Set(products.map((p: Product) => this.getCategory(p.name)))];
           this.categories.set(cats);
 
@@ -19,8 +19,11 @@ export class MarketplaceComponent implements OnInit {
 
     readonly isLoggedIn = this.userContext.isLoggedIn;
 
+    // Pages loaded so far; search and filters apply to them
     readonly products = signal<Product[]>([]);
+    readonly nextCursor = signal<string | null>(null);
     readonly loading = signal(true);
+    readonly loadingMore = signal(false);
     readonly selectedProduct = signal<Product | null>(null);
     readonly sortBy = signal<string>('name');
     readonly cartMessage = signal<string | null>(null);
@@ -69,9 +72,10 @@ export class MarketplaceComponent implements OnInit {
 
     loadProducts(): void {
         this.loading.set(true);
-        this.productService.getAllProducts().subscribe({
-            next: (products) => {
-                this.products.set(products);
+        this.productService.getProducts().subscribe({
+            next: (page) => {
+                this.products.set(page.items);
+                this.nextCursor.set(page.nextCursor);
                 this.loading.set(false);
             },
             error: () => {
@@ -80,6 +84,27 @@ export class MarketplaceComponent implements OnInit {
         });
     }
 
+    /**
+     * Append the next page of products.
+     */
+    loadMore(): void {
+        const cursor = this.nextCursor();
+        if (!cursor || this.loadingMore()) {
+            return;
+        }
+        this.loadingMore.set(true);
+        this.productService.getProducts(cursor).subscribe({
+            next: (page) => {
+                this.products.update(products => [...products, ...page.items]);
+                this.nextCursor.set(page.nextCursor);
+                this.loadingMore.set(false);
+            },
+            error: () => {
+                this.loadingMore.set(false);
+            }
+        });
+    }
+
     onSearch(): void {
         // Trigger computed update
         this.products.update(p => [...p]);
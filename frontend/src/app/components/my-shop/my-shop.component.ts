@@ -4,7 +4,7 @@ import { FormsModule } from '@angular/forms';
 import { Router, RouterLink } from '@angular/router';
 import { ProductService } from '../../services/product.service';
 import { UserContextService } from '../../services/user-context.service';
-import { Product } from '../../models/product.model';
+import { Product, ProductSummary } from '../../models/product.model';
 
 @Component({
     selector: 'app-my-shop',
@@ -20,7 +20,10 @@ export class MyShopComponent implements OnInit {
 
     readonly userName = this.userContext.userName;
     readonly products = signal<Product[]>([]);
+    readonly nextCursor = signal<string | null>(null);
+    readonly summary = signal<ProductSummary | null>(null);
     readonly loading = signal(true);
+    readonly loadingMore = signal(false);
     readonly adding = signal(false);
     readonly addError = signal<string | null>(null);
     readonly addSuccess = signal<string | null>(null);
@@ -49,10 +52,14 @@ export class MyShopComponent implements OnInit {
 
     loadProducts(): void {
         this.loading.set(true);
-        this.productService.getAllProducts().subscribe({
-            next: (products) => {
+        this.productService.getProductSummary().subscribe({
+            next: (summary) => this.summary.set(summary)
+        });
+        this.productService.getProducts().subscribe({
+            next: (page) => {
                 // In a real app, filter by seller ID
-                this.products.set(products);
+                this.products.set(page.items);
+                this.nextCursor.set(page.nextCursor);
                 this.loading.set(false);
             },
             error: () => {
@@ -61,8 +68,34 @@ export class MyShopComponent implements OnInit {
         });
     }
 
+    /**
+     * Append the next page of products.
+     */
+    loadMore(): void {
+        const cursor = this.nextCursor();
+        if (!cursor || this.loadingMore()) {
+            return;
+        }
+        this.loadingMore.set(true);
+        this.productService.getProducts(cursor).subscribe({
+            next: (page) => {
+                this.products.update(products => [...products, ...page.items]);
+                this.nextCursor.set(page.nextCursor);
+                this.loadingMore.set(false);
+            },
+            error: () => {
+                this.loadingMore.set(false);
+            }
+        });
+    }
+
+    // Counted over all products by the server, not over the loaded pages
+    totalProducts(): number {
+        return this.summary()?.totalProducts ?? 0;
+    }
+
     totalValue(): number {
-        return this.products().reduce((sum, p) => sum + p.price, 0);
+        return this.summary()?.totalValue ?? 0;
     }
 
     addProduct(): void {
@@ -14,7 +14,9 @@ export class ProductListComponent implements OnInit {
   private readonly productService = inject(ProductService);
 
   products = signal<Product[]>([]);
+  nextCursor = signal<string | null>(null);
   loading = signal(false);
+  loadingMore = signal(false);
   error = signal<string | null>(null);
   successMessage = signal<string | null>(null);
 
@@ -26,9 +28,10 @@ export class ProductListComponent implements OnInit {
     this.loading.set(true);
     this.error.set(null);
 
-    this.productService.getAllProducts().subscribe({
-      next: (products) => {
-        this.products.set(products);
+    this.productService.getProducts().subscribe({
+      next: (page) => {
+        this.products.set(page.items);
+        this.nextCursor.set(page.nextCursor);
         this.loading.set(false);
       },
       error: (err) => {
@@ -39,6 +42,30 @@ export class ProductListComponent implements OnInit {
     });
   }
 
+  /**
+   * Append the next page of products.
+   */
+  loadMore() {
+    const cursor = this.nextCursor();
+    if (!cursor || this.loadingMore()) {
+      return;
+    }
+    this.loadingMore.set(true);
+
+    this.productService.getProducts(cursor).subscribe({
+      next: (page) => {
+        this.products.update(products => [...products, ...page.items]);
+        this.nextCursor.set(page.nextCursor);
+        this.loadingMore.set(false);
+      },
+      error: (err) => {
+        this.error.set('Failed to load products. Please try again.');
+        this.loadingMore.set(false);
+        console.error('Error loading products:', err);
+      }
+    });
+  }
+
   deleteProduct(id: string) {
     if (confirm('Are you sure you want to delete this product?')) {
       this.productService.deleteProduct(id).subscribe({
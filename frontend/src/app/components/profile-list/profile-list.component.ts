@@ -1,8 +1,10 @@
 import { Component, OnInit, inject, signal, computed } from '@angular/core';
 import { CommonModule } from '@angular/common';
+import { Observable } from 'rxjs';
 import { ProfileService } from '../../services/profile.service';
 import { UserContextService } from '../../services/user-context.service';
-import { UserProfile } from '../../models/profile.model';
+import { ProfileAction, ProfileStats, UserProfile } from '../../models/profile.model';
+import { CursorPage } from '../../models/page.model';
 
 @Component({
     selector: 'app-profile-list',
@@ -16,30 +18,27 @@ export class ProfileListComponent implements OnInit {
     private readonly userContext = inject(UserContextService);
 
     readonly profiles = signal<UserProfile[]>([]);
+    readonly nextCursor = signal<string | null>(null);
     readonly loading = signal(true);
+    readonly loadingMore = signal(false);
     readonly error = signal<string | null>(null);
     readonly selectedProfile = signal<UserProfile | null>(null);
+    readonly recentActions = signal<ProfileAction[] | null>(null);
     readonly filterType = signal<string>('ALL');
+    private readonly profileStats = signal<ProfileStats | null>(null);
 
     readonly currentUserEmail = this.userContext.userEmail;
 
-    readonly filteredProfiles = computed(() => {
-        const type = this.filterType();
-        const all = this.profiles();
-        if (type === 'ALL') {
-            return all;
-        }
-        return all.filter(p => p.profileType === type);
-    });
-
+    // Counted over all profiles by the server, not over the loaded pages
     readonly stats = computed(() => {
-        const all = this.profiles();
+        const stats = this.profileStats();
+        const distribution = stats?.profileTypeDistribution ?? {};
         return {
-            total: all.length,
-            readHeavy: all.filter(p => p.profileType === 'READ_HEAVY').length,
-            writeHeavy: all.filter(p => p.profileType === 'WRITE_HEAVY').length,
-            expensiveSeeker: all.filter(p => p.profileType === 'EXPENSIVE_SEEKER').length,
-            balanced: all.filter(p => p.profileType === 'BALANCED').length
+            total: stats?.totalProfiles ?? 0,
+            readHeavy: distribution.READ_HEAVY ?? 0,
+            writeHeavy: distribution.WRITE_HEAVY ?? 0,
+            expensiveSeeker: distribution.EXPENSIVE_SEEKER ?? 0,
+            balanced: distribution.BALANCED ?? 0
         };
     });
 
@@ -47,13 +46,22 @@ export class ProfileListComponent implements OnInit {
         this.loadProfiles();
     }
 
+    /**
+     * Load the first page of profiles of the selected type, and the stats.
+     */
     loadProfiles(): void {
         this.loading.set(true);
         this.error.set(null);
+        this.selectedProfile.set(null);
 
-        this.profileService.getAllProfiles().subscribe({
-            next: (profiles) => {
-                this.profiles.set(profiles);
+        this.profileService.getProfileStats().subscribe({
+            next: (stats) => this.profileStats.set(stats),
+            error: () => this.profileStats.set(null)
+        });
+        this.fetchPage().subscribe({
+            next: (page) => {
+                this.profiles.set(page.items);
+                this.nextCursor.set(page.nextCursor);
                 this.loading.set(false);
             },
             error: (err) => {
@@ -63,14 +71,63 @@ export class ProfileListComponent implements OnInit {
         });
     }
 
+    /**
+     * Append the next page of profiles.
+     */
+    loadMore(): void {
+        const cursor = this.nextCursor();
+        if (!cursor || this.loadingMore()) {
+            return;
+        }
+        this.loadingMore.set(true);
+
+        this.fetchPage(cursor).subscribe({
+            next: (page) => {
+                this.profiles.update(profiles => [...profiles, ...page.items]);
+                this.nextCursor.set(page.nextCursor);
+                this.loadingMore.set(false);
+            },
+            error: (err) => {
+                this.error.set('Failed to load profiles: ' + err.message);
+                this.loadingMore.set(false);
+            }
+        });
+    }
+
     selectProfile(profile: UserProfile): void {
-        this.selectedProfile.set(
-            this.selectedProfile()?.id === profile.id ? null : profile
-        );
+        if (this.selectedProfile()?.id === profile.id) {
+            this.selectedProfile.set(null);
+            return;
+        }
+        this.selectedProfile.set(profile);
+        this.recentActions.set(null);
+        // Listings leave the actions out: fetch them for the expanded profile only
+        if (profile.userId) {
+            this.profileService.getActionHistory(profile.userId).subscribe({
+                next: (actions) => {
+                    if (this.selectedProfile()?.id === profile.id) {
+                        this.recentActions.set(actions);
+                    }
+                },
+                error: () => this.recentActions.set([])
+            });
+        } else {
+            this.recentActions.set([]);
+        }
     }
 
     setFilter(type: string): void {
-        this.filterType.set(type);
+        if (this.filterType() !== type) {
+            this.filterType.set(type);
+            this.loadProfiles();
+        }
+    }
+
+    private fetchPage(after?: string): Observable<CursorPage<UserProfile>> {
+        const type = this.filterType();
+        return type === 'ALL'
+            ? this.profileService.getAllProfiles(after)
+            : this.profileService.getProfilesByType(type, after);
     }
 
     getProfileTypeClass(type: string): string {
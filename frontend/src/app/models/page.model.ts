@@ -0,0 +1,10 @@
+/**
+ * One page of a keyset-paginated listing. nextCursor is passed back as the
+ * "after" parameter to fetch the next page, and is null on the last page.
+ */
+export interface CursorPage<T> {
+    items: T[];
+    nextCursor: string | null;
+}
+
+export const NEXT_CURSOR_HEADER = 'X-Next-Cursor';
@@ -4,3 +4,12 @@ export interface Product {
     price: number;
     expirationDate: string; // ISO date string
 }
+
+/**
+ * Totals over the whole catalogue, computed by the server.
+ */
+export interface ProductSummary {
+    totalProducts: number;
+    totalValue: number;
+    averagePrice: number;
+}
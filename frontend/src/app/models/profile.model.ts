@@ -18,7 +18,8 @@ export interface UserProfile {
     expensiveProductSearches: number;
     expensiveThreshold: number;
     profileType: 'READ_HEAVY' | 'WRITE_HEAVY' | 'EXPENSIVE_SEEKER' | 'BALANCED';
-    recentActions: ProfileAction[];
+    // Only on single profile lookups: listings are summaries
+    recentActions?: ProfileAction[];
     averageProductPriceViewed: number;
     maxProductPriceViewed: number;
     createdAt: string;
@@ -26,3 +27,17 @@ export interface UserProfile {
     lastActivityAt: string;
     summary: string;
 }
+
+export type ProfileSummary = Pick<UserProfile, 'userId' | 'userEmail' | 'userName' | 'profileType'
+    | 'readOperations' | 'writeOperations' | 'expensiveProductSearches' | 'averageProductPriceViewed'>;
+
+export interface ProfileStats {
+    totalProfiles: number;
+    profileTypeDistribution: Partial<Record<UserProfile['profileType'], number>>;
+    averageReadOperations: number;
+    averageWriteOperations: number;
+    averageExpensiveSearches: number;
+    topReadUsers: ProfileSummary[];
+    topWriteUsers: ProfileSummary[];
+    topExpensiveSeekers: ProfileSummary[];
+}
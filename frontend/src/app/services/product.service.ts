@@ -1,7 +1,8 @@
 import { Injectable, inject } from '@angular/core';
-import { HttpClient } from '@angular/common/http';
-import { Observable } from 'rxjs';
-import { Product } from '../models/product.model';
+import { HttpClient, HttpParams } from '@angular/common/http';
+import { Observable, map } from 'rxjs';
+import { Product, ProductSummary } from '../models/product.model';
+import { CursorPage, NEXT_CURSOR_HEADER } from '../models/page.model';
 import { environment } from '../../environments/environment';
 
 @Injectable({
@@ -11,8 +12,32 @@ export class ProductService {
     private readonly http = inject(HttpClient);
     private readonly apiUrl = `${environment.apiUrl}/api/products`;
 
-    getAllProducts(): Observable<Product[]> {
-        return this.http.get<Product[]>(this.apiUrl);
+    /**
+     * Get a page of products.
+     *
+     * @param after cursor of the previous page, if any
+     */
+    getProducts(after?: string, limit?: number): Observable<CursorPage<Product>> {
+        let params = new HttpParams();
+        if (after) {
+            params = params.set('after', after);
+        }
+        if (limit) {
+            params = params.set('limit', limit);
+        }
+        return this.http.get<Product[]>(this.apiUrl, { params, observe: 'response' }).pipe(
+            map(response => ({
+                items: response.body ?? [],
+                nextCursor: response.headers.get(NEXT_CURSOR_HEADER)
+            }))
+        );
+    }
+
+    /**
+     * Get the product count and price totals over all products.
+     */
+    getProductSummary(): Observable<ProductSummary> {
+        return this.http.get<ProductSummary>(`${this.apiUrl}/summary`);
     }
 
     getProductById(id: string): Observable<Product> {
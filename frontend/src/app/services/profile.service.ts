@@ -1,7 +1,8 @@
 import { Injectable, inject } from '@angular/core';
-import { HttpClient } from '@angular/common/http';
-import { Observable } from 'rxjs';
-import { UserProfile } from '../models/profile.model';
+import { HttpClient, HttpParams, HttpResponse } from '@angular/common/http';
+import { Observable, map } from 'rxjs';
+import { ProfileAction, ProfileStats, UserProfile } from '../models/profile.model';
+import { CursorPage, NEXT_CURSOR_HEADER } from '../models/page.model';
 import { environment } from '../../environments/environment';
 import { UserContextService } from './user-context.service';
 
@@ -14,10 +15,12 @@ export class ProfileService {
     private readonly apiUrl = `${environment.apiUrl}/api/profiles`;
 
     /**
-     * Get all user profiles.
+     * Get a page of profile summaries, without their recent actions.
+     *
+     * @param after cursor of the previous page, if any
      */
-    getAllProfiles(): Observable<UserProfile[]> {
-        return this.http.get<UserProfile[]>(this.apiUrl);
+    getAllProfiles(after?: string, limit?: number): Observable<CursorPage<UserProfile>> {
+        return this.getPage(this.apiUrl, after, limit);
     }
 
     /**
@@ -27,6 +30,14 @@ export class ProfileService {
         return this.http.get<UserProfile>(`${this.apiUrl}/user/${userId}`);
     }
 
+    /**
+     * Get a user's most recent actions, newest first.
+     */
+    getActionHistory(userId: string, limit = 10): Observable<ProfileAction[]> {
+        const params = new HttpParams().set('limit', limit);
+        return this.http.get<ProfileAction[]>(`${this.apiUrl}/user/${userId}/actions`, { params });
+    }
+
     /**
      * Get a profile by user email.
      */
@@ -46,16 +57,34 @@ export class ProfileService {
     }
 
     /**
-     * Get profiles by profile type.
+     * Get a page of profile summaries of one type.
+     *
+     * @param after cursor of the previous page, if any
      */
-    getProfilesByType(profileType: string): Observable<UserProfile[]> {
-        return this.http.get<UserProfile[]>(`${this.apiUrl}/type/${profileType}`);
+    getProfilesByType(profileType: string, after?: string, limit?: number): Observable<CursorPage<UserProfile>> {
+        return this.getPage(`${this.apiUrl}/type/${profileType}`, after, limit);
     }
 
     /**
-     * Get profile statistics.
+     * Get profile statistics over all profiles.
      */
-    getProfileStats(): Observable<Record<string, number>> {
-        return this.http.get<Record<string, number>>(`${this.apiUrl}/stats`);
+    getProfileStats(): Observable<ProfileStats> {
+        return this.http.get<ProfileStats>(`${this.apiUrl}/statistics`);
+    }
+
+    private getPage(url: string, after?: string, limit?: number): Observable<CursorPage<UserProfile>> {
+        let params = new HttpParams();
+        if (after) {
+            params = params.set('after', after);
+        }
+        if (limit) {
+            params = params.set('limit', limit);
+        }
+        return this.http.get<UserProfile[]>(url, { params, observe: 'response' }).pipe(
+            map((response: HttpResponse<UserProfile[]>) => ({
+                items: response.body ?? [],
+                nextCursor: response.headers.get(NEXT_CURSOR_HEADER)
+            }))
+        );
     }
 }
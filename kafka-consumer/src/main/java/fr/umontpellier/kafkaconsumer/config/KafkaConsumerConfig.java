@@ -0,0 +1,27 @@
+package fr.umontpellier.kafkaconsumer.config;
+
+import fr.umontpellier.kafkaconsumer.service.SinkUnavailableException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.FixedBackOff;
+
+@Configuration
+public class KafkaConsumerConfig {
+
+    /**
+     * Error handler of the listener containers: a record that could not be
+     * written because ClickHouse is unavailable and the disk buffer is full
+     * is sought back to and retried, without limit, until the sink or the
+     * buffer can take it. Other failures are not retried.
+     */
+    @Bean
+    public DefaultErrorHandler errorHandler(@Value("${clickhouse.pool.retry-ms:1000}") long retryMs) {
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(
+                new FixedBackOff(retryMs, FixedBackOff.UNLIMITED_ATTEMPTS));
+        errorHandler.defaultFalse();
+        errorHandler.addRetryableExceptions(SinkUnavailableException.class);
+        return errorHandler;
+    }
+}
@@ -0,0 +1,317 @@
+package fr.umontpellier.kafkaconsumer.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Small pool of ClickHouse connections shared by the Kafka listener threads.
+ *
+ * Connecting, validating and reconnecting happen in a scheduled health
+ * check, never on the consume path: while ClickHouse is unavailable,
+ * {@link #execute} fails at once with a {@link SinkUnavailableException}
+ * and availability listeners are told, so that rows can be buffered.
+ * A connection is only validated when a statement on it fails.
+ */
+@Component
+@Slf4j
+public class ClickHouseConnectionPool {
+
+    /**
+     * Work done with a pooled connection.
+     */
+    @FunctionalInterface
+    public interface ConnectionCallback<T> {
+        T doInConnection(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Notified when ClickHouse becomes available or unavailable.
+     */
+    @FunctionalInterface
+    public interface AvailabilityListener {
+        void availabilityChanged(boolean available);
+    }
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int size;
+    private final long borrowTimeoutMs;
+
+    private final BlockingQueue<Connection> idle;
+    private final AtomicInteger open = new AtomicInteger();
+    private final List<AvailabilityListener> listeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock stateLock = new ReentrantLock();
+    private volatile boolean available;
+    private Boolean announced;
+    private volatile ConnectionCallback<Void> initializer;
+
+    public ClickHouseConnectionPool(@Value("${clickhouse.url}") String url,
+            @Value("${clickhouse.username:default}") String username,
+            @Value("${clickhouse.password:}") String password,
+            @Value("${clickhouse.pool.size:4}") int size,
+            @Value("${clickhouse.pool.borrow-timeout-ms:1000}") long borrowTimeoutMs) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.size = Math.max(1, size);
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.idle = new ArrayBlockingQueue<>(this.size);
+    }
+
+    /**
+     * Set work to run on the first connection each time ClickHouse becomes
+     * available, before any other use (e.g. creating tables).
+     */
+    public void setInitializer(ConnectionCallback<Void> initializer) {
+        this.initializer = initializer;
+    }
+
+    /**
+     * Add an availability listener.
+     */
+    public void addAvailabilityListener(AvailabilityListener listener) {
+        listeners.add(listener);
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Run work with a pooled connection.
+     *
+     * @throws SinkUnavailableException if ClickHouse is unavailable, or was
+     *                                  lost during the work
+     * @throws SQLException             if the work failed on a healthy
+     *                                  connection (e.g. a bad statement)
+     */
+    public <T> T execute(ConnectionCallback<T> callback) throws SQLException {
+        Connection connection = borrow();
+        boolean broken = false;
+        try {
+            return callback.doInConnection(connection);
+        } catch (SQLException e) {
+            broken = !isValid(connection);
+            if (broken) {
+                markUnavailable(e);
+                throw new SinkUnavailableException("ClickHouse connection lost: " + e.getMessage(), e);
+            }
+            throw e;
+        } finally {
+            release(connection, broken);
+        }
+    }
+
+    /**
+     * Connect when unavailable; otherwise validate idle connections, closing
+     * the dead ones.
+     */
+    @Scheduled(fixedDelayString = "${clickhouse.pool.health-check-ms:5000}")
+    public void checkHealth() {
+        if (!available) {
+            connect();
+            return;
+        }
+        List<Connection> checked = new ArrayList<>();
+        boolean healthy = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            if (isValid(connection)) {
+                checked.add(connection);
+            } else {
+                discard(connection);
+                healthy = false;
+            }
+        }
+        checked.forEach(this::offerOrClose);
+        if (!healthy && checked.isEmpty()) {
+            // Every idle connection was dead: check the server with a new one
+            try {
+                offerOrClose(openConnection());
+            } catch (SQLException e) {
+                markUnavailable(e);
+            }
+        }
+    }
+
+    /**
+     * Get pool counters.
+     */
+    public int getOpenConnections() {
+        return open.get();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        available = false;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            discard(connection);
+        }
+        log.info("ClickHouse connection pool closed");
+    }
+
+    private void connect() {
+        Connection connection;
+        try {
+            connection = openConnection();
+        } catch (SQLException e) {
+            log.debug("ClickHouse still unavailable: {}", e.getMessage());
+            setAvailable(false);
+            return;
+        }
+        try {
+            ConnectionCallback<Void> init = initializer;
+            if (init != null) {
+                init.doInConnection(connection);
+            }
+        } catch (SQLException e) {
+            log.warn("Failed to initialize ClickHouse: {}", e.getMessage());
+            discard(connection);
+            setAvailable(false);
+            return;
+        }
+        offerOrClose(connection);
+        log.info("Connected to ClickHouse, pool of up to {} connections", size);
+        setAvailable(true);
+    }
+
+    private Connection borrow() {
+        if (!available) {
+            announceUnavailable();
+            throw new SinkUnavailableException("ClickHouse is unavailable");
+        }
+        Connection connection = idle.poll();
+        if (connection != null) {
+            return connection;
+        }
+        if (open.get() < size) {
+            try {
+                return openConnection();
+            } catch (SQLException e) {
+                markUnavailable(e);
+                throw new SinkUnavailableException("Cannot connect to ClickHouse: " + e.getMessage(), e);
+            }
+        }
+        try {
+            connection = idle.poll(borrowTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SinkUnavailableException("Interrupted waiting for a ClickHouse connection", e);
+        }
+        if (connection == null) {
+            throw new SinkUnavailableException("No ClickHouse connection free within " + borrowTimeoutMs + "ms");
+        }
+        return connection;
+    }
+
+    private void release(Connection connection, boolean broken) {
+        if (broken || !available) {
+            discard(connection);
+        } else {
+            offerOrClose(connection);
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, username, password);
+        open.incrementAndGet();
+        return connection;
+    }
+
+    private void offerOrClose(Connection connection) {
+        if (!idle.offer(connection)) {
+            discard(connection);
+        }
+    }
+
+    private void discard(Connection connection) {
+        open.decrementAndGet();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.debug("Error closing ClickHouse connection: {}", e.getMessage());
+        }
+    }
+
+    private static boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void markUnavailable(SQLException cause) {
+        if (available) {
+            log.warn("ClickHouse unavailable: {}", cause.getMessage());
+        }
+        setAvailable(false);
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            discard(connection);
+        }
+    }
+
+    /**
+     * Record the availability and tell listeners when it changed since they
+     * were last told. Listeners are called under the lock, so they see the
+     * changes in order: keep them short.
+     */
+    private void setAvailable(boolean value) {
+        stateLock.lock();
+        try {
+            available = value;
+            announce(value);
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * Tell listeners ClickHouse is unavailable if it still is and they have
+     * not been told yet, as before the first connection.
+     */
+    private void announceUnavailable() {
+        stateLock.lock();
+        try {
+            if (!available) {
+                announce(false);
+            }
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    private void announce(boolean value) {
+        if (announced != null && announced == value) {
+            return;
+        }
+        announced = value;
+        for (AvailabilityListener listener : listeners) {
+            listener.availabilityChanged(value);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package fr.umontpellier.kafkaconsumer.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * A decoded row for one of the ClickHouse tables, with its INSERT statement
+ * and a compact binary form for the disk buffer.
+ */
+public sealed interface ClickHouseRow {
+
+    /**
+     * Get the INSERT statement of the row's table.
+     */
+    String insertSql();
+
+    /**
+     * Bind the row's values to its INSERT statement.
+     */
+    void bind(PreparedStatement stmt) throws SQLException;
+
+    /**
+     * Write the row for the disk buffer.
+     */
+    void writeTo(DataOutputStream out) throws IOException;
+
+    /**
+     * Encode the row for the disk buffer.
+     */
+    default byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode row", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a row encoded by {@link #encode()}.
+     *
+     * @throws IOException if the bytes are not a row
+     */
+    static ClickHouseRow decode(byte[] bytes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte type = in.readByte();
+            return switch (type) {
+                case LogRow.TYPE -> new LogRow(readTimestamp(in), readString(in), readString(in), readString(in),
+                        readString(in));
+                case UserEventRow.TYPE -> new UserEventRow(in.readLong(), readTimestamp(in), readString(in),
+                        readString(in), readString(in), readString(in));
+                case ProductEventRow.TYPE -> new ProductEventRow(in.readLong(), readTimestamp(in), readString(in),
+                        readString(in), readString(in), in.readDouble());
+                default -> throw new IOException("Unknown row type " + type);
+            };
+        }
+    }
+
+    /**
+     * Row of default.application_logs.
+     */
+    record LogRow(LocalDateTime timestamp, String level, String logger, String message, String thread)
+            implements ClickHouseRow {
+
+        static final byte TYPE = 1;
+
+        @Override
+        public String insertSql() {
+            return "INSERT INTO default.application_logs (timestamp, level, logger, message, thread) VALUES (?, ?, ?, ?, ?)";
+        }
+
+        @Override
+        public void bind(PreparedStatement stmt) throws SQLException {
+            stmt.setObject(1, Timestamp.valueOf(timestamp));
+            stmt.setString(2, level);
+            stmt.setString(3, logger);
+            stmt.setString(4, message);
+            stmt.setString(5, thread);
+        }
+
+        @Override
+        public void writeTo(DataOutputStream out) throws IOException {
+            out.writeByte(TYPE);
+            writeTimestamp(out, timestamp);
+            writeString(out, level);
+            writeString(out, logger);
+            writeString(out, message);
+            writeString(out, thread);
+        }
+    }
+
+    /**
+     * Row of observability.user_events.
+     */
+    record UserEventRow(long id, LocalDateTime timestamp, String eventType, String userId, String userName,
+            String userEmail) implements ClickHouseRow {
+
+        static final byte TYPE = 2;
+
+        @Override
+        public String insertSql() {
+            return "INSERT INTO observability.user_events (id, timestamp, event_type, user_id, user_name, user_email, details) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        }
+
+        @Override
+        public void bind(PreparedStatement stmt) throws SQLException {
+            stmt.setLong(1, id);
+            stmt.setObject(2, Timestamp.valueOf(timestamp));
+            stmt.setString(3, eventType);
+            stmt.setString(4, userId != null ? userId : "");
+            stmt.setString(5, userName != null ? userName : "");
+            stmt.setString(6, userEmail != null ? userEmail : "");
+            stmt.setString(7, "");
+        }
+
+        @Override
+        public void writeTo(DataOutputStream out) throws IOException {
+            out.writeByte(TYPE);
+            out.writeLong(id);
+            writeTimestamp(out, timestamp);
+            writeString(out, eventType);
+            writeString(out, userId);
+            writeString(out, userName);
+            writeString(out, userEmail);
+        }
+    }
+
+    /**
+     * Row of observability.product_events.
+     */
+    record ProductEventRow(long id, LocalDateTime timestamp, String eventType, String productId,
+            String productName, double price) implements ClickHouseRow {
+
+        static final byte TYPE = 3;
+
+        @Override
+        public String insertSql() {
+            return "INSERT INTO observability.product_events (id, timestamp, event_type, product_id, product_name, product_price, details) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        }
+
+        @Override
+        public void bind(PreparedStatement stmt) throws SQLException {
+            stmt.setLong(1, id);
+            stmt.setObject(2, Timestamp.valueOf(timestamp));
+            stmt.setString(3, eventType);
+            stmt.setString(4, productId != null ? productId : "");
+            stmt.setString(5, productName != null ? productName : "");
+            stmt.setDouble(6, price);
+            stmt.setString(7, "");
+        }
+
+        @Override
+        public void writeTo(DataOutputStream out) throws IOException {
+            out.writeByte(TYPE);
+            out.writeLong(id);
+            writeTimestamp(out, timestamp);
+            writeString(out, eventType);
+            writeString(out, productId);
+            writeString(out, productName);
+            out.writeDouble(price);
+        }
+    }
+
+    private static void writeTimestamp(DataOutputStream out, LocalDateTime timestamp) throws IOException {
+        out.writeLong(Timestamp.valueOf(timestamp).getTime());
+    }
+
+    private static LocalDateTime readTimestamp(DataInputStream in) throws IOException {
+        return new Timestamp(in.readLong()).toLocalDateTime();
+    }
+
+    // Length-prefixed rather than writeUTF, which is limited to 64 KB
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Truncated row");
+        }
+        byte[] bytes = in.readNBytes(length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,193 @@
+package fr.umontpellier.kafkaconsumer.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes rows to ClickHouse, staging them in the {@link SegmentBuffer} while
+ * ClickHouse is unavailable or too slow to hand out a connection.
+ *
+ * Buffered rows are replayed in the background once ClickHouse is back, in
+ * batches of {@code clickhouse.buffer.replay-batch-size} rows sent with one
+ * statement per table. Replay is at least once: a crash during a replay can
+ * insert the rows of the last batch twice. A batch ClickHouse rejects is
+ * split in halves, down to single rows, so that only the rows it rejects
+ * are dropped.
+ */
+@Service
+@Slf4j
+public class ClickHouseRowWriter {
+
+    private final ClickHouseConnectionPool clickHousePool;
+    private final SegmentBuffer buffer;
+    private final int replayBatchSize;
+    private final ReentrantLock replayLock = new ReentrantLock();
+
+    private final Counter bufferedRows;
+    private final Counter replayedRows;
+    private final Counter droppedRows;
+
+    public ClickHouseRowWriter(ClickHouseConnectionPool clickHousePool, SegmentBuffer buffer,
+            @Value("${clickhouse.buffer.replay-batch-size:5000}") int replayBatchSize,
+            MeterRegistry meterRegistry) {
+        this.clickHousePool = clickHousePool;
+        this.buffer = buffer;
+        this.replayBatchSize = Math.max(1, replayBatchSize);
+        this.bufferedRows = Counter.builder("clickhouse.buffer.rows")
+                .tag("operation", "buffered")
+                .description("Rows staged on disk or replayed from it")
+                .register(meterRegistry);
+        this.replayedRows = Counter.builder("clickhouse.buffer.rows")
+                .tag("operation", "replayed")
+                .description("Rows staged on disk or replayed from it")
+                .register(meterRegistry);
+        this.droppedRows = Counter.builder("clickhouse.buffer.rows")
+                .tag("operation", "dropped")
+                .description("Rows staged on disk or replayed from it")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Insert rows in order, buffering those not inserted yet if ClickHouse
+     * becomes unavailable.
+     *
+     * The rows of one consumed record are written with a single call, so that
+     * a record is only delivered again when none of its rows was written:
+     * once a row is inserted, the remaining ones are buffered or, if the
+     * buffer is full, dropped rather than having the error handler insert the
+     * first ones twice.
+     *
+     * @throws SinkUnavailableException if ClickHouse is unavailable and the
+     *                                  buffer is full, no row being written
+     * @throws SQLException             if ClickHouse rejected a row
+     */
+    public void write(ClickHouseRow... rows) throws SQLException {
+        int[] inserted = {0};
+        try {
+            clickHousePool.execute(connection -> {
+                for (; inserted[0] < rows.length; inserted[0]++) {
+                    ClickHouseRow row = rows[inserted[0]];
+                    try (PreparedStatement stmt = connection.prepareStatement(row.insertSql())) {
+                        row.bind(stmt);
+                        stmt.executeUpdate();
+                    }
+                }
+                return null;
+            });
+        } catch (SinkUnavailableException e) {
+            List<byte[]> pending = new ArrayList<>(rows.length - inserted[0]);
+            for (int i = inserted[0]; i < rows.length; i++) {
+                pending.add(rows[i].encode());
+            }
+            if (buffer.append(pending)) {
+                bufferedRows.increment(pending.size());
+            } else if (inserted[0] == 0) {
+                throw new SinkUnavailableException("ClickHouse is unavailable and the buffer is full", e);
+            } else {
+                log.warn("Dropping {} row(s) of a partly written record: ClickHouse is unavailable and the "
+                        + "buffer is full", pending.size());
+                droppedRows.increment(pending.size());
+            }
+        }
+    }
+
+    /**
+     * Check whether {@link #write} can currently take rows.
+     */
+    public boolean isWritable() {
+        return clickHousePool.isAvailable() || !buffer.isNearlyFull();
+    }
+
+    /**
+     * Replay buffered rows while ClickHouse is available.
+     */
+    @Scheduled(fixedDelayString = "${clickhouse.buffer.replay-ms:2000}")
+    public void replay() {
+        if (!replayLock.tryLock()) {
+            return;
+        }
+        try {
+            int total = 0;
+            int replayed;
+            while (clickHousePool.isAvailable() && !buffer.isEmpty()
+                    && (replayed = buffer.replay(replayBatchSize, this::insertBatch)) > 0) {
+                total += replayed;
+            }
+            if (total > 0) {
+                log.info("Replayed {} buffered rows into ClickHouse, {} bytes still buffered", total,
+                        buffer.getBufferedBytes());
+            }
+        } finally {
+            replayLock.unlock();
+        }
+    }
+
+    private boolean insertBatch(List<byte[]> records) {
+        Map<String, List<ClickHouseRow>> rowsBySql = new LinkedHashMap<>();
+        for (byte[] record : records) {
+            try {
+                ClickHouseRow row = ClickHouseRow.decode(record);
+                rowsBySql.computeIfAbsent(row.insertSql(), sql -> new ArrayList<>()).add(row);
+            } catch (IOException e) {
+                log.warn("Dropping unreadable buffered row: {}", e.getMessage());
+                droppedRows.increment();
+            }
+        }
+        try {
+            int inserted = 0;
+            for (Map.Entry<String, List<ClickHouseRow>> entry : rowsBySql.entrySet()) {
+                inserted += insertRows(entry.getKey(), entry.getValue());
+            }
+            replayedRows.increment(inserted);
+            return true;
+        } catch (SinkUnavailableException e) {
+            log.debug("Replay interrupted, ClickHouse unavailable: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Insert rows of one table with one statement. Rows rejected by a healthy
+     * server would be rejected again, so a rejected batch is retried in
+     * halves and a row rejected on its own is dropped.
+     *
+     * @return the number of rows inserted
+     * @throws SinkUnavailableException if ClickHouse became unavailable
+     */
+    private int insertRows(String sql, List<ClickHouseRow> rows) {
+        try {
+            clickHousePool.execute(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    for (ClickHouseRow row : rows) {
+                        row.bind(stmt);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                return null;
+            });
+            return rows.size();
+        } catch (SQLException e) {
+            if (rows.size() == 1) {
+                log.warn("Dropping buffered row rejected by ClickHouse: {}", e.getMessage());
+                droppedRows.increment();
+                return 0;
+            }
+            int half = rows.size() / 2;
+            return insertRows(sql, rows.subList(0, half)) + insertRows(sql, rows.subList(half, rows.size()));
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package fr.umontpellier.kafkaconsumer.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Schema of the ClickHouse tables written by the consumer, kept in sync with
+ * clickhouse-init/init.sql.
+ *
+ * <p>
+ * Tables are partitioned by day, so that the time-bounded dashboard queries
+ * and the TTLs work on whole partitions, and sorted by the columns the
+ * dashboards filter and group on before the timestamp. Repeated names are
+ * LowCardinality, timestamps are DateTime64 with delta codecs, free text is
+ * ZSTD-compressed, and user and product ids have bloom filter skip indexes.
+ * </p>
+ *
+ * <p>
+ * The dashboard panels read per-minute rollups rather than raw rows:
+ * AggregatingMergeTree tables fed by materialized views on the raw tables,
+ * holding counts by level and logger, events and distinct users or
+ * products by type, and product price statistics. A view created over
+ * existing rows only counts the rows from a cutoff set a few seconds ahead
+ * ({@code clickhouse.schema.rollup-cutoff-delay}); once the cutoff has
+ * passed, the rows older than it are backfilled, so that each row is
+ * counted once. Rows stamped before the cutoff but inserted after the
+ * backfill, as replayed from the buffer, are not counted.
+ * </p>
+ *
+ * <p>
+ * Tables created by earlier versions (unpartitioned, ORDER BY timestamp) are
+ * migrated when {@code clickhouse.schema.migrate} is set, which is meant for
+ * one run of one replica: the rows are copied into a table with the current
+ * layout, which is then exchanged with the old one. The old table is kept as
+ * {@code <table>_v1} and can be dropped once the migration is checked. Rows
+ * that reached the old table during the copy are copied again after the
+ * exchange, by timestamp: those stamped before the last copied row, as
+ * replayed from a consumer's buffer, stay in {@code <table>_v1} only, so
+ * migrate while the consumers' buffers are empty.
+ * </p>
+ *
+ * Changes that must not run twice at once, migrations and backfills, hold
+ * the schema lock: a marker table that only one replica can create, dropped
+ * when done. A replica finding it skips those changes; a lock left by a
+ * replica that died is named in the logs, to be dropped by hand.
+ */
+@Component
+@Slf4j
+public class ClickHouseSchema {
+
+    private static final String LEGACY_SUFFIX = "_v1";
+    private static final String MIGRATING_SUFFIX = "_migrating";
+    private static final String LOCK_TABLE = "default.clickhouse_schema_lock";
+
+    private static final List<Table> TABLES = List.of(
+            new Table("default", "application_logs",
+                    "timestamp, level, logger, message, thread",
+                    "timestamp DateTime64(3) DEFAULT now64(3) CODEC(Delta, ZSTD(1)), " +
+                            "level LowCardinality(String), " +
+                            "logger LowCardinality(String), " +
+                            "message String CODEC(ZSTD(3)), " +
+                            "thread LowCardinality(String)",
+                    "ORDER BY (level, logger, timestamp) " +
+                            "TTL toDateTime(timestamp) + INTERVAL 30 DAY"),
+            new Table("observability", "user_events",
+                    "id, timestamp, event_type, user_id, user_name, user_email, details",
+                    "id UInt64 CODEC(Delta, ZSTD(1)), " +
+                            "timestamp DateTime64(3) DEFAULT now64(3) CODEC(Delta, ZSTD(1)), " +
+                            "event_type LowCardinality(String), " +
+                            "user_id String CODEC(ZSTD(1)), " +
+                            "user_name String CODEC(ZSTD(1)), " +
+                            "user_email String CODEC(ZSTD(1)), " +
+                            "details String CODEC(ZSTD(3)), " +
+                            "INDEX idx_user_id user_id TYPE bloom_filter(0.01) GRANULARITY 4",
+                    "ORDER BY (event_type, timestamp) " +
+                            "TTL toDateTime(timestamp) + INTERVAL 180 DAY"),
+            new Table("observability", "product_events",
+                    "id, timestamp, event_type, product_id, product_name, product_price, details",
+                    "id UInt64 CODEC(Delta, ZSTD(1)), " +
+                            "timestamp DateTime64(3) DEFAULT now64(3) CODEC(Delta, ZSTD(1)), " +
+                            "event_type LowCardinality(String), " +
+                            "product_id String CODEC(ZSTD(1)), " +
+                            "product_name String CODEC(ZSTD(1)), " +
+                            "product_price Float64 CODEC(Gorilla, ZSTD(1)), " +
+                            "details String CODEC(ZSTD(3)), " +
+                            "INDEX idx_product_id product_id TYPE bloom_filter(0.01) GRANULARITY 4",
+                    "ORDER BY (event_type, timestamp) " +
+                            "TTL toDateTime(timestamp) + INTERVAL 180 DAY"));
+
+    private static final List<Rollup> ROLLUPS = List.of(
+            new Rollup("default.application_logs_per_minute", "default.application_logs",
+                    "minute DateTime CODEC(Delta, ZSTD(1)), " +
+                            "level LowCardinality(String), " +
+                            "logger LowCardinality(String), " +
+                            "logs SimpleAggregateFunction(sum, UInt64)",
+                    "ORDER BY (level, logger, minute)",
+                    "toStartOfMinute(timestamp) AS minute, level, logger, count() AS logs",
+                    "minute, level, logger"),
+            new Rollup("observability.user_events_per_minute", "observability.user_events",
+                    "minute DateTime CODEC(Delta, ZSTD(1)), " +
+                            "event_type LowCardinality(String), " +
+                            "events SimpleAggregateFunction(sum, UInt64), " +
+                            "users AggregateFunction(uniq, Nullable(String))",
+                    "ORDER BY (event_type, minute)",
+                    "toStartOfMinute(timestamp) AS minute, event_type, count() AS events, " +
+                            "uniqState(nullIf(user_id, '')) AS users",
+                    "minute, event_type"),
+            new Rollup("observability.product_events_per_minute", "observability.product_events",
+                    "minute DateTime CODEC(Delta, ZSTD(1)), " +
+                            "event_type LowCardinality(String), " +
+                            "events SimpleAggregateFunction(sum, UInt64), " +
+                            "products AggregateFunction(uniq, Nullable(String)), " +
+                            "price_min SimpleAggregateFunction(min, Nullable(Float64)), " +
+                            "price_max SimpleAggregateFunction(max, Nullable(Float64)), " +
+                            "price_avg AggregateFunction(avg, Nullable(Float64))",
+                    "ORDER BY (event_type, minute)",
+                    "toStartOfMinute(timestamp) AS minute, event_type, count() AS events, " +
+                            "uniqState(nullIf(product_id, '')) AS products, " +
+                            "min(nullIf(product_price, 0)) AS price_min, " +
+                            "max(nullIf(product_price, 0)) AS price_max, " +
+                            "avgState(nullIf(product_price, 0)) AS price_avg",
+                    "minute, event_type"));
+
+    private final boolean migrate;
+    private final Duration rollupCutoffDelay;
+
+    public ClickHouseSchema(@Value("${clickhouse.schema.migrate:false}") boolean migrate,
+            @Value("${clickhouse.schema.rollup-cutoff-delay:10s}") Duration rollupCutoffDelay) {
+        this.migrate = migrate;
+        this.rollupCutoffDelay = rollupCutoffDelay;
+    }
+
+    /**
+     * Create the databases and tables that do not exist, and migrate the
+     * tables with an earlier layout.
+     */
+    public void apply(Connection connection) throws SQLException {
+        execute(connection, "CREATE DATABASE IF NOT EXISTS observability");
+        List<Table> legacy = new ArrayList<>();
+        for (Table table : TABLES) {
+            if (isLegacy(connection, table)) {
+                legacy.add(table);
+            }
+        }
+        if (!legacy.isEmpty() && !migrate) {
+            legacy.forEach(table -> log.warn("{} has the legacy layout; set clickhouse.schema.migrate=true on one "
+                    + "replica to migrate it", table.qualifiedName()));
+        } else if (!legacy.isEmpty()) {
+            withLock(connection, "migrating the legacy tables", () -> {
+                // Another replica may have migrated them meanwhile
+                for (Table table : legacy) {
+                    if (isLegacy(connection, table)) {
+                        migrate(connection, table);
+                    }
+                }
+            });
+        }
+        for (Table table : TABLES) {
+            execute(connection, table.createSql(table.qualifiedName()));
+            log.info("Ensured {} table exists", table.qualifiedName());
+        }
+        List<Rollup> missing = new ArrayList<>();
+        for (Rollup rollup : ROLLUPS) {
+            execute(connection, rollup.createSql());
+            if (!exists(connection, rollup.viewName())) {
+                missing.add(rollup);
+            }
+        }
+        if (!missing.isEmpty()) {
+            withLock(connection, "creating the rollup views", () -> createViews(connection, missing));
+        }
+    }
+
+    /**
+     * Create the views of rollups, counting the rows from a cutoff ahead, then
+     * backfill the rollups with the rows older than the cutoff once it has
+     * passed, leaving time for the rows stamped before it to be inserted. If
+     * the backfill fails, the views are dropped and the rollups emptied.
+     */
+    private void createViews(Connection connection, List<Rollup> rollups) throws SQLException {
+        String cutoff;
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT toString(now64(3) + toIntervalMillisecond(?))")) {
+            stmt.setLong(1, rollupCutoffDelay.toMillis());
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                cutoff = rs.getString(1);
+            }
+        }
+        List<Rollup> created = new ArrayList<>();
+        for (Rollup rollup : rollups) {
+            // Another replica may have created it meanwhile
+            if (!exists(connection, rollup.viewName())) {
+                execute(connection, "CREATE MATERIALIZED VIEW IF NOT EXISTS " + rollup.viewName() + " TO "
+                        + rollup.name() + " AS SELECT " + rollup.select() + " FROM " + rollup.source()
+                        + " WHERE timestamp >= toDateTime64('" + cutoff + "', 3) GROUP BY " + rollup.groupBy());
+                created.add(rollup);
+            }
+        }
+        if (created.isEmpty()) {
+            return;
+        }
+        try {
+            Thread.sleep(rollupCutoffDelay.multipliedBy(2).toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted before backfilling the rollups", e);
+        }
+        try {
+            for (Rollup rollup : created) {
+                execute(connection, "INSERT INTO " + rollup.name() + " SELECT " + rollup.select() + " FROM "
+                        + rollup.source() + " WHERE timestamp < toDateTime64('" + cutoff + "', 3) GROUP BY "
+                        + rollup.groupBy());
+                log.info("Created rollup {}, counting rows from {}, and backfilled it from {}", rollup.name(),
+                        cutoff, rollup.source());
+            }
+        } catch (SQLException e) {
+            // Start over on the next connection rather than leave views whose
+            // rollups miss the older rows
+            for (Rollup rollup : created) {
+                execute(connection, "DROP VIEW IF EXISTS " + rollup.viewName());
+                execute(connection, "TRUNCATE TABLE IF EXISTS " + rollup.name());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Run a change holding the schema lock, or skip it if another replica
+     * holds the lock.
+     *
+     * @return false if the change was skipped
+     */
+    private static boolean withLock(Connection connection, String change, SchemaChange work) throws SQLException {
+        try {
+            execute(connection, "CREATE TABLE " + LOCK_TABLE
+                    + " (holder String, acquired_at DateTime DEFAULT now()) ENGINE = TinyLog");
+        } catch (SQLException e) {
+            if (!exists(connection, LOCK_TABLE)) {
+                throw e;
+            }
+            log.warn("Skipped {}: the schema lock {} is held by {}; drop it if that replica is gone", change,
+                    LOCK_TABLE, lockHolder(connection));
+            return false;
+        }
+        try {
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "INSERT INTO " + LOCK_TABLE + " (holder) VALUES (?)")) {
+                stmt.setString(1, ManagementFactory.getRuntimeMXBean().getName());
+                stmt.executeUpdate();
+            }
+            work.apply();
+            return true;
+        } finally {
+            try {
+                execute(connection, "DROP TABLE IF EXISTS " + LOCK_TABLE);
+            } catch (SQLException e) {
+                log.warn("Failed to release the schema lock {}, drop it by hand: {}", LOCK_TABLE, e.getMessage());
+            }
+        }
+    }
+
+    private static String lockHolder(Connection connection) {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT holder, toString(acquired_at) FROM " + LOCK_TABLE + " LIMIT 1");
+                ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getString(1) + " since " + rs.getString(2) : "an unknown replica";
+        } catch (SQLException e) {
+            return "an unknown replica";
+        }
+    }
+
+    private static boolean exists(Connection connection, String qualifiedName) throws SQLException {
+        int dot = qualifiedName.indexOf('.');
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT count() FROM system.tables WHERE database = ? AND name = ?")) {
+            stmt.setString(1, qualifiedName.substring(0, dot));
+            stmt.setString(2, qualifiedName.substring(dot + 1));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getLong(1) > 0;
+            }
+        }
+    }
+
+    /**
+     * Check whether a table exists with the layout of earlier versions,
+     * which had no partition key.
+     */
+    private static boolean isLegacy(Connection connection, Table table) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT partition_key FROM system.tables WHERE database = ? AND name = ?")) {
+            stmt.setString(1, table.database());
+            stmt.setString(2, table.name());
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getString(1).isEmpty();
+            }
+        }
+    }
+
+    /**
+     * Copy a legacy table into the current layout, swap them, then copy the
+     * rows inserted into the legacy table meanwhile. A copy interrupted
+     * before the swap is started over on the next run.
+     */
+    private static void migrate(Connection connection, Table table) throws SQLException {
+        String name = table.qualifiedName();
+        String migrating = name + MIGRATING_SUFFIX;
+        String legacy = name + LEGACY_SUFFIX;
+        log.info("Migrating {} to the partitioned layout", name);
+        long start = System.currentTimeMillis();
+        execute(connection, "DROP TABLE IF EXISTS " + migrating);
+        execute(connection, table.createSql(migrating));
+        execute(connection, "INSERT INTO " + migrating + " (" + table.columns() + ") SELECT " + table.columns()
+                + " FROM " + name);
+        String copiedUntil = latestTimestamp(connection, migrating);
+        execute(connection, "EXCHANGE TABLES " + name + " AND " + migrating);
+        execute(connection, "RENAME TABLE " + migrating + " TO " + legacy);
+        // Writers insert into the new table from the exchange on
+        execute(connection, "INSERT INTO " + name + " (" + table.columns() + ") SELECT " + table.columns()
+                + " FROM " + legacy + " WHERE timestamp > toDateTime64('" + copiedUntil + "', 3)");
+        log.info("Migrated {} in {} ms; the previous table is kept as {}", name,
+                System.currentTimeMillis() - start, legacy);
+    }
+
+    private static String latestTimestamp(Connection connection, String table) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT toString(max(timestamp)) FROM " + table)) {
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.execute();
+        }
+    }
+
+    @FunctionalInterface
+    private interface SchemaChange {
+        void apply() throws SQLException;
+    }
+
+    private record Table(String database, String name, String columns, String columnDefinitions,
+            String tableSettings) {
+
+        String qualifiedName() {
+            return database + "." + name;
+        }
+
+        String createSql(String tableName) {
+            return "CREATE TABLE IF NOT EXISTS " + tableName + " (" + columnDefinitions + ") " +
+                    "ENGINE = MergeTree() PARTITION BY toYYYYMMDD(timestamp) " + tableSettings +
+                    " SETTINGS ttl_only_drop_parts = 1";
+        }
+    }
+
+    private record Rollup(String name, String source, String columnDefinitions, String orderBy, String select,
+            String groupBy) {
+
+        String viewName() {
+            return name + "_mv";
+        }
+
+        String createSql() {
+            return "CREATE TABLE IF NOT EXISTS " + name + " (" + columnDefinitions + ") " +
+                    "ENGINE = AggregatingMergeTree() PARTITION BY toYYYYMM(minute) " + orderBy +
+                    " TTL minute + INTERVAL 400 DAY";
+        }
+    }
+}
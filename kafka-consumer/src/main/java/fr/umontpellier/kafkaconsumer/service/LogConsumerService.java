@@ -1,23 +1,25 @@
 package fr.umontpellier.kafkaconsumer.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.NumberInput;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
-import jakarta.annotation.PreDestroy;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,22 +29,18 @@ import java.util.regex.Pattern;
  */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class LogConsumerService {
 
-    @Value("${clickhouse.url}")
-    private String clickhouseUrl;
+    private final ClickHouseConnectionPool clickHousePool;
+    private final ClickHouseSchema clickHouseSchema;
+    private final ClickHouseRowWriter rowWriter;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final SnowflakeIdGenerator idGenerator;
 
-    @Value("${clickhouse.username:default}")
-    private String clickhouseUsername;
-
-    @Value("${clickhouse.password:}")
-    private String clickhousePassword;
-
-    private volatile Connection connection;
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final AtomicLong userEventIdCounter = new AtomicLong(1);
-    private final AtomicLong productEventIdCounter = new AtomicLong(1);
-    private final AtomicBoolean isConnecting = new AtomicBoolean(false);
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final LogEnvelopeDecoder envelopeDecoder = new LogEnvelopeDecoder();
+    private volatile boolean paused;
 
     private static final Pattern LOG_PATTERN = Pattern.compile(
             "^(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3})\\s+\\[([^\\]]+)\\]\\s+(\\w+)\\s+([\\w.]+)\\s+-\\s+(.+)$");
@@ -51,219 +49,163 @@ public class LogConsumerService {
 
     @PostConstruct
     public void init() {
-        connectToClickHouse();
-    }
-
-    private synchronized void connectToClickHouse() {
-        if (isConnecting.get()) {
-            return;
-        }
-        isConnecting.set(true);
-
-        int maxRetries = 30;
-        int retryCount = 0;
-        int baseDelayMs = 2000;
-
-        while (retryCount < maxRetries) {
-            try {
-                if (connection != null && !connection.isClosed()) {
-                    isConnecting.set(false);
-                    return;
-                }
-                connection = DriverManager.getConnection(clickhouseUrl, clickhouseUsername, clickhousePassword);
-                log.info("Connected to ClickHouse for log ingestion");
-                initializeCounters();
-                isConnecting.set(false);
-                return;
-            } catch (SQLException e) {
-                retryCount++;
-                int delayMs = Math.min(baseDelayMs * retryCount, 30000);
-                log.warn("Failed to connect to ClickHouse (attempt {}/{}): {}. Retrying in {}ms...",
-                        retryCount, maxRetries, e.getMessage(), delayMs);
-                if (retryCount < maxRetries) {
-                    try {
-                        Thread.sleep(delayMs);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        isConnecting.set(false);
-                        return;
-                    }
-                }
-            }
-        }
-        log.error("Failed to connect to ClickHouse after {} attempts. Will retry via scheduled task.", maxRetries);
-        isConnecting.set(false);
+        clickHousePool.setInitializer(connection -> {
+            clickHouseSchema.apply(connection);
+            return null;
+        });
+        clickHousePool.addAvailabilityListener(this::onSinkAvailabilityChanged);
     }
 
     /**
-     * Periodically check and restore ClickHouse connection if needed.
+     * While ClickHouse is unavailable, rows are staged in the disk buffer and
+     * consumption goes on. Resume the listeners if they were paused because
+     * the buffer was full.
      */
-    @Scheduled(fixedDelay = 30000, initialDelay = 60000)
-    public void checkAndRestoreConnection() {
-        try {
-            if (connection == null || connection.isClosed()) {
-                log.info("ClickHouse connection lost, attempting to reconnect...");
-                connectToClickHouse();
-            }
-        } catch (SQLException e) {
-            log.warn("Error checking ClickHouse connection: {}", e.getMessage());
-            connectToClickHouse();
+    private void onSinkAvailabilityChanged(boolean available) {
+        if (available) {
+            log.info("ClickHouse available, writing directly");
+            resumeListeners();
+        } else {
+            log.info("ClickHouse unavailable, buffering rows on disk");
         }
     }
 
-    private boolean isConnectionValid() {
-        try {
-            return connection != null && !connection.isClosed();
-        } catch (SQLException e) {
-            return false;
-        }
-    }
-
-    private void ensureTablesExist() {
-        try {
-            // Create observability database
-            try (PreparedStatement stmt = connection.prepareStatement(
-                    "CREATE DATABASE IF NOT EXISTS observability")) {
-                stmt.execute();
-                log.info("Ensured observability database exists");
-            }
-
-            // Create user_events table
-            try (PreparedStatement stmt = connection.prepareStatement(
-                    "CREATE TABLE IF NOT EXISTS observability.user_events (" +
-                            "id UInt64, " +
-                            "timestamp DateTime DEFAULT now(), " +
-                            "event_type String, " +
-                            "user_id String, " +
-                            "user_name String, " +
-                            "user_email String, " +
-                            "details String" +
-                            ") ENGINE = MergeTree() ORDER BY timestamp")) {
-                stmt.execute();
-                log.info("Ensured observability.user_events table exists");
-            }
-
-            // Create product_events table
-            try (PreparedStatement stmt = connection.prepareStatement(
-                    "CREATE TABLE IF NOT EXISTS observability.product_events (" +
-                            "id UInt64, " +
-                            "timestamp DateTime DEFAULT now(), " +
-                            "event_type String, " +
-                            "product_id String, " +
-                            "product_name String, " +
-                            "product_price Float64, " +
-                            "details String" +
-                            ") ENGINE = MergeTree() ORDER BY timestamp")) {
-                stmt.execute();
-                log.info("Ensured observability.product_events table exists");
-            }
-
-            // Create application_logs table in default database
-            try (PreparedStatement stmt = connection.prepareStatement(
-                    "CREATE TABLE IF NOT EXISTS default.application_logs (" +
-                            "timestamp DateTime DEFAULT now(), " +
-                            "level String, " +
-                            "logger String, " +
-                            "message String, " +
-                            "thread String" +
-                            ") ENGINE = MergeTree() ORDER BY timestamp")) {
-                stmt.execute();
-                log.info("Ensured default.application_logs table exists");
-            }
-
-        } catch (SQLException e) {
-            log.error("Failed to create ClickHouse tables: {}", e.getMessage());
+    /**
+     * Resume the listeners once the buffer has room again.
+     */
+    @Scheduled(fixedDelayString = "${clickhouse.buffer.replay-ms:2000}")
+    public void resumeWhenWritable() {
+        if (paused && rowWriter.isWritable()) {
+            resumeListeners();
         }
     }
 
-    private void initializeCounters() {
-        // First ensure tables exist
-        ensureTablesExist();
-
-        try (PreparedStatement stmt = connection.prepareStatement("SELECT max(id) FROM observability.user_events")) {
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                userEventIdCounter.set(rs.getLong(1) + 1);
-            }
-        } catch (SQLException e) {
-            log.debug("Could not initialize user event counter: {}", e.getMessage());
-        }
-        try (PreparedStatement stmt = connection.prepareStatement("SELECT max(id) FROM observability.product_events")) {
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                productEventIdCounter.set(rs.getLong(1) + 1);
-            }
-        } catch (SQLException e) {
-            log.debug("Could not initialize product event counter: {}", e.getMessage());
+    /**
+     * Pause the listeners: ClickHouse is unavailable and the buffer is full.
+     * Records that failed meanwhile are delivered again by the error handler,
+     * none is dropped.
+     */
+    private void pauseListeners() {
+        if (paused) {
+            return;
         }
+        paused = true;
+        listenerRegistry.getListenerContainers().forEach(MessageListenerContainer::pause);
+        log.warn("ClickHouse unavailable and buffer full, listeners paused");
     }
 
-    @PreDestroy
-    public void cleanup() {
-        if (connection != null) {
-            try {
-                connection.close();
-                log.info("ClickHouse connection closed");
-            } catch (SQLException e) {
-                log.error("Error closing ClickHouse connection: {}", e.getMessage());
-            }
+    private void resumeListeners() {
+        if (!paused) {
+            return;
         }
+        paused = false;
+        listenerRegistry.getListenerContainers().forEach(MessageListenerContainer::resume);
+        log.info("Listeners resumed");
     }
 
-    @KafkaListener(topics = "application-logs", groupId = "kafka-consumer-service")
-    public void consumeLog(String logMessage) {
-        if (logMessage == null || logMessage.isBlank()) {
+    /**
+     * Consume application logs: binary log envelopes, decoded field by field,
+     * or text lines in the log pattern (compatibility mode).
+     */
+    @KafkaListener(topics = "application-logs", groupId = "kafka-consumer-service",
+            properties = "value.deserializer=org.apache.kafka.common.serialization.ByteArrayDeserializer")
+    public void consumeLog(byte[] value) {
+        if (value == null || value.length == 0) {
             return;
         }
 
         try {
-            LogEntry entry = parseLogEntry(logMessage);
-            if (entry != null) {
-                insertLog(entry);
+            ClickHouseRow.LogRow row;
+            if (LogEnvelopeDecoder.isEnvelope(value)) {
+                LogEnvelopeDecoder.Event event = envelopeDecoder.decode(value);
+                row = new ClickHouseRow.LogRow(event.localDateTime(), event.level(), event.logger(),
+                        event.message(), event.thread());
+            } else {
+                String logMessage = new String(value, StandardCharsets.UTF_8);
+                if (logMessage.isBlank()) {
+                    return;
+                }
+                row = parseLogEntry(logMessage);
             }
+            insertLog(row);
+        } catch (SinkUnavailableException e) {
+            pauseListeners();
+            throw e;
         } catch (Exception e) {
             log.debug("Failed to process log message: {}", e.getMessage());
         }
     }
 
     @KafkaListener(topics = "user-events", groupId = "kafka-consumer-service")
-    public void consumeUserEvent(String message) {
+    public void consumeUserEvent(String message, @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+            @Header(KafkaHeaders.OFFSET) long offset, @Header(KafkaHeaders.RECEIVED_TIMESTAMP) long timestamp) {
         if (message == null || message.isBlank())
             return;
 
         try {
+            long id = idGenerator.idOf(partition, offset, timestamp);
             if (message.startsWith("{")) {
-                JsonNode json = objectMapper.readTree(message);
-                insertUserEvent(
-                        json.path("event_type").asText("UNKNOWN"),
-                        json.path("user_id").asText(""),
-                        json.path("user_name").asText(""),
-                        json.path("user_email").asText(""));
+                String eventType = "UNKNOWN";
+                String userId = "";
+                String userName = "";
+                String userEmail = "";
+                try (JsonParser parser = jsonFactory.createParser(message)) {
+                    parser.nextToken();
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = parser.currentName();
+                        parser.nextToken();
+                        switch (field) {
+                            case "event_type" -> eventType = asText(parser, "UNKNOWN");
+                            case "user_id" -> userId = asText(parser, "");
+                            case "user_name" -> userName = asText(parser, "");
+                            case "user_email" -> userEmail = asText(parser, "");
+                            default -> parser.skipChildren();
+                        }
+                    }
+                }
+                insertUserEvent(id, eventType, userId, userName, userEmail, message);
             } else {
                 String eventType = message.contains("created") ? "USER_CREATED" : "USER_EVENT";
                 String userId = message.replaceAll(".*:\\s*", "").trim();
-                insertUserEvent(eventType, userId, "", "");
+                insertUserEvent(id, eventType, userId, "", "", message);
             }
-            logToClickHouse("INFO", "fr.umontpellier.observability.events.user", message, "kafka-consumer");
             log.debug("Processed user event: {}", message);
+        } catch (SinkUnavailableException e) {
+            pauseListeners();
+            throw e;
         } catch (Exception e) {
             log.debug("Failed to process user event: {}", e.getMessage());
         }
     }
 
     @KafkaListener(topics = "product-events", groupId = "kafka-consumer-service")
-    public void consumeProductEvent(String message) {
+    public void consumeProductEvent(String message, @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+            @Header(KafkaHeaders.OFFSET) long offset, @Header(KafkaHeaders.RECEIVED_TIMESTAMP) long timestamp) {
         if (message == null || message.isBlank())
             return;
 
         try {
+            long id = idGenerator.idOf(partition, offset, timestamp);
             if (message.startsWith("{")) {
-                JsonNode json = objectMapper.readTree(message);
-                insertProductEvent(
-                        json.path("event_type").asText("UNKNOWN"),
-                        json.path("product_id").asText(""),
-                        json.path("product_name").asText(""),
-                        json.path("product_price").asDouble(0.0));
+                String eventType = "UNKNOWN";
+                String productId = "";
+                String productName = "";
+                double productPrice = 0.0;
+                try (JsonParser parser = jsonFactory.createParser(message)) {
+                    parser.nextToken();
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = parser.currentName();
+                        parser.nextToken();
+                        switch (field) {
+                            case "event_type" -> eventType = asText(parser, "UNKNOWN");
+                            case "product_id" -> productId = asText(parser, "");
+                            case "product_name" -> productName = asText(parser, "");
+                            case "product_price" -> productPrice = asDouble(parser);
+                            default -> parser.skipChildren();
+                        }
+                    }
+                }
+                insertProductEvent(id, eventType, productId, productName, productPrice, message);
             } else {
                 String eventType = "PRODUCT_EVENT";
                 if (message.contains("added"))
@@ -273,51 +215,84 @@ public class LogConsumerService {
                 else if (message.contains("deleted"))
                     eventType = "PRODUCT_DELETED";
                 String productId = message.replaceAll(".*:\\s*", "").trim();
-                insertProductEvent(eventType, productId, "", 0.0);
+                insertProductEvent(id, eventType, productId, "", 0.0, message);
             }
-            logToClickHouse("INFO", "fr.umontpellier.observability.events.product", message, "kafka-consumer");
             log.debug("Processed product event: {}", message);
+        } catch (SinkUnavailableException e) {
+            pauseListeners();
+            throw e;
         } catch (Exception e) {
             log.debug("Failed to process product event: {}", e.getMessage());
         }
     }
 
-    private void insertUserEvent(String eventType, String userId, String userName, String userEmail) {
-        if (!isConnectionValid()) {
-            log.debug("ClickHouse connection not available, skipping user event insert");
-            return;
+    /**
+     * Read the current value as JsonNode.asText(defaultValue) would.
+     */
+    private static String asText(JsonParser parser, String defaultValue) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getNumberValue().toString();
         }
+        if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return Double.toString(parser.getDoubleValue());
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            return defaultValue;
+        }
+        if (token.isScalarValue()) {
+            return token.asString();
+        }
+        parser.skipChildren();
+        return "";
+    }
 
-        String sql = "INSERT INTO observability.user_events (id, timestamp, event_type, user_id, user_name, user_email, details) VALUES (?, now(), ?, ?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setLong(1, userEventIdCounter.getAndIncrement());
-            stmt.setString(2, eventType);
-            stmt.setString(3, userId != null ? userId : "");
-            stmt.setString(4, userName != null ? userName : "");
-            stmt.setString(5, userEmail != null ? userEmail : "");
-            stmt.setString(6, "");
-            stmt.executeUpdate();
+    /**
+     * Read the current value as JsonNode.asDouble(0.0) would.
+     */
+    private static double asDouble(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token.isNumeric()) {
+            return parser.getDoubleValue();
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            return NumberInput.parseAsDouble(parser.getText(), 0.0);
+        }
+        parser.skipChildren();
+        return token == JsonToken.VALUE_TRUE ? 1.0 : 0.0;
+    }
+
+    /**
+     * Insert a user event with its log line, together so that a redelivered
+     * record does not insert the event twice.
+     */
+    private void insertUserEvent(long id, String eventType, String userId, String userName, String userEmail,
+            String message) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            rowWriter.write(new ClickHouseRow.UserEventRow(id, now, eventType, userId, userName, userEmail),
+                    new ClickHouseRow.LogRow(now, "INFO", "fr.umontpellier.observability.events.user", message,
+                            "kafka-consumer"));
             log.debug("Inserted user event: type={}, userId={}", eventType, userId);
         } catch (SQLException e) {
             log.warn("Failed to insert user event: {}", e.getMessage());
         }
     }
 
-    private void insertProductEvent(String eventType, String productId, String productName, double price) {
-        if (!isConnectionValid()) {
-            log.debug("ClickHouse connection not available, skipping product event insert");
-            return;
-        }
-
-        String sql = "INSERT INTO observability.product_events (id, timestamp, event_type, product_id, product_name, product_price, details) VALUES (?, now(), ?, ?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setLong(1, productEventIdCounter.getAndIncrement());
-            stmt.setString(2, eventType);
-            stmt.setString(3, productId != null ? productId : "");
-            stmt.setString(4, productName != null ? productName : "");
-            stmt.setDouble(5, price);
-            stmt.setString(6, "");
-            stmt.executeUpdate();
+    /**
+     * Insert a product event with its log line, together so that a
+     * redelivered record does not insert the event twice.
+     */
+    private void insertProductEvent(long id, String eventType, String productId, String productName,
+            double price, String message) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            rowWriter.write(new ClickHouseRow.ProductEventRow(id, now, eventType, productId, productName, price),
+                    new ClickHouseRow.LogRow(now, "INFO", "fr.umontpellier.observability.events.product", message,
+                            "kafka-consumer"));
             log.debug("Inserted product event: type={}, productId={}", eventType, productId);
         } catch (SQLException e) {
             log.warn("Failed to insert product event: {}", e.getMessage());
@@ -333,11 +308,10 @@ public class LogConsumerService {
     }
 
     public void logToClickHouse(String level, String logger, String message, String thread) {
-        LogEntry entry = new LogEntry(LocalDateTime.now(), level, logger, message, thread);
-        insertLog(entry);
+        insertLog(new ClickHouseRow.LogRow(LocalDateTime.now(), level, logger, message, thread));
     }
 
-    private LogEntry parseLogEntry(String logMessage) {
+    private ClickHouseRow.LogRow parseLogEntry(String logMessage) {
         Matcher matcher = LOG_PATTERN.matcher(logMessage.trim());
 
         if (matcher.matches()) {
@@ -354,32 +328,17 @@ public class LogConsumerService {
                 dateTime = LocalDateTime.now();
             }
 
-            return new LogEntry(dateTime, level, logger, message, thread);
+            return new ClickHouseRow.LogRow(dateTime, level, logger, message, thread);
         }
 
-        return new LogEntry(LocalDateTime.now(), "INFO", "unknown", logMessage, "unknown");
+        return new ClickHouseRow.LogRow(LocalDateTime.now(), "INFO", "unknown", logMessage, "unknown");
     }
 
-    private void insertLog(LogEntry entry) {
-        if (!isConnectionValid()) {
-            log.debug("ClickHouse connection not available, skipping log insert");
-            return;
-        }
-
-        String sql = "INSERT INTO default.application_logs (timestamp, level, logger, message, thread) VALUES (?, ?, ?, ?, ?)";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setObject(1, java.sql.Timestamp.valueOf(entry.timestamp()));
-            stmt.setString(2, entry.level());
-            stmt.setString(3, entry.logger());
-            stmt.setString(4, entry.message());
-            stmt.setString(5, entry.thread());
-            stmt.executeUpdate();
+    private void insertLog(ClickHouseRow.LogRow row) {
+        try {
+            rowWriter.write(row);
         } catch (SQLException e) {
             log.debug("Failed to insert log into ClickHouse: {}", e.getMessage());
         }
     }
-
-    private record LogEntry(LocalDateTime timestamp, String level, String logger, String message, String thread) {
-    }
 }
@@ -0,0 +1,124 @@
+package fr.umontpellier.kafkaconsumer.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decoder of the binary log envelopes written by InjectLog4J's LogEnvelope
+ * (KafkaOutput and KafkaActionRecorder in binary encoding, LogEnvelopeLayout).
+ *
+ * <p>
+ * Layout, version 1: magic byte 0xC1 (never found in UTF-8 text), version
+ * byte, timestamp in epoch microseconds as an unsigned varint, level code
+ * byte, then logger, rule id, thread and message as varint-length-prefixed
+ * UTF-8. Later versions only append fields, which are ignored.
+ * </p>
+ *
+ * Logger, rule and thread names repeat across records: they are interned so
+ * that the consumer keeps one String per name.
+ */
+public final class LogEnvelopeDecoder {
+
+    public static final byte MAGIC = (byte) 0xC1;
+
+    private static final String[] LEVELS = { "UNKNOWN", "TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL" };
+    private static final int MAX_INTERNED = 4096;
+
+    private final Map<String, String> interned = new ConcurrentHashMap<>();
+
+    /**
+     * A decoded log event.
+     */
+    public record Event(long timestampMicros, String level, String logger, String rule, String thread,
+            String message) {
+
+        public LocalDateTime localDateTime() {
+            Instant instant = Instant.ofEpochSecond(Math.floorDiv(timestampMicros, 1_000_000L),
+                    Math.floorMod(timestampMicros, 1_000_000L) * 1_000L);
+            return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+        }
+    }
+
+    /**
+     * Check whether a record value is an envelope rather than a text line.
+     */
+    public static boolean isEnvelope(byte[] value) {
+        return value != null && value.length >= 2 && value[0] == MAGIC;
+    }
+
+    /**
+     * Decode an envelope.
+     *
+     * @throws IllegalArgumentException if the value is not a well-formed
+     *                                  envelope
+     */
+    public Event decode(byte[] value) {
+        if (!isEnvelope(value)) {
+            throw new IllegalArgumentException("Not a log envelope");
+        }
+        Input in = new Input(value, 2);
+        long timestampMicros = in.readVarLong();
+        int levelCode = in.readByte();
+        String level = levelCode < LEVELS.length ? LEVELS[levelCode] : LEVELS[0];
+        String logger = intern(in.readString());
+        String rule = intern(in.readString());
+        String thread = intern(in.readString());
+        String message = in.readString();
+        return new Event(timestampMicros, level, logger, rule, thread, message);
+    }
+
+    private String intern(String name) {
+        String known = interned.get(name);
+        if (known != null) {
+            return known;
+        }
+        if (interned.size() < MAX_INTERNED) {
+            known = interned.putIfAbsent(name, name);
+        }
+        return known != null ? known : name;
+    }
+
+    private static final class Input {
+
+        private final byte[] buffer;
+        private int position;
+
+        Input(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        int readByte() {
+            if (position >= buffer.length) {
+                throw new IllegalArgumentException("Truncated log envelope");
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in log envelope");
+        }
+
+        String readString() {
+            long length = readVarLong();
+            if (length < 0 || length > buffer.length - position) {
+                throw new IllegalArgumentException("Truncated log envelope");
+            }
+            String value = new String(buffer, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+    }
+}
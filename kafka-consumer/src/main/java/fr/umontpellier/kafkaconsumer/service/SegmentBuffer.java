@@ -0,0 +1,409 @@
+package fr.umontpellier.kafkaconsumer.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Disk-backed FIFO of records, made of append-only segment files.
+ *
+ * Each record is framed as its length, its CRC32 and its bytes, and forced
+ * to disk before {@link #append} returns, so a record the caller was told is
+ * buffered survives a crash. Appends go to the newest segment, rolled at
+ * {@code clickhouse.buffer.segment-size}; the buffer refuses appends beyond
+ * {@code clickhouse.buffer.max-size}. {@link #replay} hands the oldest
+ * records over in batches and deletes each segment once fully replayed. A
+ * torn or corrupt frame ends its segment.
+ *
+ * The replay position in the oldest segment is written to
+ * {@code replay.pos} and forced to disk after each handled batch, so a
+ * restart resumes after the last batch handled. Replay is at least once:
+ * the records of a batch whose handler succeeded are replayed again if the
+ * process dies before the position is written.
+ */
+@Component
+@Slf4j
+public class SegmentBuffer {
+
+    /**
+     * Handles a batch of replayed records.
+     */
+    @FunctionalInterface
+    public interface BatchHandler {
+
+        /**
+         * @return true if the batch was handled and can be discarded, false
+         *         to keep it for a later replay
+         */
+        boolean handle(List<byte[]> records);
+    }
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String POSITION_FILE = "replay.pos";
+    private static final int FRAME_HEADER = 8;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long segmentBytes;
+    private final MeterRegistry meterRegistry;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Segment> sealed = new ArrayDeque<>();
+    private Segment active;
+    private long nextSequence;
+    private long totalBytes;
+    // Position of the next record to replay in the oldest sealed segment,
+    // kept in the position file
+    private long replayPosition;
+
+    public SegmentBuffer(@Value("${clickhouse.buffer.dir:./buffer}") Path directory,
+            @Value("${clickhouse.buffer.max-size:512MB}") DataSize maxSize,
+            @Value("${clickhouse.buffer.segment-size:16MB}") DataSize segmentSize,
+            MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.maxBytes = maxSize.toBytes();
+        this.segmentBytes = Math.min(segmentSize.toBytes(), maxBytes);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Pick up the segments left by a previous run and register the metrics.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(SegmentBuffer::isSegment).sorted().toList()) {
+                Segment segment = new Segment(file, sequenceOf(file), Files.size(file),
+                        Files.getLastModifiedTime(file).toMillis());
+                sealed.add(segment);
+                totalBytes += segment.size;
+                nextSequence = segment.sequence + 1;
+            }
+        }
+        if (!sealed.isEmpty()) {
+            replayPosition = readPosition(sealed.peekFirst());
+            log.info("Found {} buffered segment(s), {} bytes, to replay into ClickHouse from position {}",
+                    sealed.size(), totalBytes, replayPosition);
+        }
+        Gauge.builder("clickhouse.buffer.bytes", this, SegmentBuffer::getBufferedBytes)
+                .description("Bytes of rows buffered on disk while ClickHouse is unavailable")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        TimeGauge.builder("clickhouse.buffer.age", this, TimeUnit.MILLISECONDS, SegmentBuffer::getOldestAgeMillis)
+                .description("Age of the oldest buffered segment")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Append a record.
+     *
+     * @return false if the buffer is full or cannot be written
+     */
+    public boolean append(byte[] record) {
+        return append(List.of(record));
+    }
+
+    /**
+     * Append records all together: either all of them are buffered, in
+     * order and in the same segment, or none is.
+     *
+     * @return false if the buffer cannot take them all or cannot be written
+     */
+    public boolean append(List<byte[]> records) {
+        int frameBytes = 0;
+        for (byte[] record : records) {
+            frameBytes += FRAME_HEADER + record.length;
+        }
+        ByteBuffer frames = ByteBuffer.allocate(frameBytes);
+        for (byte[] record : records) {
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            frames.putInt(record.length).putInt((int) crc.getValue()).put(record);
+        }
+        frames.flip();
+
+        lock.lock();
+        try {
+            if (totalBytes + frameBytes > maxBytes) {
+                return false;
+            }
+            if (active == null || active.size + frameBytes > segmentBytes && active.size > 0) {
+                roll();
+            }
+            long start = active.size;
+            try {
+                while (frames.hasRemaining()) {
+                    active.channel.write(frames);
+                }
+                active.channel.force(false);
+            } catch (IOException e) {
+                // Do not leave part of the records behind
+                active.channel.truncate(start);
+                throw e;
+            }
+            active.size += frameBytes;
+            totalBytes += frameBytes;
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to write to the ClickHouse buffer in {}: {}", directory, e.getMessage());
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replay up to maxRecords of the oldest records. The active segment is
+     * sealed first when it holds the only buffered records.
+     *
+     * @return the number of records handled, 0 if the buffer is empty or the
+     *         handler refused the batch
+     */
+    public int replay(int maxRecords, BatchHandler handler) {
+        Segment head;
+        long position;
+        lock.lock();
+        try {
+            if (sealed.isEmpty() && active != null && active.size > 0) {
+                seal();
+            }
+            head = sealed.peekFirst();
+            position = replayPosition;
+        } catch (IOException e) {
+            log.error("Failed to seal the active ClickHouse buffer segment: {}", e.getMessage());
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+        if (head == null) {
+            return 0;
+        }
+
+        List<byte[]> records = new ArrayList<>();
+        long end;
+        try (FileChannel channel = FileChannel.open(head.file, StandardOpenOption.READ)) {
+            end = read(channel, position, maxRecords, records);
+        } catch (IOException e) {
+            log.error("Failed to read ClickHouse buffer segment {}: {}", head.file, e.getMessage());
+            return 0;
+        }
+        if (!records.isEmpty() && !handler.handle(records)) {
+            return 0;
+        }
+
+        lock.lock();
+        try {
+            if (end < 0) {
+                sealed.removeFirst();
+                totalBytes -= head.size;
+                replayPosition = 0;
+                Files.deleteIfExists(head.file);
+            } else {
+                replayPosition = end;
+                writePosition(head, end);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to record the replay of segment {}: {}", head.file, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+        return records.size();
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return totalBytes == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check whether less than a tenth of the buffer is free.
+     */
+    public boolean isNearlyFull() {
+        return getBufferedBytes() > maxBytes - maxBytes / 10;
+    }
+
+    public long getBufferedBytes() {
+        lock.lock();
+        try {
+            return totalBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the age of the oldest buffered segment, 0 if the buffer is empty.
+     */
+    public long getOldestAgeMillis() {
+        lock.lock();
+        try {
+            Segment oldest = !sealed.isEmpty() ? sealed.peekFirst() : active;
+            if (oldest == null || oldest.size == 0) {
+                return 0;
+            }
+            return System.currentTimeMillis() - oldest.createdAtMillis;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.lock();
+        try {
+            if (active != null) {
+                seal();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close the active ClickHouse buffer segment: {}", e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read up to maxRecords frames from position.
+     *
+     * @return the position after the last frame read, or -1 at the end of
+     *         the segment
+     */
+    private long read(FileChannel channel, long position, int maxRecords, List<byte[]> records)
+            throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+        while (records.size() < maxRecords) {
+            if (position + FRAME_HEADER > size) {
+                return -1;
+            }
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || position + FRAME_HEADER + length > size) {
+                log.warn("Torn record at {} in {}, dropping the rest of the segment", position, channel);
+                return -1;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length);
+            channel.read(record, position + FRAME_HEADER);
+            CRC32 crc = new CRC32();
+            crc.update(record.array());
+            if ((int) crc.getValue() != checksum) {
+                log.warn("Corrupt record at {}, dropping the rest of the segment", position);
+                return -1;
+            }
+            records.add(record.array());
+            position += FRAME_HEADER + length;
+        }
+        return position >= size ? -1 : position;
+    }
+
+    /**
+     * Read the replay position saved for a segment, 0 if none was saved for
+     * it or the saved one is not within it.
+     */
+    private long readPosition(Segment segment) throws IOException {
+        Path file = directory.resolve(POSITION_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer saved = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (saved.remaining() != 16 || saved.getLong() != segment.sequence) {
+            return 0;
+        }
+        long position = saved.getLong();
+        if (position < 0 || position > segment.size) {
+            log.warn("Ignoring replay position {} beyond segment {}", position, segment.file);
+            return 0;
+        }
+        return position;
+    }
+
+    /**
+     * Save the replay position in a segment, forced to disk.
+     */
+    private void writePosition(Segment segment, long position) throws IOException {
+        ByteBuffer saved = ByteBuffer.allocate(16).putLong(segment.sequence).putLong(position).flip();
+        try (FileChannel channel = FileChannel.open(directory.resolve(POSITION_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            while (saved.hasRemaining()) {
+                channel.write(saved, saved.position());
+            }
+            channel.force(false);
+        }
+    }
+
+    private void roll() throws IOException {
+        if (active != null) {
+            seal();
+        }
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX));
+        active = new Segment(file, nextSequence++, 0, System.currentTimeMillis());
+        active.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private void seal() throws IOException {
+        active.channel.close();
+        active.channel = null;
+        if (active.size > 0) {
+            sealed.addLast(active);
+        } else {
+            Files.deleteIfExists(active.file);
+        }
+        active = null;
+    }
+
+    private static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static final class Segment {
+
+        private final Path file;
+        private final long sequence;
+        private final long createdAtMillis;
+        private long size;
+        private FileChannel channel;
+
+        Segment(Path file, long sequence, long size, long createdAtMillis) {
+            this.file = file;
+            this.sequence = sequence;
+            this.size = size;
+            this.createdAtMillis = createdAtMillis;
+        }
+    }
+}
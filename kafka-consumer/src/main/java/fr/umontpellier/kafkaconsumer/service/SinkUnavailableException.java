@@ -0,0 +1,18 @@
+package fr.umontpellier.kafkaconsumer.service;
+
+/**
+ * Thrown when a record cannot be written because ClickHouse is unavailable
+ * (and, from {@link ClickHouseRowWriter}, the disk buffer is full).
+ * The record is not lost: the listener container's error handler seeks
+ * back to it and delivers it again once the sink is back.
+ */
+public class SinkUnavailableException extends RuntimeException {
+
+    public SinkUnavailableException(String message) {
+        super(message);
+    }
+
+    public SinkUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
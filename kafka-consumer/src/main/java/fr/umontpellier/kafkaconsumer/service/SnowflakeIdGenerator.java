@@ -0,0 +1,68 @@
+package fr.umontpellier.kafkaconsumer.service;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Time-ordered 64-bit event ids, snowflake style, derived from the consumed
+ * record: 41 bits of the record's timestamp in milliseconds since
+ * 2024-01-01T00:00:00Z, 10 bits of its partition and 12 bits of its offset,
+ * the sign bit left clear.
+ *
+ * <p>
+ * An id depends on nothing but the record, so a record delivered again
+ * after a rebalance, a seek back or a retry gets the same id, whichever
+ * replica consumes it, and nothing has to be configured when scaling out.
+ * Records of a partition have consecutive offsets, so two of them only get
+ * the same id if more than 4096 share a millisecond. Topics must have at
+ * most 1024 partitions; ids of different topics go to different tables.
+ * </p>
+ *
+ * Within a partition, ids follow the record timestamps; within a
+ * millisecond they follow the offsets, except where the offset's low 12
+ * bits wrap around.
+ */
+@Component
+public class SnowflakeIdGenerator {
+
+    public static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+    private static final int PARTITION_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_PARTITION = (1 << PARTITION_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final long MAX_MILLIS = (1L << (63 - PARTITION_BITS - SEQUENCE_BITS)) - 1;
+
+    /**
+     * Get the id of a record.
+     *
+     * @param partition       the record's partition, 0 to 1023
+     * @param offset          the record's offset
+     * @param timestampMillis the record's timestamp, in milliseconds since
+     *                        the Unix epoch
+     */
+    public long idOf(int partition, long offset, long timestampMillis) {
+        if (partition < 0 || partition > MAX_PARTITION) {
+            throw new IllegalArgumentException("Partition " + partition + " is not between 0 and " + MAX_PARTITION);
+        }
+        // Records without a timestamp (-1) or older than the epoch count from it
+        long millis = Math.min(Math.max(timestampMillis - EPOCH_MILLIS, 0), MAX_MILLIS);
+        return (millis << (PARTITION_BITS + SEQUENCE_BITS)) | ((long) partition << SEQUENCE_BITS)
+                | (offset & SEQUENCE_MASK);
+    }
+
+    /**
+     * Get the timestamp of the record an id was derived from.
+     */
+    public static Instant timestampOf(long id) {
+        return Instant.ofEpochMilli((id >>> (PARTITION_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS);
+    }
+
+    /**
+     * Get the partition of the record an id was derived from.
+     */
+    public static int partitionOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_PARTITION);
+    }
+}
@@ -0,0 +1,235 @@
+package fr.umontpellier.kafkaconsumer.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ClickHouseConnectionPool availability transitions, against
+ * a JDBC driver handing out mock connections.
+ */
+@DisplayName("ClickHouseConnectionPool Tests")
+class ClickHouseConnectionPoolTest {
+
+    private static final String URL = "jdbc:pool-test:clickhouse";
+
+    private FakeDriver driver;
+    private ClickHouseConnectionPool pool;
+    private final List<Boolean> transitions = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        driver = new FakeDriver();
+        DriverManager.registerDriver(driver);
+        pool = new ClickHouseConnectionPool(URL, "default", "", 2, 50);
+        pool.addAvailabilityListener(transitions::add);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        pool.close();
+        DriverManager.deregisterDriver(driver);
+    }
+
+    @Test
+    @DisplayName("Should fail fast and announce unavailability once before the first connection")
+    void shouldFailFastBeforeFirstConnection() {
+        assertThrows(SinkUnavailableException.class, () -> pool.execute(connection -> 1));
+        assertThrows(SinkUnavailableException.class, () -> pool.execute(connection -> 1));
+
+        assertFalse(pool.isAvailable());
+        assertEquals(List.of(false), transitions);
+        assertEquals(0, driver.connects.get());
+    }
+
+    @Test
+    @DisplayName("Should run the initializer and announce availability when the health check connects")
+    void shouldConnectOnHealthCheck() throws SQLException {
+        AtomicInteger initialized = new AtomicInteger();
+        pool.setInitializer(connection -> {
+            initialized.incrementAndGet();
+            return null;
+        });
+
+        pool.checkHealth();
+
+        assertTrue(pool.isAvailable());
+        assertEquals(1, initialized.get());
+        assertEquals(List.of(true), transitions);
+        assertEquals("ok", pool.execute(connection -> "ok"));
+        assertEquals(1, pool.getOpenConnections());
+    }
+
+    @Test
+    @DisplayName("Should stay unavailable without repeating the announcement while the server is down")
+    void shouldStayUnavailableWhileServerDown() {
+        driver.up = false;
+
+        pool.checkHealth();
+        pool.checkHealth();
+
+        assertFalse(pool.isAvailable());
+        assertEquals(List.of(false), transitions);
+    }
+
+    @Test
+    @DisplayName("Should stay unavailable when the initializer fails")
+    void shouldStayUnavailableWhenInitializerFails() {
+        pool.setInitializer(connection -> {
+            throw new SQLException("schema failed");
+        });
+
+        pool.checkHealth();
+
+        assertFalse(pool.isAvailable());
+        assertEquals(List.of(false), transitions);
+        assertEquals(0, pool.getOpenConnections());
+    }
+
+    @Test
+    @DisplayName("Should become unavailable when a connection is lost, and available again on reconnect")
+    void shouldRecoverFromLostConnection() throws SQLException {
+        pool.checkHealth();
+        driver.up = false;
+
+        SinkUnavailableException e = assertThrows(SinkUnavailableException.class,
+                () -> pool.execute(connection -> {
+                    throw new SQLException("connection reset");
+                }));
+
+        assertNotNull(e.getCause());
+        assertFalse(pool.isAvailable());
+        assertEquals(0, pool.getOpenConnections());
+        assertThrows(SinkUnavailableException.class, () -> pool.execute(connection -> 1));
+
+        driver.up = true;
+        pool.checkHealth();
+
+        assertTrue(pool.isAvailable());
+        assertEquals(List.of(true, false, true), transitions);
+        assertEquals("ok", pool.execute(connection -> "ok"));
+    }
+
+    @Test
+    @DisplayName("Should rethrow statement errors on a healthy connection and stay available")
+    void shouldRethrowStatementErrors() throws SQLException {
+        pool.checkHealth();
+
+        SQLException e = assertThrows(SQLException.class, () -> pool.execute(connection -> {
+            throw new SQLException("Syntax error");
+        }));
+
+        assertTrue(pool.isAvailable());
+        assertEquals(List.of(true), transitions);
+        assertEquals(1, pool.getIdleConnections());
+    }
+
+    @Test
+    @DisplayName("Should become unavailable when the health check finds every connection dead and the server down")
+    void shouldDetectDeadServerOnHealthCheck() throws SQLException {
+        pool.checkHealth();
+        driver.up = false;
+
+        pool.checkHealth();
+
+        assertFalse(pool.isAvailable());
+        assertEquals(List.of(true, false), transitions);
+        assertEquals(0, pool.getOpenConnections());
+    }
+
+    @Test
+    @DisplayName("Should replace dead connections and stay available when the server is up")
+    void shouldReplaceDeadConnections() throws SQLException {
+        pool.checkHealth();
+        driver.opened.forEach(FakeDriver::kill);
+
+        pool.checkHealth();
+
+        assertTrue(pool.isAvailable());
+        assertEquals(List.of(true), transitions);
+        assertEquals(1, pool.getOpenConnections());
+        assertEquals(1, pool.getIdleConnections());
+        assertEquals(2, driver.connects.get());
+    }
+
+    /**
+     * Hands out mock connections, valid while the server is up and until
+     * killed.
+     */
+    private static final class FakeDriver implements Driver {
+
+        private volatile boolean up = true;
+        private final AtomicInteger connects = new AtomicInteger();
+        private final List<Connection> opened = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            if (!up) {
+                throw new SQLException("Connection refused");
+            }
+            connects.incrementAndGet();
+            Connection connection = mock(Connection.class);
+            when(connection.isValid(anyInt())).thenAnswer(invocation -> up);
+            opened.add(connection);
+            return connection;
+        }
+
+        static void kill(Connection connection) {
+            try {
+                when(connection.isValid(anyInt())).thenReturn(false);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith(URL);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package fr.umontpellier.kafkaconsumer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ClickHouseRowWriter: the rows of a record are inserted,
+ * buffered or refused so that a redelivered record is not inserted twice.
+ */
+@DisplayName("ClickHouseRowWriter Tests")
+class ClickHouseRowWriterTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2026, 1, 2, 3, 4, 5);
+    private static final ClickHouseRow EVENT = new ClickHouseRow.UserEventRow(1L, NOW, "USER_CREATED", "42",
+            "Ada", "ada@example.com");
+    private static final ClickHouseRow LOG = new ClickHouseRow.LogRow(NOW, "INFO",
+            "fr.umontpellier.observability.events.user", "{}", "kafka-consumer");
+
+    @TempDir
+    Path directory;
+
+    private ClickHouseConnectionPool pool;
+    private Connection connection;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = mock(ClickHouseConnectionPool.class);
+        connection = mock(Connection.class);
+        registry = new SimpleMeterRegistry();
+        when(pool.execute(any())).thenAnswer(invocation -> {
+            ClickHouseConnectionPool.ConnectionCallback<?> callback = invocation.getArgument(0);
+            try {
+                return callback.doInConnection(connection);
+            } catch (SQLException e) {
+                throw new SinkUnavailableException("lost", e);
+            }
+        });
+    }
+
+    private ClickHouseRowWriter writer(DataSize maxSize) throws Exception {
+        SegmentBuffer buffer = new SegmentBuffer(directory, maxSize, maxSize, registry);
+        buffer.open();
+        return new ClickHouseRowWriter(pool, buffer, 100, registry);
+    }
+
+    private double count(String operation) {
+        return registry.get("clickhouse.buffer.rows").tag("operation", operation).counter().count();
+    }
+
+    @Test
+    @DisplayName("Should insert all the rows of a record with one connection")
+    void shouldInsertAllRows() throws Exception {
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        when(connection.prepareStatement(any())).thenReturn(stmt);
+
+        writer(DataSize.ofMegabytes(1)).write(EVENT, LOG);
+
+        verify(pool, times(1)).execute(any());
+        verify(stmt, times(2)).executeUpdate();
+        assertEquals(0, count("buffered"));
+    }
+
+    @Test
+    @DisplayName("Should buffer only the rows not inserted when the connection is lost midway")
+    void shouldBufferRemainingRows() throws Exception {
+        PreparedStatement eventStmt = mock(PreparedStatement.class);
+        when(connection.prepareStatement(contains("user_events"))).thenReturn(eventStmt);
+        when(connection.prepareStatement(contains("application_logs"))).thenThrow(new SQLException("reset"));
+        ClickHouseRowWriter writer = writer(DataSize.ofMegabytes(1));
+
+        writer.write(EVENT, LOG);
+
+        verify(eventStmt, times(1)).executeUpdate();
+        assertEquals(1, count("buffered"));
+        PreparedStatement replayStmt = mock(PreparedStatement.class);
+        when(connection.prepareStatement(any())).thenReturn(replayStmt);
+        when(pool.isAvailable()).thenReturn(true);
+        clearInvocations(connection);
+        writer.replay();
+        verify(connection).prepareStatement(contains("application_logs"));
+        verify(connection, never()).prepareStatement(contains("user_events"));
+        verify(replayStmt, times(1)).addBatch();
+    }
+
+    @Test
+    @DisplayName("Should refuse a record none of whose rows fits in a full buffer, so it is delivered again")
+    void shouldRefuseRecordWhenNothingWritten() throws Exception {
+        when(connection.prepareStatement(any())).thenThrow(new SQLException("reset"));
+        ClickHouseRowWriter writer = writer(DataSize.ofBytes(16));
+
+        assertThrows(SinkUnavailableException.class, () -> writer.write(EVENT, LOG));
+        assertEquals(0, count("buffered"));
+    }
+
+    @Test
+    @DisplayName("Should drop the rest of a partly written record rather than have it delivered again")
+    void shouldDropRestOfPartlyWrittenRecord() throws Exception {
+        PreparedStatement eventStmt = mock(PreparedStatement.class);
+        when(connection.prepareStatement(contains("user_events"))).thenReturn(eventStmt);
+        when(connection.prepareStatement(contains("application_logs"))).thenThrow(new SQLException("reset"));
+        ClickHouseRowWriter writer = writer(DataSize.ofBytes(16));
+
+        assertDoesNotThrow(() -> writer.write(EVENT, LOG));
+        verify(eventStmt, times(1)).executeUpdate();
+        assertEquals(1, count("dropped"));
+    }
+
+    @Test
+    @DisplayName("Should replay a rejected batch in halves and drop only the rejected row")
+    void shouldDropOnlyRejectedRows() throws Exception {
+        when(connection.prepareStatement(any())).thenThrow(new SQLException("reset"));
+        ClickHouseRowWriter writer = writer(DataSize.ofMegabytes(1));
+        for (int user = 1; user <= 4; user++) {
+            writer.write(new ClickHouseRow.UserEventRow(user, NOW, "USER_CREATED", String.valueOf(user),
+                    "User", "user@example.com"));
+        }
+        assertEquals(4, count("buffered"));
+
+        // ClickHouse rejects any batch holding user 3's row
+        List<String> bound = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        doAnswer(invocation -> bound.add(invocation.getArgument(1))).when(stmt).setString(eq(4), anyString());
+        doAnswer(invocation -> batch.add(bound.remove(0))).when(stmt).addBatch();
+        when(stmt.executeBatch()).thenAnswer(invocation -> {
+            boolean rejected = batch.contains("3");
+            batch.clear();
+            if (rejected) {
+                throw new SQLException("Cannot parse input");
+            }
+            return new int[0];
+        });
+        reset(connection);
+        when(connection.prepareStatement(any())).thenReturn(stmt);
+        // A healthy server: rejections reach the writer as SQLExceptions
+        doAnswer(invocation -> {
+            ClickHouseConnectionPool.ConnectionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInConnection(connection);
+        }).when(pool).execute(any());
+        when(pool.isAvailable()).thenReturn(true);
+
+        writer.replay();
+
+        // [1 2 3 4] rejected, [1 2] inserted, [3 4] rejected, [3] dropped, [4] inserted
+        verify(stmt, times(5)).executeBatch();
+        assertEquals(3, count("replayed"));
+        assertEquals(1, count("dropped"));
+    }
+}
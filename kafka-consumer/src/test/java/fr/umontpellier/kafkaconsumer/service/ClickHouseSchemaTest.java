@@ -0,0 +1,217 @@
+package fr.umontpellier.kafkaconsumer.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ClickHouseSchema, against a mock connection keeping track
+ * of the tables.
+ */
+@DisplayName("ClickHouseSchema Tests")
+class ClickHouseSchemaTest {
+
+    private static final String LOCK = "default.clickhouse_schema_lock";
+
+    private final List<String> statements = new ArrayList<>();
+    private final Set<String> tables = new HashSet<>();
+    private final Set<String> legacyTables = new HashSet<>();
+    private String failing = "-";
+
+    private Connection connection() throws SQLException {
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> statement(invocation.getArgument(0)));
+        return connection;
+    }
+
+    private PreparedStatement statement(String sql) throws SQLException {
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        List<String> params = new ArrayList<>();
+        doAnswer(invocation -> params.add(invocation.getArgument(1))).when(stmt).setString(anyInt(), anyString());
+        when(stmt.execute()).thenAnswer(invocation -> {
+            run(sql);
+            return false;
+        });
+        when(stmt.executeUpdate()).thenAnswer(invocation -> {
+            statements.add(sql);
+            return 1;
+        });
+        when(stmt.executeQuery()).thenAnswer(invocation -> query(sql, params));
+        return stmt;
+    }
+
+    private void run(String sql) throws SQLException {
+        String[] words = sql.split("[\\s(]+");
+        if (sql.startsWith(failing)) {
+            throw new SQLException("Code: 241. Memory limit exceeded. (MEMORY_LIMIT_EXCEEDED)");
+        } else if (sql.startsWith("CREATE TABLE " + LOCK)) {
+            if (!tables.add(LOCK)) {
+                throw new SQLException("Code: 57. Table " + LOCK + " already exists. (TABLE_ALREADY_EXISTS)");
+            }
+        } else if (sql.startsWith("CREATE TABLE IF NOT EXISTS") || sql.startsWith("CREATE MATERIALIZED VIEW")) {
+            tables.add(words[sql.startsWith("CREATE TABLE") ? 5 : 6]);
+        } else if (sql.startsWith("DROP TABLE IF EXISTS") || sql.startsWith("DROP VIEW IF EXISTS")) {
+            tables.remove(words[4]);
+        } else if (sql.startsWith("EXCHANGE TABLES")) {
+            legacyTables.remove(words[2]);
+        }
+        statements.add(sql);
+    }
+
+    private ResultSet query(String sql, List<String> params) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        String table = params.size() == 2 ? params.get(0) + "." + params.get(1) : null;
+        if (sql.contains("partition_key")) {
+            when(rs.next()).thenReturn(tables.contains(table));
+            when(rs.getString(1)).thenReturn(legacyTables.contains(table) ? "" : "toYYYYMMDD(timestamp)");
+        } else if (sql.contains("count()")) {
+            when(rs.next()).thenReturn(true);
+            when(rs.getLong(1)).thenReturn(tables.contains(table) ? 1L : 0L);
+        } else if (sql.contains(LOCK)) {
+            when(rs.next()).thenReturn(true);
+            when(rs.getString(1)).thenReturn("1@other-replica");
+            when(rs.getString(2)).thenReturn("2026-01-01 00:00:00");
+        } else {
+            when(rs.next()).thenReturn(true);
+            when(rs.getString(1)).thenReturn("2026-01-02 03:04:05.123");
+        }
+        return rs;
+    }
+
+    private void givenLegacyTable(String table) {
+        tables.add(table);
+        legacyTables.add(table);
+    }
+
+    private boolean ran(String prefix) {
+        return statements.stream().anyMatch(sql -> sql.startsWith(prefix));
+    }
+
+    @Test
+    @DisplayName("Should create the tables and rollups of an empty database")
+    void shouldCreateTables() throws SQLException {
+        new ClickHouseSchema(false, Duration.ZERO).apply(connection());
+
+        assertTrue(tables.containsAll(Set.of("default.application_logs", "observability.user_events",
+                "observability.product_events", "default.application_logs_per_minute_mv")));
+        assertFalse(tables.contains(LOCK));
+    }
+
+    @Test
+    @DisplayName("Should leave legacy tables alone unless migrations are enabled")
+    void shouldNotMigrateByDefault() throws SQLException {
+        givenLegacyTable("observability.user_events");
+
+        new ClickHouseSchema(false, Duration.ZERO).apply(connection());
+
+        assertFalse(ran("CREATE TABLE IF NOT EXISTS observability.user_events_migrating"));
+        assertFalse(ran("EXCHANGE TABLES"));
+        assertTrue(legacyTables.contains("observability.user_events"));
+    }
+
+    @Test
+    @DisplayName("Should migrate legacy tables holding the schema lock, then release it")
+    void shouldMigrateUnderLock() throws SQLException {
+        givenLegacyTable("observability.user_events");
+
+        new ClickHouseSchema(true, Duration.ZERO).apply(connection());
+
+        assertTrue(ran("CREATE TABLE " + LOCK));
+        assertTrue(ran("EXCHANGE TABLES observability.user_events AND observability.user_events_migrating"));
+        assertTrue(legacyTables.isEmpty());
+        assertFalse(tables.contains(LOCK));
+    }
+
+    @Test
+    @DisplayName("Should copy the rows inserted during the migration after the exchange")
+    void shouldCopyRowsInsertedDuringMigration() throws SQLException {
+        givenLegacyTable("observability.user_events");
+
+        new ClickHouseSchema(true, Duration.ZERO).apply(connection());
+
+        int exchange = statements.indexOf("EXCHANGE TABLES observability.user_events AND "
+                + "observability.user_events_migrating");
+        String delta = statements.get(exchange + 2);
+        assertTrue(delta.startsWith("INSERT INTO observability.user_events ("), delta);
+        assertTrue(delta.endsWith("FROM observability.user_events_v1 "
+                + "WHERE timestamp > toDateTime64('2026-01-02 03:04:05.123', 3)"), delta);
+    }
+
+    @Test
+    @DisplayName("Should skip migrations while another replica holds the schema lock")
+    void shouldSkipMigrationWhenLocked() throws SQLException {
+        givenLegacyTable("observability.user_events");
+        tables.add(LOCK);
+
+        new ClickHouseSchema(true, Duration.ZERO).apply(connection());
+
+        assertFalse(ran("EXCHANGE TABLES"));
+        assertTrue(legacyTables.contains("observability.user_events"));
+        assertTrue(tables.contains(LOCK), "the other replica's lock must be left alone");
+    }
+
+    @Test
+    @DisplayName("Should count rows from the cutoff in new views and backfill the older ones once")
+    void shouldBackfillBeforeCutoff() throws SQLException {
+        tables.add("default.application_logs");
+
+        new ClickHouseSchema(false, Duration.ZERO).apply(connection());
+
+        String cutoff = "toDateTime64('2026-01-02 03:04:05.123', 3)";
+        List<String> views = statements.stream().filter(sql -> sql.startsWith("CREATE MATERIALIZED VIEW")).toList();
+        List<String> backfills = statements.stream().filter(sql -> sql.startsWith("INSERT INTO"))
+                .filter(sql -> !sql.contains(LOCK))
+                .toList();
+        assertEquals(3, views.size());
+        assertTrue(views.stream().allMatch(sql -> sql.contains("WHERE timestamp >= " + cutoff)));
+        assertEquals(3, backfills.size());
+        assertTrue(backfills.stream().allMatch(sql -> sql.contains("WHERE timestamp < " + cutoff)));
+        assertTrue(ran("CREATE TABLE " + LOCK));
+        assertFalse(tables.contains(LOCK));
+
+        statements.clear();
+        new ClickHouseSchema(false, Duration.ZERO).apply(connection());
+
+        assertFalse(ran("INSERT INTO"));
+        assertFalse(ran("CREATE TABLE " + LOCK));
+    }
+
+    @Test
+    @DisplayName("Should leave the views to the replica holding the schema lock")
+    void shouldSkipViewsWhenLocked() throws SQLException {
+        tables.add(LOCK);
+
+        new ClickHouseSchema(false, Duration.ZERO).apply(connection());
+
+        assertFalse(ran("CREATE MATERIALIZED VIEW"));
+        assertFalse(ran("INSERT INTO"));
+        assertTrue(tables.contains(LOCK));
+    }
+
+    @Test
+    @DisplayName("Should drop the new views and empty their rollups when the backfill fails")
+    void shouldStartOverWhenBackfillFails() throws SQLException {
+        failing = "INSERT INTO observability.user_events_per_minute";
+
+        assertThrows(SQLException.class, () -> new ClickHouseSchema(false, Duration.ZERO).apply(connection()));
+
+        assertFalse(tables.contains("default.application_logs_per_minute_mv"));
+        assertFalse(tables.contains("observability.user_events_per_minute_mv"));
+        assertTrue(ran("TRUNCATE TABLE IF EXISTS default.application_logs_per_minute"));
+        assertFalse(tables.contains(LOCK));
+    }
+}
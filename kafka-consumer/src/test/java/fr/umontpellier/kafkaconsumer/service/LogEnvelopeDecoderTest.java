@@ -0,0 +1,67 @@
+package fr.umontpellier.kafkaconsumer.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LogEnvelopeDecoder.
+ */
+@DisplayName("LogEnvelopeDecoder Tests")
+class LogEnvelopeDecoderTest {
+
+    /**
+     * An envelope encoded by InjectLog4J's LogEnvelope, checked byte for byte
+     * by its testLogEnvelopeRoundTrip: keep them in sync.
+     */
+    private static final String ENVELOPE_V1 = "c10180abbbb2efeb9103041766722e756d6f6e7470656c6c6965722e7365727669"
+            + "63651d50726f64756374536572766963652e676574416c6c50726f647563747314687474702d6e696f2d383038302d65"
+            + "7865632d31184665746368696e672070726f647563747320e2809320c3a9";
+
+    private final LogEnvelopeDecoder decoder = new LogEnvelopeDecoder();
+
+    @Test
+    @DisplayName("Should decode an envelope encoded by InjectLog4J")
+    void shouldDecodeInjectLog4JEnvelope() {
+        LogEnvelopeDecoder.Event event = decoder.decode(HexFormat.of().parseHex(ENVELOPE_V1));
+
+        assertEquals(micros(Instant.parse("2026-01-02T03:04:05.123456Z")),
+                event.timestampMicros());
+        assertEquals("WARN", event.level());
+        assertEquals("fr.umontpellier.service", event.logger());
+        assertEquals("ProductService.getAllProducts", event.rule());
+        assertEquals("http-nio-8080-exec-1", event.thread());
+        assertEquals("Fetching products – é", event.message());
+    }
+
+    @Test
+    @DisplayName("Should ignore the fields appended by later versions")
+    void shouldIgnoreAppendedFields() {
+        byte[] value = HexFormat.of().parseHex(ENVELOPE_V1);
+        byte[] extended = Arrays.copyOf(value, value.length + 3);
+        extended[1] = 2;
+
+        assertEquals(decoder.decode(value), decoder.decode(extended));
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(Arrays.copyOf(value, value.length - 1)));
+    }
+
+    @Test
+    @DisplayName("Should tell text lines from envelopes whatever their first character")
+    void shouldNotMistakeTextForEnvelope() {
+        assertTrue(LogEnvelopeDecoder.isEnvelope(HexFormat.of().parseHex(ENVELOPE_V1)));
+        assertFalse(LogEnvelopeDecoder.isEnvelope("2026-01-02 03:04:05.123 [main] INFO x - y"
+                .getBytes(StandardCharsets.UTF_8)));
+        // Text lines may start with any UTF-8 lead byte, here 0xC5
+        assertFalse(LogEnvelopeDecoder.isEnvelope("Ŝ".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static long micros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000L;
+    }
+}
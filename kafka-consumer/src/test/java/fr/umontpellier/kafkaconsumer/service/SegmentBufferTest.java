@@ -0,0 +1,217 @@
+package fr.umontpellier.kafkaconsumer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SegmentBuffer.
+ */
+@DisplayName("SegmentBuffer Tests")
+class SegmentBufferTest {
+
+    @TempDir
+    Path directory;
+
+    private SegmentBuffer open(DataSize maxSize, DataSize segmentSize) throws IOException {
+        SegmentBuffer buffer = new SegmentBuffer(directory, maxSize, segmentSize, new SimpleMeterRegistry());
+        buffer.open();
+        return buffer;
+    }
+
+    private SegmentBuffer open() throws IOException {
+        return open(DataSize.ofMegabytes(1), DataSize.ofMegabytes(1));
+    }
+
+    private static byte[] record(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> replayAll(SegmentBuffer buffer, int batchSize) {
+        List<String> replayed = new ArrayList<>();
+        while (buffer.replay(batchSize, records -> {
+            records.forEach(r -> replayed.add(new String(r, StandardCharsets.UTF_8)));
+            return true;
+        }) > 0) {
+            // Keep replaying
+        }
+        return replayed;
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.filter(f -> f.getFileName().toString().endsWith(".seg")).toList();
+            assertEquals(1, segments.size());
+            return segments.get(0);
+        }
+    }
+
+    @Nested
+    @DisplayName("Framing")
+    class Framing {
+
+        @Test
+        @DisplayName("Should replay records in order and delete replayed segments")
+        void shouldReplayInOrder() throws IOException {
+            SegmentBuffer buffer = open(DataSize.ofMegabytes(1), DataSize.ofBytes(32));
+            for (int i = 0; i < 10; i++) {
+                assertTrue(buffer.append(record("record-" + i)));
+            }
+
+            List<String> replayed = replayAll(buffer, 3);
+
+            assertEquals(List.of("record-0", "record-1", "record-2", "record-3", "record-4", "record-5",
+                    "record-6", "record-7", "record-8", "record-9"), replayed);
+            assertTrue(buffer.isEmpty());
+            try (Stream<Path> files = Files.list(directory)) {
+                assertTrue(files.noneMatch(f -> f.getFileName().toString().endsWith(".seg")));
+            }
+        }
+
+        @Test
+        @DisplayName("Should frame each record as length, CRC32 and bytes")
+        void shouldFrameRecords() throws IOException {
+            SegmentBuffer buffer = open();
+            buffer.append(record("abc"));
+            buffer.close();
+
+            byte[] bytes = Files.readAllBytes(onlySegment());
+
+            assertEquals(8 + 3, bytes.length);
+            assertArrayEquals(new byte[] {0, 0, 0, 3}, Arrays.copyOfRange(bytes, 0, 4));
+            // CRC32 of "abc"
+            assertArrayEquals(new byte[] {(byte) 0x35, (byte) 0x24, (byte) 0x41, (byte) 0xc2},
+                    Arrays.copyOfRange(bytes, 4, 8));
+            assertEquals("abc", new String(bytes, 8, 3, StandardCharsets.UTF_8));
+        }
+
+        @Test
+        @DisplayName("Should drop the rest of a segment from a record whose CRC does not match")
+        void shouldStopAtCorruptRecord() throws IOException {
+            SegmentBuffer buffer = open();
+            buffer.append(record("first"));
+            buffer.append(record("second"));
+            buffer.append(record("third"));
+            buffer.close();
+            try (RandomAccessFile file = new RandomAccessFile(onlySegment().toFile(), "rw")) {
+                // First byte of "second"
+                file.seek(8 + 5 + 8);
+                file.write('S');
+            }
+
+            List<String> replayed = replayAll(open(), 10);
+
+            assertEquals(List.of("first"), replayed);
+        }
+
+        @Test
+        @DisplayName("Should replay the whole records before a torn tail")
+        void shouldStopAtTornTail() throws IOException {
+            SegmentBuffer buffer = open();
+            buffer.append(record("first"));
+            buffer.append(record("second"));
+            buffer.close();
+            try (RandomAccessFile file = new RandomAccessFile(onlySegment().toFile(), "rw")) {
+                file.setLength(file.length() - 2);
+            }
+
+            SegmentBuffer reopened = open();
+            List<String> replayed = replayAll(reopened, 10);
+
+            assertEquals(List.of("first"), replayed);
+            assertTrue(reopened.isEmpty());
+        }
+    }
+
+    @Nested
+    @DisplayName("Capacity")
+    class Capacity {
+
+        @Test
+        @DisplayName("Should refuse records beyond the maximum size")
+        void shouldRefuseWhenFull() throws IOException {
+            SegmentBuffer buffer = open(DataSize.ofBytes(30), DataSize.ofBytes(30));
+
+            assertTrue(buffer.append(record("0123456789")));
+            assertFalse(buffer.append(record("0123456789")));
+            assertEquals(18, buffer.getBufferedBytes());
+        }
+
+        @Test
+        @DisplayName("Should append records all together or not at all")
+        void shouldAppendAllOrNothing() throws IOException {
+            SegmentBuffer buffer = open(DataSize.ofBytes(30), DataSize.ofBytes(30));
+
+            assertFalse(buffer.append(List.of(record("0123456789"), record("0123456789"))));
+            assertTrue(buffer.isEmpty());
+            assertTrue(buffer.append(List.of(record("a"), record("b"))));
+            assertEquals(List.of("a", "b"), replayAll(buffer, 10));
+        }
+    }
+
+    @Nested
+    @DisplayName("Replay")
+    class Replay {
+
+        @Test
+        @DisplayName("Should keep a batch the handler refused")
+        void shouldKeepRefusedBatch() throws IOException {
+            SegmentBuffer buffer = open();
+            buffer.append(record("first"));
+
+            assertEquals(0, buffer.replay(10, records -> false));
+            assertEquals(List.of("first"), replayAll(buffer, 10));
+        }
+
+        @Test
+        @DisplayName("Should resume after the last handled batch when reopened")
+        void shouldResumeAcrossReopen() throws IOException {
+            SegmentBuffer buffer = open();
+            for (int i = 0; i < 5; i++) {
+                buffer.append(record("record-" + i));
+            }
+            List<String> first = new ArrayList<>();
+            assertEquals(2, buffer.replay(2, records -> {
+                records.forEach(r -> first.add(new String(r, StandardCharsets.UTF_8)));
+                return true;
+            }));
+            buffer.close();
+
+            List<String> rest = replayAll(open(), 10);
+
+            assertEquals(List.of("record-0", "record-1"), first);
+            assertEquals(List.of("record-2", "record-3", "record-4"), rest);
+        }
+
+        @Test
+        @DisplayName("Should ignore a saved position that belongs to an already replayed segment")
+        void shouldIgnoreStalePosition() throws IOException {
+            SegmentBuffer buffer = open(DataSize.ofMegabytes(1), DataSize.ofBytes(32));
+            buffer.append(record("record-0"));
+            buffer.append(record("record-1"));
+            buffer.append(record("record-2"));
+            assertEquals(1, buffer.replay(1, records -> true));
+            assertEquals(1, buffer.replay(1, records -> true));
+            buffer.close();
+
+            List<String> rest = replayAll(open(DataSize.ofMegabytes(1), DataSize.ofBytes(32)), 10);
+
+            assertEquals(List.of("record-2"), rest);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package fr.umontpellier.kafkaconsumer.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SnowflakeIdGenerator.
+ */
+@DisplayName("SnowflakeIdGenerator Tests")
+class SnowflakeIdGeneratorTest {
+
+    private static final long TIMESTAMP = Instant.parse("2026-01-02T03:04:05.123Z").toEpochMilli();
+
+    private final SnowflakeIdGenerator generator = new SnowflakeIdGenerator();
+
+    @Test
+    @DisplayName("Should lay out timestamp, partition and offset bits")
+    void shouldLayOutBits() {
+        long id = generator.idOf(5, 4096 + 7, TIMESTAMP);
+
+        assertTrue(id > 0);
+        assertEquals((TIMESTAMP - SnowflakeIdGenerator.EPOCH_MILLIS) << 22 | 5L << 12 | 7, id);
+        assertEquals(Instant.ofEpochMilli(TIMESTAMP), SnowflakeIdGenerator.timestampOf(id));
+        assertEquals(5, SnowflakeIdGenerator.partitionOf(id));
+    }
+
+    @Test
+    @DisplayName("Should give a redelivered record the same id")
+    void shouldBeDeterministic() {
+        assertEquals(generator.idOf(3, 1234, TIMESTAMP), generator.idOf(3, 1234, TIMESTAMP));
+    }
+
+    @Test
+    @DisplayName("Should increase with the timestamps of a partition")
+    void shouldBeMonotonicWithinPartition() {
+        long previousMax = -1;
+        long offset = 0;
+        Set<Long> ids = new HashSet<>();
+        for (long millis = 0; millis < 50; millis++) {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < 100; i++) {
+                long id = generator.idOf(2, offset++, TIMESTAMP + millis);
+                assertTrue(ids.add(id));
+                min = Math.min(min, id);
+                max = Math.max(max, id);
+            }
+            assertTrue(min > previousMax, "ids of millisecond " + millis + " not after the previous ones");
+            previousMax = max;
+        }
+    }
+
+    @Test
+    @DisplayName("Should follow the offsets within a millisecond")
+    void shouldFollowOffsetsWithinMillisecond() {
+        long previous = -1;
+        for (long offset = 8192; offset < 8192 + 4096; offset++) {
+            long id = generator.idOf(2, offset, TIMESTAMP);
+            assertTrue(id > previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    @DisplayName("Should give distinct ids to the records of different partitions")
+    void shouldBeUniqueAcrossPartitions() {
+        Set<Long> ids = new HashSet<>();
+        for (int partition = 0; partition < 1024; partition++) {
+            for (long offset = 0; offset < 16; offset++) {
+                assertTrue(ids.add(generator.idOf(partition, offset, TIMESTAMP)));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should count records without a timestamp from the epoch")
+    void shouldClampMissingTimestamp() {
+        long id = generator.idOf(1, 9, -1);
+
+        assertEquals(Instant.ofEpochMilli(SnowflakeIdGenerator.EPOCH_MILLIS), SnowflakeIdGenerator.timestampOf(id));
+        assertEquals(1, SnowflakeIdGenerator.partitionOf(id));
+    }
+
+    @Test
+    @DisplayName("Should reject partitions beyond the partition bits")
+    void shouldRejectLargePartitions() {
+        assertThrows(IllegalArgumentException.class, () -> generator.idOf(1024, 0, TIMESTAMP));
+        assertThrows(IllegalArgumentException.class, () -> generator.idOf(-1, 0, TIMESTAMP));
+    }
+}